@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.http.HttpCommands;
+import li.moskito.awtt.protocol.http.HttpRequest;
+import li.moskito.awtt.protocol.http.HttpVersion;
+import li.moskito.awtt.protocol.http.RequestHeaders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Access to the fields of a {@link Header} and lookup of {@link CustomHeaderFieldDefinition}s
+ *
+ * @author Gerald
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderBenchmark {
+
+    private static final String[] CUSTOM_NAMES = { "X-Request-Id", "X-Forwarded-For", "X-Forwarded-Proto",
+            "X-Real-IP", "X-Correlation-Id", "DNT", "Upgrade-Insecure-Requests", "Sec-Fetch-Mode" };
+
+    private Header header;
+
+    @Setup
+    public void setUp() {
+        final HttpRequest request = new HttpRequest(HttpCommands.GET, URI.create("/index.html"), HttpVersion.HTTP_1_1);
+        request.addField(RequestHeaders.HOST, "localhost");
+        request.addField(RequestHeaders.USER_AGENT, "Mozilla/5.0");
+        request.addField(RequestHeaders.ACCEPT, "text/html");
+        request.addField(RequestHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        request.addField(RequestHeaders.ACCEPT_LANGUAGE, "en-US");
+        request.addField(RequestHeaders.CONNECTION, "keep-alive");
+        for (final String name : CUSTOM_NAMES) {
+            request.addField(CustomHeaderFieldDefinition.forName(name), "value");
+        }
+        this.header = request.getHeader();
+    }
+
+    @Benchmark
+    public void getFields(final Blackhole blackhole) {
+        final List<HeaderField> fields = this.header.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            blackhole.consume(fields.get(i).getValue());
+        }
+    }
+
+    @Benchmark
+    public HeaderField getField() {
+        return this.header.getField(RequestHeaders.ACCEPT_ENCODING);
+    }
+
+    @Benchmark
+    public void forName(final Blackhole blackhole) {
+        for (final String name : CUSTOM_NAMES) {
+            blackhole.consume(CustomHeaderFieldDefinition.forName(name));
+        }
+    }
+}
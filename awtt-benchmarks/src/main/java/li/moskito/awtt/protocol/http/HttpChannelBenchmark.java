@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.MessageChannelOptions;
+import li.moskito.awtt.protocol.ProtocolException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of requests of different size by the {@link HttpChannel}
+ *
+ * @author Gerald
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpChannelBenchmark {
+
+    /**
+     * The requests to be parsed
+     */
+    public enum RequestType {
+        /**
+         * A minimal request
+         */
+        SMALL {
+            @Override
+            String create() {
+                return "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            }
+        },
+        /**
+         * A request of a browser with a long query and cookie
+         */
+        LARGE {
+            @Override
+            String create() {
+                final StringBuilder query = new StringBuilder();
+                for (int i = 0; i < 50; i++) {
+                    query.append(i == 0 ? '?' : '&').append("param").append(i).append("=value").append(i);
+                }
+                final StringBuilder cookie = new StringBuilder();
+                for (int i = 0; i < 40; i++) {
+                    cookie.append(i == 0 ? "" : "; ").append("session").append(i).append('=')
+                            .append("0123456789abcdef0123456789abcdef0123456789abcdef");
+                }
+                return "GET /static/css/application/theme/main.css" + query + " HTTP/1.1\r\n"
+                        + "Host: www.example.com\r\n"
+                        + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/119.0\r\n"
+                        + "Accept: text/css,*/*;q=0.1\r\n" + "Accept-Language: en-US,en;q=0.5\r\n"
+                        + "Accept-Encoding: gzip, deflate, br\r\n" + "Referer: https://www.example.com/\r\n"
+                        + "Cookie: " + cookie + "\r\n" + "Connection: keep-alive\r\n\r\n";
+            }
+        },
+        /**
+         * A request with many short custom header fields
+         */
+        MANY_HEADERS {
+            @Override
+            String create() {
+                final StringBuilder request = new StringBuilder("GET /api/items HTTP/1.1\r\nHost: localhost\r\n");
+                for (int i = 0; i < 50; i++) {
+                    request.append("X-Custom-Header-").append(i).append(": value-").append(i).append("\r\n");
+                }
+                return request.append("\r\n").toString();
+            }
+        };
+
+        abstract String create();
+    }
+
+    @Param
+    private RequestType requestType;
+
+    private HttpChannel channel;
+
+    private ByteBuffer request;
+
+    @Setup
+    public void setUp() {
+        this.channel = new HTTP().openChannel();
+        // the channel must not start closing the connection during the measurement
+        this.channel.setOption(MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES, Integer.MAX_VALUE);
+        this.request = ByteBuffer.wrap(this.requestType.create().getBytes(HTTP.CHARSET));
+    }
+
+    @Benchmark
+    public HttpMessage parseMessage() throws ProtocolException, IOException {
+        return this.channel.parseMessage(this.request.duplicate());
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting of dates for the header fields of responses
+ *
+ * @author Gerald
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpDateBenchmark {
+
+    private final Date date = new Date(1400000000000L);
+
+    @Benchmark
+    public String toHttpDate() {
+        return HTTP.toHttpDate(this.date);
+    }
+
+    @Benchmark
+    public String format() {
+        return HttpDate.format(this.date.getTime());
+    }
+
+    @Benchmark
+    public String now() {
+        return HttpDate.now();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.MessageChannel;
+import li.moskito.awtt.protocol.MessageChannelOptions;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip of requests through a {@link MessageChannel} of the {@link HTTP} protocol: the request data is written
+ * to the channel, the messages are processed by a handler answering with 204 No Content, and the responses are read
+ * from the channel. Pipelined requests are written with a single buffer.
+ *
+ * @author Gerald
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageChannelBenchmark {
+
+    /**
+     * Handler answering all GET requests without content
+     */
+    public static class NoContentHandler extends HttpProtocolHandler {
+
+        @Override
+        protected HttpResponse onGet(final HttpRequest httpRequest) {
+            return HTTP.createResponse(HttpStatusCodes.NO_CONTENT);
+        }
+    }
+
+    private static final String REQUEST = "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+    @Param({ "1", "8" })
+    private int pipelineDepth;
+
+    private MessageChannel channel;
+
+    private ByteBuffer requests;
+
+    private ByteBuffer responses;
+
+    @Setup
+    public void setUp() throws ConfigurationException {
+        final HTTP http = new HTTP();
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", NoContentHandler.class.getName());
+        http.configure(config);
+        this.channel = http.openChannel();
+        // the channel must not start closing the connection during the measurement
+        this.channel.setOption(MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES, Integer.MAX_VALUE);
+        final StringBuilder data = new StringBuilder();
+        for (int i = 0; i < this.pipelineDepth; i++) {
+            data.append(REQUEST);
+        }
+        this.requests = ByteBuffer.wrap(data.toString().getBytes(HTTP.CHARSET));
+        this.responses = ByteBuffer.allocateDirect(16 * 1024);
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        this.channel.write(this.requests.duplicate());
+        this.channel.processMessages();
+        int length = 0;
+        while (this.channel.hasPendingOutput()) {
+            this.responses.clear();
+            length += this.channel.read(this.responses);
+        }
+        return length;
+    }
+}
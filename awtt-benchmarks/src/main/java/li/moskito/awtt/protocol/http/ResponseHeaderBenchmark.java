@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the header of a typical response of a static file, directly into the buffer by the
+ * {@link HttpHeaderEncoder} as done when writing responses and into a character buffer by the {@link HttpChannel}
+ *
+ * @author Gerald
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseHeaderBenchmark {
+
+    private HttpChannel channel;
+
+    private HttpHeader header;
+
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        this.channel = new HTTP().openChannel();
+        final HttpResponse response = new HttpResponse(HttpVersion.HTTP_1_1, HttpStatusCodes.OK);
+        response.addField(ResponseHeaders.CONTENT_TYPE, "text/html");
+        response.addField(ResponseHeaders.CONTENT_LENGTH, 48213);
+        response.addField(ResponseHeaders.LAST_MODIFIED, HttpDate.format(1400000000000L));
+        response.addField(ResponseHeaders.ETAG, EntityTag.strong("5a1f-3c0b2e4d"));
+        response.addField(ResponseHeaders.CACHE_CONTROL, "max-age=3600");
+        response.addField(ResponseHeaders.VARY, RequestHeaders.ACCEPT_ENCODING.getName());
+        response.addField(ResponseHeaders.SERVER, "awtt");
+        this.header = response.getHeader();
+        this.buffer = ByteBuffer.allocate(4096);
+    }
+
+    @Benchmark
+    public int encodeHeader() {
+        this.buffer.clear();
+        return HttpHeaderEncoder.encode(this.header, this.buffer);
+    }
+
+    @Benchmark
+    public CharBuffer serializeHeader() {
+        return this.channel.serializeHeader(this.header);
+    }
+}
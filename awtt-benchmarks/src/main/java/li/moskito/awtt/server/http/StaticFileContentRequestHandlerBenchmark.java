@@ -0,0 +1,125 @@
+/**
+ *
+ */
+package li.moskito.awtt.server.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.http.HttpCommands;
+import li.moskito.awtt.protocol.http.HttpRequest;
+import li.moskito.awtt.protocol.http.HttpResponse;
+import li.moskito.awtt.protocol.http.HttpVersion;
+import li.moskito.awtt.protocol.http.RequestHeaders;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatch of a GET request of a file by the {@link StaticFileContentRequestHandler}, from the accepts check until
+ * the response is created, with and without the caches of the handler
+ *
+ * @author Gerald
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticFileContentRequestHandlerBenchmark {
+
+    /**
+     * The caches the handler is configured with
+     */
+    public enum Caching {
+        /**
+         * The metadata of the file is read from the file system for every request
+         */
+        NONE,
+        /**
+         * The metadata of the file is cached
+         */
+        METADATA,
+        /**
+         * The metadata and the content of the file are cached
+         */
+        CONTENT;
+    }
+
+    @Param
+    private Caching caching;
+
+    private Path contentRoot;
+
+    private StaticFileContentRequestHandler handler;
+
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() throws IOException, ConfigurationException {
+        this.contentRoot = Files.createTempDirectory("awtt-benchmark");
+        final byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'x');
+        Files.write(this.contentRoot.resolve("index.html"), content);
+
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.setExpressionEngine(new XPathExpressionEngine());
+        config.addProperty("contentRoot", this.contentRoot.toUri().toString());
+        config.addProperty("contentTypes", "");
+        config.addProperty("contentTypes/type", "");
+        config.addProperty("contentTypes/type/@mimeType", "text/html");
+        config.addProperty("contentTypes/type/@fileExtension", "html");
+        if (this.caching == Caching.NONE) {
+            config.addProperty("metadataCache/timeToLive", 0);
+        } else if (this.caching == Caching.CONTENT) {
+            config.addProperty("contentCache/maxSize", 1024 * 1024);
+        }
+        this.handler = new StaticFileContentRequestHandler();
+        this.handler.configure(config);
+
+        this.request = new HttpRequest(HttpCommands.GET, URI.create("/index.html"), HttpVersion.HTTP_1_1);
+        this.request.addField(RequestHeaders.HOST, "localhost");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (this.handler.getContentCache() != null) {
+            this.handler.getContentCache().stop();
+        }
+        Files.deleteIfExists(this.contentRoot.resolve("index.html"));
+        Files.deleteIfExists(this.contentRoot);
+    }
+
+    @Benchmark
+    public HttpResponse dispatch() throws IOException {
+        if (!this.handler.accepts(this.request)) {
+            throw new IllegalStateException("Request not accepted");
+        }
+        final HttpResponse response = this.handler.process(this.request);
+        // release the file opened for the body
+        final ReadableByteChannel body = response.getBody() == null ? null : response.getBody().getByteChannel();
+        if (body != null) {
+            body.close();
+        }
+        return response;
+    }
+}
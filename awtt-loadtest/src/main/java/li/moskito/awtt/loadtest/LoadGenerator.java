@@ -0,0 +1,449 @@
+/**
+ *
+ */
+package li.moskito.awtt.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.metrics.Histogram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates HTTP/1.1 load on a server with non-blocking connections served by a single selector thread. <br>
+ * In a closed-loop test each connection keeps the configured number of requests in flight and sends the next request
+ * as soon as a response has been received, so the load adapts to the speed of the server. In an open-loop test the
+ * requests are scheduled at a fixed rate independent of the responses. A scheduled request is sent on the next
+ * connection with less requests in flight than the pipeline depth, or waits until a connection becomes available.
+ * Its latency is measured from the scheduled time, so a stalled server is not hidden by requests that are not sent
+ * while it stalls. <br>
+ * Connections closed by the server, failed or timed out are replaced by new connections.
+ *
+ * @author Gerald
+ */
+public final class LoadGenerator {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Interval of checking for timed out requests and replacing lost connections
+     */
+    private static final long CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * A connection to the server with the requests in flight
+     */
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private final ResponseParser parser = new ResponseParser();
+        private final ByteBuffer output;
+        private SelectionKey key;
+        private boolean connected;
+        private long lastActivity;
+
+        /**
+         * Bytes received up to the end of the last completed response
+         */
+        private long receivedBefore;
+
+        /**
+         * Ring of the start times and response types of the requests in flight
+         */
+        private final long[] starts;
+        private final boolean[] bodyless;
+        private int head;
+        private int inFlight;
+
+        Connection(final SocketChannel channel, final int pipelineDepth, final int maxRequestLength) {
+            this.channel = channel;
+            this.output = ByteBuffer.allocate(pipelineDepth * maxRequestLength);
+            this.starts = new long[pipelineDepth];
+            this.bodyless = new boolean[pipelineDepth];
+        }
+
+        boolean hasCapacity() {
+            return this.connected && this.inFlight < this.starts.length;
+        }
+
+        void offer(final long start, final boolean bodylessResponse) {
+            final int tail = (this.head + this.inFlight) % this.starts.length;
+            this.starts[tail] = start;
+            this.bodyless[tail] = bodylessResponse;
+            this.inFlight++;
+        }
+
+        boolean isNextBodyless() {
+            return this.bodyless[this.head];
+        }
+
+        long poll() {
+            final long start = this.starts[this.head];
+            this.head = (this.head + 1) % this.starts.length;
+            this.inFlight--;
+            return start;
+        }
+    }
+
+    private final LoadTestOptions options;
+    private final RequestMix mix;
+    private final InetSocketAddress address;
+    private final Random random = new Random();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * Scheduled start times of the requests of an open-loop test waiting for a connection
+     */
+    private final Deque<Long> backlog = new ArrayDeque<>();
+
+    private final Histogram latency = new Histogram();
+    private final long[] statusClasses = new long[6];
+    private long completed;
+    private long errors;
+    private long timeouts;
+    private long connects;
+    private long bytesReceived;
+
+    private Selector selector;
+    private long measureStart;
+    private long measureEnd;
+    private boolean sending;
+    private int nextConnection;
+
+    /**
+     * @param options
+     *            the options of the test
+     */
+    public LoadGenerator(final LoadTestOptions options) {
+        this.options = options;
+        this.mix = options.createRequestMix();
+        this.address = new InetSocketAddress(options.getHost(), options.getPort());
+    }
+
+    /**
+     * Runs the test. The call blocks until the warmup and the measurement are over and the responses of the requests
+     * in flight have been received or timed out.
+     *
+     * @return the report of the measurement
+     * @throws IOException
+     *             if the selector could not be opened
+     */
+    public LoadReport run() throws IOException {
+        try (Selector sel = Selector.open()) {
+            this.selector = sel;
+            final long start = System.nanoTime();
+            this.measureStart = start + TimeUnit.SECONDS.toNanos(this.options.getWarmupSeconds());
+            this.measureEnd = this.measureStart + TimeUnit.SECONDS.toNanos(this.options.getDurationSeconds());
+            this.sending = true;
+            this.openConnections();
+
+            final double interval = this.options.isOpenLoop() ? TimeUnit.SECONDS.toNanos(1)
+                    / (double) this.options.getRate() : 0;
+            long scheduled = 0;
+            long nextCheck = start + CHECK_INTERVAL;
+            long now = start;
+            while (now < this.measureEnd) {
+                long wakeUp = Math.min(this.measureEnd, nextCheck);
+                if (this.options.isOpenLoop()) {
+                    long next = start + (long) (scheduled * interval);
+                    while (next <= now) {
+                        this.schedule(next);
+                        next = start + (long) (++scheduled * interval);
+                    }
+                    wakeUp = Math.min(wakeUp, next);
+                }
+                this.select(wakeUp - now);
+                now = System.nanoTime();
+                if (now >= nextCheck) {
+                    this.checkTimeouts(now);
+                    this.openConnections();
+                    nextCheck = now + CHECK_INTERVAL;
+                }
+            }
+            final long unsent = this.backlog.size();
+            this.drain(now);
+            return new LoadReport(this.options, this.measureEnd - this.measureStart, this.completed,
+                    this.statusClasses, this.errors, this.timeouts, unsent, this.connects, this.bytesReceived,
+                    this.latency.snapshot());
+        } finally {
+            for (final Connection connection : this.connections) {
+                closeQuietly(connection);
+            }
+            this.connections.clear();
+        }
+    }
+
+    /**
+     * Stops sending requests and waits for the responses of the requests in flight
+     */
+    private void drain(final long start) throws IOException {
+        this.sending = false;
+        this.backlog.clear();
+        final long end = start + TimeUnit.MILLISECONDS.toNanos(this.options.getTimeoutMillis());
+        long now = start;
+        while (now < end && this.hasRequestsInFlight()) {
+            this.select(end - now);
+            now = System.nanoTime();
+        }
+        for (final Connection connection : this.connections) {
+            this.timeouts += connection.inFlight;
+        }
+    }
+
+    private boolean hasRequestsInFlight() {
+        for (final Connection connection : this.connections) {
+            if (connection.inFlight > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the connections to become ready and processes the ready connections
+     */
+    private void select(final long timeoutNanos) throws IOException {
+        if (timeoutNanos <= 0) {
+            this.selector.selectNow();
+        } else {
+            this.selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+        }
+        final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            final Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    connection.channel.finishConnect();
+                    connection.connected = true;
+                    key.interestOps(SelectionKey.OP_READ);
+                    this.fill(connection);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    this.flush(connection);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    this.read(connection);
+                }
+            } catch (final IOException e) {
+                LOG.debug("Connection failed", e);
+                this.errors += Math.max(1, connection.inFlight);
+                connection.inFlight = 0;
+                this.replace(connection);
+            }
+        }
+    }
+
+    /**
+     * Schedules a request of an open-loop test. If the connection fails while the request is sent, i.e. because it has
+     * been reset by an overloaded server, the failure is counted as an error, the connection is replaced and the
+     * request waits for the next available connection.
+     */
+    private void schedule(final long start) {
+        final int size = this.connections.size();
+        for (int i = 0; i < size; i++) {
+            final Connection connection = this.connections.get((this.nextConnection + i) % size);
+            if (connection.hasCapacity()) {
+                this.nextConnection = (this.nextConnection + i + 1) % size;
+                this.send(connection, start);
+                try {
+                    this.flush(connection);
+                } catch (final IOException e) {
+                    LOG.debug("Connection failed", e);
+                    // the requests sent before are lost, the scheduled request is sent again
+                    this.errors += Math.max(1, connection.inFlight - 1);
+                    connection.inFlight = 0;
+                    this.backlog.addFirst(start);
+                    this.replace(connection);
+                }
+                return;
+            }
+        }
+        this.backlog.add(start);
+    }
+
+    /**
+     * Sends requests on the connection until the pipeline is full. In a closed-loop test new requests are sent, in an
+     * open-loop test the waiting requests.
+     */
+    private void fill(final Connection connection) throws IOException {
+        if (!this.sending) {
+            return;
+        }
+        if (this.options.isOpenLoop()) {
+            while (connection.hasCapacity() && !this.backlog.isEmpty()) {
+                this.send(connection, this.backlog.poll());
+            }
+        } else {
+            while (connection.hasCapacity()) {
+                this.send(connection, System.nanoTime());
+            }
+        }
+        this.flush(connection);
+    }
+
+    private void send(final Connection connection, final long start) {
+        final RequestMix.EncodedRequest request = this.mix.next(this.random);
+        connection.output.put(request.getData());
+        connection.offer(start, request.isBodyless());
+    }
+
+    private void flush(final Connection connection) throws IOException {
+        final ByteBuffer output = connection.output;
+        if (output.position() > 0) {
+            output.flip();
+            connection.channel.write(output);
+            output.compact();
+            connection.lastActivity = System.nanoTime();
+        }
+        connection.key.interestOps(output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+    }
+
+    private void read(final Connection connection) throws IOException {
+        final ByteBuffer buffer = this.readBuffer;
+        buffer.clear();
+        final int read = connection.channel.read(buffer);
+        final long now = System.nanoTime();
+        if (read < 0) {
+            if (connection.inFlight > 0 && connection.parser.finish()) {
+                this.complete(connection, now);
+            }
+            this.errors += connection.inFlight;
+            connection.inFlight = 0;
+            this.replace(connection);
+            return;
+        }
+        connection.lastActivity = now;
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (connection.inFlight == 0) {
+                throw new IOException("Unexpected response data");
+            }
+            if (connection.parser.parse(buffer, connection.isNextBodyless())) {
+                this.complete(connection, now);
+                // a server answering a request with a close token may close without announcing it in the response
+                if (connection.parser.isClose() || !this.options.isKeepAlive()) {
+                    // pipelined requests after the last response are lost
+                    this.errors += connection.inFlight;
+                    connection.inFlight = 0;
+                    this.replace(connection);
+                    return;
+                }
+            }
+        }
+        this.fill(connection);
+    }
+
+    /**
+     * Records the completed response of the next request in flight
+     */
+    private void complete(final Connection connection, final long now) {
+        final long start = connection.poll();
+        final long received = connection.parser.getBytesReceived();
+        if (start >= this.measureStart && start < this.measureEnd) {
+            this.completed++;
+            this.statusClasses[Math.min(connection.parser.getStatusCode() / 100, this.statusClasses.length - 1)]++;
+            this.latency.record(now - start);
+            this.bytesReceived += received - connection.receivedBefore;
+        }
+        connection.receivedBefore = received;
+    }
+
+    /**
+     * Closes connections whose requests have not been answered within the timeout
+     */
+    private void checkTimeouts(final long now) {
+        final long timeout = TimeUnit.MILLISECONDS.toNanos(this.options.getTimeoutMillis());
+        for (int i = this.connections.size() - 1; i >= 0; i--) {
+            final Connection connection = this.connections.get(i);
+            final boolean waiting = connection.inFlight > 0 || !connection.connected;
+            if (waiting && now - connection.lastActivity > timeout) {
+                LOG.debug("Request timed out");
+                this.timeouts += Math.max(1, connection.inFlight);
+                connection.inFlight = 0;
+                this.replace(connection);
+            }
+        }
+    }
+
+    /**
+     * Closes a connection and opens a new one if requests are still being sent
+     */
+    private void replace(final Connection connection) {
+        closeQuietly(connection);
+        this.connections.remove(connection);
+        if (this.sending) {
+            this.openConnections();
+        }
+    }
+
+    /**
+     * Opens connections until the configured number of connections is reached or a connection can not be opened
+     */
+    private void openConnections() {
+        while (this.sending && this.connections.size() < this.options.getConnections()) {
+            final Connection connection;
+            try {
+                connection = this.connect();
+            } catch (final IOException e) {
+                LOG.debug("Could not connect to {}", this.address, e);
+                this.errors++;
+                return;
+            }
+            this.connections.add(connection);
+        }
+    }
+
+    private Connection connect() throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+            final Connection connection = new Connection(channel, this.options.getPipelineDepth(),
+                    this.mix.getMaxRequestLength());
+            connection.lastActivity = System.nanoTime();
+            if (channel.connect(this.address)) {
+                connection.connected = true;
+                connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+                this.fill(connection);
+            } else {
+                connection.key = channel.register(this.selector, SelectionKey.OP_CONNECT, connection);
+            }
+            this.connects++;
+            return connection;
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(final Connection connection) {
+        try {
+            connection.channel.close();
+        } catch (final IOException e) {
+            LOG.debug("Could not close connection", e);
+        }
+    }
+}
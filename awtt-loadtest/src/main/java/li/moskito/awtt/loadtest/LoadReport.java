@@ -0,0 +1,140 @@
+/**
+ *
+ */
+package li.moskito.awtt.loadtest;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.metrics.HistogramSnapshot;
+
+/**
+ * Result of a load test run: the throughput, the responses per status class and the latencies of the requests sent
+ * during the measurement. In an open-loop test the latency of a request is measured from the time it was scheduled to
+ * be sent, so that the time requests wait for a free connection while the server is stalled is included
+ * (coordinated omission correction). In a closed-loop test it is measured from the time the request was sent.
+ *
+ * @author Gerald
+ */
+public final class LoadReport {
+
+    private final LoadTestOptions options;
+    private final long durationNanos;
+    private final long completed;
+    private final long[] statusClasses;
+    private final long errors;
+    private final long timeouts;
+    private final long unsent;
+    private final long connects;
+    private final long bytesReceived;
+    private final HistogramSnapshot latency;
+
+    LoadReport(final LoadTestOptions options, final long durationNanos, final long completed,
+            final long[] statusClasses, final long errors, final long timeouts, final long unsent, final long connects,
+            final long bytesReceived, final HistogramSnapshot latency) {
+        this.options = options;
+        this.durationNanos = durationNanos;
+        this.completed = completed;
+        this.statusClasses = statusClasses.clone();
+        this.errors = errors;
+        this.timeouts = timeouts;
+        this.unsent = unsent;
+        this.connects = connects;
+        this.bytesReceived = bytesReceived;
+        this.latency = latency;
+    }
+
+    /**
+     * @return the number of responses received during the measurement
+     */
+    public long getCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * @param statusClass
+     *            the class of the status codes, i.e. 2 for 2xx
+     * @return the number of responses with a status code of the class
+     */
+    public long getResponses(final int statusClass) {
+        return statusClass > 0 && statusClass < this.statusClasses.length ? this.statusClasses[statusClass] : 0;
+    }
+
+    /**
+     * @return the number of requests that failed because the connection failed or the response was invalid
+     */
+    public long getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * @return the number of requests that were not answered within the timeout
+     */
+    public long getTimeouts() {
+        return this.timeouts;
+    }
+
+    /**
+     * @return the number of requests of an open-loop test that were scheduled but not sent until the end of the
+     *         measurement, because all connections were busy
+     */
+    public long getUnsent() {
+        return this.unsent;
+    }
+
+    /**
+     * @return the number of connections opened during the whole run
+     */
+    public long getConnects() {
+        return this.connects;
+    }
+
+    /**
+     * @return the number of response bytes received during the measurement
+     */
+    public long getBytesReceived() {
+        return this.bytesReceived;
+    }
+
+    /**
+     * @return the responses per second
+     */
+    public double getThroughput() {
+        return this.completed * (double) TimeUnit.SECONDS.toNanos(1) / this.durationNanos;
+    }
+
+    /**
+     * @return the latencies in nanoseconds
+     */
+    public HistogramSnapshot getLatency() {
+        return this.latency;
+    }
+
+    @Override
+    public String toString() {
+        final double seconds = this.durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        final StringBuilder buf = new StringBuilder();
+        buf.append(String.format(Locale.ROOT, "%s, %d connections, pipeline depth %d%s%n",
+                this.options.isOpenLoop() ? "Open loop at " + this.options.getRate() + " requests/s" : "Closed loop",
+                this.options.getConnections(), this.options.getPipelineDepth(),
+                this.options.isKeepAlive() ? "" : ", no keep-alive"));
+        buf.append(String.format(Locale.ROOT, "Duration:   %.1f s, %d connects%n", seconds, this.connects));
+        buf.append(String.format(Locale.ROOT, "Requests:   %d completed, %d errors, %d timeouts, %d unsent%n",
+                this.completed, this.errors, this.timeouts, this.unsent));
+        buf.append(String.format(Locale.ROOT, "Throughput: %.1f requests/s, %.2f MB/s%n", this.getThroughput(),
+                this.bytesReceived / seconds / (1024 * 1024)));
+        buf.append("Responses: ");
+        for (int i = 1; i < this.statusClasses.length; i++) {
+            buf.append(' ').append(i).append("xx=").append(this.statusClasses[i]);
+        }
+        buf.append(String.format(Locale.ROOT, "%nLatency:    mean=%.1f us, p50=%s, p90=%s, p99=%s, p99.9=%s, max=%s%n",
+                this.latency.getMean() / 1000, micros(this.latency.get50thPercentile()),
+                micros(this.latency.getPercentile(0.9)), micros(this.latency.get99thPercentile()),
+                micros(this.latency.get999thPercentile()), micros(this.latency.getMax())));
+        return buf.toString();
+    }
+
+    private static String micros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + " us";
+    }
+}
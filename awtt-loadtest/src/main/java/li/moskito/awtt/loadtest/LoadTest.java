@@ -0,0 +1,87 @@
+/**
+ *
+ */
+package li.moskito.awtt.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.server.Startup;
+import li.moskito.awtt.server.StartupException;
+
+/**
+ * Command line entry point of the load generator. The server to be tested is either running already or is started
+ * in-process from an awtt server configuration, i.e. to compare connection handlers on one machine: <br>
+ * <code>java -jar awtt-loadtest.jar --server=awttServerConfig.xml --port=18080 --connections=64 --pipeline=4</code>
+ * <br>
+ * The report is printed to standard out once the test is finished.
+ *
+ * @author Gerald
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(final String[] args) throws IOException, StartupException {
+        final LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        System.out.println(run(options));
+    }
+
+    /**
+     * Runs a load test, starting and stopping the server if a server configuration is set
+     *
+     * @param options
+     *            the options of the test
+     * @return the report of the test
+     * @throws IOException
+     *             if the test could not be run
+     * @throws StartupException
+     *             if the server could not be started
+     */
+    public static LoadReport run(final LoadTestOptions options) throws IOException, StartupException {
+        if (options.getServerConfig() == null) {
+            return new LoadGenerator(options).run();
+        }
+        Startup.main(new String[] { options.getServerConfig() });
+        try {
+            awaitServer(options);
+            return new LoadGenerator(options).run();
+        } finally {
+            Startup.stop();
+        }
+    }
+
+    /**
+     * Waits until the server accepts connections on the port, as the ports of the server are opened asynchronously
+     */
+    private static void awaitServer(final LoadTestOptions options) throws IOException {
+        final InetSocketAddress address = new InetSocketAddress(options.getHost(), options.getPort());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getTimeoutMillis());
+        while (true) {
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                return;
+            } catch (final IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the server", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package li.moskito.awtt.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options of a load test run. The options are read from command line arguments of the form
+ * <code>--name=value</code>, options that are not specified keep their defaults.
+ *
+ * @author Gerald
+ */
+public final class LoadTestOptions {
+
+    /**
+     * Description of the command line arguments
+     */
+    public static final String USAGE = "Options:\n"
+            + "  --host=<name>          host of the server (localhost)\n"
+            + "  --port=<number>        port of the server (18080)\n"
+            + "  --server=<file>        awtt server configuration to start the server in-process\n"
+            + "  --connections=<n>      number of connections (16)\n"
+            + "  --rate=<n>             requests per second for an open-loop test, 0 for a closed loop (0)\n"
+            + "  --pipeline=<n>         requests sent on a connection before awaiting the responses (1)\n"
+            + "  --keepAlive=<bool>     reuse connections for several requests (true)\n"
+            + "  --request=<spec>       [METHOD:]path[:weight] of a request of the mix, repeatable (GET:/)\n"
+            + "  --warmup=<seconds>     time before measuring (2)\n"
+            + "  --duration=<seconds>   time of measurement (10)\n"
+            + "  --timeout=<millis>     time to wait for a response before closing the connection (5000)\n";
+
+    private String host = "localhost";
+    private int port = 18080;
+    private String serverConfig;
+    private int connections = 16;
+    private int rate;
+    private int pipelineDepth = 1;
+    private boolean keepAlive = true;
+    private final List<RequestMix.Request> requests = new ArrayList<>();
+    private int warmupSeconds = 2;
+    private int durationSeconds = 10;
+    private int timeoutMillis = 5000;
+
+    /**
+     * Reads the options from command line arguments
+     *
+     * @param args
+     *            the arguments of the form <code>--name=value</code>
+     * @return the options
+     * @throws IllegalArgumentException
+     *             if an argument is not known or its value is not valid
+     */
+    public static LoadTestOptions parse(final String... args) {
+        final LoadTestOptions options = new LoadTestOptions();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid argument " + arg);
+            }
+            options.set(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        options.validate();
+        return options;
+    }
+
+    private void set(final String name, final String value) {
+        switch (name) {
+            case "host":
+                this.host = value;
+                break;
+            case "port":
+                this.port = toInt(name, value);
+                break;
+            case "server":
+                this.serverConfig = value;
+                break;
+            case "connections":
+                this.connections = toInt(name, value);
+                break;
+            case "rate":
+                this.rate = toInt(name, value);
+                break;
+            case "pipeline":
+                this.pipelineDepth = toInt(name, value);
+                break;
+            case "keepAlive":
+                this.keepAlive = Boolean.parseBoolean(value);
+                break;
+            case "request":
+                this.requests.add(RequestMix.Request.parse(value));
+                break;
+            case "warmup":
+                this.warmupSeconds = toInt(name, value);
+                break;
+            case "duration":
+                this.durationSeconds = toInt(name, value);
+                break;
+            case "timeout":
+                this.timeoutMillis = toInt(name, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    private static int toInt(final String name, final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " is no number: " + value, e);
+        }
+    }
+
+    private void validate() {
+        if (this.port <= 0 || this.connections <= 0 || this.pipelineDepth <= 0 || this.durationSeconds <= 0
+                || this.timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Port, connections, pipeline, duration and timeout must be positive");
+        }
+        if (this.rate < 0 || this.warmupSeconds < 0) {
+            throw new IllegalArgumentException("Rate and warmup must not be negative");
+        }
+        if (!this.keepAlive && this.pipelineDepth > 1) {
+            throw new IllegalArgumentException("Requests can only be pipelined on kept alive connections");
+        }
+        if (this.requests.isEmpty()) {
+            this.requests.add(RequestMix.Request.parse("/"));
+        }
+    }
+
+    /**
+     * Creates the mix of requests to be sent
+     *
+     * @return the request mix
+     */
+    public RequestMix createRequestMix() {
+        return new RequestMix(this.requests, this.host + ':' + this.port, this.keepAlive);
+    }
+
+    public String getHost() {
+        return this.host;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @return the path of the configuration of a server to be started in-process or <code>null</code> if the server is
+     *         running already
+     */
+    public String getServerConfig() {
+        return this.serverConfig;
+    }
+
+    public int getConnections() {
+        return this.connections;
+    }
+
+    /**
+     * @return the number of requests per second sent in an open-loop test, independent of the response times, or 0 if
+     *         each connection sends the next request once a response has been received (closed loop)
+     */
+    public int getRate() {
+        return this.rate;
+    }
+
+    public boolean isOpenLoop() {
+        return this.rate > 0;
+    }
+
+    public int getPipelineDepth() {
+        return this.pipelineDepth;
+    }
+
+    public boolean isKeepAlive() {
+        return this.keepAlive;
+    }
+
+    public List<RequestMix.Request> getRequests() {
+        return this.requests;
+    }
+
+    public int getWarmupSeconds() {
+        return this.warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return this.durationSeconds;
+    }
+
+    public int getTimeoutMillis() {
+        return this.timeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadTestOptions [host=" + this.host + ", port=" + this.port + ", connections=" + this.connections
+                + ", rate=" + this.rate + ", pipelineDepth=" + this.pipelineDepth + ", keepAlive=" + this.keepAlive
+                + ", requests=" + this.requests + ", warmup=" + this.warmupSeconds + "s, duration="
+                + this.durationSeconds + "s, timeout=" + this.timeoutMillis + "ms]";
+    }
+}
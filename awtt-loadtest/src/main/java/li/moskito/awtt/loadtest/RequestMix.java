@@ -0,0 +1,183 @@
+/**
+ *
+ */
+package li.moskito.awtt.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Weighted mix of the requests sent by the load generator. A request is specified as
+ * <code>[METHOD:]path[:weight]</code>, i.e. <code>/index.html</code>, <code>HEAD:/index.html</code> or
+ * <code>GET:/style.css:3</code>. The method defaults to GET and the weight to 1. The requests are encoded once, sending
+ * a request does not allocate memory.
+ *
+ * @author Gerald
+ */
+public final class RequestMix {
+
+    /**
+     * A request of the mix
+     */
+    public static final class Request {
+
+        private final String method;
+        private final String path;
+        private final int weight;
+
+        Request(final String method, final String path, final int weight) {
+            this.method = method;
+            this.path = path;
+            this.weight = weight;
+        }
+
+        /**
+         * Parses a request specification
+         *
+         * @param spec
+         *            the specification <code>[METHOD:]path[:weight]</code>
+         * @return the request
+         * @throws IllegalArgumentException
+         *             if the specification is not valid
+         */
+        public static Request parse(final String spec) {
+            final String[] tokens = spec.split(":");
+            int index = 0;
+            String method = "GET";
+            if (tokens.length > 1 && !tokens[0].startsWith("/")) {
+                method = tokens[index++].toUpperCase();
+            }
+            if (index >= tokens.length || !tokens[index].startsWith("/")) {
+                throw new IllegalArgumentException("Path of request missing: " + spec);
+            }
+            final String path = tokens[index++];
+            int weight = 1;
+            if (index < tokens.length) {
+                try {
+                    weight = Integer.parseInt(tokens[index++]);
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid weight of request: " + spec, e);
+                }
+            }
+            if (index < tokens.length || weight < 1) {
+                throw new IllegalArgumentException("Invalid request: " + spec);
+            }
+            return new Request(method, path, weight);
+        }
+
+        public String getMethod() {
+            return this.method;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public int getWeight() {
+            return this.weight;
+        }
+
+        @Override
+        public String toString() {
+            return this.method + ":" + this.path + ":" + this.weight;
+        }
+    }
+
+    /**
+     * A request encoded for sending
+     */
+    static final class EncodedRequest {
+
+        private final byte[] data;
+        private final boolean bodyless;
+
+        EncodedRequest(final Request request, final String hostHeader, final boolean keepAlive) {
+            this.data = (request.method + ' ' + request.path + " HTTP/1.1\r\nHost: " + hostHeader + "\r\n"
+                    + (keepAlive ? "" : "Connection: close\r\n") + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            this.bodyless = "HEAD".equals(request.method);
+        }
+
+        /**
+         * @return the bytes of the request
+         */
+        byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * @return <code>true</code> if the response to the request has no body
+         */
+        boolean isBodyless() {
+            return this.bodyless;
+        }
+    }
+
+    private final List<Request> requests;
+
+    /**
+     * The encoded request for each unit of weight
+     */
+    private final EncodedRequest[] slots;
+
+    private final int maxRequestLength;
+
+    /**
+     * @param requests
+     *            the requests of the mix
+     * @param hostHeader
+     *            the value of the Host header of the requests
+     * @param keepAlive
+     *            <code>false</code> if the requests should ask the server to close the connection after the response
+     */
+    public RequestMix(final List<Request> requests, final String hostHeader, final boolean keepAlive) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("No requests");
+        }
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+        int totalWeight = 0;
+        for (final Request request : requests) {
+            totalWeight += request.weight;
+        }
+        this.slots = new EncodedRequest[totalWeight];
+        int slot = 0;
+        int maxLength = 0;
+        for (final Request request : requests) {
+            final EncodedRequest encoded = new EncodedRequest(request, hostHeader, keepAlive);
+            maxLength = Math.max(maxLength, encoded.data.length);
+            for (int i = 0; i < request.weight; i++) {
+                this.slots[slot++] = encoded;
+            }
+        }
+        this.maxRequestLength = maxLength;
+    }
+
+    /**
+     * Selects the next request according to the weights
+     *
+     * @param random
+     *            the source of randomness
+     * @return the request
+     */
+    EncodedRequest next(final Random random) {
+        return this.slots.length == 1 ? this.slots[0] : this.slots[random.nextInt(this.slots.length)];
+    }
+
+    /**
+     * @return the size of the largest encoded request
+     */
+    int getMaxRequestLength() {
+        return this.maxRequestLength;
+    }
+
+    public List<Request> getRequests() {
+        return this.requests;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMix " + this.requests;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ *
+ */
+package li.moskito.awtt.loadtest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental parser of HTTP/1.1 responses received on a connection of the load generator. The parser only
+ * determines the status code, whether the connection is closed after the response and where the response ends, the
+ * content is skipped. Bodies delimited by Content-Length, by the chunked transfer coding or by closing the connection
+ * are supported. Interim responses (1xx) are skipped.
+ *
+ * @author Gerald
+ */
+final class ResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static enum State {
+        STATUS_LINE,
+        HEADERS,
+        CONTENT,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS,
+        UNTIL_CLOSE;
+    }
+
+    private final StringBuilder line = new StringBuilder();
+    private boolean lineComplete;
+
+    private State state = State.STATUS_LINE;
+    private int statusCode;
+    private boolean close;
+    private boolean chunked;
+    private long contentLength;
+    private long remaining;
+    private long bytesReceived;
+
+    /**
+     * Parses the data of the buffer until a response is complete or all data has been consumed
+     *
+     * @param src
+     *            the received data
+     * @param bodyless
+     *            <code>true</code> if the response is the response to a HEAD request and has no body
+     * @return <code>true</code> if a response has been completed. The remaining data of the buffer belongs to the next
+     *         response.
+     * @throws IOException
+     *             if the data is no valid response
+     */
+    boolean parse(final ByteBuffer src, final boolean bodyless) throws IOException {
+        final int start = src.position();
+        try {
+            return this.parseResponse(src, bodyless);
+        } finally {
+            this.bytesReceived += src.position() - start;
+        }
+    }
+
+    private boolean parseResponse(final ByteBuffer src, final boolean bodyless) throws IOException {
+        while (src.hasRemaining()) {
+            switch (this.state) {
+                case STATUS_LINE:
+                    if (this.readLine(src) && this.line.length() > 0) {
+                        this.parseStatusLine();
+                        this.state = State.HEADERS;
+                    }
+                    break;
+                case HEADERS:
+                    if (this.readLine(src)) {
+                        if (this.line.length() > 0) {
+                            this.parseHeaderField();
+                        } else if (this.startBody(bodyless)) {
+                            return true;
+                        }
+                    }
+                    break;
+                case CONTENT:
+                case CHUNK_DATA:
+                    final int skipped = (int) Math.min(this.remaining, src.remaining());
+                    src.position(src.position() + skipped);
+                    this.remaining -= skipped;
+                    if (this.remaining == 0) {
+                        if (this.state == State.CONTENT) {
+                            return this.complete();
+                        }
+                        this.state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (this.readLine(src)) {
+                        this.remaining = this.parseChunkSize();
+                        this.state = this.remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (this.readLine(src)) {
+                        if (this.line.length() > 0) {
+                            throw new IOException("Invalid end of chunk: " + this.line);
+                        }
+                        this.state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (this.readLine(src) && this.line.length() == 0) {
+                        return this.complete();
+                    }
+                    break;
+                case UNTIL_CLOSE:
+                    src.position(src.limit());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state " + this.state);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Completes a response whose body is delimited by closing the connection
+     *
+     * @return <code>true</code> if a response has been completed by the end of the stream
+     */
+    boolean finish() {
+        return this.state == State.UNTIL_CLOSE && this.complete();
+    }
+
+    /**
+     * @return the status code of the last completed response
+     */
+    int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * @return <code>true</code> if the connection is closed by the server after the last completed response
+     */
+    boolean isClose() {
+        return this.close;
+    }
+
+    /**
+     * @return <code>true</code> if no response is being parsed
+     */
+    boolean isIdle() {
+        return this.state == State.STATUS_LINE && (this.lineComplete || this.line.length() == 0);
+    }
+
+    /**
+     * @return the number of bytes parsed
+     */
+    long getBytesReceived() {
+        return this.bytesReceived;
+    }
+
+    private void parseStatusLine() throws IOException {
+        final String statusLine = this.line.toString();
+        if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12 || statusLine.charAt(8) != ' ') {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+        try {
+            this.statusCode = Integer.parseInt(statusLine.substring(9, 12));
+        } catch (final NumberFormatException e) {
+            throw new IOException("Invalid status line: " + statusLine, e);
+        }
+        // HTTP/1.0 connections are closed unless the server keeps them alive explicitly
+        this.close = statusLine.charAt(7) == '0';
+        this.chunked = false;
+        this.contentLength = -1;
+    }
+
+    private void parseHeaderField() throws IOException {
+        final int colon = this.line.indexOf(":");
+        if (colon <= 0) {
+            throw new IOException("Invalid header field: " + this.line);
+        }
+        final String name = this.line.substring(0, colon).trim();
+        final String value = this.line.substring(colon + 1).trim().toLowerCase();
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            try {
+                this.contentLength = Long.parseLong(value);
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + value, e);
+            }
+        } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+            this.chunked = value.endsWith("chunked");
+        } else if ("Connection".equalsIgnoreCase(name)) {
+            if (value.contains("close")) {
+                this.close = true;
+            } else if (value.contains("keep-alive")) {
+                this.close = false;
+            }
+        }
+    }
+
+    /**
+     * Determines how the body of the response is delimited once the header is complete
+     *
+     * @return <code>true</code> if the response is complete because it has no body
+     */
+    private boolean startBody(final boolean bodyless) {
+        if (this.statusCode < 200) {
+            // interim response, the final response follows
+            this.state = State.STATUS_LINE;
+            return false;
+        }
+        if (bodyless || this.statusCode == 204 || this.statusCode == 304) {
+            return this.complete();
+        }
+        if (this.chunked) {
+            this.state = State.CHUNK_SIZE;
+        } else if (this.contentLength > 0) {
+            this.remaining = this.contentLength;
+            this.state = State.CONTENT;
+        } else if (this.contentLength == 0) {
+            return this.complete();
+        } else {
+            this.close = true;
+            this.state = State.UNTIL_CLOSE;
+        }
+        return false;
+    }
+
+    private long parseChunkSize() throws IOException {
+        final int extension = this.line.indexOf(";");
+        final String size = (extension < 0 ? this.line.toString() : this.line.substring(0, extension)).trim();
+        try {
+            return Long.parseLong(size, 16);
+        } catch (final NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size, e);
+        }
+    }
+
+    private boolean complete() {
+        this.state = State.STATUS_LINE;
+        return true;
+    }
+
+    /**
+     * Reads the data of a line until its end
+     *
+     * @return <code>true</code> if the line is complete, the line is kept without the line break
+     */
+    private boolean readLine(final ByteBuffer src) throws IOException {
+        if (this.lineComplete) {
+            this.line.setLength(0);
+            this.lineComplete = false;
+        }
+        while (src.hasRemaining()) {
+            final char c = (char) (src.get() & 0xff);
+            if (c == '\n') {
+                final int end = this.line.length();
+                if (end > 0 && this.line.charAt(end - 1) == '\r') {
+                    this.line.setLength(end - 1);
+                }
+                this.lineComplete = true;
+                return true;
+            }
+            if (this.line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            this.line.append(c);
+        }
+        return false;
+    }
+}
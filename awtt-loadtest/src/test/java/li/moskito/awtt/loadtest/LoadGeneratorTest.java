@@ -0,0 +1,179 @@
+package li.moskito.awtt.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import li.moskito.awtt.protocol.StreamingBody;
+import li.moskito.awtt.protocol.http.HTTP;
+import li.moskito.awtt.protocol.http.HttpProtocolHandler;
+import li.moskito.awtt.protocol.http.HttpRequest;
+import li.moskito.awtt.protocol.http.HttpResponse;
+import li.moskito.awtt.protocol.http.HttpStatusCodes;
+import li.moskito.awtt.protocol.http.ResponseHeaders;
+import li.moskito.awtt.server.Startup;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+    private static final int TEST_PORT = 55030;
+
+    public static class TestHandler extends HttpProtocolHandler {
+
+        @Override
+        protected HttpResponse onGet(final HttpRequest httpRequest) {
+            final String path = httpRequest.getResource().getPath();
+            if ("/chunked".equals(path)) {
+                final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+                final StreamingBody body = new StreamingBody();
+                try (WritableByteChannel sink = body.getSink()) {
+                    sink.write(ByteBuffer.wrap("hello world".getBytes(StandardCharsets.ISO_8859_1)));
+                } catch (final IOException e) {
+                    body.abort(e);
+                }
+                response.setBody(body);
+                return response;
+            }
+            final HttpResponse response = HTTP.createResponse("/missing".equals(path) ? HttpStatusCodes.NOT_FOUND
+                    : HttpStatusCodes.NO_CONTENT);
+            response.addField(ResponseHeaders.CONTENT_LENGTH, "0");
+            return response;
+        }
+
+        @Override
+        protected HttpResponse onHead(final HttpRequest httpRequest) {
+            final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+            response.addField(ResponseHeaders.CONTENT_LENGTH, "100");
+            return response;
+        }
+    }
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        Startup.main(new String[] { Paths.get(LoadGeneratorTest.class.getResource("/loadtestServerConfig.xml").toURI())
+                .toString() });
+        // connects once the server is listening
+        LoadTest.run(options("--duration=1", "--connections=1"));
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        Startup.stop();
+    }
+
+    private static LoadTestOptions options(final String... args) {
+        final String[] all = new String[args.length + 2];
+        all[0] = "--port=" + TEST_PORT;
+        all[1] = "--warmup=0";
+        System.arraycopy(args, 0, all, 2, args.length);
+        return LoadTestOptions.parse(all);
+    }
+
+    private static void assertNoFailures(final LoadReport report) {
+        assertEquals(report.toString(), 0, report.getErrors());
+        assertEquals(report.toString(), 0, report.getTimeouts());
+        assertEquals(report.toString(), 0, report.getUnsent());
+    }
+
+    @Test
+    public void testRun_closedLoop() throws Exception {
+        final LoadReport report = new LoadGenerator(options("--duration=1", "--connections=4")).run();
+
+        assertNoFailures(report);
+        assertTrue(report.toString(), report.getCompleted() > 0);
+        assertEquals(report.getCompleted(), report.getResponses(2));
+        assertEquals(report.getCompleted(), report.getLatency().getCount());
+        assertTrue(report.getThroughput() > 0);
+        assertEquals(4, report.getConnects());
+    }
+
+    @Test
+    public void testRun_openLoop() throws Exception {
+        final LoadReport report = new LoadGenerator(options("--duration=1", "--connections=4", "--rate=200")).run();
+
+        assertNoFailures(report);
+        // the requests are sent at the scheduled rate
+        assertTrue(report.toString(), Math.abs(report.getCompleted() - 200) <= 10);
+        assertEquals(report.getCompleted(), report.getLatency().getCount());
+    }
+
+    @Test
+    public void testRun_pipelinedRequestMix() throws Exception {
+        final LoadReport report = new LoadGenerator(options("--duration=1", "--connections=2", "--pipeline=4",
+                "--request=/chunked:2", "--request=HEAD:/", "--request=/missing")).run();
+
+        assertNoFailures(report);
+        assertTrue(report.toString(), report.getResponses(2) > 0);
+        assertTrue(report.toString(), report.getResponses(4) > 0);
+        assertEquals(report.getCompleted(), report.getResponses(2) + report.getResponses(4));
+        assertTrue(report.getBytesReceived() > 0);
+    }
+
+    @Test
+    public void testRun_noKeepAlive() throws Exception {
+        final LoadReport report = new LoadGenerator(options("--duration=1", "--connections=2", "--keepAlive=false"))
+                .run();
+
+        assertNoFailures(report);
+        assertTrue(report.toString(), report.getCompleted() > 0);
+        // every request is sent on a new connection
+        assertTrue(report.toString(), report.getConnects() >= report.getCompleted());
+    }
+
+    @Test
+    public void testRun_openLoop_connectionsReset() throws Exception {
+        // a server that resets every connection right after accepting it
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), TEST_PORT + 8));
+        final Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final SocketChannel client = server.accept();
+                        client.setOption(StandardSocketOptions.SO_LINGER, 0);
+                        client.close();
+                    }
+                } catch (final IOException e) {
+                    // the server has been closed
+                }
+            }
+        });
+        acceptor.start();
+        try {
+            final LoadReport report = new LoadGenerator(LoadTestOptions.parse("--host=127.0.0.1",
+                    "--port=" + (TEST_PORT + 8), "--warmup=0", "--duration=1", "--connections=2", "--pipeline=64",
+                    "--rate=2000")).run();
+
+            // the resets are counted instead of aborting the run
+            assertEquals(0, report.getCompleted());
+            assertTrue(report.toString(), report.getErrors() > 0);
+        } finally {
+            server.close();
+            acceptor.join(5000);
+        }
+    }
+
+    @Test
+    public void testRun_noServer() throws Exception {
+        final LoadReport report = new LoadGenerator(LoadTestOptions.parse("--port=" + (TEST_PORT + 9),
+                "--warmup=0", "--duration=1", "--connections=1")).run();
+
+        assertEquals(0, report.getCompleted());
+        assertTrue(report.getErrors() > 0);
+    }
+}
@@ -0,0 +1,74 @@
+package li.moskito.awtt.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LoadTestOptionsTest {
+
+    @Test
+    public void testParse_defaults() throws Exception {
+        final LoadTestOptions subject = LoadTestOptions.parse();
+
+        assertEquals("localhost", subject.getHost());
+        assertEquals(18080, subject.getPort());
+        assertNull(subject.getServerConfig());
+        assertEquals(16, subject.getConnections());
+        assertFalse(subject.isOpenLoop());
+        assertEquals(1, subject.getPipelineDepth());
+        assertTrue(subject.isKeepAlive());
+        assertEquals(1, subject.getRequests().size());
+        assertEquals("/", subject.getRequests().get(0).getPath());
+        assertEquals(2, subject.getWarmupSeconds());
+        assertEquals(10, subject.getDurationSeconds());
+        assertEquals(5000, subject.getTimeoutMillis());
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        final LoadTestOptions subject = LoadTestOptions.parse("--host=127.0.0.1", "--port=8080",
+                "--server=server.xml", "--connections=4", "--rate=1000", "--pipeline=8", "--request=/a:2",
+                "--request=HEAD:/b", "--warmup=0", "--duration=1", "--timeout=100");
+
+        assertEquals("127.0.0.1", subject.getHost());
+        assertEquals(8080, subject.getPort());
+        assertEquals("server.xml", subject.getServerConfig());
+        assertEquals(4, subject.getConnections());
+        assertTrue(subject.isOpenLoop());
+        assertEquals(1000, subject.getRate());
+        assertEquals(8, subject.getPipelineDepth());
+        assertEquals(2, subject.getRequests().size());
+        assertEquals(0, subject.getWarmupSeconds());
+        assertEquals(1, subject.getDurationSeconds());
+        assertEquals(100, subject.getTimeoutMillis());
+        assertEquals(2, subject.createRequestMix().getRequests().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_unknownOption() throws Exception {
+        LoadTestOptions.parse("--foo=bar");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_noValue() throws Exception {
+        LoadTestOptions.parse("--port");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_noNumber() throws Exception {
+        LoadTestOptions.parse("--connections=many");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_nonPositive() throws Exception {
+        LoadTestOptions.parse("--connections=0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_pipelineWithoutKeepAlive() throws Exception {
+        LoadTestOptions.parse("--keepAlive=false", "--pipeline=2");
+    }
+}
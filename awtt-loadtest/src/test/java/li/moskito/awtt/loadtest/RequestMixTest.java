@@ -0,0 +1,84 @@
+package li.moskito.awtt.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RequestMixTest {
+
+    @Test
+    public void testParse() throws Exception {
+        final RequestMix.Request request = RequestMix.Request.parse("head:/index.html:3");
+
+        assertEquals("HEAD", request.getMethod());
+        assertEquals("/index.html", request.getPath());
+        assertEquals(3, request.getWeight());
+    }
+
+    @Test
+    public void testParse_defaults() throws Exception {
+        final RequestMix.Request request = RequestMix.Request.parse("/style.css");
+
+        assertEquals("GET", request.getMethod());
+        assertEquals("/style.css", request.getPath());
+        assertEquals(1, request.getWeight());
+        assertEquals(2, RequestMix.Request.parse("/a:2").getWeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_noPath() throws Exception {
+        RequestMix.Request.parse("GET");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_invalidWeight() throws Exception {
+        RequestMix.Request.parse("GET:/:x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_zeroWeight() throws Exception {
+        RequestMix.Request.parse("/:0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoRequests() throws Exception {
+        new RequestMix(Collections.<RequestMix.Request> emptyList(), "localhost", true);
+    }
+
+    @Test
+    public void testNext_encoding() throws Exception {
+        final RequestMix subject = new RequestMix(Arrays.asList(RequestMix.Request.parse("HEAD:/index.html")),
+                "localhost:8080", false);
+
+        final RequestMix.EncodedRequest request = subject.next(new Random());
+
+        assertEquals("HEAD /index.html HTTP/1.1\r\nHost: localhost:8080\r\nConnection: close\r\n\r\n", new String(
+                request.getData(), StandardCharsets.ISO_8859_1));
+        assertTrue(request.isBodyless());
+        assertEquals(request.getData().length, subject.getMaxRequestLength());
+    }
+
+    @Test
+    public void testNext_weighted() throws Exception {
+        final RequestMix subject = new RequestMix(Arrays.asList(RequestMix.Request.parse("/a:3"),
+                RequestMix.Request.parse("/b")), "localhost", true);
+        final Random random = new Random(42);
+
+        int a = 0;
+        for (int i = 0; i < 4000; i++) {
+            final RequestMix.EncodedRequest request = subject.next(random);
+            assertFalse(request.isBodyless());
+            if (new String(request.getData(), StandardCharsets.ISO_8859_1).startsWith("GET /a ")) {
+                a++;
+            }
+        }
+        assertTrue("a=" + a, a > 2800 && a < 3200);
+    }
+}
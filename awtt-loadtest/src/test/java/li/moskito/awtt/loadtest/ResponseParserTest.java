@@ -0,0 +1,128 @@
+package li.moskito.awtt.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseParserTest {
+
+    private ResponseParser subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new ResponseParser();
+    }
+
+    private static ByteBuffer buffer(final String data) {
+        return ByteBuffer.wrap(data.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testParse_contentLength() throws Exception {
+        final ByteBuffer src = buffer("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello");
+
+        assertTrue(this.subject.parse(src, false));
+
+        assertEquals(200, this.subject.getStatusCode());
+        assertFalse(this.subject.isClose());
+        assertFalse(src.hasRemaining());
+        assertTrue(this.subject.isIdle());
+        assertEquals(src.limit(), this.subject.getBytesReceived());
+    }
+
+    @Test
+    public void testParse_splitAcrossBuffers() throws Exception {
+        assertFalse(this.subject.parse(buffer("HTTP/1.1 404 Not"), false));
+        assertFalse(this.subject.parse(buffer(" Found\r\nContent-Le"), false));
+        assertFalse(this.subject.parse(buffer("ngth: 3\r\n\r\nab"), false));
+        assertFalse(this.subject.isIdle());
+
+        assertTrue(this.subject.parse(buffer("c"), false));
+        assertEquals(404, this.subject.getStatusCode());
+    }
+
+    @Test
+    public void testParse_chunked() throws Exception {
+        final String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nX-Trailer: 1\r\n\r\n";
+        // byte by byte
+        final ByteBuffer src = buffer(response);
+        int completed = 0;
+        for (int i = 0; i < src.limit(); i++) {
+            final ByteBuffer single = (ByteBuffer) src.duplicate().position(i).limit(i + 1);
+            if (this.subject.parse(single, false)) {
+                completed++;
+                assertEquals(src.limit() - 1, i);
+            }
+        }
+        assertEquals(1, completed);
+    }
+
+    @Test
+    public void testParse_pipelined() throws Exception {
+        final ByteBuffer src = buffer("HTTP/1.1 204 No Content\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 2\r\n"
+                + "Connection: close\r\n\r\nok");
+
+        assertTrue(this.subject.parse(src, false));
+        assertEquals(204, this.subject.getStatusCode());
+        assertFalse(this.subject.isClose());
+        assertTrue(this.subject.parse(src, false));
+        assertEquals(200, this.subject.getStatusCode());
+        assertTrue(this.subject.isClose());
+        assertFalse(src.hasRemaining());
+    }
+
+    @Test
+    public void testParse_headResponse() throws Exception {
+        final ByteBuffer src = buffer("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\nHTTP/1.1 200 OK\r\n");
+
+        assertTrue(this.subject.parse(src, true));
+        assertFalse(this.subject.parse(src, false));
+        assertFalse(this.subject.isIdle());
+    }
+
+    @Test
+    public void testParse_interimResponseSkipped() throws Exception {
+        final ByteBuffer src = buffer("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n");
+
+        assertTrue(this.subject.parse(src, false));
+        assertEquals(201, this.subject.getStatusCode());
+    }
+
+    @Test
+    public void testParse_http10_closed() throws Exception {
+        assertTrue(this.subject.parse(buffer("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n"), false));
+        assertTrue(this.subject.isClose());
+
+        assertTrue(this.subject.parse(buffer("HTTP/1.0 200 OK\r\nConnection: Keep-Alive\r\nContent-Length: 0\r\n\r\n"),
+                false));
+        assertFalse(this.subject.isClose());
+    }
+
+    @Test
+    public void testFinish_untilClose() throws Exception {
+        assertFalse(this.subject.finish());
+        assertFalse(this.subject.parse(buffer("HTTP/1.1 200 OK\r\n\r\nsome content"), false));
+
+        assertTrue(this.subject.finish());
+        assertTrue(this.subject.isClose());
+        assertTrue(this.subject.isIdle());
+    }
+
+    @Test(expected = IOException.class)
+    public void testParse_invalidStatusLine() throws Exception {
+        this.subject.parse(buffer("FOO 200 OK\r\n"), false);
+    }
+
+    @Test(expected = IOException.class)
+    public void testParse_invalidChunkSize() throws Exception {
+        this.subject.parse(buffer("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n"), false);
+    }
+}
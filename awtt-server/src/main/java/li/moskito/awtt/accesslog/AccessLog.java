@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package li.moskito.awtt.accesslog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import li.moskito.awtt.metrics.Counter;
+import li.moskito.awtt.metrics.MetricsRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous access log. The threads processing requests append a record with a fixed set of fields to a lock-free
+ * ring buffer, which neither blocks them on a lock nor allocates memory. A single writer thread formats the records in
+ * batches and writes each batch to a rotating file with one write on a file channel. If the buffer is full, the record
+ * is dropped or the appending thread waits, depending on the {@link OverflowPolicy}. The number of written and
+ * dropped records is exported as the metrics <code>accesslog.records</code> and <code>accesslog.dropped</code>.
+ *
+ * @author Gerald
+ */
+public final class AccessLog implements Closeable {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLog.class);
+
+    private static final Counter RECORDS = MetricsRegistry.getInstance().counter("accesslog.records");
+
+    private static final Counter DROPPED = MetricsRegistry.getInstance().counter("accesslog.dropped");
+
+    /**
+     * Size of the buffer a batch of records is encoded into
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum size of an encoded record, a record that does not fit into the rest of the write buffer ends the batch
+     */
+    private static final int MAX_RECORD_SIZE = AccessLogRecord.MAX_PATH_LENGTH * 3 + 256;
+
+    /**
+     * Time an appending thread waits for the writer before trying again if the buffer is full
+     */
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final RecordRingBuffer ring;
+    private final OverflowPolicy overflowPolicy;
+    private final AccessLogFile file;
+    private final Thread writer;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private volatile boolean running;
+
+    /**
+     * Set by the writer thread before it parks because there are no records to write, so that appending threads only
+     * unpark it if it is waiting
+     */
+    private volatile boolean writerIdle;
+
+    /**
+     * Opens the access log file and starts the writer thread
+     *
+     * @param path
+     *            the path of the access log file, records are appended if it exists
+     * @param maxFileSize
+     *            the size in bytes after which the file is rotated
+     * @param maxBackups
+     *            the number of rotated files to keep
+     * @param capacity
+     *            the number of records that can be buffered, it will be rounded up to the next power of 2
+     * @param overflowPolicy
+     *            what to do with records that do not fit into the buffer
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public AccessLog(final Path path, final long maxFileSize, final int maxBackups, final int capacity,
+            final OverflowPolicy overflowPolicy) throws IOException {
+        this.ring = new RecordRingBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.file = new AccessLogFile(path, maxFileSize, maxBackups);
+        this.running = true;
+        this.writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                AccessLog.this.runWriter();
+            }
+        }, "awtt-access-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        LOG.info("Writing access log to {}", path);
+    }
+
+    /**
+     * Appends the record of a request to the log
+     *
+     * @param remoteAddress
+     *            the address of the client or <code>null</code> if unknown
+     * @param method
+     *            the method of the request
+     * @param path
+     *            the path of the requested resource
+     * @param status
+     *            the status code of the response or -1 if unknown
+     * @param bytes
+     *            the length of the response body or -1 if unknown
+     * @param durationNanos
+     *            the time it took to respond to the request
+     * @return <code>true</code> if the record has been appended, <code>false</code> if it has been dropped
+     */
+    public boolean append(final SocketAddress remoteAddress, final String method, final String path, final int status,
+            final long bytes, final long durationNanos) {
+        if (!this.running) {
+            DROPPED.increment();
+            return false;
+        }
+        final long timestamp = System.currentTimeMillis();
+        long sequence;
+        while ((sequence = this.ring.claim()) < 0) {
+            if (this.overflowPolicy == OverflowPolicy.DROP || !this.running) {
+                DROPPED.increment();
+                return false;
+            }
+            LockSupport.parkNanos(BLOCK_NANOS);
+        }
+        this.ring.get(sequence).set(timestamp, remoteAddress, method, path, status, bytes, durationNanos);
+        this.ring.publish(sequence);
+        // the idle flag is read after publishing, while the writer sets it before checking for records again, so
+        // either the writer finds the record or it is unparked
+        if (this.writerIdle) {
+            LockSupport.unpark(this.writer);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of records waiting to be written
+     */
+    public int getPending() {
+        return this.ring.size();
+    }
+
+    /**
+     * Stops the writer thread after it has written the records appended so far and closes the file. Records appended
+     * afterwards are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.file.close();
+    }
+
+    /**
+     * The main loop of the writer thread. It writes batches of records until it is stopped and no records are left.
+     * While there are no records, the thread is parked until a record is appended or the log is closed.
+     */
+    private void runWriter() {
+        while (true) {
+            final int written = this.writeBatch();
+            if (written == 0) {
+                if (!this.running && this.ring.peek() == null) {
+                    break;
+                }
+                this.writerIdle = true;
+                if (this.running && this.ring.peek() == null) {
+                    LockSupport.park(this);
+                }
+                this.writerIdle = false;
+            }
+        }
+    }
+
+    /**
+     * Encodes the available records until the write buffer is full and writes them to the file
+     *
+     * @return the number of records written
+     */
+    private int writeBatch() {
+        final ByteBuffer buffer = this.writeBuffer;
+        buffer.clear();
+        int records = 0;
+        AccessLogRecord record;
+        while (buffer.remaining() >= MAX_RECORD_SIZE && (record = this.ring.peek()) != null) {
+            this.line.setLength(0);
+            record.format(this.line);
+            record.clear();
+            this.ring.release();
+            this.encoder.reset();
+            this.encoder.encode(CharBuffer.wrap(this.line), buffer, true);
+            records++;
+        }
+        if (records > 0) {
+            buffer.flip();
+            try {
+                this.file.write(buffer);
+                RECORDS.add(records);
+            } catch (final IOException e) {
+                LOG.error("Could not write {} records to the access log", records, e);
+                DROPPED.add(records);
+            }
+        }
+        return records;
+    }
+}
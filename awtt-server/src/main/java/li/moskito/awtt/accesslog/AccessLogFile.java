@@ -0,0 +1,143 @@
+/**
+ *
+ */
+package li.moskito.awtt.accesslog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File the access log is written to through a {@link FileChannel}. When a write would exceed the maximum file size,
+ * the file is rotated: the backups <code>access.log.1</code> to <code>access.log.n</code> are renamed to the next
+ * number, the oldest one is replaced, and the current file becomes <code>access.log.1</code>. If the rotation fails,
+ * the records are appended to the current file and the rotation is tried again once the file has grown by the maximum
+ * size. The file is only accessed by the writer thread of the access log.
+ *
+ * @author Gerald
+ */
+final class AccessLogFile implements Closeable {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogFile.class);
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxBackups;
+
+    private FileChannel channel;
+    private long size;
+
+    /**
+     * The size after which the file is rotated
+     */
+    private long rotationSize;
+
+    /**
+     * Opens the file for appending
+     *
+     * @param file
+     *            the path of the access log file
+     * @param maxFileSize
+     *            the size in bytes after which the file is rotated
+     * @param maxBackups
+     *            the number of rotated files to keep, with 0 the current file is deleted on rotation
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    AccessLogFile(final Path file, final long maxFileSize, final int maxBackups) throws IOException {
+        if (maxFileSize <= 0 || maxBackups < 0) {
+            throw new IllegalArgumentException("Invalid rotation of access log, maxFileSize=" + maxFileSize
+                    + ", maxBackups=" + maxBackups);
+        }
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxBackups = maxBackups;
+        this.rotationSize = maxFileSize;
+        this.open();
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.size = this.channel.size();
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer to the file, rotating the file before if the maximum size would be
+     * exceeded
+     *
+     * @param buffer
+     *            the bytes to write
+     * @throws IOException
+     *             if writing failed or the file could not be opened again after rotating
+     */
+    void write(final ByteBuffer buffer) throws IOException {
+        if (this.size > 0 && this.size + buffer.remaining() > this.rotationSize) {
+            try {
+                this.rotate();
+                this.rotationSize = this.maxFileSize;
+            } catch (final IOException e) {
+                LOG.warn("Could not rotate access log {}, appending to the current file", this.file, e);
+                this.rotationSize = this.size + this.maxFileSize;
+            }
+        }
+        while (buffer.hasRemaining()) {
+            this.size += this.channel.write(buffer);
+        }
+    }
+
+    /**
+     * Moves the current file to the backups and opens a new file. The file is opened again in any case, so if the
+     * current file could not be moved, it is appended to.
+     */
+    private void rotate() throws IOException {
+        this.channel.close();
+        try {
+            if (this.maxBackups == 0) {
+                Files.delete(this.file);
+            } else {
+                for (int i = this.maxBackups - 1; i > 0; i--) {
+                    final Path backup = this.backup(i);
+                    if (Files.exists(backup)) {
+                        Files.move(backup, this.backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(this.file, this.backup(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            this.open();
+        }
+    }
+
+    /**
+     * @param number
+     *            the number of the backup, 1 being the most recent one
+     * @return the path of the rotated file
+     */
+    Path backup(final int number) {
+        return this.file.resolveSibling(this.file.getFileName() + "." + number);
+    }
+
+    /**
+     * @return the current size of the file
+     */
+    long size() {
+        return this.size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
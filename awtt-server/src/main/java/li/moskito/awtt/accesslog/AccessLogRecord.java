@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package li.moskito.awtt.accesslog;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A slot of the {@link RecordRingBuffer} holding the fields of a request. The slots are allocated once and reused, the
+ * fields are written by the thread appending the record and read by the writer thread once the record is published.
+ *
+ * @author Gerald
+ */
+final class AccessLogRecord {
+
+    /**
+     * Longer paths are truncated so that a formatted record always fits into the write buffer of the writer
+     */
+    static final int MAX_PATH_LENGTH = 4096;
+
+    /**
+     * Fixed width timestamp in UTC, i.e. 2014-05-04T10:15:30.012Z
+     */
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd'T'HH:mm:ss.SSSX").withZone(ZoneOffset.UTC);
+
+    private long timestamp;
+    private SocketAddress remoteAddress;
+    private String method;
+    private String path;
+    private int status;
+    private long bytes;
+    private long durationNanos;
+
+    void set(final long timestamp, final SocketAddress remoteAddress, final String method, final String path,
+            final int status, final long bytes, final long durationNanos) {
+        this.timestamp = timestamp;
+        this.remoteAddress = remoteAddress;
+        this.method = method;
+        this.path = path;
+        this.status = status;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Releases the references of the record once it has been written
+     */
+    void clear() {
+        this.remoteAddress = null;
+        this.method = null;
+        this.path = null;
+    }
+
+    /**
+     * Formats the record as a line of the fields separated by spaces: timestamp, remote address, method, path, status
+     * code, bytes of the response body and duration in microseconds. Unknown values are written as '-'.
+     *
+     * @param line
+     *            the builder to append the line to
+     */
+    void format(final StringBuilder line) {
+        TIMESTAMP_FORMAT.formatTo(Instant.ofEpochMilli(this.timestamp), line);
+        line.append(' ');
+        if (this.remoteAddress instanceof InetSocketAddress
+                && ((InetSocketAddress) this.remoteAddress).getAddress() != null) {
+            line.append(((InetSocketAddress) this.remoteAddress).getAddress().getHostAddress());
+        } else {
+            line.append('-');
+        }
+        line.append(' ').append(this.method == null ? "-" : this.method).append(' ');
+        if (this.path == null) {
+            line.append('-');
+        } else {
+            line.append(this.path, 0, Math.min(this.path.length(), MAX_PATH_LENGTH));
+        }
+        line.append(' ');
+        if (this.status < 0) {
+            line.append('-');
+        } else {
+            line.append(this.status);
+        }
+        line.append(' ');
+        if (this.bytes < 0) {
+            line.append('-');
+        } else {
+            line.append(this.bytes);
+        }
+        line.append(' ').append(TimeUnit.NANOSECONDS.toMicros(this.durationNanos)).append('\n');
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ *
+ */
+package li.moskito.awtt.accesslog;
+
+/**
+ * Determines what happens to a record of the {@link AccessLog} if its buffer is full because the writer can not keep
+ * up with the requests.
+ *
+ * @author Gerald
+ */
+public enum OverflowPolicy {
+    /**
+     * The record is dropped and counted, the request is not delayed
+     */
+    DROP,
+    /**
+     * The thread appending the record waits until the writer has made room for it
+     */
+    BLOCK, ;
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package li.moskito.awtt.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer of preallocated {@link AccessLogRecord}s with many producers and a single consumer.
+ * A producer claims the next sequence with a compare-and-set, fills the record of the sequence and publishes it. The
+ * consumer takes the records in the order of their sequences as soon as they are published and releases them
+ * afterwards. Neither side allocates memory or takes a lock.
+ *
+ * @author Gerald
+ */
+final class RecordRingBuffer {
+
+    private final AccessLogRecord[] records;
+
+    /**
+     * The sequence that has been published last for each slot
+     */
+    private final AtomicLongArray published;
+
+    private final int mask;
+
+    /**
+     * The next sequence to be claimed by a producer
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The next sequence to be taken by the consumer, only modified by the consumer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            the number of records, it will be rounded up to the next power of 2
+     */
+    RecordRingBuffer(final int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be positive and not greater than 2^30: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.records = new AccessLogRecord[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.records[i] = new AccessLogRecord();
+            this.published.set(i, -1);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Claims the next free record
+     *
+     * @return the sequence of the claimed record or -1 if the buffer is full
+     */
+    long claim() {
+        while (true) {
+            final long sequence = this.head.get();
+            if (sequence - this.tail.get() >= this.records.length) {
+                return -1;
+            }
+            if (this.head.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * @param sequence
+     *            a claimed sequence
+     * @return the record of the sequence to be filled before publishing it
+     */
+    AccessLogRecord get(final long sequence) {
+        return this.records[(int) (sequence & this.mask)];
+    }
+
+    /**
+     * Makes a filled record visible to the consumer
+     *
+     * @param sequence
+     *            the claimed sequence of the record
+     */
+    void publish(final long sequence) {
+        this.published.set((int) (sequence & this.mask), sequence);
+    }
+
+    /**
+     * Returns the next record for the consumer without removing it
+     *
+     * @return the next published record or <code>null</code> if the next record has not been published yet
+     */
+    AccessLogRecord peek() {
+        final long sequence = this.tail.get();
+        final int index = (int) (sequence & this.mask);
+        return this.published.get(index) == sequence ? this.records[index] : null;
+    }
+
+    /**
+     * Releases the record returned by {@link #peek()} so that its slot can be claimed again
+     */
+    void release() {
+        this.tail.lazySet(this.tail.get() + 1);
+    }
+
+    /**
+     * @return the number of claimed records that have not been released yet
+     */
+    int size() {
+        return (int) (this.head.get() - this.tail.get());
+    }
+
+    /**
+     * @return the number of records
+     */
+    int capacity() {
+        return this.records.length;
+    }
+}
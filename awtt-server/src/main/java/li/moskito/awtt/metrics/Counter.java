@@ -0,0 +1,52 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that is incremented by many threads concurrently. The count is striped over several cells, so that
+ * concurrent updates do not contend on a single memory location. Reading the count sums up the cells and is therefore
+ * more expensive than an update. A counter may be decremented as well, i.e. to count the active connections.
+ *
+ * @author Gerald
+ */
+public final class Counter implements CounterMBean {
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Increments the counter by one
+     */
+    public void increment() {
+        this.count.increment();
+    }
+
+    /**
+     * Decrements the counter by one
+     */
+    public void decrement() {
+        this.count.decrement();
+    }
+
+    /**
+     * Adds the value to the counter
+     *
+     * @param value
+     *            the value to add, may be negative
+     */
+    public void add(final long value) {
+        this.count.add(value);
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(this.getCount());
+    }
+}
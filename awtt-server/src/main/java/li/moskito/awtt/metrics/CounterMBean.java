@@ -0,0 +1,18 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+/**
+ * Management interface of a {@link Counter}
+ *
+ * @author Gerald
+ */
+public interface CounterMBean {
+
+    /**
+     * @return the current value of the counter
+     */
+    long getCount();
+
+}
@@ -0,0 +1,19 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+/**
+ * A metric whose value is sampled from a component when it is read, i.e. the memory allocated by a pool. The
+ * interface is the management interface of the gauge as well.
+ *
+ * @author Gerald
+ */
+public interface Gauge {
+
+    /**
+     * @return the current value
+     */
+    long getValue();
+
+}
@@ -0,0 +1,156 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A histogram of non-negative values, i.e. latencies or sizes. The values are counted in buckets of logarithmic size,
+ * each power of 2 is divided into 16 linear sub buckets. The percentiles are therefore approximated with a relative
+ * error below 1/16 while recording a value is a constant time operation that does not allocate memory. Values smaller
+ * than 32 are counted exactly.
+ *
+ * @author Gerald
+ */
+public final class Histogram implements HistogramMBean {
+
+    /**
+     * Number of bits of a value determining its sub bucket
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Buckets for all values up to {@link Long#MAX_VALUE}
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+
+        @Override
+        public long applyAsLong(final long left, final long right) {
+            return Math.max(left, right);
+        }
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value
+     *            the value to record
+     */
+    public void record(final long value) {
+        final long recorded = Math.max(value, 0);
+        this.buckets.incrementAndGet(bucketOf(recorded));
+        this.count.increment();
+        this.sum.add(recorded);
+        this.max.accumulate(recorded);
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    @Override
+    public long getMax() {
+        return this.max.get();
+    }
+
+    @Override
+    public double getMean() {
+        final long n = this.getCount();
+        return n == 0 ? 0 : (double) this.getSum() / n;
+    }
+
+    @Override
+    public long get50thPercentile() {
+        return this.getPercentile(0.5);
+    }
+
+    @Override
+    public long get90thPercentile() {
+        return this.getPercentile(0.9);
+    }
+
+    @Override
+    public long get99thPercentile() {
+        return this.getPercentile(0.99);
+    }
+
+    @Override
+    public long get999thPercentile() {
+        return this.getPercentile(0.999);
+    }
+
+    /**
+     * Approximates the value below or at which the specified fraction of the recorded values lie
+     *
+     * @param quantile
+     *            the fraction of values, between 0 and 1
+     * @return the upper bound of the bucket containing the percentile, but not more than the largest recorded value.
+     *         If no value has been recorded, 0 is returned.
+     */
+    public long getPercentile(final double quantile) {
+        return this.snapshot().getPercentile(quantile);
+    }
+
+    /**
+     * Copies the current state of the histogram. Values recorded concurrently may or may not be contained in the
+     * snapshot.
+     *
+     * @return an immutable snapshot that can be merged with the snapshots of other histograms
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.buckets.get(i);
+        }
+        return new HistogramSnapshot(snapshot, this.getSum(), this.getMax());
+    }
+
+    /**
+     * Determines the bucket of a non-negative value
+     */
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Determines the largest value of a bucket
+     */
+    static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram [count=" + this.getCount() + ", mean=" + this.getMean() + ", p50=" + this.get50thPercentile()
+                + ", p99=" + this.get99thPercentile() + ", max=" + this.getMax() + "]";
+    }
+}
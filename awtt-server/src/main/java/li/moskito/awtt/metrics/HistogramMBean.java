@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+/**
+ * Management interface of a {@link Histogram}
+ *
+ * @author Gerald
+ */
+public interface HistogramMBean {
+
+    /**
+     * @return the number of recorded values
+     */
+    long getCount();
+
+    /**
+     * @return the sum of all recorded values
+     */
+    long getSum();
+
+    /**
+     * @return the largest recorded value
+     */
+    long getMax();
+
+    /**
+     * @return the mean of the recorded values
+     */
+    double getMean();
+
+    /**
+     * @return the median of the recorded values
+     */
+    long get50thPercentile();
+
+    /**
+     * @return the 90th percentile of the recorded values
+     */
+    long get90thPercentile();
+
+    /**
+     * @return the 99th percentile of the recorded values
+     */
+    long get99thPercentile();
+
+    /**
+     * @return the 99.9th percentile of the recorded values
+     */
+    long get999thPercentile();
+
+}
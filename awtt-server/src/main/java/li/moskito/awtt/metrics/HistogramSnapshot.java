@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of the state of a {@link Histogram} at a point in time. Snapshots of several histograms with the same
+ * bucket layout, i.e. the latencies of several ports, can be merged into a snapshot of all their values.
+ *
+ * @author Gerald
+ */
+public final class HistogramSnapshot {
+
+    private final long[] buckets;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    /**
+     * @param buckets
+     *            the counts of the buckets, the array is not copied
+     * @param sum
+     *            the sum of the recorded values
+     * @param max
+     *            the largest recorded value
+     */
+    HistogramSnapshot(final long[] buckets, final long sum, final long max) {
+        this.buckets = buckets;
+        long total = 0;
+        for (final long bucket : buckets) {
+            total += bucket;
+        }
+        this.count = total;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public long getSum() {
+        return this.sum;
+    }
+
+    /**
+     * @return the largest recorded value
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * @return the mean of the recorded values or 0 if no value has been recorded
+     */
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * @return the median of the recorded values
+     */
+    public long get50thPercentile() {
+        return this.getPercentile(0.5);
+    }
+
+    /**
+     * @return the 99th percentile of the recorded values
+     */
+    public long get99thPercentile() {
+        return this.getPercentile(0.99);
+    }
+
+    /**
+     * @return the 99.9th percentile of the recorded values
+     */
+    public long get999thPercentile() {
+        return this.getPercentile(0.999);
+    }
+
+    /**
+     * Approximates the value below or at which the specified fraction of the recorded values lie
+     *
+     * @param quantile
+     *            the fraction of values, between 0 and 1
+     * @return the upper bound of the bucket containing the percentile, but not more than the largest recorded value.
+     *         If no value has been recorded, 0 is returned.
+     */
+    public long getPercentile(final double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        if (this.count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * this.count));
+        long seen = 0;
+        for (int i = 0; i < this.buckets.length; i++) {
+            seen += this.buckets[i];
+            if (seen >= rank) {
+                return Math.min(Histogram.upperBoundOf(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Merges this snapshot with another one
+     *
+     * @param other
+     *            the snapshot to merge
+     * @return a new snapshot containing the values of both snapshots
+     */
+    public HistogramSnapshot merge(final HistogramSnapshot other) {
+        final long[] merged = Arrays.copyOf(this.buckets, this.buckets.length);
+        for (int i = 0; i < merged.length; i++) {
+            merged[i] += other.buckets[i];
+        }
+        return new HistogramSnapshot(merged, this.sum + other.sum, Math.max(this.max, other.max));
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot [count=" + this.count + ", mean=" + this.getMean() + ", p50="
+                + this.get50thPercentile() + ", p99=" + this.get99thPercentile() + ", p999="
+                + this.get999thPercentile() + ", max=" + this.max + "]";
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of the {@link RequestPhase}s of the requests of one scope, i.e. a port or a handler. The latencies
+ * are recorded in nanoseconds in the histograms of the {@link MetricsRegistry} named
+ * <code>latency.&lt;scope&gt;.&lt;phase&gt;</code>, so that they are exported over JMX as well.
+ *
+ * @author Gerald
+ */
+public final class LatencyHistograms {
+
+    private final String scope;
+
+    private final Map<RequestPhase, Histogram> histograms = new EnumMap<>(RequestPhase.class);
+
+    /**
+     * @param registry
+     *            the registry providing the histograms
+     * @param scope
+     *            the scope of the latencies
+     */
+    LatencyHistograms(final MetricsRegistry registry, final String scope) {
+        this.scope = scope;
+        for (final RequestPhase phase : RequestPhase.values()) {
+            this.histograms.put(phase, registry.histogram("latency." + scope + '.' + phase.metricName()));
+        }
+    }
+
+    /**
+     * Provides the latencies of the requests received on a port
+     *
+     * @param portNumber
+     *            the number of the port
+     * @return the latency histograms of the port
+     */
+    public static LatencyHistograms forPort(final int portNumber) {
+        return new LatencyHistograms(MetricsRegistry.getInstance(), "port." + portNumber);
+    }
+
+    /**
+     * Provides the latencies of the requests processed by a handler
+     *
+     * @param handlerName
+     *            the name of the handler
+     * @return the latency histograms of the handler
+     */
+    public static LatencyHistograms forHandler(final String handlerName) {
+        return new LatencyHistograms(MetricsRegistry.getInstance(), "handler." + handlerName);
+    }
+
+    /**
+     * Records the latency of a phase
+     *
+     * @param phase
+     *            the phase of the request
+     * @param nanos
+     *            the duration of the phase in nanoseconds
+     */
+    public void record(final RequestPhase phase, final long nanos) {
+        this.histograms.get(phase).record(nanos);
+    }
+
+    /**
+     * @param phase
+     *            the phase of the request
+     * @return the histogram of the phase
+     */
+    public Histogram get(final RequestPhase phase) {
+        return this.histograms.get(phase);
+    }
+
+    /**
+     * @param phase
+     *            the phase of the request
+     * @return a snapshot of the latencies of the phase
+     */
+    public HistogramSnapshot snapshot(final RequestPhase phase) {
+        return this.histograms.get(phase).snapshot();
+    }
+
+    /**
+     * @return the scope of the latencies
+     */
+    public String getScope() {
+        return this.scope;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistograms [scope=" + this.scope + ", histograms=" + this.histograms + "]";
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the metrics of the server. Components retrieve their metrics by name from the registry, a metric is
+ * created on first access and shared by all components using the same name. Every metric is exported as MBean of the
+ * platform MBean server with the object name <code>li.moskito.awtt:type=&lt;type&gt;,name=&lt;name&gt;</code>, so that
+ * it can be monitored with any JMX client. <br>
+ * Metric names consist of dot separated words, i.e. <code>connections.accepted</code>, and must not contain characters
+ * that are reserved in object names.
+ *
+ * @author Gerald
+ */
+public final class MetricsRegistry {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    /**
+     * The JMX domain of the metrics
+     */
+    public static final String DOMAIN = "li.moskito.awtt";
+
+    /**
+     * Holder idiom
+     */
+    private static class Holder {
+        private static final MetricsRegistry INSTANCE = new MetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+
+        private Holder() {
+        }
+    }
+
+    private final MBeanServer mbeanServer;
+
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new registry. Use {@link #getInstance()} to retrieve the registry of the server.
+     *
+     * @param mbeanServer
+     *            the server to register the metrics at or <code>null</code> if the metrics should not be exported
+     */
+    MetricsRegistry(final MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    /**
+     * Provides the registry that is shared by all components of the server.
+     *
+     * @return the singleton instance
+     */
+    public static MetricsRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Retrieves the counter with the specified name, creating it if it does not exist yet
+     *
+     * @param name
+     *            the name of the counter
+     * @return the counter
+     * @throws IllegalArgumentException
+     *             if a metric of another type has been registered with the name
+     */
+    public Counter counter(final String name) {
+        Object metric = this.metrics.get(name);
+        if (metric == null) {
+            metric = this.register(name, new Counter(), CounterMBean.class);
+        }
+        return cast(name, metric, Counter.class);
+    }
+
+    /**
+     * Retrieves the histogram with the specified name, creating it if it does not exist yet
+     *
+     * @param name
+     *            the name of the histogram
+     * @return the histogram
+     * @throws IllegalArgumentException
+     *             if a metric of another type has been registered with the name
+     */
+    public Histogram histogram(final String name) {
+        Object metric = this.metrics.get(name);
+        if (metric == null) {
+            metric = this.register(name, new Histogram(), HistogramMBean.class);
+        }
+        return cast(name, metric, Histogram.class);
+    }
+
+    /**
+     * Registers a gauge. If a gauge with the same name has already been registered, the existing gauge is kept.
+     *
+     * @param name
+     *            the name of the gauge
+     * @param gauge
+     *            the gauge to sample the value from
+     * @return the gauge registered with the name
+     * @throws IllegalArgumentException
+     *             if a metric of another type has been registered with the name
+     */
+    public Gauge gauge(final String name, final Gauge gauge) {
+        return cast(name, this.register(name, gauge, Gauge.class), Gauge.class);
+    }
+
+    /**
+     * Provides a snapshot of all registered metrics, sorted by name
+     *
+     * @return a map of metric names to metrics, that are {@link Counter}s, {@link Gauge}s or {@link Histogram}s
+     */
+    public SortedMap<String, Object> getMetrics() {
+        return Collections.unmodifiableSortedMap(new TreeMap<String, Object>(this.metrics));
+    }
+
+    /**
+     * Registers the metric if no metric is registered with the name yet and exports it as MBean.
+     *
+     * @return the metric registered with the name
+     */
+    private <T> Object register(final String name, final T metric, final Class<T> mbeanInterface) {
+        final Object existing = this.metrics.putIfAbsent(name, metric);
+        if (existing != null) {
+            return existing;
+        }
+        if (this.mbeanServer != null) {
+            try {
+                final ObjectName objectName = new ObjectName(DOMAIN + ":type="
+                        + mbeanInterface.getSimpleName().replace("MBean", "") + ",name=" + name);
+                if (!this.mbeanServer.isRegistered(objectName)) {
+                    this.mbeanServer.registerMBean(new StandardMBean(metric, mbeanInterface), objectName);
+                }
+            } catch (final JMException e) {
+                LOG.warn("Could not export metric {}", name, e);
+            }
+        }
+        return metric;
+    }
+
+    private static <T> T cast(final String name, final Object metric, final Class<T> type) {
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder("MetricsRegistry [");
+        final SortedMap<String, Object> snapshot = this.getMetrics();
+        for (final Map.Entry<String, Object> entry : snapshot.entrySet()) {
+            final Object metric = entry.getValue();
+            buf.append(entry.getKey()).append('=');
+            buf.append(metric instanceof Gauge ? ((Gauge) metric).getValue() : metric).append(", ");
+        }
+        if (!snapshot.isEmpty()) {
+            buf.setLength(buf.length() - 2);
+        }
+        return buf.append(']').toString();
+    }
+}
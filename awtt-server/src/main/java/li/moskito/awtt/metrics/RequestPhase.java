@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package li.moskito.awtt.metrics;
+
+import java.util.Locale;
+
+/**
+ * The phases a request passes through on the server, whose latencies are recorded separately
+ *
+ * @author Gerald
+ */
+public enum RequestPhase {
+
+    /**
+     * Receiving the bytes of a request, from the first byte read until the request is complete
+     */
+    RECEIVE,
+
+    /**
+     * Parsing the received bytes into a message
+     */
+    PARSE,
+
+    /**
+     * Processing the request by the protocol and its handlers until the response is complete
+     */
+    PROCESS,
+
+    /**
+     * Serializing the header of the response
+     */
+    SERIALIZE,
+
+    /**
+     * Writing the response to the client
+     */
+    SEND;
+
+    /**
+     * @return the name of the phase as used in metric names
+     */
+    public String metricName() {
+        return this.name().toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+
+/**
+ * A body whose content is held in a {@link ByteBuffer}, i.e. content that is cached in memory. The body reads from its
+ * own view of the buffer, so the same buffer may be shared by any number of bodies, as long as its content is not
+ * modified. The body is read-only.
+ *
+ * @author Gerald
+ */
+public class ByteBufferBody extends BinaryBody {
+
+    /**
+     * @param content
+     *            the buffer containing the content between its position and its limit
+     */
+    public ByteBufferBody(final ByteBuffer content) {
+        super(new BufferChannel(content.duplicate()));
+    }
+
+    /**
+     * @return the number of bytes that have not been read yet
+     */
+    public int getRemaining() {
+        return ((BufferChannel) this.getByteChannel()).buffer.remaining();
+    }
+
+    /**
+     * Channel reading the content of the buffer.
+     *
+     * @author Gerald
+     */
+    private static final class BufferChannel implements ByteChannel {
+
+        private final ByteBuffer buffer;
+        private boolean open = true;
+
+        BufferChannel(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws ClosedChannelException {
+            if (!this.open) {
+                throw new ClosedChannelException();
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            final int length = Math.min(dst.remaining(), this.buffer.remaining());
+            final int limit = this.buffer.limit();
+            this.buffer.limit(this.buffer.position() + length);
+            dst.put(this.buffer);
+            this.buffer.limit(limit);
+            return length;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        @Override
+        public void close() {
+            this.open = false;
+        }
+    }
+}
@@ -3,8 +3,9 @@
  */
 package li.moskito.awtt.protocol;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Declares a header that is not part of a protocol specification. This field type can be used for protocol extensions.
@@ -16,11 +17,23 @@ public class CustomHeaderFieldDefinition implements HeaderFieldDefinition {
     private final String name;
 
     /**
-     * Map to keep instances of the custom header field to prevent multiple instantiation of immutable instances. A
-     * WeakHashMap is used to allow the disposable of unneeded instances (otherwise the server might be flooded with
-     * custom headers until memory is full)
+     * Maximum number of interned header fields, can be set with the system property
+     * <code>awtt.customHeaders.maxInterned</code>
      */
-    private static final Map<String, CustomHeaderFieldDefinition> KNOWN_HEADER_FIELD = new WeakHashMap<>();
+    static final int MAX_INTERNED = Integer.getInteger("awtt.customHeaders.maxInterned", 1024);
+
+    /**
+     * Map to keep instances of the custom header field to prevent multiple instantiation of immutable instances. The
+     * map is bounded as the names are supplied by the clients (otherwise the server might be flooded with custom
+     * headers until memory is full). Once the limit is reached, new names are no longer interned.
+     */
+    private static final ConcurrentMap<String, CustomHeaderFieldDefinition> KNOWN_HEADER_FIELD;
+
+    private static final AtomicInteger KNOWN_HEADER_FIELD_COUNT = new AtomicInteger();
+
+    static {
+        KNOWN_HEADER_FIELD = new ConcurrentHashMap<>();
+    }
 
     /**
      * @param name
@@ -41,22 +54,47 @@ public class CustomHeaderFieldDefinition implements HeaderFieldDefinition {
         return this.name;
     }
 
+    @Override
+    public int hashCode() {
+        return this.name.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CustomHeaderFieldDefinition)) {
+            return false;
+        }
+        return this.name.equals(((CustomHeaderFieldDefinition) obj).name);
+    }
+
     /**
      * Creates a new custom header field. Because header fields are immutable in their nature as they only define a name
-     * for the field, this method creates a new instance only if the header field has not been created before or wasn't
-     * in use any more.
+     * for the field, this method creates a new instance only if the header field has not been created before. If the
+     * maximum number of interned fields has been reached, a new instance is returned that is equal to all other
+     * instances with the same name.
      * 
      * @param name
      *            the name of the custom header field to be created.
      * @return an instance of a custom header field for the specified name
      */
     public static CustomHeaderFieldDefinition forName(final String name) {
-        if (!KNOWN_HEADER_FIELD.containsKey(name)) {
-            final CustomHeaderFieldDefinition field = new CustomHeaderFieldDefinition(name);
-            KNOWN_HEADER_FIELD.put(name, field);
-
+        final CustomHeaderFieldDefinition known = KNOWN_HEADER_FIELD.get(name);
+        if (known != null) {
+            return known;
+        }
+        final CustomHeaderFieldDefinition field = new CustomHeaderFieldDefinition(name);
+        if (KNOWN_HEADER_FIELD_COUNT.get() >= MAX_INTERNED) {
+            return field;
+        }
+        final CustomHeaderFieldDefinition existing = KNOWN_HEADER_FIELD.putIfAbsent(name, field);
+        if (existing != null) {
+            return existing;
         }
-        return KNOWN_HEADER_FIELD.get(name);
+        KNOWN_HEADER_FIELD_COUNT.incrementAndGet();
+        return field;
     }
 
 }
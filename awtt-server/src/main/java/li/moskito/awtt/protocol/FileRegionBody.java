@@ -0,0 +1,296 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A body consisting of one or more regions of a file. Senders that write to a channel directly may transfer the
+ * regions using {@link #transferTo(WritableByteChannel)} which allows the operating system to send the data without
+ * copying it into the memory of the application (sendfile). All other consumers read the regions from the channel
+ * returned by {@link #getByteChannel()}. <br>
+ * Between the regions, the body may contain small segments of data held in memory, i.e. the part headers of a
+ * multipart body. <br>
+ * The file channel is closed once all segments have been transferred completely.
+ *
+ * @author Gerald
+ */
+public class FileRegionBody extends BinaryBody {
+
+    private final FileChannel fileChannel;
+    private final ReadableByteChannel regionChannel;
+
+    /**
+     * The segments of the body, transferred in order
+     */
+    private final Segment[] segments;
+
+    /**
+     * Index of the segment to transfer next
+     */
+    private int current;
+
+    /**
+     * The number of bytes of all segments that have not been transferred yet
+     */
+    private long remaining;
+
+    /**
+     * A part of a {@link FileRegionBody}, either a region of the file or data held in memory. A segment keeps track of
+     * its own transfer progress, so it must only be used for a single body.
+     *
+     * @author Gerald
+     */
+    public static final class Segment {
+
+        /**
+         * The data of an in-memory segment, <code>null</code> for file regions
+         */
+        private final ByteBuffer data;
+
+        /**
+         * The position in the file of the next byte to transfer
+         */
+        private long position;
+
+        /**
+         * The number of bytes of the segment that have not been transferred yet
+         */
+        private long remaining;
+
+        private Segment(final ByteBuffer data, final long position, final long count) {
+            this.data = data;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        /**
+         * Creates a segment of a region of the file
+         *
+         * @param position
+         *            the position of the region in the file
+         * @param count
+         *            the length of the region in bytes
+         * @return the segment
+         */
+        public static Segment region(final long position, final long count) {
+            if (position < 0 || count < 0) {
+                throw new IllegalArgumentException("Invalid region, position=" + position + ", count=" + count);
+            }
+            return new Segment(null, position, count);
+        }
+
+        /**
+         * Creates a segment of data held in memory
+         *
+         * @param data
+         *            the data of the segment
+         * @return the segment
+         */
+        public static Segment data(final byte[] data) {
+            return new Segment(ByteBuffer.wrap(data), 0, data.length);
+        }
+
+        /**
+         * @return the number of bytes of the segment that have not been transferred yet
+         */
+        public long getRemaining() {
+            return this.remaining;
+        }
+    }
+
+    /**
+     * @param fileChannel
+     *            the channel of the file containing the region
+     * @param position
+     *            the position of the region in the file
+     * @param count
+     *            the length of the region in bytes
+     */
+    public FileRegionBody(final FileChannel fileChannel, final long position, final long count) {
+        this(fileChannel, Collections.singletonList(Segment.region(position, count)));
+    }
+
+    /**
+     * @param fileChannel
+     *            the channel of the file containing the regions
+     * @param segments
+     *            the regions of the file and in-memory segments in the order they are transferred
+     */
+    public FileRegionBody(final FileChannel fileChannel, final List<Segment> segments) {
+        super(fileChannel);
+        this.fileChannel = fileChannel;
+        this.segments = segments.toArray(new Segment[segments.size()]);
+        for (final Segment segment : this.segments) {
+            this.remaining += segment.remaining;
+        }
+        this.regionChannel = new RegionChannel();
+        this.skipCompleted();
+    }
+
+    /**
+     * The channel for reading the remaining bytes of the regions.
+     */
+    @Override
+    public ReadableByteChannel getByteChannel() {
+        return this.regionChannel;
+    }
+
+    /**
+     * @return the underlying file channel
+     */
+    public FileChannel getFileChannel() {
+        return this.fileChannel;
+    }
+
+    /**
+     * @return the number of bytes of all segments that have not been transferred yet
+     */
+    public long getRemaining() {
+        return this.remaining;
+    }
+
+    /**
+     * Transfers the remaining bytes of the segments to the target channel. File regions are transferred using
+     * {@link FileChannel#transferTo}. If the target is a non-blocking channel, the segments may be transferred
+     * partially.
+     *
+     * @param target
+     *            the channel to write the segments to
+     * @return the number of bytes transferred or -1 if the segments have been transferred completely before
+     * @throws IOException
+     */
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        if (this.remaining == 0) {
+            return -1;
+        }
+        long total = 0;
+        while (this.remaining > 0) {
+            final Segment segment = this.segments[this.current];
+            final long transferred;
+            if (segment.data != null) {
+                transferred = target.write(segment.data);
+            } else {
+                transferred = this.fileChannel.transferTo(segment.position, segment.remaining, target);
+                if (transferred == 0 && segment.position >= this.fileChannel.size()) {
+                    // the file was truncated, the region can not be transferred completely
+                    this.truncated();
+                }
+            }
+            final boolean complete = transferred == segment.remaining;
+            this.advance(segment, transferred);
+            total += transferred;
+            if (!complete) {
+                // the target does not accept more data at the moment
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Advances the position of the segment and closes the file channel if all segments have been transferred
+     * completely
+     *
+     * @param segment
+     *            the segment that has been transferred
+     * @param transferred
+     *            the number of bytes that have been transferred
+     * @throws IOException
+     */
+    private void advance(final Segment segment, final long transferred) throws IOException {
+        segment.position += transferred;
+        segment.remaining -= transferred;
+        this.remaining -= transferred;
+        this.skipCompleted();
+        if (this.remaining == 0) {
+            this.fileChannel.close();
+        }
+    }
+
+    private void skipCompleted() {
+        while (this.current < this.segments.length - 1 && this.segments[this.current].remaining == 0) {
+            this.current++;
+        }
+    }
+
+    /**
+     * Closes the file channel as the file has been truncated after the body was created
+     *
+     * @throws IOException
+     *             in any case to notify the sender that the region is not available
+     */
+    private void truncated() throws IOException {
+        final long size = this.fileChannel.size();
+        this.fileChannel.close();
+        throw new IOException("File region exceeds file size " + size);
+    }
+
+    /**
+     * Channel for reading the segments using a buffer.
+     *
+     * @author Gerald
+     */
+    private final class RegionChannel implements ReadableByteChannel {
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final FileRegionBody body = FileRegionBody.this;
+            if (body.remaining == 0) {
+                return -1;
+            }
+            int total = 0;
+            while (body.remaining > 0 && dst.hasRemaining()) {
+                final Segment segment = body.segments[body.current];
+                final int read = segment.data != null
+                        ? this.readData(segment, dst)
+                        : this.readRegion(segment, dst);
+                if (read == -1) {
+                    body.truncated();
+                }
+                body.advance(segment, read);
+                total += read;
+            }
+            return total;
+        }
+
+        private int readData(final Segment segment, final ByteBuffer dst) {
+            final int length = Math.min(dst.remaining(), segment.data.remaining());
+            final int limit = segment.data.limit();
+            segment.data.limit(segment.data.position() + length);
+            dst.put(segment.data);
+            segment.data.limit(limit);
+            return length;
+        }
+
+        private int readRegion(final Segment segment, final ByteBuffer dst) throws IOException {
+            final int limit = dst.limit();
+            if (dst.remaining() > segment.remaining) {
+                dst.limit(dst.position() + (int) segment.remaining);
+            }
+            try {
+                return FileRegionBody.this.fileChannel.read(dst, segment.position);
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return FileRegionBody.this.fileChannel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            FileRegionBody.this.fileChannel.close();
+        }
+    }
+
+}
@@ -3,14 +3,8 @@
  */
 package li.moskito.awtt.protocol;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import li.moskito.awtt.protocol.http.HttpVersion;
 
@@ -24,28 +18,11 @@ public abstract class Header {
 
     private final ProtocolVersion version;
 
-    private final Map<HeaderFieldDefinition, HeaderField> fields;
-
-    /**
-     * Comparator for sorting header fields
-     * 
-     * @author Gerald
-     */
-    private static final class HeaderFieldComparator implements Comparator<HeaderField>, Serializable {
-
-        private static final long serialVersionUID = 2432933502724826836L;
-
-        @Override
-        public int compare(final HeaderField paramT1, final HeaderField paramT2) {
-            return paramT1.getHeaderFieldDefinition().getName().compareTo(paramT2.getHeaderFieldDefinition().getName());
-        }
-    }
-
-    private static final HeaderFieldComparator COMPARATOR = new HeaderFieldComparator();
+    private final HeaderFieldTable fields;
 
     public Header(final ProtocolVersion version) {
         this.version = version;
-        this.fields = new ConcurrentHashMap<>();
+        this.fields = new HeaderFieldTable();
     }
 
     public ProtocolVersion getVersion() {
@@ -53,15 +30,13 @@ public abstract class Header {
     }
 
     /**
-     * Returns all the header fields in alphabetical order.
+     * Returns all the header fields in the order they have been added. A field that replaced another field has the
+     * position of the replaced field.
      * 
-     * @return a list of header fields
+     * @return an unmodifiable list of the header fields
      */
     public List<HeaderField> getFields() {
-        final List<HeaderField> result = new ArrayList<>();
-        result.addAll(this.fields.values());
-        Collections.sort(result, COMPARATOR);
-        return result;
+        return this.fields.fields();
     }
 
     /**
@@ -76,16 +51,16 @@ public abstract class Header {
     }
 
     public void addField(final HeaderField field) {
-        this.fields.put(field.getHeaderFieldDefinition(), field);
+        this.fields.put(field);
     }
 
     /**
      * Retrieves the headerFieldDefinition of this header
      * 
-     * @return
+     * @return an unmodifiable set of the definitions in the order the fields have been added
      */
     public Set<HeaderFieldDefinition> getHeaderFieldDefinitions() {
-        return this.fields.keySet();
+        return this.fields.definitions();
     }
 
     /**
@@ -107,7 +82,7 @@ public abstract class Header {
      * @return
      */
     public boolean hasField(final HeaderFieldDefinition headerFieldDefinition) {
-        return this.fields.containsKey(headerFieldDefinition);
+        return this.fields.contains(headerFieldDefinition);
     }
 
 }
@@ -0,0 +1,177 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable lookup table for a fixed set of {@link HeaderFieldDefinition}s by their name. The table uses a perfect
+ * hash function, i.e. a hash function that maps each of the names to a different slot. The function is determined once
+ * when the table is created by searching a seed that does not produce any collision for the given names. A lookup
+ * therefore requires one hash computation and one comparison of the name. <br>
+ * Names are compared case-insensitive (ASCII only) as header field names are case-insensitive. The lookup can be
+ * performed on the raw bytes of a message, so no String has to be created for standard header fields.
+ *
+ * @author Gerald
+ * @param <T>
+ *            the type of the header field definitions
+ */
+public final class HeaderFieldNameTable<T extends HeaderFieldDefinition> {
+
+    /**
+     * Maximum number of seeds that are tried for a table size before the table size is doubled
+     */
+    private static final int MAX_SEEDS = 10000;
+
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final Object[] definitions;
+    private final byte[][] names;
+    private final int mask;
+    private final int seed;
+
+    /**
+     * Creates a table for the given definitions
+     *
+     * @param definitions
+     *            the definitions to be contained in the table. The names of the definitions must be distinct
+     *            case-insensitive.
+     */
+    public HeaderFieldNameTable(final T[] definitions) {
+        int size = Integer.highestOneBit(Math.max(definitions.length, 1) * 2 - 1) << 1;
+        int candidate = findSeed(definitions, size);
+        while (candidate == 0) {
+            size <<= 1;
+            candidate = findSeed(definitions, size);
+        }
+        this.definitions = new Object[size];
+        fill(this.definitions, definitions, candidate);
+        this.names = namesOf(this.definitions);
+        this.mask = size - 1;
+        this.seed = candidate;
+    }
+
+    /**
+     * Looks up the definition with the name contained in the byte array.
+     *
+     * @param src
+     *            the array containing the name encoded as ISO-8859-1
+     * @param offset
+     *            the offset of the first byte of the name
+     * @param length
+     *            the number of bytes of the name
+     * @return the matching definition or <code>null</code> if there is no definition with that name
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final byte[] src, final int offset, final int length) {
+        int h = this.seed;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ toLowerCase(src[i])) * FNV_PRIME;
+        }
+        final int index = index(h, this.mask);
+        final byte[] name = this.names[index];
+        if (name == null || name.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != toLowerCase(src[offset + i])) {
+                return null;
+            }
+        }
+        return (T) this.definitions[index];
+    }
+
+    /**
+     * Looks up the definition with the given name.
+     *
+     * @param name
+     *            the name of the header field
+     * @return the matching definition or <code>null</code> if there is no definition with that name
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final CharSequence name) {
+        int h = this.seed;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c > 0xff) {
+                return null;
+            }
+            h = (h ^ toLowerCase((byte) c)) * FNV_PRIME;
+        }
+        final int index = index(h, this.mask);
+        final byte[] definitionName = this.names[index];
+        if (definitionName == null || definitionName.length != name.length()) {
+            return null;
+        }
+        for (int i = 0; i < definitionName.length; i++) {
+            if (definitionName[i] != toLowerCase((byte) name.charAt(i))) {
+                return null;
+            }
+        }
+        return (T) this.definitions[index];
+    }
+
+    /**
+     * Searches a seed for which the hash function maps all definitions to different slots
+     *
+     * @return the seed or 0 if no seed was found for the table size
+     */
+    private static int findSeed(final HeaderFieldDefinition[] definitions, final int size) {
+        for (int candidate = 1; candidate <= MAX_SEEDS; candidate++) {
+            if (fill(new Object[size], definitions, candidate)) {
+                return candidate;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Puts the definitions into the table using the seed
+     *
+     * @return <code>true</code> if all definitions could be placed without collision
+     */
+    private static boolean fill(final Object[] table, final HeaderFieldDefinition[] definitions, final int seed) {
+        for (final HeaderFieldDefinition definition : definitions) {
+            final byte[] name = lowerCaseName(definition);
+            int h = seed;
+            for (final byte b : name) {
+                h = (h ^ b) * FNV_PRIME;
+            }
+            final int index = index(h, table.length - 1);
+            if (table[index] != null) {
+                return false;
+            }
+            table[index] = definition;
+        }
+        return true;
+    }
+
+    private static byte[][] namesOf(final Object[] table) {
+        final byte[][] result = new byte[table.length][];
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                result[i] = lowerCaseName((HeaderFieldDefinition) table[i]);
+            }
+        }
+        return result;
+    }
+
+    private static byte[] lowerCaseName(final HeaderFieldDefinition definition) {
+        final byte[] name = definition.getName().getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < name.length; i++) {
+            name[i] = toLowerCase(name[i]);
+        }
+        return name;
+    }
+
+    private static int index(final int hash, final int mask) {
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    private static byte toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z'
+                ? (byte) (b + ('a' - 'A'))
+                : b;
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Compact container for the fields of a {@link Header}. The fields are kept in an array in the order they were added,
+ * a field replacing an existing field with the same definition keeps the position of the replaced field. <br>
+ * Fields are located by their definition. Definitions of an enum (i.e. the standard fields of a protocol) are resolved
+ * by their ordinal in a slot array, other definitions by an open-addressed hash table with linear probing. Only the
+ * enum type of the first added enum definition gets slots, definitions of other enum types are put into the hash
+ * table. <br>
+ * The table is not thread-safe, a header is confined to the connection processing the message.
+ *
+ * @author Gerald
+ */
+final class HeaderFieldTable {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final int INITIAL_TABLE_SIZE = 8;
+
+    /**
+     * The fields in insertion order
+     */
+    private HeaderField[] entries;
+    private int size;
+
+    /**
+     * The enum type whose definitions are resolved by ordinal
+     */
+    private Class<?> slotType;
+
+    /**
+     * The index+1 of the entry for each ordinal of the slot type, 0 if there is no such entry
+     */
+    private int[] slots;
+
+    /**
+     * Keys of the hash table for definitions not resolved by slots
+     */
+    private HeaderFieldDefinition[] keys;
+
+    /**
+     * The index of the entry for each key of the hash table
+     */
+    private int[] keyEntries;
+    private int keyCount;
+
+    /**
+     * The list view on the fields, created on first use
+     */
+    private List<HeaderField> fieldList;
+
+    /**
+     * The set view on the field definitions, created on first use
+     */
+    private Set<HeaderFieldDefinition> definitionSet;
+
+    HeaderFieldTable() {
+        this.entries = new HeaderField[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds the field to the table. An existing field with the same definition is replaced.
+     *
+     * @param field
+     *            the field to add
+     */
+    void put(final HeaderField field) {
+        final HeaderFieldDefinition definition = field.getHeaderFieldDefinition();
+        final int index = this.indexOf(definition);
+        if (index != -1) {
+            this.entries[index] = field;
+            return;
+        }
+        if (this.size == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, this.size * 2);
+        }
+        final int newIndex = this.size++;
+        this.entries[newIndex] = field;
+        if (this.hasSlot(definition)) {
+            this.slots[((Enum<?>) definition).ordinal()] = newIndex + 1;
+        } else {
+            this.putKey(definition, newIndex);
+        }
+    }
+
+    /**
+     * @param definition
+     *            the definition of the field
+     * @return the field for the definition or <code>null</code> if there is no such field
+     */
+    HeaderField get(final HeaderFieldDefinition definition) {
+        final int index = this.indexOf(definition);
+        return index == -1
+                ? null
+                : this.entries[index];
+    }
+
+    /**
+     * @param definition
+     *            the definition of the field
+     * @return <code>true</code> if the table contains a field with the definition
+     */
+    boolean contains(final HeaderFieldDefinition definition) {
+        return this.indexOf(definition) != -1;
+    }
+
+    /**
+     * @return the number of fields in the table
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return an unmodifiable list view on the fields in insertion order
+     */
+    List<HeaderField> fields() {
+        if (this.fieldList == null) {
+            this.fieldList = new FieldList();
+        }
+        return this.fieldList;
+    }
+
+    /**
+     * @return an unmodifiable set view on the definitions of the fields in insertion order
+     */
+    Set<HeaderFieldDefinition> definitions() {
+        if (this.definitionSet == null) {
+            this.definitionSet = new DefinitionSet();
+        }
+        return this.definitionSet;
+    }
+
+    /**
+     * Determines the position of the field with the given definition
+     *
+     * @param definition
+     *            the definition to search
+     * @return the position in the entries array or -1 if there is no such field
+     */
+    private int indexOf(final HeaderFieldDefinition definition) {
+        if (definition == null) {
+            return -1;
+        }
+        if (definition instanceof Enum && ((Enum<?>) definition).getDeclaringClass() == this.slotType) {
+            return this.slots[((Enum<?>) definition).ordinal()] - 1;
+        }
+        if (this.keys == null) {
+            return -1;
+        }
+        final int mask = this.keys.length - 1;
+        for (int i = hash(definition) & mask; this.keys[i] != null; i = i + 1 & mask) {
+            if (this.keys[i].equals(definition)) {
+                return this.keyEntries[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the definition is resolved by slots. The slots are created for the first enum definition that is added
+     * to the table.
+     */
+    private boolean hasSlot(final HeaderFieldDefinition definition) {
+        if (!(definition instanceof Enum)) {
+            return false;
+        }
+        final Class<?> enumType = ((Enum<?>) definition).getDeclaringClass();
+        if (this.slotType == null) {
+            this.slotType = enumType;
+            this.slots = new int[enumType.getEnumConstants().length];
+        }
+        return enumType == this.slotType;
+    }
+
+    private void putKey(final HeaderFieldDefinition definition, final int index) {
+        if (this.keys == null) {
+            this.keys = new HeaderFieldDefinition[INITIAL_TABLE_SIZE];
+            this.keyEntries = new int[INITIAL_TABLE_SIZE];
+        } else if ((this.keyCount + 1) * 2 > this.keys.length) {
+            this.rehash();
+        }
+        insert(this.keys, this.keyEntries, definition, index);
+        this.keyCount++;
+    }
+
+    /**
+     * Doubles the size of the hash table, keeping the load factor below 0.5
+     */
+    private void rehash() {
+        final HeaderFieldDefinition[] oldKeys = this.keys;
+        final int[] oldEntries = this.keyEntries;
+        this.keys = new HeaderFieldDefinition[oldKeys.length * 2];
+        this.keyEntries = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(this.keys, this.keyEntries, oldKeys[i], oldEntries[i]);
+            }
+        }
+    }
+
+    private static void insert(final HeaderFieldDefinition[] keys, final int[] keyEntries,
+            final HeaderFieldDefinition definition, final int index) {
+        final int mask = keys.length - 1;
+        int i = hash(definition) & mask;
+        while (keys[i] != null) {
+            i = i + 1 & mask;
+        }
+        keys[i] = definition;
+        keyEntries[i] = index;
+    }
+
+    private static int hash(final HeaderFieldDefinition definition) {
+        final int h = definition.hashCode();
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * List view on the entries of the table
+     *
+     * @author Gerald
+     */
+    private final class FieldList extends AbstractList<HeaderField> implements RandomAccess {
+
+        @Override
+        public HeaderField get(final int index) {
+            if (index < 0 || index >= HeaderFieldTable.this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + HeaderFieldTable.this.size);
+            }
+            return HeaderFieldTable.this.entries[index];
+        }
+
+        @Override
+        public int size() {
+            return HeaderFieldTable.this.size;
+        }
+    }
+
+    /**
+     * Set view on the definitions of the entries of the table
+     *
+     * @author Gerald
+     */
+    private final class DefinitionSet extends AbstractSet<HeaderFieldDefinition> {
+
+        @Override
+        public Iterator<HeaderFieldDefinition> iterator() {
+            return new Iterator<HeaderFieldDefinition>() {
+
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return this.next < HeaderFieldTable.this.size;
+                }
+
+                @Override
+                public HeaderFieldDefinition next() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return HeaderFieldTable.this.entries[this.next++].getHeaderFieldDefinition();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Header fields can not be removed");
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return o instanceof HeaderFieldDefinition && HeaderFieldTable.this.contains((HeaderFieldDefinition) o);
+        }
+
+        @Override
+        public int size() {
+            return HeaderFieldTable.this.size;
+        }
+    }
+}
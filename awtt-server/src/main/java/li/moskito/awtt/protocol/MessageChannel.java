@@ -4,31 +4,40 @@
 package li.moskito.awtt.protocol;
 
 import java.io.IOException;
+import java.net.SocketAddress;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
+import li.moskito.awtt.metrics.LatencyHistograms;
+import li.moskito.awtt.metrics.RequestPhase;
 import li.moskito.awtt.protocol.http.HttpProtocolException;
+import li.moskito.awtt.util.TransferableChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A channel to read or write messages.
+ * A channel to read or write messages. Bodies of type {@link FileRegionBody} are not copied into the read buffer if the
+ * consumer transfers them using {@link #transferTo(WritableByteChannel)}.
  * 
  * @author Gerald
  */
-public abstract class MessageChannel implements ByteChannel {
+public abstract class MessageChannel implements ByteChannel, TransferableChannel {
 
     /**
      * SLF4J Logger for this class
@@ -63,6 +72,65 @@ public abstract class MessageChannel implements ByteChannel {
 
     private final Map<Event.Type, Set<ChannelEventListener>> eventSubscriptions;
 
+    /**
+     * Responses of the messages being processed in the order of the messages. A completed response is put on the
+     * output queue once the responses of all previous messages have been completed. Guarded by itself.
+     */
+    private final Queue<PendingResponse> pendingResponses;
+
+    /**
+     * Interim response that is put on the output queue once the responses of all messages received before it have
+     * been put on the output queue. Guarded by the pendingResponses lock.
+     */
+    private Message interimResponse;
+
+    /**
+     * Number of messages that were received before the interim response
+     */
+    private long interimPosition;
+
+    /**
+     * Number of received messages, only accessed by the thread receiving the messages
+     */
+    private long receivedMessages;
+
+    /**
+     * Number of messages whose responses have been put on the output queue. Guarded by the pendingResponses lock.
+     */
+    private long completedMessages;
+
+    /**
+     * The thread that is currently processing messages
+     */
+    private volatile Thread processingThread;
+
+    /**
+     * Flag indicating that reading from the channel waits for the content of a {@link StreamingBody}
+     */
+    private volatile boolean blocking = true;
+
+    /**
+     * Histograms to record the latencies of the phases of the messages in or <code>null</code> if latencies are not
+     * recorded
+     */
+    private volatile LatencyHistograms latencyHistograms;
+
+    /**
+     * The address of the client connected to this channel or <code>null</code> if unknown
+     */
+    private volatile SocketAddress remoteAddress;
+
+    /**
+     * The time in nanoseconds at which the first data of the message being received was read, 0 if no message is
+     * being received
+     */
+    private long receiveStart;
+
+    /**
+     * The time in nanoseconds spent parsing the message being received so far
+     */
+    private long parseTime;
+
     /**
      * Mode to be used for writing or reading.
      * 
@@ -85,7 +153,16 @@ public abstract class MessageChannel implements ByteChannel {
      * @author Gerald
      */
     public enum LifecycleEvents implements Event<Object>, Event.Type {
-        OUTPUT_QUEUE_EMPTY, ;
+        OUTPUT_QUEUE_EMPTY,
+        /**
+         * Responses that have been completed asynchronously by another thread than the one processing the messages
+         * were put on the output queue
+         */
+        RESPONSE_READY,
+        /**
+         * Content of a {@link StreamingBody} that could not be read from a non-blocking channel has become available
+         */
+        OUTPUT_AVAILABLE, ;
 
         @Override
         public Object getEventData() {
@@ -116,6 +193,7 @@ public abstract class MessageChannel implements ByteChannel {
         this.inMessageQueue = new ConcurrentLinkedQueue<>();
         this.options = new ConcurrentHashMap<>();
         this.eventSubscriptions = new ConcurrentHashMap<>();
+        this.pendingResponses = new ArrayDeque<>();
 
     }
 
@@ -135,8 +213,11 @@ public abstract class MessageChannel implements ByteChannel {
         } else if (this.outMessageQueue.peek() != null) {
             message = this.outMessageQueue.remove();
             mode = Mode.BEGIN;
+            if (!this.blocking && message.getBody() instanceof StreamingBody) {
+                this.configureNonBlocking((StreamingBody) message.getBody());
+            }
         } else {
-            this.fireEvent(LifecycleEvents.OUTPUT_QUEUE_EMPTY);
+            this.fireOutputQueueEmpty();
             return -1;
         }
 
@@ -144,7 +225,7 @@ public abstract class MessageChannel implements ByteChannel {
         if (dataLength != -1) {
             this.suspendWriteToBuffer(message);
         } else if (this.outMessageQueue.isEmpty()) {
-            this.fireEvent(LifecycleEvents.OUTPUT_QUEUE_EMPTY);
+            this.fireOutputQueueEmpty();
         }
         return dataLength;
     }
@@ -166,33 +247,338 @@ public abstract class MessageChannel implements ByteChannel {
         return this.readMessageFromBuffer(byteBuffer, mode);
     }
 
+    /**
+     * Adjusts the blocking mode of the channel. In non-blocking mode reading the content of a {@link StreamingBody}
+     * doesn't wait for its producer. If no content is available, the read operation returns 0 and the
+     * {@link LifecycleEvents#OUTPUT_AVAILABLE} event is fired once the producer has continued. The channel is blocking
+     * by default.
+     * 
+     * @param block
+     *            <code>true</code> to wait for streamed content, <code>false</code> for non-blocking mode
+     */
+    public void configureBlocking(final boolean block) {
+        this.blocking = block;
+    }
+
+    /**
+     * @return <code>true</code> if reading from the channel waits for streamed content
+     */
+    public boolean isBlocking() {
+        return this.blocking;
+    }
+
+    /**
+     * Switches the body to non-blocking mode, so that the continuation of its producer is signaled by the
+     * {@link LifecycleEvents#OUTPUT_AVAILABLE} event
+     * 
+     * @param body
+     *            the body of the message to be written
+     */
+    private void configureNonBlocking(final StreamingBody body) {
+        body.configureNonBlocking(new Runnable() {
+
+            @Override
+            public void run() {
+                MessageChannel.this.fireEvent(LifecycleEvents.OUTPUT_AVAILABLE);
+            }
+        });
+    }
+
+    /**
+     * Checks if the body of the partially written message is a file region that can be transferred directly. This is
+     * the case after the header of a message with a {@link FileRegionBody} has been read from the channel.
+     */
+    @Override
+    public boolean hasTransferableRegion() {
+        final Message message = this.partialWrittenMessage;
+        return message != null && isTransferable(message.getBody());
+    }
+
+    @Override
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        if (!this.open.get()) {
+            throw new IOException("MessageChannel already closed");
+        }
+        if (!this.hasTransferableRegion()) {
+            return -1;
+        }
+        final FileRegionBody body = (FileRegionBody) this.partialWrittenMessage.getBody();
+        final long dataLength = body.transferTo(target);
+        LOG.debug("Body transferred, {} Bytes", dataLength);
+        if (body.getRemaining() == 0) {
+            // the message is complete
+            this.partialWrittenMessage = null;
+            if (this.outMessageQueue.isEmpty()) {
+                this.fireOutputQueueEmpty();
+            }
+        }
+        return dataLength;
+    }
+
+    /**
+     * Fires the {@link LifecycleEvents#OUTPUT_QUEUE_EMPTY} event unless there are responses that have not been
+     * completed yet
+     */
+    private void fireOutputQueueEmpty() {
+        if (!this.hasPendingResponses()) {
+            this.fireEvent(LifecycleEvents.OUTPUT_QUEUE_EMPTY);
+        }
+    }
+
+    /**
+     * Checks if the body is a file region with remaining data
+     * 
+     * @param body
+     *            the body to check
+     * @return <code>true</code> if the body can be transferred directly
+     */
+    private static boolean isTransferable(final Body body) {
+        return body instanceof FileRegionBody && ((FileRegionBody) body).getRemaining() > 0;
+    }
+
     @Override
     public boolean isOpen() {
         return this.open.get();
     }
 
+    /**
+     * Closes the channel. The bodies of messages that have not been sent completely are closed as well, so that their
+     * resources are released and producers of streamed content are stopped. The same applies to received messages that
+     * have not been processed, whose bodies may be spooled to temporary files.
+     */
     @Override
     public void close() throws IOException {
         this.open.set(false);
+        closeBody(this.discardPartiallyWrittenMessage());
+        Message message;
+        while ((message = this.outMessageQueue.poll()) != null) {
+            closeBody(message);
+        }
+        while ((message = this.inMessageQueue.poll()) != null) {
+            closeBody(message);
+        }
+    }
+
+    /**
+     * Closes the channel of a binary body
+     * 
+     * @param message
+     *            the message whose body should be closed, may be <code>null</code>
+     */
+    private static void closeBody(final Message message) {
+        if (message != null && message.getBody() instanceof BinaryBody) {
+            final ReadableByteChannel channel = ((BinaryBody) message.getBody()).getByteChannel();
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOG.warn("Could not close body", e);
+            }
+        }
     }
 
     /**
      * Processes all read messages and by this creates response message that can be read. The processing of the input
-     * messages is delegated to the {@link Protocol} and its process method.
+     * messages is delegated to the {@link Protocol} and its processAsync method. Responses that are completed
+     * asynchronously are put on the output queue in the order of the input messages once they are available, which is
+     * signaled by the {@link LifecycleEvents#RESPONSE_READY} event. A {@link SpoolingBody} of an input message is
+     * released after the message has been processed.
      * 
      * @return this channel
      */
     public MessageChannel processMessages() {
         final Protocol protocol = this.getProtocol();
-        while (this.hasMessage()) {
-            final Message response = protocol.process(this.readMessage());
-            if (response != null) {
-                this.write(response);
+        this.processingThread = Thread.currentThread();
+        try {
+            while (this.hasMessage()) {
+                this.processMessage(protocol, this.readMessage());
             }
+        } finally {
+            this.processingThread = null;
         }
         return this;
     }
 
+    /**
+     * Checks if there are messages whose responses have not been completed yet. Their responses will be written to
+     * the output queue later on.
+     * 
+     * @return <code>true</code> if there are responses pending
+     */
+    public boolean hasPendingResponses() {
+        synchronized (this.pendingResponses) {
+            return !this.pendingResponses.isEmpty();
+        }
+    }
+
+    private void processMessage(final Protocol protocol, final Message request) {
+        final PendingResponse pending = new PendingResponse();
+        synchronized (this.pendingResponses) {
+            this.pendingResponses.offer(pending);
+        }
+        final long start = System.nanoTime();
+        final CompletionStage<? extends Message> response;
+        try {
+            response = protocol.processAsync(request);
+        } catch (final RuntimeException e) {
+            this.completeResponse(pending, request, null);
+            throw e;
+        }
+        response.whenComplete(new BiConsumer<Message, Throwable>() {
+
+            @Override
+            public void accept(final Message message, final Throwable failure) {
+                if (failure != null) {
+                    LOG.error("Could not process message", failure);
+                }
+                final long duration = System.nanoTime() - start;
+                MessageChannel.this.recordLatency(RequestPhase.PROCESS, duration);
+                MessageChannel.this.messageProcessed(request, message, duration);
+                MessageChannel.this.completeResponse(pending, request, message);
+            }
+        });
+    }
+
+    /**
+     * Called when the response to a message is available, before it is put on the output queue. The default
+     * implementation does nothing.
+     * 
+     * @param request
+     *            the processed message
+     * @param response
+     *            the response or <code>null</code> if processing failed
+     * @param durationNanos
+     *            the time it took to process the message
+     */
+    protected void messageProcessed(final Message request, final Message response, final long durationNanos) {
+        // no-op by default
+    }
+
+    /**
+     * Sets the address of the client connected to this channel
+     * 
+     * @param remoteAddress
+     *            the address of the client
+     */
+    public void setRemoteAddress(final SocketAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * @return the address of the client connected to this channel or <code>null</code> if unknown
+     */
+    public SocketAddress getRemoteAddress() {
+        return this.remoteAddress;
+    }
+
+    /**
+     * Sets the histograms to record the latencies of the phases of the messages in. The channel records the time of
+     * receiving, parsing and processing the messages and of serializing the headers of the responses.
+     * 
+     * @param latencyHistograms
+     *            the histograms or <code>null</code> if no latencies should be recorded
+     */
+    public void setLatencyHistograms(final LatencyHistograms latencyHistograms) {
+        this.latencyHistograms = latencyHistograms;
+    }
+
+    /**
+     * @return the histograms the latencies of the messages are recorded in or <code>null</code> if latencies are not
+     *         recorded
+     */
+    public LatencyHistograms getLatencyHistograms() {
+        return this.latencyHistograms;
+    }
+
+    /**
+     * Records the latency of a phase if histograms have been set
+     * 
+     * @param phase
+     *            the phase of the message
+     * @param nanos
+     *            the duration of the phase in nanoseconds
+     */
+    protected void recordLatency(final RequestPhase phase, final long nanos) {
+        final LatencyHistograms histograms = this.latencyHistograms;
+        if (histograms != null) {
+            histograms.record(phase, nanos);
+        }
+    }
+
+    /**
+     * Completes the response of a message and puts all completed responses that are next in order on the output queue.
+     * If this happens on another thread than the one processing the messages, the
+     * {@link LifecycleEvents#RESPONSE_READY} event is fired.
+     * 
+     * @param pending
+     *            the pending response of the message
+     * @param request
+     *            the processed message
+     * @param response
+     *            the response or <code>null</code> if there is none
+     */
+    private void completeResponse(final PendingResponse pending, final Message request, final Message response) {
+        // release the memory or temporary file of a received body
+        if (request.getBody() instanceof SpoolingBody) {
+            closeBody(request);
+        }
+        boolean ready = false;
+        synchronized (this.pendingResponses) {
+            pending.response = response;
+            pending.completed = true;
+            PendingResponse next = this.pendingResponses.peek();
+            while (next != null && next.completed) {
+                this.pendingResponses.remove();
+                if (next.response != null) {
+                    if (this.open.get()) {
+                        this.write(next.response);
+                    } else {
+                        closeBody(next.response);
+                    }
+                }
+                this.completedMessages++;
+                this.writeInterimResponseInOrder();
+                ready = true;
+                next = this.pendingResponses.peek();
+            }
+        }
+        if (ready && Thread.currentThread() != this.processingThread) {
+            this.fireEvent(LifecycleEvents.RESPONSE_READY);
+        }
+    }
+
+    /**
+     * Puts an interim response, i.e. a response that is sent while its message is still being received, on the output
+     * queue. The response is sent after the responses of all messages that have been received before, so it may be
+     * deferred until they have been completed. It is always sent before the final response of the message being
+     * received. Must be called by the thread receiving the messages.
+     * 
+     * @param interim
+     *            the interim response for the message that is being received
+     */
+    protected void writeInterimResponse(final Message interim) {
+        synchronized (this.pendingResponses) {
+            this.interimResponse = interim;
+            this.interimPosition = this.receivedMessages;
+            this.writeInterimResponseInOrder();
+        }
+    }
+
+    /**
+     * Puts the interim response on the output queue if the responses of all messages received before it are on the
+     * output queue. The caller must hold the pendingResponses lock.
+     */
+    private void writeInterimResponseInOrder() {
+        if (this.interimResponse != null && this.completedMessages == this.interimPosition) {
+            if (this.open.get()) {
+                this.write(this.interimResponse);
+            }
+            this.interimResponse = null;
+        }
+    }
+
     /**
      * Sets an option on the channel.
      * 
@@ -290,6 +676,17 @@ public abstract class MessageChannel implements ByteChannel {
         return this.partialWrittenMessage != null;
     }
 
+    /**
+     * Checks if there is output that has not been read from the channel yet, either a partially written message or
+     * messages in the output queue. Non-blocking callers may use this method to determine if the next read operation
+     * would produce data.
+     *
+     * @return <code>true</code> if there is pending output
+     */
+    public boolean hasPendingOutput() {
+        return this.partialWrittenMessage != null || this.outMessageQueue.peek() != null;
+    }
+
     /**
      * Suspends the read processes and puts the partially read message on hold. Upon the next write call the message
      * will be resumed.
@@ -351,9 +748,10 @@ public abstract class MessageChannel implements ByteChannel {
     private int readMessageFromBuffer(final ByteBuffer src, final Mode mode) throws IOException {
         switch (mode) {
             case BEGIN:
-                return this.readMessage(src);
             case CONTINUE:
-                break;
+                // the protocol parser keeps the state of partially received messages, so a message that has been
+                // split across several buffers is continued the same way a new message is started
+                return this.readMessage(src);
             default:
                 break;
         }
@@ -361,24 +759,44 @@ public abstract class MessageChannel implements ByteChannel {
     }
 
     /**
-     * Reads a message from the byte buffer. Upon finishing the read operation the callback is notified that a message
-     * has been read. <br>
-     * The method does not support reading of large data (yet).
+     * Reads messages from the byte buffer. Each completely parsed message is put into the input queue, so a buffer may
+     * contain several (pipelined) messages. If the buffer ends with an incomplete message, the parser consumes the
+     * data and completes the message with the next buffer. <br>
+     * If the data can not be parsed, the remaining data of the buffer is discarded.
      * 
      * @param src
      *            the src buffer from which to read the data
-     * @param callback
-     *            the callback that is notified when a message has been read
      * @return the number of bytes read or -1 if the entire data has been read
      * @throws IOException
      */
     private int readMessage(final ByteBuffer src) throws IOException {
         final int dataLength = src.limit();
         try {
-            final Message message = this.parseMessage(src);
-            this.receiveIncomingMessage(message);
+            while (src.hasRemaining()) {
+                final int position = src.position();
+                final long start = System.nanoTime();
+                if (this.receiveStart == 0) {
+                    this.receiveStart = start;
+                }
+                final Message message = this.parseMessage(src);
+                final long end = System.nanoTime();
+                this.parseTime += end - start;
+                if (message != null) {
+                    this.recordLatency(RequestPhase.RECEIVE, end - this.receiveStart);
+                    this.recordLatency(RequestPhase.PARSE, this.parseTime);
+                    this.receiveStart = 0;
+                    this.parseTime = 0;
+                    this.receiveIncomingMessage(message);
+                }
+                if (message == null || src.position() == position) {
+                    break;
+                }
+            }
         } catch (final ProtocolException e) {
             LOG.warn("Could not parse request", e);
+            src.position(src.limit());
+            this.receiveStart = 0;
+            this.parseTime = 0;
             if (this.hasSubscribers(ErrorEvents.PARSE_ERROR)) {
                 this.fireEvent(new BaseEvent<ProtocolException>(ErrorEvents.PARSE_ERROR, e));
             }
@@ -394,6 +812,7 @@ public abstract class MessageChannel implements ByteChannel {
      * @param message
      */
     protected void receiveIncomingMessage(final Message message) {
+        this.receivedMessages++;
         this.inMessageQueue.offer(message);
     }
 
@@ -426,7 +845,8 @@ public abstract class MessageChannel implements ByteChannel {
      * of the message is larger than the space left (remaining) in the buffer, it is written partially and continued
      * upon the next invocation of read (see superclass). <br>
      * The default implementation writes the header of the message completely and streams the content of an optional
-     * {@link BinaryBody}.
+     * {@link BinaryBody}. The content of a {@link FileRegionBody} is not written with the header, so that the consumer
+     * may transfer it directly. Otherwise it is written upon the next invocation of read.
      * 
      * @param message
      *            the message to be sent
@@ -437,7 +857,14 @@ public abstract class MessageChannel implements ByteChannel {
      */
     protected int writeMessage(final Message message, final ByteBuffer dst) throws IOException {
 
+        // the serialization is measured here, so that it is recorded for implementations of writeHeader as well
+        final long serializeStart = System.nanoTime();
         final int headerLength = this.writeHeader(message.getHeader(), dst, message.getCharset());
+        this.recordLatency(RequestPhase.SERIALIZE, System.nanoTime() - serializeStart);
+
+        if (isTransferable(message.getBody())) {
+            return headerLength;
+        }
 
         final int bodyLength = this.writeBody(message.getBody(), dst);
 
@@ -544,11 +971,12 @@ public abstract class MessageChannel implements ByteChannel {
     }
 
     /**
-     * Parses an entire request from the given byteBuffer.
+     * Parses a request from the given byteBuffer. Implementations may consume the data of an incomplete request and
+     * continue parsing it with the next buffer.
      * 
      * @param src
      *            the buffer containing the data that should be parsed
-     * @return the parsed message
+     * @return the parsed message or <code>null</code> if the buffer did not contain a complete message
      * @throws ProtocolException
      *             if the buffer contained data that were not parseable by the underlying protocol
      * @throws IOException
@@ -565,4 +993,14 @@ public abstract class MessageChannel implements ByteChannel {
      */
     protected abstract CharBuffer serializeHeader(Header header);
 
+    /**
+     * Slot for the response of a message that is being processed
+     * 
+     * @author Gerald
+     */
+    private static final class PendingResponse {
+        private Message response;
+        private boolean completed;
+    }
+
 }
@@ -22,6 +22,19 @@ public final class MessageChannelOptions<T> implements MessageChannelOption<T> {
     public static final MessageChannelOptions<Integer> KEEP_ALIVE_MAX_MESSAGES = new MessageChannelOptions<>(
             "maxMessagesPerConnection", Integer.class, 100, StandardConverters.INTEGER_CONVERTER);
 
+    /**
+     * Maximum size in bytes of the body of a received message. Larger messages are rejected.
+     */
+    public static final MessageChannelOptions<Long> MAX_BODY_SIZE = new MessageChannelOptions<>("maxBodySize",
+            Long.class, 10L * 1024 * 1024, StandardConverters.LONG_CONVERTER);
+
+    /**
+     * Number of bytes of the body of a received message that are kept in memory. Larger bodies are spilled to a
+     * temporary file.
+     */
+    public static final MessageChannelOptions<Integer> BODY_MEMORY_THRESHOLD = new MessageChannelOptions<>(
+            "bodyMemoryThreshold", Integer.class, 64 * 1024, StandardConverters.INTEGER_CONVERTER);
+
     private final String name;
     private final Class<T> type;
     private final T defaultValue;
@@ -3,6 +3,8 @@
  */
 package li.moskito.awtt.protocol;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * A protocol defines a set of Messages to be exchanged between two communication partners and the semantic how those
@@ -36,4 +38,31 @@ public interface Protocol {
      */
     Message process(Message message);
 
+    /**
+     * Processes the message asynchronously. The response may be completed on another thread, i.e. once a handler has
+     * finished waiting for I/O, so that the thread of the connection is not blocked. The default implementation
+     * processes the message synchronously.
+     * 
+     * @param message
+     *            the message to be processed
+     * @return the stage completing with the message that should be returned in response to the input message or
+     *         <code>null</code> if there is no response
+     */
+    default CompletionStage<? extends Message> processAsync(final Message message) {
+        return CompletableFuture.completedFuture(this.process(message));
+    }
+
+    /**
+     * Creates the message sent to a client whose connection is rejected because the server is overloaded, before the
+     * connection is closed. The default implementation returns <code>null</code>, so that the connection is closed
+     * without a message.
+     * 
+     * @param retryAfterSeconds
+     *            the time after which the client may try again
+     * @return the message or <code>null</code> if the protocol has no such message
+     */
+    default Message createOverloadedResponse(final int retryAfterSeconds) {
+        return null;
+    }
+
 }
@@ -0,0 +1,197 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A body that is received incrementally, i.e. the body of a request that arrives in several packets. The content is
+ * appended as it is received and kept in memory up to a threshold. Larger content is spilled to a temporary file that
+ * is deleted when the channel of the body is closed. <br>
+ * Once the body is complete, its content can be read from the channel of the body.
+ *
+ * @author Gerald
+ */
+public class SpoolingBody extends BinaryBody {
+
+    /**
+     * Initial capacity of the memory buffer if the length of the content is unknown
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * @param memoryThreshold
+     *            the maximum number of bytes that are kept in memory
+     * @param expectedLength
+     *            the length of the content if known in advance or -1
+     */
+    public SpoolingBody(final int memoryThreshold, final long expectedLength) {
+        super(new SpoolChannel(memoryThreshold, expectedLength));
+    }
+
+    /**
+     * Appends the remaining data of the buffer to the content
+     *
+     * @param src
+     *            the buffer containing the data to be appended. The buffer is consumed completely.
+     * @throws IOException
+     *             if the data could not be spilled to the temporary file
+     */
+    public void append(final ByteBuffer src) throws IOException {
+        this.getSpoolChannel().append(src);
+    }
+
+    /**
+     * Marks the content as complete, so that it can be read from the channel of the body
+     *
+     * @throws IOException
+     *             if the temporary file could not be rewound
+     */
+    public void complete() throws IOException {
+        this.getSpoolChannel().complete();
+    }
+
+    /**
+     * @return the number of bytes appended to the body
+     */
+    public long getLength() {
+        return this.getSpoolChannel().length;
+    }
+
+    /**
+     * @return <code>true</code> if the content has been spilled to a temporary file
+     */
+    public boolean isSpooled() {
+        return this.getSpoolChannel().file != null;
+    }
+
+    private SpoolChannel getSpoolChannel() {
+        return (SpoolChannel) this.getByteChannel();
+    }
+
+    /**
+     * Channel reading the content from memory or from the temporary file.
+     *
+     * @author Gerald
+     */
+    private static final class SpoolChannel implements ByteChannel {
+
+        private final int memoryThreshold;
+        private ByteBuffer memory;
+        private FileChannel file;
+        private long length;
+        private boolean completed;
+        private boolean open = true;
+
+        SpoolChannel(final int memoryThreshold, final long expectedLength) {
+            this.memoryThreshold = memoryThreshold;
+            final long capacity = expectedLength < 0
+                    ? INITIAL_CAPACITY
+                    : expectedLength;
+            this.memory = ByteBuffer.allocate((int) Math.min(capacity, memoryThreshold));
+        }
+
+        void append(final ByteBuffer src) throws IOException {
+            if (!this.open) {
+                throw new ClosedChannelException();
+            }
+            if (this.completed) {
+                throw new IllegalStateException("Body is already complete");
+            }
+            this.length += src.remaining();
+            if (this.file == null) {
+                if (this.memory.position() + src.remaining() <= this.memoryThreshold) {
+                    this.ensureCapacity(src.remaining());
+                    this.memory.put(src);
+                    return;
+                }
+                this.spill();
+            }
+            while (src.hasRemaining()) {
+                this.file.write(src);
+            }
+        }
+
+        void complete() throws IOException {
+            this.completed = true;
+            if (this.file == null) {
+                this.memory.flip();
+            } else {
+                this.file.position(0);
+            }
+        }
+
+        private void ensureCapacity(final int required) {
+            if (this.memory.remaining() < required) {
+                final int capacity = Math.min(this.memoryThreshold,
+                        Math.max(this.memory.capacity() * 2, this.memory.position() + required));
+                final ByteBuffer grown = ByteBuffer.allocate(capacity);
+                this.memory.flip();
+                grown.put(this.memory);
+                this.memory = grown;
+            }
+        }
+
+        /**
+         * Moves the content from memory to a temporary file that is deleted when the channel is closed
+         */
+        private void spill() throws IOException {
+            this.file = FileChannel.open(Files.createTempFile("awtt-body", ".tmp"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            this.memory.flip();
+            while (this.memory.hasRemaining()) {
+                this.file.write(this.memory);
+            }
+            this.memory = null;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (!this.open) {
+                throw new ClosedChannelException();
+            }
+            if (!this.completed) {
+                throw new IllegalStateException("Body has not been received completely");
+            }
+            if (this.file != null) {
+                return this.file.read(dst);
+            }
+            if (!this.memory.hasRemaining()) {
+                return -1;
+            }
+            final int length = Math.min(dst.remaining(), this.memory.remaining());
+            final int limit = this.memory.limit();
+            this.memory.limit(this.memory.position() + length);
+            dst.put(this.memory);
+            this.memory.limit(limit);
+            return length;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.open = false;
+            this.memory = null;
+            if (this.file != null) {
+                this.file.close();
+            }
+        }
+    }
+}
@@ -31,6 +31,16 @@ public final class StandardConverters {
         }
     };
 
+    /**
+     * Converts the string to long
+     */
+    public static final ValueConverter<Long> LONG_CONVERTER = new ValueConverter<Long>() {
+        @Override
+        public Long convert(final String value) {
+            return Long.valueOf(value);
+        }
+    };
+
     /**
      * Converts the string to boolan
      */
@@ -0,0 +1,328 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A body whose content is produced while it is sent, i.e. generated content of unknown length. The producer writes the
+ * content into the {@link #getSink() sink} and closes the sink when the content is complete. The content is passed to
+ * the channel of the body through a bounded buffer, so the producer is blocked while the buffer is full and the memory
+ * used by the body remains constant regardless of the length of the content. <br>
+ * The producer has to run on another thread than the one sending the body. Reading from the channel of the body blocks
+ * until the producer has written data or closed the sink, unless the channel has been switched to non-blocking mode.
+ * <br>
+ * Trailer fields added before the sink is closed are sent after the content if the protocol supports it.
+ *
+ * @author Gerald
+ */
+public class StreamingBody extends BinaryBody {
+
+    /**
+     * Default capacity of the buffer between producer and channel, 16 KB
+     */
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    private final List<HeaderField> trailers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a body with the default capacity
+     */
+    public StreamingBody() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the number of bytes the producer may write ahead of the channel
+     */
+    public StreamingBody(final int capacity) {
+        super(new PipeChannel(capacity));
+    }
+
+    /**
+     * The channel the producer writes the content to. Writing blocks while the buffer is full. Closing the sink marks
+     * the end of the content. If the channel of the body has been closed, i.e. because the connection has been closed,
+     * writing fails with a {@link ClosedChannelException}.
+     *
+     * @return the sink for the content
+     */
+    public WritableByteChannel getSink() {
+        return this.getPipeChannel().sink;
+    }
+
+    /**
+     * Aborts the body because the producer failed. Reading from the channel of the body fails with an
+     * {@link IOException} then, so that the receiver is able to recognize the incomplete content.
+     *
+     * @param cause
+     *            the reason for the abort
+     */
+    public void abort(final Throwable cause) {
+        this.getPipeChannel().abort(cause);
+    }
+
+    /**
+     * Adds a trailer field that is sent after the content. Trailer fields have to be added before the sink is closed.
+     *
+     * @param field
+     *            the trailer field
+     */
+    public void addTrailer(final HeaderField field) {
+        this.trailers.add(field);
+    }
+
+    /**
+     * @return the trailer fields, the list is complete once the channel of the body reached its end
+     */
+    public List<HeaderField> getTrailers() {
+        return Collections.unmodifiableList(this.trailers);
+    }
+
+    /**
+     * Switches the channel of the body to non-blocking mode. Reading from the channel returns 0 instead of waiting if
+     * the producer has not written data yet. Once the producer writes data, closes the sink or aborts the body after
+     * such a read, the listener is invoked on the thread of the producer. The listener must not block.
+     *
+     * @param availabilityListener
+     *            the listener to notify once data is available again
+     */
+    void configureNonBlocking(final Runnable availabilityListener) {
+        this.getPipeChannel().configureNonBlocking(availabilityListener);
+    }
+
+    private PipeChannel getPipeChannel() {
+        return (PipeChannel) this.getByteChannel();
+    }
+
+    /**
+     * Channel reading the content from the buffer that is filled by the sink.
+     *
+     * @author Gerald
+     */
+    private static final class PipeChannel implements ByteChannel {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = this.lock.newCondition();
+        private final Condition notFull = this.lock.newCondition();
+
+        /**
+         * The buffer in fill mode, the data to be read is located between 0 and the position
+         */
+        private final ByteBuffer buffer;
+
+        private final Sink sink = new Sink();
+
+        private boolean open = true;
+        private boolean finished;
+        private Throwable abortCause;
+
+        /**
+         * Listener notified when data becomes available in non-blocking mode, <code>null</code> in blocking mode
+         */
+        private Runnable availabilityListener;
+
+        /**
+         * Flag indicating that a non-blocking read found no data, so the listener has to be notified
+         */
+        private boolean readerWaiting;
+
+        PipeChannel(final int capacity) {
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            this.lock.lock();
+            try {
+                while (this.availabilityListener == null && this.buffer.position() == 0 && !this.finished
+                        && this.abortCause == null && this.open) {
+                    this.await(this.notEmpty);
+                }
+                if (!this.open) {
+                    throw new ClosedChannelException();
+                }
+                if (this.abortCause != null) {
+                    throw new IOException("Content could not be produced", this.abortCause);
+                }
+                if (this.buffer.position() == 0) {
+                    if (this.finished) {
+                        return -1;
+                    }
+                    // non-blocking mode, the reader is notified once the producer continues
+                    this.readerWaiting = true;
+                    return 0;
+                }
+                this.buffer.flip();
+                final int length = Math.min(dst.remaining(), this.buffer.remaining());
+                final int limit = this.buffer.limit();
+                this.buffer.limit(this.buffer.position() + length);
+                dst.put(this.buffer);
+                this.buffer.limit(limit);
+                this.buffer.compact();
+                this.notFull.signal();
+                return length;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            this.lock.lock();
+            try {
+                return this.open;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            this.lock.lock();
+            try {
+                this.open = false;
+                this.notFull.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void abort(final Throwable cause) {
+            final Runnable listener;
+            this.lock.lock();
+            try {
+                this.abortCause = cause;
+                this.notEmpty.signalAll();
+                this.notFull.signalAll();
+                listener = this.takeWaitingReader();
+            } finally {
+                this.lock.unlock();
+            }
+            notifyReader(listener);
+        }
+
+        void configureNonBlocking(final Runnable listener) {
+            this.lock.lock();
+            try {
+                this.availabilityListener = listener;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Checks if a non-blocking reader waits for data. The lock has to be held by the caller.
+         *
+         * @return the listener to notify after the lock has been released or <code>null</code> if no reader waits
+         */
+        private Runnable takeWaitingReader() {
+            if (!this.readerWaiting) {
+                return null;
+            }
+            this.readerWaiting = false;
+            return this.availabilityListener;
+        }
+
+        private static void notifyReader(final Runnable listener) {
+            if (listener != null) {
+                listener.run();
+            }
+        }
+
+        private void await(final Condition condition) throws InterruptedIOException {
+            try {
+                condition.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the streaming body");
+            }
+        }
+
+        /**
+         * Channel writing the content into the buffer
+         *
+         * @author Gerald
+         */
+        private final class Sink implements WritableByteChannel {
+
+            @Override
+            public int write(final ByteBuffer src) throws IOException {
+                final PipeChannel pipe = PipeChannel.this;
+                final int length = src.remaining();
+                Runnable listener = null;
+                pipe.lock.lock();
+                try {
+                    while (src.hasRemaining()) {
+                        while (!pipe.buffer.hasRemaining() && pipe.open && pipe.abortCause == null) {
+                            // a non-blocking reader has to be notified before waiting for it to drain the buffer
+                            notifyReader(listener);
+                            listener = null;
+                            pipe.await(pipe.notFull);
+                        }
+                        if (!pipe.open || pipe.finished || pipe.abortCause != null) {
+                            throw new ClosedChannelException();
+                        }
+                        final int chunk = Math.min(src.remaining(), pipe.buffer.remaining());
+                        final int limit = src.limit();
+                        src.limit(src.position() + chunk);
+                        pipe.buffer.put(src);
+                        src.limit(limit);
+                        pipe.notEmpty.signal();
+                        if (listener == null) {
+                            listener = pipe.takeWaitingReader();
+                        }
+                    }
+                } finally {
+                    pipe.lock.unlock();
+                    // the reader may have to drain the buffer before more data can be written
+                    notifyReader(listener);
+                }
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                final PipeChannel pipe = PipeChannel.this;
+                pipe.lock.lock();
+                try {
+                    return pipe.open && !pipe.finished && pipe.abortCause == null;
+                } finally {
+                    pipe.lock.unlock();
+                }
+            }
+
+            @Override
+            public void close() {
+                final PipeChannel pipe = PipeChannel.this;
+                final Runnable listener;
+                pipe.lock.lock();
+                try {
+                    pipe.finished = true;
+                    pipe.notEmpty.signalAll();
+                    listener = pipe.takeWaitingReader();
+                } finally {
+                    pipe.lock.unlock();
+                }
+                notifyReader(listener);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import li.moskito.awtt.protocol.http.HTTP.ResponseOptions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protocol Handler for the HTTP protocol that creates its responses asynchronously. Handlers that wait for I/O, i.e.
+ * for a file system or an upstream service, override the onXXXAsync event methods and complete the returned stage
+ * once the response is available, so that the thread of the connection is not blocked in the meantime. The responses
+ * of a connection are sent in the order of the requests regardless of the order in which they are completed. <br>
+ * By default, the onXXXAsync methods delegate to the synchronous onXXX methods.
+ *
+ * @author Gerald
+ */
+public class AsyncHttpProtocolHandler extends HttpProtocolHandler {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpProtocolHandler.class);
+
+    /**
+     * Processes the request synchronously by waiting for the completion of {@link #processAsync(HttpRequest)}.
+     */
+    @Override
+    public HttpResponse process(final HttpRequest httpRequest) {
+        return this.processAsync(httpRequest).toCompletableFuture().join();
+    }
+
+    /**
+     * Processes the request by invoking the onXXXAsync event method of its command
+     *
+     * @param httpRequest
+     *            the request to process
+     * @return the stage completing with the response
+     */
+    public CompletionStage<HttpResponse> processAsync(final HttpRequest httpRequest) {
+
+        final CompletionStage<HttpResponse> response;
+        switch (httpRequest.getCommand()) {
+            case GET:
+                response = this.onGetAsync(httpRequest);
+                break;
+            case POST:
+                response = this.onPostAsync(httpRequest);
+                break;
+            case PUT:
+                response = this.onPutAsync(httpRequest);
+                break;
+            case DELETE:
+                response = this.onDeleteAsync(httpRequest);
+                break;
+            case HEAD:
+                response = this.onHeadAsync(httpRequest);
+                break;
+            case OPTIONS:
+                response = this.onOptionsAsync(httpRequest);
+                break;
+            case CONNECT:
+                response = this.onConnectAsync(httpRequest);
+                break;
+            case TRACE:
+                response = this.onTraceAsync(httpRequest);
+                break;
+            default:
+                LOG.warn("Unsuppported Command '{}'", httpRequest.getCommand());
+                response = CompletableFuture.completedFuture(HTTP.createResponse(HttpStatusCodes.BAD_REQUEST,
+                        ResponseOptions.FORCE_CLOSE));
+                break;
+        }
+
+        return response;
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onGetAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onGet(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onPostAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onPost(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onPutAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onPut(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onDeleteAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onDelete(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onHeadAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onHead(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onOptionsAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onOptions(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onConnectAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onConnect(httpRequest));
+    }
+
+    /**
+     * @param httpRequest
+     * @return
+     */
+    protected CompletionStage<HttpResponse> onTraceAsync(final HttpRequest httpRequest) {
+        return CompletableFuture.completedFuture(this.onTrace(httpRequest));
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of a representation as requested with the Range header (RFC 7233). A range is resolved against the
+ * size of the representation, so first and last position are absolute and inclusive.
+ *
+ * @author Gerald
+ */
+public final class ByteRange {
+
+    /**
+     * The only range unit defined by HTTP
+     */
+    public static final String BYTES_UNIT = "bytes";
+
+    /**
+     * Maximum number of ranges accepted in a Range header. Requests for more ranges are served completely.
+     */
+    public static final int MAX_RANGES = 16;
+
+    private static final Comparator<ByteRange> BY_FIRST = new Comparator<ByteRange>() {
+
+        @Override
+        public int compare(final ByteRange r1, final ByteRange r2) {
+            return Long.compare(r1.first, r2.first);
+        }
+    };
+
+    private final long first;
+    private final long last;
+
+    /**
+     * @param first
+     *            the position of the first byte of the range
+     * @param last
+     *            the position of the last byte of the range
+     */
+    public ByteRange(final long first, final long last) {
+        if (first < 0 || last < first) {
+            throw new IllegalArgumentException("Invalid range " + first + "-" + last);
+        }
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Parses the value of a Range header and resolves the ranges against the size of the representation. Ranges that
+     * overlap or are adjacent are coalesced, the resulting ranges are ordered by position.
+     *
+     * @param value
+     *            the value of the Range header
+     * @param size
+     *            the size of the representation in bytes
+     * @return the satisfiable ranges which is an empty list if none of the ranges is satisfiable, or <code>null</code>
+     *         if the header is not valid or requests too many ranges and should be ignored
+     */
+    public static List<ByteRange> parse(final String value, final long size) {
+        if (value == null || !value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        int pos = skipWhitespace(value, BYTES_UNIT.length());
+        if (pos == value.length() || value.charAt(pos) != '=') {
+            return null;
+        }
+        pos++;
+        final List<ByteRange> ranges = new ArrayList<>();
+        int count = 0;
+        while (pos < value.length()) {
+            int end = value.indexOf(',', pos);
+            if (end == -1) {
+                end = value.length();
+            }
+            final String spec = value.substring(pos, end).trim();
+            pos = end + 1;
+            if (spec.isEmpty()) {
+                // empty list elements are allowed
+                continue;
+            }
+            if (++count > MAX_RANGES) {
+                return null;
+            }
+            final int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            final long first = parseNumber(spec, 0, dash);
+            final long last = parseNumber(spec, dash + 1, spec.length());
+            if (first == -1) {
+                // suffix range with the length of the final part
+                if (last < 0) {
+                    return null;
+                }
+                if (last > 0 && size > 0) {
+                    ranges.add(new ByteRange(Math.max(0, size - last), size - 1));
+                }
+            } else if (first < -1 || last < -1 || last != -1 && last < first) {
+                return null;
+            } else if (first < size) {
+                ranges.add(new ByteRange(first, last == -1 || last >= size
+                        ? size - 1
+                        : last));
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return coalesce(ranges);
+    }
+
+    /**
+     * @return the position of the first byte of the range
+     */
+    public long getFirst() {
+        return this.first;
+    }
+
+    /**
+     * @return the position of the last byte of the range
+     */
+    public long getLast() {
+        return this.last;
+    }
+
+    /**
+     * @return the number of bytes of the range
+     */
+    public long getLength() {
+        return this.last - this.first + 1;
+    }
+
+    /**
+     * Creates the value of the Content-Range header for this range
+     *
+     * @param size
+     *            the size of the complete representation
+     * @return the value of the Content-Range header
+     */
+    public String toContentRange(final long size) {
+        return BYTES_UNIT + ' ' + this.first + '-' + this.last + '/' + size;
+    }
+
+    /**
+     * Creates the value of the Content-Range header of a response to an unsatisfiable range request
+     *
+     * @param size
+     *            the size of the complete representation
+     * @return the value of the Content-Range header
+     */
+    public static String toUnsatisfiedContentRange(final long size) {
+        return BYTES_UNIT + " */" + size;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof ByteRange)) {
+            return false;
+        }
+        final ByteRange other = (ByteRange) obj;
+        return this.first == other.first && this.last == other.last;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (this.first * 31 + this.last);
+    }
+
+    @Override
+    public String toString() {
+        return this.first + "-" + this.last;
+    }
+
+    private static List<ByteRange> coalesce(final List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        Collections.sort(ranges, BY_FIRST);
+        final List<ByteRange> result = new ArrayList<>(ranges.size());
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            final ByteRange next = ranges.get(i);
+            if (next.first <= current.last + 1) {
+                current = new ByteRange(current.first, Math.max(current.last, next.last));
+            } else {
+                result.add(current);
+                current = next;
+            }
+        }
+        result.add(current);
+        return result;
+    }
+
+    /**
+     * @return the number, -1 if the string is empty or -2 if it contains other characters than digits
+     */
+    private static long parseNumber(final String spec, final int start, final int end) {
+        if (start == end) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            final char c = spec.charAt(i);
+            if (c < '0' || c > '9' || number > (Long.MAX_VALUE - 9) / 10) {
+                return -2;
+            }
+            number = number * 10 + c - '0';
+        }
+        return number;
+    }
+
+    private static int skipWhitespace(final String value, final int start) {
+        int pos = start;
+        while (pos < value.length() && (value.charAt(pos) == ' ' || value.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+}
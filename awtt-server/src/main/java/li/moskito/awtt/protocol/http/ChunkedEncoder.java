@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+import li.moskito.awtt.protocol.HeaderField;
+import li.moskito.awtt.protocol.StreamingBody;
+
+/**
+ * Encoder writing the content of a {@link StreamingBody} with the chunked transfer coding (RFC 7230, section 4.1). Each
+ * invocation writes the data that is available as one chunk directly into the destination buffer. The size of the
+ * chunk is written with leading zeros, so that its line has a fixed length and the data can be read behind it without
+ * copying. The content is terminated by the last chunk followed by the trailer fields of the body.
+ *
+ * @author Gerald
+ */
+final class ChunkedEncoder {
+
+    private static final byte[] CRLF = HTTP.CRLF.getBytes(HTTP.CHARSET);
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(HTTP.CHARSET);
+    private static final byte[] LAST_CHUNK = ("0" + HTTP.CRLF).getBytes(HTTP.CHARSET);
+
+    private final StreamingBody body;
+
+    /**
+     * The encoded last chunk and trailer, written once the content is complete
+     */
+    private ByteBuffer trailer;
+
+    private boolean finished;
+
+    /**
+     * @param body
+     *            the body to be encoded
+     */
+    ChunkedEncoder(final StreamingBody body) {
+        this.body = body;
+    }
+
+    /**
+     * Writes the next chunk into the buffer. The invocation blocks until the producer of the body has written data or
+     * completed the content, unless the body has been switched to non-blocking mode by the message channel.
+     *
+     * @param dst
+     *            the buffer to write the chunk to
+     * @return the number of bytes written, 0 if no data is available in non-blocking mode or -1 if the content has been
+     *         written completely
+     * @throws IOException
+     *             if the content could not be read from the body
+     */
+    int encode(final ByteBuffer dst) throws IOException {
+        if (this.finished) {
+            return -1;
+        }
+        final int start = dst.position();
+        if (this.trailer == null && !this.writeChunk(dst)) {
+            return 0;
+        }
+        if (this.trailer != null) {
+            final int length = Math.min(dst.remaining(), this.trailer.remaining());
+            final int limit = this.trailer.limit();
+            this.trailer.limit(this.trailer.position() + length);
+            dst.put(this.trailer);
+            this.trailer.limit(limit);
+            if (!this.trailer.hasRemaining()) {
+                this.finished = true;
+                this.body.getByteChannel().close();
+            }
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Reads the available data of the body into the buffer, framed as chunk
+     *
+     * @return <code>false</code> if the buffer has not enough space for a chunk
+     */
+    private boolean writeChunk(final ByteBuffer dst) throws IOException {
+        final int start = dst.position();
+        final int sizeWidth = Integer.toHexString(dst.remaining()).length();
+        final int dataStart = start + sizeWidth + CRLF.length;
+        if (dst.limit() - dataStart - CRLF.length <= 0) {
+            return false;
+        }
+        final ByteBuffer data = dst.duplicate();
+        data.position(dataStart);
+        data.limit(dst.limit() - CRLF.length);
+        final ReadableByteChannel channel = this.body.getByteChannel();
+        final int length = channel.read(data);
+        if (length == -1) {
+            this.trailer = encodeTrailer(this.body.getTrailers());
+            return true;
+        }
+        if (length == 0) {
+            return false;
+        }
+        int size = length;
+        for (int i = sizeWidth - 1; i >= 0; i--) {
+            dst.put(start + i, HEX_DIGITS[size & 0xf]);
+            size >>>= 4;
+        }
+        dst.position(start + sizeWidth);
+        dst.put(CRLF);
+        dst.position(dataStart + length);
+        dst.put(CRLF);
+        return true;
+    }
+
+    /**
+     * Encodes the last chunk, the trailer fields and the terminating empty line
+     */
+    private static ByteBuffer encodeTrailer(final List<HeaderField> trailers) {
+        int length = LAST_CHUNK.length + CRLF.length;
+        final byte[][] fields = new byte[trailers.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = HttpHeaderEncoder.encodeField(trailers.get(i));
+            length += fields[i].length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(LAST_CHUNK);
+        for (final byte[] field : fields) {
+            buffer.put(field);
+        }
+        buffer.put(CRLF);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+/**
+ * Helper for content codings (RFC 7231) as used in the Accept-Encoding and Content-Encoding header fields.
+ *
+ * @author Gerald
+ */
+public final class ContentCoding {
+
+    /**
+     * The gzip content coding (RFC 1952)
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The file extension of files containing gzip compressed content
+     */
+    public static final String GZIP_FILE_EXTENSION = ".gz";
+
+    private static final String ANY = "*";
+
+    private ContentCoding() {
+    }
+
+    /**
+     * Checks if a content coding is acceptable according to the value of an Accept-Encoding header field. A coding is
+     * acceptable if it is listed or the list contains <code>*</code>, and its quality value is not 0.
+     *
+     * @param headerValue
+     *            the value of the Accept-Encoding header, a comma separated list of codings with optional quality
+     *            values
+     * @param coding
+     *            the content coding to check
+     * @return <code>true</code> if the coding is acceptable
+     */
+    public static boolean isAccepted(final String headerValue, final String coding) {
+        if (headerValue == null) {
+            return false;
+        }
+        boolean anyAccepted = false;
+        final int length = headerValue.length();
+        int pos = 0;
+        while (pos < length) {
+            int end = headerValue.indexOf(',', pos);
+            if (end == -1) {
+                end = length;
+            }
+            final String element = headerValue.substring(pos, end);
+            pos = end + 1;
+            final int separator = element.indexOf(';');
+            final String name = (separator == -1
+                    ? element
+                    : element.substring(0, separator)).trim();
+            final boolean accepted = separator == -1 || isAcceptable(element.substring(separator + 1));
+            if (name.equalsIgnoreCase(coding)) {
+                // an explicitly listed coding overrides the wildcard
+                return accepted;
+            }
+            if (ANY.equals(name)) {
+                anyAccepted = accepted;
+            }
+        }
+        return anyAccepted;
+    }
+
+    /**
+     * @param parameter
+     *            the parameter of a list element, expected to be a quality value <code>q=...</code>
+     * @return <code>true</code> if the quality value is greater than 0, <code>false</code> if it is 0 or invalid
+     */
+    private static boolean isAcceptable(final String parameter) {
+        final String qvalue = parameter.trim();
+        if (qvalue.length() < 3 || Character.toLowerCase(qvalue.charAt(0)) != 'q' || qvalue.charAt(1) != '=') {
+            return false;
+        }
+        try {
+            return Float.parseFloat(qvalue.substring(2)) > 0;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import li.moskito.awtt.protocol.HeaderFieldDefinition;
+
+/**
+ * An immutable header field that holds its encoded form, so it can be shared between responses and written without
+ * encoding it again, i.e. the Keep-Alive header fields for the configured options or the fields of cached content.
+ *
+ * @author Gerald
+ */
+public final class EncodedHeaderField extends HttpHeaderField {
+
+    private final byte[] encoded;
+
+    /**
+     * @param headerFieldDefinition
+     *            the definition of the field
+     * @param value
+     *            the value of the field
+     */
+    public EncodedHeaderField(final HeaderFieldDefinition headerFieldDefinition, final String value) {
+        super(headerFieldDefinition, value);
+        this.encoded = HttpHeaderEncoder.encodeField(new HttpHeaderField(headerFieldDefinition, value));
+    }
+
+    /**
+     * @return the field line including the line break encoded as ISO-8859-1. The array must not be modified.
+     */
+    byte[] getEncoded() {
+        return this.encoded;
+    }
+
+    @Override
+    public void setValue(final Object value) {
+        throw new UnsupportedOperationException("The value of a shared header field can not be modified");
+    }
+}
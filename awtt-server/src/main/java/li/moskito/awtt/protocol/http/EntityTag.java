@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+/**
+ * Helper for entity tags (RFC 7232) as used in the ETag, If-Match, If-None-Match and If-Range header fields. An entity
+ * tag is an opaque string in double quotes, optionally prefixed with <code>W/</code> to mark it as weak validator.
+ *
+ * @author Gerald
+ */
+public final class EntityTag {
+
+    private static final String WEAK_PREFIX = "W/";
+    private static final String ANY = "*";
+
+    private EntityTag() {
+    }
+
+    /**
+     * Creates a strong entity tag
+     *
+     * @param opaqueTag
+     *            the opaque value of the tag which must not contain double quotes
+     * @return the quoted entity tag
+     */
+    public static String strong(final String opaqueTag) {
+        return '"' + opaqueTag + '"';
+    }
+
+    /**
+     * Creates the strong entity tag of another representation of the same resource, i.e. a compressed variant
+     *
+     * @param entityTag
+     *            the strong entity tag of the original representation including the double quotes
+     * @param variant
+     *            the name of the variant
+     * @return the quoted entity tag of the variant
+     */
+    public static String variant(final String entityTag, final String variant) {
+        return entityTag.substring(0, entityTag.length() - 1) + '-' + variant + '"';
+    }
+
+    /**
+     * Checks if the value of a header field is an entity tag rather than a date, as required for If-Range
+     *
+     * @param value
+     *            the value of the header field
+     * @return <code>true</code> if the value is a strong or weak entity tag
+     */
+    public static boolean isEntityTag(final String value) {
+        return value != null && (value.startsWith("\"") || value.startsWith(WEAK_PREFIX));
+    }
+
+    /**
+     * Checks if the entity tag matches one of the tags in the value of an If-Match or If-None-Match header field.
+     *
+     * @param headerValue
+     *            the value of the header field, either <code>*</code> or a comma separated list of entity tags
+     * @param entityTag
+     *            the strong entity tag of the current representation including the double quotes, <code>null</code> if
+     *            there is no current representation
+     * @param weakComparison
+     *            <code>true</code> if weak entity tags may match (If-None-Match), <code>false</code> for the strong
+     *            comparison that requires both tags to be strong (If-Match, If-Range)
+     * @return <code>true</code> if the entity tag matches
+     */
+    public static boolean matches(final String headerValue, final String entityTag, final boolean weakComparison) {
+        if (headerValue == null || entityTag == null) {
+            return false;
+        }
+        if (ANY.equals(headerValue.trim())) {
+            return true;
+        }
+        final int length = headerValue.length();
+        int pos = 0;
+        while (pos < length) {
+            int end = headerValue.indexOf(',', pos);
+            if (end == -1) {
+                end = length;
+            }
+            int start = skipWhitespace(headerValue, pos, end);
+            final int last = trailingWhitespace(headerValue, start, end);
+            pos = end + 1;
+            if (headerValue.startsWith(WEAK_PREFIX, start)) {
+                if (!weakComparison) {
+                    continue;
+                }
+                start += WEAK_PREFIX.length();
+            }
+            if (last - start == entityTag.length() && headerValue.regionMatches(start, entityTag, 0, last - start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int skipWhitespace(final String value, final int start, final int end) {
+        int pos = start;
+        while (pos < end && (value.charAt(pos) == ' ' || value.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int trailingWhitespace(final String value, final int start, final int end) {
+        int pos = end;
+        while (pos > start && (value.charAt(pos - 1) == ' ' || value.charAt(pos - 1) == '\t')) {
+            pos--;
+        }
+        return pos;
+    }
+}
@@ -3,24 +3,40 @@
  */
 package li.moskito.awtt.protocol.http;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.regex.Pattern;
+import java.util.function.BiFunction;
 
+import li.moskito.awtt.accesslog.AccessLog;
+import li.moskito.awtt.accesslog.OverflowPolicy;
 import li.moskito.awtt.common.Configurable;
+import li.moskito.awtt.metrics.Counter;
+import li.moskito.awtt.metrics.LatencyHistograms;
+import li.moskito.awtt.metrics.MetricsRegistry;
+import li.moskito.awtt.metrics.RequestPhase;
 import li.moskito.awtt.protocol.CustomHeaderFieldDefinition;
 import li.moskito.awtt.protocol.HeaderField;
 import li.moskito.awtt.protocol.Message;
 import li.moskito.awtt.protocol.Protocol;
 import li.moskito.awtt.protocol.ProtocolRegistry;
+import li.moskito.awtt.protocol.StreamingBody;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
@@ -32,7 +48,7 @@ import org.slf4j.LoggerFactory;
  * 
  * @author Gerald
  */
-public class HTTP implements Protocol, Configurable {
+public class HTTP implements Protocol, Configurable, Closeable {
 
     /**
      * SLF4J Logger for this class
@@ -42,28 +58,17 @@ public class HTTP implements Protocol, Configurable {
     public static final String CRLF = "\r\n";
 
     //@formatter:off
-    public static final Pattern HTTP_REQUEST_LINE_PATTERN = 
-                        Pattern.compile("^("+getCommandRegexGroup()+") (\\S+) ("+getVersionRegexGroup()+")(\\r\\n)?$");
-    public static final Pattern HTTP_REQUEST_FIELD_PATTERN = 
-                        Pattern.compile("^("+getRequestHeaderFieldRegexGroup()+"):\\s*(.*)(\\r\\n)?$");
-    public static final Pattern HTTP_CUSTOM_FIELD_PATTERN = 
-                        Pattern.compile("^([A-Z][a-zA-Z\\-]+):\\s*(.*)(\\r\\n)?$");
-    
     public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
 
     public static final int HTTP_DEFAULT_PORT = 80;
     
     public static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyy HH:mm:ss zzz";
 
-    // Thread safe date formatter
-    private static final ThreadLocal<SimpleDateFormat> HTTP_DATE_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
-        @Override
-        protected SimpleDateFormat initialValue() {
-            final SimpleDateFormat sdf = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.ENGLISH);
-            sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
-            return sdf;
-        }
-    };
+    /**
+     * The chunked transfer coding
+     */
+    public static final String CHUNKED = "chunked";
+
     // @formatter:on
 
     public static enum ResponseOptions {
@@ -71,15 +76,84 @@ public class HTTP implements Protocol, Configurable {
     }
 
     /**
-     * Handlers to process messages of the protocol
+     * Number of processed requests
+     */
+    private static final Counter REQUESTS = MetricsRegistry.getInstance().counter("http.requests");
+
+    /**
+     * Number of sent responses per status code, the counters are registered on first use
+     */
+    private static final Map<HttpStatusCodes, Counter> RESPONSES = new ConcurrentHashMap<>();
+
+    private static final int DEFAULT_ACCESS_LOG_CAPACITY = 8192;
+
+    private static final long DEFAULT_ACCESS_LOG_FILE_SIZE = 100L * 1024 * 1024;
+
+    private static final int DEFAULT_ACCESS_LOG_BACKUPS = 5;
+
+    /**
+     * Router selecting the handlers that are configured with routes
+     */
+    private final HttpRequestRouter router;
+
+    /**
+     * Handlers to process messages of the protocol that are configured without routes. They are selected by their
+     * accepts method if no route matches the request.
      */
     private final List<HttpProtocolHandler> handlers;
 
+    /**
+     * Number of requests processed by each of the configured handlers
+     */
+    private final Map<HttpProtocolHandler, Counter> handlerRequests;
+
+    /**
+     * Latencies of the requests processed by each of the configured handlers
+     */
+    private final Map<HttpProtocolHandler, LatencyHistograms> handlerLatencies;
+
+    /**
+     * The keep alive header fields for the last requested options. The options are usually the same for all channels,
+     * so the encoded fields can be shared between all responses.
+     */
+    private volatile KeepAliveHeaders keepAliveHeaders;
+
+    /**
+     * The log the processed requests are written to or <code>null</code> if no access log is configured
+     */
+    private volatile AccessLog accessLog;
+
+    /**
+     * Immutable holder of the keep alive header fields for a combination of timeout and max messages
+     * 
+     * @author Gerald
+     */
+    private static final class KeepAliveHeaders {
+        private final int timeout;
+        private final int maxConnections;
+        private final List<HeaderField> fields;
+
+        KeepAliveHeaders(final int timeout, final int maxConnections) {
+            this.timeout = timeout;
+            this.maxConnections = maxConnections;
+            final List<HeaderField> list = new ArrayList<>(2);
+            //@formatter:off
+            list.add(new EncodedHeaderField(ResponseHeaders.CONNECTION, "Keep-Alive"));
+            list.add(new EncodedHeaderField(CustomHeaderFieldDefinition.forName("Keep-Alive"), 
+                    "timeout=" + timeout + ", max=" + maxConnections));
+            // @formatter:on
+            this.fields = Collections.unmodifiableList(list);
+        }
+    }
+
     /**
      * Creates a new protocol instance. Its recommended to use the {@link ProtocolRegistry} instead.
      */
     public HTTP() {
+        this.router = new HttpRequestRouter();
         this.handlers = new CopyOnWriteArrayList<>();
+        this.handlerRequests = new ConcurrentHashMap<>();
+        this.handlerLatencies = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -104,20 +178,128 @@ public class HTTP implements Protocol, Configurable {
 
     /**
      * Processes the Request by dispatching it to one of the configured handlers. If no handler is configured that
-     * accepts the request, a 501 Not Implemented Response is returned
+     * accepts the request, a 501 Not Implemented Response is returned. The method waits for the response of an
+     * {@link AsyncHttpProtocolHandler}.
      * 
      * @param message
      * @return
      */
     public HttpResponse process(final HttpRequest message) {
+        return this.processAsync(message).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<? extends Message> processAsync(final Message message) {
+        if (message instanceof HttpRequest) {
+            return this.processAsync((HttpRequest) message);
+        }
+        return CompletableFuture.completedFuture(this.process(message));
+    }
+
+    /**
+     * Processes the Request by dispatching it to one of the configured handlers. An {@link AsyncHttpProtocolHandler}
+     * may complete the response on another thread, all other handlers process the request synchronously. If the
+     * response completes exceptionally, a 500 Internal Server Error Response is returned.
+     * 
+     * @param message
+     * @return the stage completing with the response
+     */
+    public CompletionStage<HttpResponse> processAsync(final HttpRequest message) {
         this.logRequestLine(message.getHeader());
         LOG.debug("Processing Request\n{}", message);
+        REQUESTS.increment();
+        final HttpProtocolHandler handler = this.findHandler(message);
+        if (handler == null) {
+            return CompletableFuture.completedFuture(createResponse(HttpStatusCodes.NOT_IMPLEMENTED,
+                    ResponseOptions.FORCE_CLOSE));
+        }
+        final Counter handlerCounter = this.handlerRequests.get(handler);
+        if (handlerCounter != null) {
+            handlerCounter.increment();
+        }
+        final LatencyHistograms latencies = this.handlerLatencies.get(handler);
+        final long start = System.nanoTime();
+        if (handler instanceof AsyncHttpProtocolHandler) {
+            return ((AsyncHttpProtocolHandler) handler).processAsync(message).handle(
+                    new BiFunction<HttpResponse, Throwable, HttpResponse>() {
+
+                        @Override
+                        public HttpResponse apply(final HttpResponse response, final Throwable failure) {
+                            recordLatency(latencies, start);
+                            if (failure != null) {
+                                LOG.error("Could not process request", failure);
+                                return createResponse(HttpStatusCodes.INTERNAL_SERVER_ERROR,
+                                        ResponseOptions.FORCE_CLOSE);
+                            }
+                            return prepareStreamingResponse(message, response);
+                        }
+                    });
+        }
+        final HttpResponse response = handler.process(message);
+        recordLatency(latencies, start);
+        return CompletableFuture.completedFuture(prepareStreamingResponse(message, response));
+    }
+
+    /**
+     * Records the time a handler spent processing a request
+     * 
+     * @param latencies
+     *            the latencies of the handler or <code>null</code> if the handler has not been configured
+     * @param start
+     *            the time in nanoseconds when the handler started processing
+     */
+    private static void recordLatency(final LatencyHistograms latencies, final long start) {
+        if (latencies != null) {
+            latencies.record(RequestPhase.PROCESS, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Finds the handler for the request. The handler of the best matching route is selected, if no route matches, the
+     * first handler without routes that accepts the request is selected.
+     * 
+     * @param message
+     *            the request to process
+     * @return the handler or <code>null</code> if there is no handler for the request
+     */
+    private HttpProtocolHandler findHandler(final HttpRequest message) {
+        final HttpProtocolHandler routedHandler = this.router.route(message);
+        if (routedHandler != null) {
+            return routedHandler;
+        }
         for (final HttpProtocolHandler handler : this.handlers) {
             if (handler.accepts(message)) {
-                return handler.process(message);
+                return handler;
             }
         }
-        return createResponse(HttpStatusCodes.NOT_IMPLEMENTED, ResponseOptions.FORCE_CLOSE);
+        return null;
+    }
+
+    /**
+     * Declares how the content of a {@link StreamingBody} of unknown length is delimited. HTTP/1.1 clients receive the
+     * content with the chunked transfer coding, for HTTP/1.0 clients the end of the content is marked by closing the
+     * connection.
+     * 
+     * @param request
+     *            the processed request
+     * @param response
+     *            the response of the handler
+     * @return the response
+     */
+    private static HttpResponse prepareStreamingResponse(final HttpRequest request, final HttpResponse response) {
+        if (response == null || !(response.getBody() instanceof StreamingBody)) {
+            return response;
+        }
+        final HttpHeader header = response.getHeader();
+        if (header.hasField(ResponseHeaders.CONTENT_LENGTH) || header.hasField(ResponseHeaders.TRANSFER_ENCODING)) {
+            return response;
+        }
+        if (request.getHeader().getVersion() == HttpVersion.HTTP_1_1) {
+            response.addField(ResponseHeaders.TRANSFER_ENCODING, CHUNKED);
+        } else {
+            response.addField(ResponseHeaders.CONNECTION, "close");
+        }
+        return response;
     }
 
     @Override
@@ -125,6 +307,16 @@ public class HTTP implements Protocol, Configurable {
         return new HttpChannel(this);
     }
 
+    /**
+     * Creates a 503 Service Unavailable response with a Retry-After field that closes the connection
+     */
+    @Override
+    public HttpResponse createOverloadedResponse(final int retryAfterSeconds) {
+        final HttpResponse response = createResponse(HttpStatusCodes.SERVICE_UNAVAILABLE, ResponseOptions.FORCE_CLOSE);
+        response.addField(ResponseHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return response;
+    }
+
     @Override
     public int getDefaultPort() {
         return HTTP_DEFAULT_PORT;
@@ -134,10 +326,74 @@ public class HTTP implements Protocol, Configurable {
     public void configure(final HierarchicalConfiguration config) throws ConfigurationException {
         final List<HierarchicalConfiguration> handlerConfigs = config.configurationsAt("handler");
         for (final HierarchicalConfiguration handlerConfig : handlerConfigs) {
-            this.handlers.add(this.createHandler(handlerConfig));
+            final HttpProtocolHandler handler = this.createHandler(handlerConfig);
+            final List<HierarchicalConfiguration> routeConfigs = handlerConfig.configurationsAt("route");
+            if (routeConfigs.isEmpty()) {
+                this.handlers.add(handler);
+            }
+            for (final HierarchicalConfiguration routeConfig : routeConfigs) {
+                this.addRoute(routeConfig, handler);
+            }
+        }
+        final List<HierarchicalConfiguration> accessLogConfigs = config.configurationsAt("accessLog");
+        if (!accessLogConfigs.isEmpty()) {
+            this.configureAccessLog(accessLogConfigs.get(0));
+        }
+    }
 
+    /**
+     * Opens the access log configured by the elements <code>file</code> (as URI), <code>capacity</code>,
+     * <code>overflowPolicy</code>, <code>maxFileSize</code> and <code>maxBackups</code>. An access log of a previous
+     * configuration is closed.
+     * 
+     * @param config
+     *            the <code>accessLog</code> configuration
+     * @throws ConfigurationException
+     *             if the access log configuration is not valid or the file could not be opened
+     */
+    private void configureAccessLog(final HierarchicalConfiguration config) throws ConfigurationException {
+        final String file = config.getString("file");
+        if (file == null) {
+            throw new ConfigurationException("File of access log missing");
+        }
+        try {
+            final AccessLog previous = this.accessLog;
+            this.accessLog = new AccessLog(Paths.get(new URI(file)), config.getLong("maxFileSize",
+                    DEFAULT_ACCESS_LOG_FILE_SIZE), config.getInt("maxBackups", DEFAULT_ACCESS_LOG_BACKUPS),
+                    config.getInt("capacity", DEFAULT_ACCESS_LOG_CAPACITY), OverflowPolicy.valueOf(config.getString(
+                            "overflowPolicy", OverflowPolicy.DROP.name()).toUpperCase(Locale.ENGLISH)));
+            if (previous != null) {
+                previous.close();
+            }
+        } catch (final URISyntaxException | IllegalArgumentException | IOException e) {
+            throw new ConfigurationException("Could not open access log " + file, e);
         }
+    }
 
+    /**
+     * Adds a route to the handler. The route is configured by the attributes <code>method</code>, <code>host</code>
+     * and <code>path</code>, a missing method or host matches all requests and a missing path matches all paths.
+     * 
+     * @param routeConfig
+     *            the route configuration
+     * @param handler
+     *            the handler to route the matching requests to
+     * @throws ConfigurationException
+     *             if the route is not valid
+     */
+    private void addRoute(final HierarchicalConfiguration routeConfig, final HttpProtocolHandler handler)
+            throws ConfigurationException {
+        final String methodName = routeConfig.getString("@method");
+        final String path = routeConfig.getString("@path", "/**");
+        try {
+            final HttpCommands method = methodName == null ? null : HttpCommands.valueOf(methodName
+                    .toUpperCase(Locale.ENGLISH));
+            this.router.addRoute(method, routeConfig.getString("@host"), path, handler);
+            LOG.info("Routing {} {} to {}", methodName == null ? "*" : methodName, path, handler.getClass()
+                    .getSimpleName());
+        } catch (final IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid route " + methodName + " " + path, e);
+        }
     }
 
     /**
@@ -158,6 +414,10 @@ public class HTTP implements Protocol, Configurable {
             if (handler instanceof Configurable) {
                 ((Configurable) handler).configure(handlerConfig);
             }
+            final String name = handler.getClass().getSimpleName().isEmpty() ? handler.getClass().getName() : handler
+                    .getClass().getSimpleName();
+            this.handlerRequests.put(handler, MetricsRegistry.getInstance().counter("http.handlers." + name));
+            this.handlerLatencies.put(handler, LatencyHistograms.forHandler(name));
             return handler;
         } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
             throw new ConfigurationException("Could not create protocol handler", e);
@@ -172,7 +432,7 @@ public class HTTP implements Protocol, Configurable {
      * @return the formatted date
      */
     public static String toHttpDate(final Date date) {
-        return HTTP_DATE_FORMATTER.get().format(date);
+        return HttpDate.format(date.getTime());
     }
 
     /**
@@ -184,7 +444,11 @@ public class HTTP implements Protocol, Configurable {
      * @throws ParseException
      */
     public static Date fromHttpDate(final String date) throws ParseException {
-        return HTTP_DATE_FORMATTER.get().parse(date);
+        final long millis = HttpDate.parse(date);
+        if (millis == HttpDate.INVALID) {
+            throw new ParseException("Unparseable date: " + date, 0);
+        }
+        return new Date(millis);
     }
 
     /**
@@ -219,7 +483,7 @@ public class HTTP implements Protocol, Configurable {
      * @return the modified response
      */
     private static HttpResponse addMandatoryHeaders(final HttpResponse response) {
-        response.addField(ResponseHeaders.DATE, HTTP.toHttpDate(new Date()));
+        response.getHeader().addField(HttpDate.currentDateField());
         return response;
     }
 
@@ -265,98 +529,133 @@ public class HTTP implements Protocol, Configurable {
      * Creates keep alive header information using the specified parameters
      * 
      * @param connectionControl
-     * @return a list of header fields that can be added to a response in order to inform the receiver on how to handle
-     *         the connection
+     * @return an unmodifiable list of header fields that can be added to a response in order to inform the receiver on
+     *         how to handle the connection. The fields are shared and must not be modified.
      */
     List<HeaderField> getKeepAliverHeaders(final int timeout, final int maxConnections) {
-
-        final List<HeaderField> keepAliveHeader = new ArrayList<>();
-
-        //@formatter:off
-        keepAliveHeader.add(new HttpHeaderField(ResponseHeaders.CONNECTION, "Keep-Alive"));
-        keepAliveHeader.add(new HttpHeaderField(CustomHeaderFieldDefinition.forName("Keep-Alive"), 
-                String.format("timeout=%s, max=%s", timeout, maxConnections)));
-        // @formatter:on
-        return keepAliveHeader;
+        KeepAliveHeaders headers = this.keepAliveHeaders;
+        if (headers == null || headers.timeout != timeout || headers.maxConnections != maxConnections) {
+            headers = new KeepAliveHeaders(timeout, maxConnections);
+            this.keepAliveHeaders = headers;
+        }
+        return headers.fields;
     }
 
     /**
-     * Creates a string with the 1st request line
+     * Creates a string with the 1st request line. If an access log is configured, which records the requests without
+     * blocking, the line is logged on debug level only.
      * 
      * @param header
      * @return
      */
     void logRequestLine(final HttpHeader header) {
-        LOG.info("REQ: {} {} {}", header.getCommand(), header.getResource(), header.getVersion());
+        if (this.accessLog == null) {
+            LOG.info("REQ: {} {} {}", header.getCommand(), header.getResource(), header.getVersion());
+        } else {
+            LOG.debug("REQ: {} {} {}", header.getCommand(), header.getResource(), header.getVersion());
+        }
     }
 
     /**
-     * Writes the 1st response line to the log
+     * Writes the 1st response line to the log and counts the response by its status code. If an access log is
+     * configured, the line is logged on debug level only.
      * 
      * @param header
      * @return
      */
     void logResponseLine(final HttpHeader header) {
-        LOG.info("RSP: {} {}", header.getVersion(), header.getStatusCode());
+        if (this.accessLog == null) {
+            LOG.info("RSP: {} {}", header.getVersion(), header.getStatusCode());
+        } else {
+            LOG.debug("RSP: {} {}", header.getVersion(), header.getStatusCode());
+        }
+        final HttpStatusCodes statusCode = header.getStatusCode();
+        if (statusCode == null) {
+            return;
+        }
+        Counter counter = RESPONSES.get(statusCode);
+        if (counter == null) {
+            // concurrent registrations retrieve the same counter from the registry
+            counter = MetricsRegistry.getInstance().counter("http.responses." + statusCode.getCode());
+            RESPONSES.put(statusCode, counter);
+        }
+        counter.increment();
     }
 
     /**
-     * Creates the regex group for HTTP Commands from the values of the enum
+     * Appends a processed request to the access log, if one is configured
      * 
-     * @return
+     * @param remoteAddress
+     *            the address of the client
+     * @param request
+     *            the processed message
+     * @param response
+     *            the response to the message
+     * @param durationNanos
+     *            the time it took to process the request
      */
-    private static final String getCommandRegexGroup() {
-        final StringBuilder buf = new StringBuilder(50);
-
-        for (final HttpCommands command : HttpCommands.values()) {
-            if (buf.length() > 0) {
-                buf.append('|');
-            }
-            buf.append(command.toString());
+    void logAccess(final SocketAddress remoteAddress, final Message request, final Message response,
+            final long durationNanos) {
+        final AccessLog log = this.accessLog;
+        if (log == null || !(request instanceof HttpRequest) || !(response instanceof HttpResponse)) {
+            return;
         }
-
-        return buf.toString();
+        final HttpHeader requestHeader = ((HttpRequest) request).getHeader();
+        final HttpHeader responseHeader = ((HttpResponse) response).getHeader();
+        final HttpCommands command = requestHeader.getCommand();
+        final URI resource = requestHeader.getResource();
+        final HttpStatusCodes statusCode = responseHeader.getStatusCode();
+        // unknown values are written as '-'
+        log.append(remoteAddress, command == null ? null : command.name(), resource == null ? null : resource
+                .getRawPath(), statusCode == null ? -1 : statusCode.getCode(), getContentLength(responseHeader),
+                durationNanos);
     }
 
     /**
-     * Creates the regex group for HTTP Versions from the values of the enum
-     * 
-     * @return
+     * @param header
+     *            the header of a response
+     * @return the value of the Content-Length field or -1 if the length of the body is unknown
      */
-    private static final String getVersionRegexGroup() {
-        final StringBuilder buf = new StringBuilder(50);
-
-        buf.append(HttpVersion.PROTOCOL_PREFIX.replaceAll("\\/", "\\\\/"));
-        buf.append('(');
-        boolean oneVersionWritten = false;
-        for (final HttpVersion version : HttpVersion.values()) {
-            if (oneVersionWritten) {
-                buf.append('|');
-            }
-            buf.append(version.getVersion().replaceAll("\\.", "\\\\."));
-            oneVersionWritten = true;
+    private static long getContentLength(final HttpHeader header) {
+        final HeaderField field = header.getField(ResponseHeaders.CONTENT_LENGTH);
+        if (field == null || field.getValue() == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(field.getValue().toString());
+        } catch (final NumberFormatException e) {
+            return -1;
         }
-        buf.append(')');
-
-        return buf.toString();
     }
 
     /**
-     * Creates the regex group for HTTP RequestHeader fields from the values of the enum
-     * 
-     * @return
+     * @return the configured access log or <code>null</code> if there is none
      */
-    private static final String getRequestHeaderFieldRegexGroup() {
-        final StringBuilder buf = new StringBuilder(128);
+    AccessLog getAccessLog() {
+        return this.accessLog;
+    }
 
-        for (final RequestHeaders command : RequestHeaders.values()) {
-            if (buf.length() > 0) {
-                buf.append('|');
+    /**
+     * Closes the configured handlers that are {@link Closeable} and the access log, if one is configured, after the
+     * records appended so far have been written. Requests processed afterwards are not recorded until the protocol is
+     * configured again.
+     */
+    @Override
+    public void close() throws IOException {
+        for (final HttpProtocolHandler handler : this.handlerRequests.keySet()) {
+            if (handler instanceof Closeable) {
+                try {
+                    ((Closeable) handler).close();
+                } catch (final IOException e) {
+                    LOG.warn("Could not close handler {}", handler, e);
+                }
             }
-            buf.append(command.toString());
         }
-
-        return buf.toString();
+        final AccessLog log = this.accessLog;
+        this.accessLog = null;
+        if (log != null) {
+            log.close();
+        }
     }
 
 }
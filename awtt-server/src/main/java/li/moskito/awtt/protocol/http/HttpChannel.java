@@ -4,32 +4,29 @@
 package li.moskito.awtt.protocol.http;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Matcher;
 
+import li.moskito.awtt.protocol.Body;
 import li.moskito.awtt.protocol.ChannelEventListener;
-import li.moskito.awtt.protocol.CustomHeaderFieldDefinition;
 import li.moskito.awtt.protocol.Event;
 import li.moskito.awtt.protocol.Header;
-import li.moskito.awtt.protocol.HeaderField;
 import li.moskito.awtt.protocol.Message;
 import li.moskito.awtt.protocol.MessageChannel;
 import li.moskito.awtt.protocol.MessageChannelOption;
 import li.moskito.awtt.protocol.MessageChannelOptions;
 import li.moskito.awtt.protocol.Protocol;
 import li.moskito.awtt.protocol.ProtocolException;
+import li.moskito.awtt.protocol.StreamingBody;
 import li.moskito.awtt.protocol.http.HTTP.ResponseOptions;
+import li.moskito.awtt.util.TimingWheel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +51,31 @@ public class HttpChannel extends MessageChannel {
 
     private final AtomicBoolean initialized = new AtomicBoolean(false);
 
+    /**
+     * Parser for the requests of this channel, keeps the state of partially received requests
+     */
+    private final HttpRequestParser parser = new HttpRequestParser();
+
+    /**
+     * Request whose header has been parsed but whose body has not been received completely
+     */
+    private HttpRequest partialRequest;
+
+    /**
+     * Decoder for the body of the partial request
+     */
+    private RequestBodyDecoder bodyDecoder;
+
+    /**
+     * Encoder for the body of the response being written if it is sent with the chunked transfer coding
+     */
+    private ChunkedEncoder chunkedEncoder;
+
+    /**
+     * Size of the buffer for serializing a header into characters
+     */
+    private static final int SERIALIZE_BUFFER_SIZE = 8192;
+
     /**
      * Set of the options supported by HTTP
      */
@@ -65,6 +87,8 @@ public class HttpChannel extends MessageChannel {
         final Set<MessageChannelOption> set = new HashSet<>();
         set.add(MessageChannelOptions.KEEP_ALIVE_TIMEOUT);
         set.add(MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES);
+        set.add(MessageChannelOptions.MAX_BODY_SIZE);
+        set.add(MessageChannelOptions.BODY_MEMORY_THRESHOLD);
         SUPPORTED_OPTIONS = Collections.unmodifiableSet(set);
     }
 
@@ -78,8 +102,11 @@ public class HttpChannel extends MessageChannel {
 
             @Override
             public void onEvent(final Event<?> event) {
-                HttpChannel.this.receiveIncomingMessage(HTTP.createResponse(HttpStatusCodes.BAD_REQUEST,
-                        ResponseOptions.FORCE_CLOSE));
+                final Object cause = event.getEventData();
+                final HttpStatusCodes statusCode = cause instanceof HttpProtocolException
+                        ? ((HttpProtocolException) cause).getStatusCode()
+                        : HttpStatusCodes.BAD_REQUEST;
+                HttpChannel.this.receiveIncomingMessage(HTTP.createResponse(statusCode, ResponseOptions.FORCE_CLOSE));
             }
         });
 
@@ -109,145 +136,212 @@ public class HttpChannel extends MessageChannel {
         return SUPPORTED_OPTIONS;
     }
 
+    /**
+     * Parses the header of a request and receives its body, if any. The request is returned once its body has been
+     * received completely, so the body may span several buffers.
+     */
     @Override
     protected HttpMessage parseMessage(final ByteBuffer src) throws ProtocolException, IOException {
         this.checkAndInitializeState();
-        return this.parseMessage(HTTP.CHARSET.decode(src));
+        if (this.partialRequest == null) {
+            final HttpRequest request = this.parser.parse(src);
+            if (request == null) {
+                return null;
+            }
+            this.bodyDecoder = this.createBodyDecoder(request);
+            if (this.bodyDecoder == null) {
+                this.updateState(request);
+                return request;
+            }
+            this.partialRequest = request;
+            if (!src.hasRemaining() && this.isContinueExpected(request)) {
+                this.writeInterimResponse(new HttpResponse(HttpStatusCodes.CONTINUE));
+            }
+        }
+        return this.receiveBody(src);
     }
 
     /**
-     * Parses an entire request from the given CharBuffer. The first line of the string must be a HTTP Request Line
-     * 
-     * @param charBuffer
-     *            the character buffer to read from
-     * @return
+     * Decodes the data of the buffer into the body of the partial request
+     *
+     * @param src
+     *            the buffer containing body data
+     * @return the request if its body is complete, <code>null</code> otherwise
+     * @throws ProtocolException
+     *             if the body could not be decoded, the partial request is discarded then
      * @throws IOException
-     * @throws HttpProtocolException
      */
-    private HttpRequest parseMessage(final CharBuffer charBuffer) throws HttpProtocolException, IOException {
-        // skip to end of line
-        final String requestLine = this.readLine(charBuffer);
-        if (requestLine == null) {
+    private HttpRequest receiveBody(final ByteBuffer src) throws ProtocolException, IOException {
+        final boolean complete;
+        try {
+            complete = this.bodyDecoder.decode(src);
+        } catch (ProtocolException | IOException e) {
+            this.discardBody();
+            throw e;
+        }
+        if (!complete) {
             return null;
         }
-        final HttpRequest result = this.parseRequestLine(requestLine);
-        final List<HttpHeaderField> fields = this.parseFields(charBuffer);
-        result.getHeader().addHttpHeaderFields(fields);
-
-        this.updateState(result);
-
-        return result;
+        final HttpRequest request = this.partialRequest;
+        request.setBody(this.bodyDecoder.getBody());
+        this.partialRequest = null;
+        this.bodyDecoder = null;
+        this.updateState(request);
+        return request;
     }
 
     /**
-     * Parses the header fields from the charbuffer and returns them in a list
-     * 
-     * @param charBuffer
-     *            the charBuffer to read the fields from. The position of the buffer is on the first character of the
-     *            first field.
-     * @return the list of parsed header fields
+     * Creates the decoder for the body of the request. The Transfer-Encoding takes precedence over the Content-Length.
+     *
+     * @param request
+     *            the request whose header has been parsed
+     * @return the decoder or <code>null</code> if the request has no body
      * @throws HttpProtocolException
+     *             if the body is not acceptable
      */
-    private List<HttpHeaderField> parseFields(final CharBuffer charBuffer) throws HttpProtocolException {
-        final List<HttpHeaderField> fields = new ArrayList<>();
-
-        String fieldLine = this.readLine(charBuffer);
-        while (fieldLine != null) {
-            if (fieldLine.trim().isEmpty()) {
-                break;
+    private RequestBodyDecoder createBodyDecoder(final HttpRequest request) throws HttpProtocolException {
+        final HttpHeader header = request.getHeader();
+        final long maxBodySize = this.getOption(MessageChannelOptions.MAX_BODY_SIZE);
+        final int memoryThreshold = this.getOption(MessageChannelOptions.BODY_MEMORY_THRESHOLD);
+        if (header.hasField(RequestHeaders.TRANSFER_ENCODING)) {
+            final String transferEncoding = header.getField(RequestHeaders.TRANSFER_ENCODING).getValue().toString();
+            if (!HTTP.CHUNKED.equalsIgnoreCase(transferEncoding.trim())) {
+                throw new HttpProtocolException("Unsupported transfer encoding " + transferEncoding,
+                        HttpStatusCodes.NOT_IMPLEMENTED);
             }
-            fields.add(this.parseRequestHeaderField(fieldLine));
-            fieldLine = this.readLine(charBuffer);
+            this.checkExpectation(header);
+            return RequestBodyDecoder.chunked(maxBodySize, memoryThreshold);
         }
-        return fields;
+        if (header.hasField(RequestHeaders.CONTENT_LENGTH)) {
+            final long contentLength;
+            try {
+                contentLength = Long.parseLong(header.getField(RequestHeaders.CONTENT_LENGTH).getValue().toString()
+                        .trim());
+            } catch (final NumberFormatException e) {
+                throw new HttpProtocolException("Invalid content length", e);
+            }
+            if (contentLength < 0) {
+                throw new HttpProtocolException("Invalid content length " + contentLength);
+            }
+            if (contentLength > maxBodySize) {
+                throw new HttpProtocolException("Request body exceeds " + maxBodySize + " bytes",
+                        HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE);
+            }
+            if (contentLength > 0) {
+                this.checkExpectation(header);
+                return RequestBodyDecoder.fixedLength(contentLength, memoryThreshold);
+            }
+        }
+        return null;
     }
 
     /**
-     * Reads a line from the character buffer. After the operation, the position of the buffer will be at the beginning
-     * of the next line.
-     * 
-     * @param charBuffer
-     *            the character buffer to read from
-     * @return the current line or <code>null</code> if the line was empty
-     * @throws HttpProtocolException
+     * Verifies that the expectation of the request, if any, can be met. Only <code>100-continue</code> is supported.
      */
-    private String readLine(final CharBuffer charBuffer) throws HttpProtocolException {
-        final StringBuilder buf = new StringBuilder(8);
-
-        boolean eol = false;
-        while (charBuffer.hasRemaining() && !eol) {
-            final char c = charBuffer.get();
-            switch (c) {
-                case '\r':
-                    continue;
-                case '\n':
-                    eol = true;
-                    break;
-                default:
-                    buf.append(c);
-                    break;
-            }
+    private void checkExpectation(final HttpHeader header) throws HttpProtocolException {
+        if (header.hasField(RequestHeaders.EXPECT) && !this.isContinueExpected(header)) {
+            throw new HttpProtocolException("Unsupported expectation "
+                    + header.getField(RequestHeaders.EXPECT).getValue(), HttpStatusCodes.EXPECTATION_FAILED);
         }
+    }
 
-        if (buf.length() > 0) {
-            return buf.toString();
-        }
-        return null;
+    private boolean isContinueExpected(final HttpRequest request) {
+        return request.getHeader().getVersion() == HttpVersion.HTTP_1_1 && this.isContinueExpected(request.getHeader());
+    }
+
+    private boolean isContinueExpected(final HttpHeader header) {
+        return header.hasField(RequestHeaders.EXPECT)
+                && "100-continue".equalsIgnoreCase(header.getField(RequestHeaders.EXPECT).getValue().toString().trim());
     }
 
     /**
-     * Parses the a request line ( see <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec5.html#sec5.1">HTTP
-     * Request Line</a>) to an HttpRequest object. the HttpRequest object will not contain any request header fields.
-     * 
-     * @param requestLine
-     *            a single line according to HTTP standard
-     * @return a HttpRequest object with no fields
-     * @throws URISyntaxException
+     * Closes the channel. The body of a request that has not been received completely is discarded, so that a body
+     * spooled to a temporary file is deleted if the client disconnects during the upload.
      */
-    private HttpRequest parseRequestLine(final String requestLine) throws HttpProtocolException {
-        final Matcher matcher = HTTP.HTTP_REQUEST_LINE_PATTERN.matcher(requestLine);
+    @Override
+    public void close() throws IOException {
+        if (this.bodyDecoder != null) {
+            this.discardBody();
+        }
+        super.close();
+    }
 
-        final HttpRequest httpRequest;
-        if (matcher.matches()) {
+    /**
+     * Discards the partial request and releases the resources of its body
+     */
+    private void discardBody() {
+        try {
+            this.bodyDecoder.getBody().getByteChannel().close();
+        } catch (final IOException e) {
+            LOG.warn("Could not release request body", e);
+        }
+        this.partialRequest = null;
+        this.bodyDecoder = null;
+    }
 
-            try {
-                httpRequest = new HttpRequest(HttpCommands.valueOf(matcher.group(1)), new URI(matcher.group(2)),
-                        HttpVersion.fromString(matcher.group(3)));
-                httpRequest.setCharset(HTTP.CHARSET);
-            } catch (final URISyntaxException e) {
-                throw new HttpProtocolException("Resource identifier in " + e.getInput() + " was invalid at position "
-                        + e.getIndex(), requestLine, e);
-            }
+    /**
+     * Frames the body of the response with the chunked transfer coding if the response declares it.
+     */
+    @Override
+    protected int writeMessage(final Message message, final ByteBuffer dst) throws IOException {
+        if (message.getBody() instanceof StreamingBody && isChunked((HttpHeader) message.getHeader())) {
+            this.chunkedEncoder = new ChunkedEncoder((StreamingBody) message.getBody());
+        }
+        return super.writeMessage(message, dst);
+    }
 
-        } else {
-            throw new HttpProtocolException("RequestLine " + requestLine + " does not conform to http standard");
+    @Override
+    protected int writeBody(final Body body, final ByteBuffer dst) throws IOException {
+        if (this.chunkedEncoder == null) {
+            return super.writeBody(body, dst);
+        }
+        final int length = this.chunkedEncoder.encode(dst);
+        if (length == -1) {
+            this.chunkedEncoder = null;
         }
+        return length;
+    }
 
-        return httpRequest;
+    private static boolean isChunked(final HttpHeader header) {
+        return header.hasField(ResponseHeaders.TRANSFER_ENCODING)
+                && HTTP.CHUNKED.equalsIgnoreCase(header.getField(ResponseHeaders.TRANSFER_ENCODING).getValue()
+                        .toString());
     }
 
     /**
-     * see <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html">Header Field Definitions</a>
-     * 
-     * @param fieldLine
-     *            the string containing a line describing a field and its value
-     * @return the request header field
+     * Writes the header directly into the buffer using the {@link HttpHeaderEncoder}.
      */
-    private HttpHeaderField parseRequestHeaderField(final String fieldLine) throws HttpProtocolException {
-        Matcher matcher = HTTP.HTTP_REQUEST_FIELD_PATTERN.matcher(fieldLine);
-        if (matcher.matches()) {
-            return new HttpHeaderField(RequestHeaders.fromString(matcher.group(1)), matcher.group(2));
-        }
-        matcher = HTTP.HTTP_CUSTOM_FIELD_PATTERN.matcher(fieldLine);
-        if (matcher.matches()) {
-            return new HttpHeaderField(CustomHeaderFieldDefinition.forName(matcher.group(1)), matcher.group(2));
-        }
-        throw new HttpProtocolException("Field '" + fieldLine + "' does not conform to http standard");
+    @Override
+    protected int writeHeader(final Header header, final ByteBuffer dst, final Charset charset) {
+        final HttpHeader httpHeader = this.prepareHeader(header);
+        final int headerLength = HttpHeaderEncoder.encode(httpHeader, dst);
+        LOG.debug("Header written, {} Bytes", headerLength);
+        return headerLength;
     }
 
     @Override
     protected CharBuffer serializeHeader(final Header header) {
+        final HttpHeader httpHeader = this.prepareHeader(header);
+        final ByteBuffer buffer = ByteBuffer.allocate(SERIALIZE_BUFFER_SIZE);
+        HttpHeaderEncoder.encode(httpHeader, buffer);
+        buffer.flip();
+        return HTTP.CHARSET.decode(buffer);
+    }
+
+    /**
+     * Determines whether the channel has to be closed after the response and adds the keep alive fields to the header
+     * otherwise.
+     * 
+     * @param header
+     *            the header of the response to be sent
+     * @return the header
+     */
+    private HttpHeader prepareHeader(final Header header) {
         final HttpHeader httpHeader = (HttpHeader) header;
+        if (httpHeader.getStatusCode().getCode() < 200) {
+            // an interim response does not affect the connection
+            return httpHeader;
+        }
 
         this.closeOnEmptyOutputQueue.compareAndSet(false, this.protocol.isClosedByHeader(httpHeader));
 
@@ -258,27 +352,12 @@ public class HttpChannel extends MessageChannel {
         }
 
         this.protocol.logResponseLine(httpHeader);
-        return this.serializeHeader(httpHeader);
+        return httpHeader;
     }
 
-    /**
-     * Serializes a response into a CharBuffer.
-     * 
-     * @param httpResponse
-     *            the response to be serialized
-     * @return a CharBuffer containing the response in character representation
-     */
-    private CharBuffer serializeHeader(final HttpHeader header) {
-        final StringBuilder buf = new StringBuilder(128);
-        buf.append(header.getVersion()).append(' ').append(header.getStatusCode()).append(HTTP.CRLF);
-        for (final HeaderField field : header.getFields()) {
-            buf.append(field).append(HTTP.CRLF);
-        }
-        buf.append(HTTP.CRLF);
-        final char[] serializedResponse = new char[buf.length()];
-        buf.getChars(0, buf.length(), serializedResponse, 0);
-        LOG.debug("Serialized Response: \n{}", buf);
-        return CharBuffer.wrap(serializedResponse);
+    @Override
+    protected void messageProcessed(final Message request, final Message response, final long durationNanos) {
+        this.protocol.logAccess(this.getRemoteAddress(), request, response, durationNanos);
     }
 
     /**
@@ -344,13 +423,13 @@ public class HttpChannel extends MessageChannel {
     }
 
     /**
-     * Returns a timer of seconds of the JVMs lifetime. This does not refer to a system time and is based on the
-     * System.nanoTime()
+     * Returns a timer of seconds of the JVMs lifetime. This does not refer to a system time and is based on the coarse
+     * clock of the server-wide {@link TimingWheel}, which is cheaper than System.nanoTime()
      * 
      * @return
      */
     private long getElapsedSeconds() {
-        return System.nanoTime() / 1_000_000_000;
+        return TimingWheel.getInstance().getElapsedSeconds();
     }
 
 }
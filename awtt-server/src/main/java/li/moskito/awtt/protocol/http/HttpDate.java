@@ -0,0 +1,274 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import li.moskito.awtt.protocol.HeaderField;
+
+/**
+ * Formatter and parser for dates in the preferred HTTP date format (RFC 1123), i.e.
+ * <code>Thu, 08 May 2014 13:49:01 GMT</code>. Neither formatting nor parsing requires a Calendar, a DateFormat or any
+ * other intermediate object. <br>
+ * Additionally, the class provides the current date as Date header field. The field is rendered at most once per
+ * second and shared between all threads.
+ *
+ * @author Gerald
+ */
+public final class HttpDate {
+
+    /**
+     * Value returned by the parse methods if the date is not a valid HTTP date
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Length of a formatted date
+     */
+    public static final int LENGTH = 29;
+
+    private static final String[] DAYS_OF_WEEK = {
+            "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"
+    };
+
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * Days from 0000-03-01 to 1970-01-01 in the proleptic gregorian calendar
+     */
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    /**
+     * The date header of the current second
+     */
+    private static volatile CurrentDate currentDate = new CurrentDate(System.currentTimeMillis() / MILLIS_PER_SECOND);
+
+    /**
+     * Immutable holder of the rendered date of one second
+     *
+     * @author Gerald
+     */
+    private static final class CurrentDate {
+        private final long second;
+        private final String date;
+        private final HeaderField field;
+
+        CurrentDate(final long second) {
+            this.second = second;
+            this.date = format(second * MILLIS_PER_SECOND);
+            this.field = new EncodedHeaderField(ResponseHeaders.DATE, this.date);
+        }
+    }
+
+    private HttpDate() {
+    }
+
+    /**
+     * @return the current date in HTTP date format
+     */
+    public static String now() {
+        return current().date;
+    }
+
+    /**
+     * Provides the Date header field for the current date. The field is immutable and shared.
+     *
+     * @return the Date header field with the current date
+     */
+    public static HeaderField currentDateField() {
+        return current().field;
+    }
+
+    private static CurrentDate current() {
+        final long second = System.currentTimeMillis() / MILLIS_PER_SECOND;
+        CurrentDate date = currentDate;
+        if (date.second != second) {
+            // concurrent updates are harmless, each creates an identical value
+            date = new CurrentDate(second);
+            currentDate = date;
+        }
+        return date;
+    }
+
+    /**
+     * Formats the timestamp as HTTP date. Milliseconds are discarded.
+     *
+     * @param millis
+     *            milliseconds since the epoch
+     * @return the formatted date
+     */
+    public static String format(final long millis) {
+        final char[] chars = new char[LENGTH];
+        long seconds = millis / MILLIS_PER_SECOND;
+        if (millis % MILLIS_PER_SECOND < 0) {
+            seconds--;
+        }
+        long days = seconds / SECONDS_PER_DAY;
+        int secondOfDay = (int) (seconds % SECONDS_PER_DAY);
+        if (secondOfDay < 0) {
+            secondOfDay += SECONDS_PER_DAY;
+            days--;
+        }
+        // 1970-01-01 was a Thursday
+        final int dayOfWeek = (int) ((days % 7 + 11) % 7);
+
+        // civil date from days, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = days + DAYS_0000_TO_1970;
+        final long era = (z >= 0
+                ? z
+                : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+        final int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int mp = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10
+                ? mp + 3
+                : mp - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2
+                ? 1
+                : 0);
+
+        putName(DAYS_OF_WEEK[dayOfWeek], chars, 0);
+        chars[3] = ',';
+        chars[4] = ' ';
+        putDigits(day, 2, chars, 5);
+        chars[7] = ' ';
+        putName(MONTHS[month - 1], chars, 8);
+        chars[11] = ' ';
+        putDigits((int) year, 4, chars, 12);
+        chars[16] = ' ';
+        putDigits(secondOfDay / 3600, 2, chars, 17);
+        chars[19] = ':';
+        putDigits(secondOfDay / 60 % 60, 2, chars, 20);
+        chars[22] = ':';
+        putDigits(secondOfDay % 60, 2, chars, 23);
+        chars[25] = ' ';
+        chars[26] = 'G';
+        chars[27] = 'M';
+        chars[28] = 'T';
+        return new String(chars);
+    }
+
+    /**
+     * Parses a date in HTTP date format. The day of month may have one or two digits, the name of the day of week is
+     * not verified against the date.
+     *
+     * @param date
+     *            the date to be parsed
+     * @return the milliseconds since the epoch or {@link #INVALID} if the date could not be parsed
+     */
+    public static long parse(final CharSequence date) {
+        if (date == null) {
+            return INVALID;
+        }
+        final int length = date.length();
+        if (length != LENGTH && length != LENGTH - 1) {
+            return INVALID;
+        }
+        // day of week and separator
+        if (!isLetter(date.charAt(0)) || !isLetter(date.charAt(1)) || !isLetter(date.charAt(2))
+                || date.charAt(3) != ',' || date.charAt(4) != ' ') {
+            return INVALID;
+        }
+        int pos = 5;
+        final int dayDigits = length == LENGTH
+                ? 2
+                : 1;
+        final int day = parseDigits(date, pos, dayDigits);
+        pos += dayDigits;
+        if (day < 1 || day > 31 || date.charAt(pos++) != ' ') {
+            return INVALID;
+        }
+        final int month = parseMonth(date, pos);
+        pos += 3;
+        if (month == -1 || date.charAt(pos++) != ' ') {
+            return INVALID;
+        }
+        final int year = parseDigits(date, pos, 4);
+        pos += 4;
+        if (year < 0 || date.charAt(pos++) != ' ') {
+            return INVALID;
+        }
+        final int hour = parseDigits(date, pos, 2);
+        final int minute = parseDigits(date, pos + 3, 2);
+        final int second = parseDigits(date, pos + 6, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60
+                || date.charAt(pos + 2) != ':' || date.charAt(pos + 5) != ':' || date.charAt(pos + 8) != ' '
+                || date.charAt(pos + 9) != 'G' || date.charAt(pos + 10) != 'M' || date.charAt(pos + 11) != 'T') {
+            return INVALID;
+        }
+        return (daysFromCivil(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second)
+                * MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Days since the epoch for the date, see http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2
+                ? year - 1
+                : year;
+        final int era = (y >= 0
+                ? y
+                : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2
+                ? month - 3
+                : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * @return the month 1-12 or -1 if there is no valid month name at the position
+     */
+    private static int parseMonth(final CharSequence date, final int pos) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            final String month = MONTHS[i];
+            if (month.charAt(0) == date.charAt(pos) && month.charAt(1) == date.charAt(pos + 1)
+                    && month.charAt(2) == date.charAt(pos + 2)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the parsed number or -1 if one of the characters is not a digit
+     */
+    private static int parseDigits(final CharSequence date, final int pos, final int digits) {
+        int value = 0;
+        for (int i = pos; i < pos + digits; i++) {
+            final char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static boolean isLetter(final char c) {
+        return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+    }
+
+    private static void putName(final String name, final char[] chars, final int pos) {
+        chars[pos] = name.charAt(0);
+        chars[pos + 1] = name.charAt(1);
+        chars[pos + 2] = name.charAt(2);
+    }
+
+    private static void putDigits(final int value, final int digits, final char[] chars, final int pos) {
+        int remaining = value;
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            chars[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+    }
+}
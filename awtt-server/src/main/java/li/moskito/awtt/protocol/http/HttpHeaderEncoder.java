@@ -0,0 +1,155 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.nio.ByteBuffer;
+
+import li.moskito.awtt.protocol.HeaderField;
+import li.moskito.awtt.protocol.HeaderFieldDefinition;
+
+/**
+ * Encoder that writes HTTP headers directly into a {@link ByteBuffer} without creating an intermediate character
+ * representation. The status lines for all {@link HttpStatusCodes} and {@link HttpVersion}s as well as the names of all
+ * standard header fields are encoded once in byte arrays. Values are encoded as ISO-8859-1, characters that can not be
+ * mapped are replaced with '?'.
+ *
+ * @author Gerald
+ */
+public final class HttpHeaderEncoder {
+
+    private static final byte[] CRLF = HTTP.CRLF.getBytes(HTTP.CHARSET);
+    private static final byte[] FIELD_SEPARATOR = ": ".getBytes(HTTP.CHARSET);
+    private static final byte SP = ' ';
+    private static final byte REPLACEMENT = '?';
+
+    /**
+     * Status lines including the line break by ordinal of the version and ordinal of the status code
+     */
+    private static final byte[][][] STATUS_LINES;
+
+    /**
+     * Names of the request header fields including the separator by ordinal of the field
+     */
+    private static final byte[][] REQUEST_FIELD_NAMES;
+
+    /**
+     * Names of the response header fields including the separator by ordinal of the field
+     */
+    private static final byte[][] RESPONSE_FIELD_NAMES;
+
+    static {
+        final HttpVersion[] versions = HttpVersion.values();
+        final HttpStatusCodes[] statusCodes = HttpStatusCodes.values();
+        STATUS_LINES = new byte[versions.length][statusCodes.length][];
+        for (final HttpVersion version : versions) {
+            for (final HttpStatusCodes statusCode : statusCodes) {
+                STATUS_LINES[version.ordinal()][statusCode.ordinal()] = (version + " " + statusCode + HTTP.CRLF)
+                        .getBytes(HTTP.CHARSET);
+            }
+        }
+        REQUEST_FIELD_NAMES = encodeNames(RequestHeaders.values());
+        RESPONSE_FIELD_NAMES = encodeNames(ResponseHeaders.values());
+    }
+
+    private HttpHeaderEncoder() {
+    }
+
+    /**
+     * Writes the header including the terminating empty line to the buffer. The header of a response starts with the
+     * status line, the header of a request with the request line.
+     *
+     * @param header
+     *            the header to be written
+     * @param dst
+     *            the buffer to write the header to
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException
+     *             if the buffer has not enough space for the entire header
+     */
+    public static int encode(final HttpHeader header, final ByteBuffer dst) {
+        final int start = dst.position();
+        if (header.isResponse()) {
+            dst.put(STATUS_LINES[header.getVersion().ordinal()][header.getStatusCode().ordinal()]);
+        } else {
+            putString(header.getCommand().name(), dst);
+            dst.put(SP);
+            putString(header.getResource().toString(), dst);
+            dst.put(SP);
+            putString(header.getVersion().toString(), dst);
+            dst.put(CRLF);
+        }
+        for (final HeaderField field : header.getFields()) {
+            encodeField(field, dst);
+        }
+        dst.put(CRLF);
+        return dst.position() - start;
+    }
+
+    /**
+     * Writes a single header field line including the line break to the buffer
+     *
+     * @param field
+     *            the field to be written
+     * @param dst
+     *            the buffer to write the field to
+     */
+    public static void encodeField(final HeaderField field, final ByteBuffer dst) {
+        if (field instanceof EncodedHeaderField) {
+            dst.put(((EncodedHeaderField) field).getEncoded());
+            return;
+        }
+        final HeaderFieldDefinition definition = field.getHeaderFieldDefinition();
+        if (definition instanceof ResponseHeaders) {
+            dst.put(RESPONSE_FIELD_NAMES[((ResponseHeaders) definition).ordinal()]);
+        } else if (definition instanceof RequestHeaders) {
+            dst.put(REQUEST_FIELD_NAMES[((RequestHeaders) definition).ordinal()]);
+        } else {
+            putString(definition.getName(), dst);
+            dst.put(FIELD_SEPARATOR);
+        }
+        final Object value = field.getValue();
+        if (value != null) {
+            putString(value.toString(), dst);
+        }
+        dst.put(CRLF);
+    }
+
+    /**
+     * Encodes a header field line including the line break into a byte array
+     *
+     * @param field
+     *            the field to be encoded
+     * @return the encoded line
+     */
+    static byte[] encodeField(final HeaderField field) {
+        final String value = field.getValue() == null
+                ? ""
+                : field.getValue().toString();
+        final ByteBuffer buffer = ByteBuffer.allocate(field.getHeaderFieldDefinition().getName().length()
+                + FIELD_SEPARATOR.length + value.length() + CRLF.length);
+        encodeField(field, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the string as ISO-8859-1 to the buffer
+     */
+    private static void putString(final String string, final ByteBuffer dst) {
+        final int length = string.length();
+        for (int i = 0; i < length; i++) {
+            final char c = string.charAt(i);
+            dst.put(c > 0xff
+                    ? REPLACEMENT
+                    : (byte) c);
+        }
+    }
+
+    private static byte[][] encodeNames(final HeaderFieldDefinition[] definitions) {
+        final byte[][] names = new byte[definitions.length][];
+        for (int i = 0; i < definitions.length; i++) {
+            names[i] = (definitions[i].getName() + ": ").getBytes(HTTP.CHARSET);
+        }
+        return names;
+    }
+}
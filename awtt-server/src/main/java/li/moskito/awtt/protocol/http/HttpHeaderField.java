@@ -30,7 +30,7 @@ public class HttpHeaderField extends HeaderField {
 
     @Override
     public String toString() {
-        return String.format("%s: %s", this.getHeaderFieldDefinition().getName(), this.getValue());
+        return this.getHeaderFieldDefinition().getName() + ": " + this.getValue();
     }
 
     @Override
@@ -17,6 +17,7 @@ public class HttpProtocolException extends ProtocolException {
      */
     private static final long serialVersionUID = 6330199493104663309L;
     private final String originalInput;
+    private final HttpStatusCodes statusCode;
 
     /**
      * @param message
@@ -25,6 +26,7 @@ public class HttpProtocolException extends ProtocolException {
     public HttpProtocolException(final String message, final String originalInput, final Throwable cause) {
         super(message, cause);
         this.originalInput = originalInput;
+        this.statusCode = HttpStatusCodes.BAD_REQUEST;
     }
 
     /**
@@ -34,6 +36,7 @@ public class HttpProtocolException extends ProtocolException {
     public HttpProtocolException(final String message, final Throwable cause) {
         super(message, cause);
         this.originalInput = null;
+        this.statusCode = HttpStatusCodes.BAD_REQUEST;
     }
 
     /**
@@ -42,6 +45,18 @@ public class HttpProtocolException extends ProtocolException {
     public HttpProtocolException(final String message) {
         super(message);
         this.originalInput = null;
+        this.statusCode = HttpStatusCodes.BAD_REQUEST;
+    }
+
+    /**
+     * @param message
+     * @param statusCode
+     *            the status code of the response that is sent to the client
+     */
+    public HttpProtocolException(final String message, final HttpStatusCodes statusCode) {
+        super(message);
+        this.originalInput = null;
+        this.statusCode = statusCode;
     }
 
     /**
@@ -50,10 +65,19 @@ public class HttpProtocolException extends ProtocolException {
     public HttpProtocolException(final Throwable cause) {
         super(cause);
         this.originalInput = null;
+        this.statusCode = HttpStatusCodes.BAD_REQUEST;
     }
 
     public String getOriginalInput() {
         return this.originalInput;
     }
 
+    /**
+     * @return the status code of the response that is sent to the client, {@link HttpStatusCodes#BAD_REQUEST} unless
+     *         specified otherwise
+     */
+    public HttpStatusCodes getStatusCode() {
+        return this.statusCode;
+    }
+
 }
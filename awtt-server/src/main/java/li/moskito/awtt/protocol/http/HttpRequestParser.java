@@ -0,0 +1,493 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import li.moskito.awtt.protocol.CustomHeaderFieldDefinition;
+import li.moskito.awtt.protocol.HeaderFieldDefinition;
+
+/**
+ * A resumable parser for HTTP/1.x request headers that works directly on the bytes of a {@link ByteBuffer}. The
+ * parser is a state machine that keeps its state between invocations, so a request header may be split across any
+ * number of buffers. It consumes the bytes up to the end of a request header and leaves the remaining bytes in the
+ * buffer, so that pipelined requests can be parsed from the same buffer by invoking the parser again. <br>
+ * Lines may be terminated by CRLF or a single LF. Empty lines preceding a request line are ignored. A parser instance
+ * is not thread-safe and must be used for a single connection only.
+ *
+ * @author Gerald
+ */
+public final class HttpRequestParser {
+
+    /**
+     * Default for the maximum size of a request header in bytes
+     */
+    public static final int DEFAULT_MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SP = ' ';
+    private static final byte HT = '\t';
+    private static final byte COLON = ':';
+
+    private static final int INITIAL_TOKEN_SIZE = 128;
+
+    private static final HttpCommands[] COMMANDS = HttpCommands.values();
+    private static final byte[][] COMMAND_NAMES;
+
+    private static final HttpVersion[] VERSIONS = HttpVersion.values();
+    private static final byte[][] VERSION_NAMES;
+
+    static {
+        COMMAND_NAMES = new byte[COMMANDS.length][];
+        for (int i = 0; i < COMMANDS.length; i++) {
+            COMMAND_NAMES[i] = COMMANDS[i].name().getBytes(HTTP.CHARSET);
+        }
+        VERSION_NAMES = new byte[VERSIONS.length][];
+        for (int i = 0; i < VERSIONS.length; i++) {
+            VERSION_NAMES[i] = VERSIONS[i].toString().getBytes(HTTP.CHARSET);
+        }
+    }
+
+    /**
+     * States of the parser
+     */
+    private static enum State {
+        /**
+         * Skipping empty lines before the request line
+         */
+        REQUEST_LINE_START,
+        COMMAND,
+        RESOURCE,
+        VERSION,
+        /**
+         * A CR has been read at the end of the request line
+         */
+        REQUEST_LINE_LF,
+        /**
+         * At the beginning of a header field line or the empty line terminating the header
+         */
+        FIELD_START,
+        FIELD_NAME,
+        FIELD_VALUE_START,
+        FIELD_VALUE,
+        /**
+         * A CR has been read at the end of a field line
+         */
+        FIELD_LF,
+        /**
+         * A line starting with whitespace, which is accepted if it contains only whitespace
+         */
+        BLANK_LINE,
+        /**
+         * A CR of the empty line terminating the header has been read
+         */
+        HEADER_END_LF;
+    }
+
+    private final int maxHeaderSize;
+
+    private State state;
+
+    /**
+     * Number of bytes of the current request header consumed so far
+     */
+    private int headerSize;
+
+    /**
+     * Buffer for the bytes of the current token (command, resource, version, field name or value)
+     */
+    private byte[] token;
+    private int tokenLength;
+
+    private HttpCommands command;
+    private URI resource;
+    private HttpVersion version;
+    private HeaderFieldDefinition fieldDefinition;
+    private List<HttpHeaderField> fields;
+
+    /**
+     * Creates a parser with the default maximum header size
+     */
+    public HttpRequestParser() {
+        this(DEFAULT_MAX_HEADER_SIZE);
+    }
+
+    /**
+     * @param maxHeaderSize
+     *            the maximum size of a request header in bytes. Requests with larger headers are rejected.
+     */
+    public HttpRequestParser(final int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.token = new byte[INITIAL_TOKEN_SIZE];
+        this.reset();
+    }
+
+    /**
+     * Parses the request header from the buffer. If the buffer doesn't contain the complete header, all bytes of the
+     * buffer are consumed and the parsing is continued with the next invocation.
+     *
+     * @param src
+     *            the buffer containing the data to be parsed
+     * @return the request once the header was completely parsed or <code>null</code> if more data is required. The
+     *         position of the buffer is at the first byte after the header.
+     * @throws HttpProtocolException
+     *             if the data does not conform to the HTTP standard. The state of the parser is reset.
+     */
+    public HttpRequest parse(final ByteBuffer src) throws HttpProtocolException {
+        try {
+            while (src.hasRemaining()) {
+                if (this.state != State.REQUEST_LINE_START && ++this.headerSize > this.maxHeaderSize) {
+                    throw new HttpProtocolException("Request header exceeds " + this.maxHeaderSize + " bytes");
+                }
+                if (this.parse(src.get())) {
+                    return this.createRequest();
+                }
+            }
+            return null;
+        } catch (final HttpProtocolException e) {
+            this.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if the parser is in the middle of a request
+     *
+     * @return <code>true</code> if data of an incomplete request header has been consumed
+     */
+    public boolean hasPartialRequest() {
+        return this.state != State.REQUEST_LINE_START;
+    }
+
+    /**
+     * Discards the partially parsed request
+     */
+    public void reset() {
+        this.state = State.REQUEST_LINE_START;
+        this.headerSize = 0;
+        this.tokenLength = 0;
+        this.command = null;
+        this.resource = null;
+        this.version = null;
+        this.fieldDefinition = null;
+        this.fields = null;
+    }
+
+    /**
+     * Processes a single byte
+     *
+     * @param b
+     *            the byte to process
+     * @return <code>true</code> if the byte completed the request header
+     * @throws HttpProtocolException
+     */
+    private boolean parse(final byte b) throws HttpProtocolException {
+        switch (this.state) {
+            case REQUEST_LINE_START:
+                if (b != CR && b != LF) {
+                    this.state = State.COMMAND;
+                    this.headerSize = 1;
+                    this.append(b);
+                }
+                break;
+            case COMMAND:
+                if (b == SP) {
+                    this.command = this.parseCommand();
+                    this.state = State.RESOURCE;
+                } else if (isControl(b)) {
+                    throw new HttpProtocolException("RequestLine does not conform to http standard");
+                } else {
+                    this.append(b);
+                }
+                break;
+            case RESOURCE:
+                if (b == SP) {
+                    this.resource = this.parseResource();
+                    this.state = State.VERSION;
+                } else if (isControl(b)) {
+                    throw new HttpProtocolException("RequestLine does not conform to http standard, version missing");
+                } else {
+                    this.append(b);
+                }
+                break;
+            case VERSION:
+                if (b == CR) {
+                    this.state = State.REQUEST_LINE_LF;
+                } else if (b == LF) {
+                    this.endRequestLine();
+                } else {
+                    this.append(b);
+                }
+                break;
+            case REQUEST_LINE_LF:
+                this.expectLF(b);
+                this.endRequestLine();
+                break;
+            case FIELD_START:
+                return this.startField(b);
+            case FIELD_NAME:
+                if (b == COLON) {
+                    this.fieldDefinition = this.parseFieldDefinition();
+                    this.state = State.FIELD_VALUE_START;
+                } else if (!isTokenChar(b)) {
+                    throw new HttpProtocolException("Field " + this.tokenAsString()
+                            + " does not conform to http standard");
+                } else {
+                    this.append(b);
+                }
+                break;
+            case FIELD_VALUE_START:
+                // leading whitespace of the value is skipped
+                if (b != SP && b != HT) {
+                    this.state = State.FIELD_VALUE;
+                    this.parseFieldValue(b);
+                }
+                break;
+            case FIELD_VALUE:
+                this.parseFieldValue(b);
+                break;
+            case FIELD_LF:
+                this.expectLF(b);
+                this.endField();
+                break;
+            case BLANK_LINE:
+                if (b == CR) {
+                    this.state = State.HEADER_END_LF;
+                } else if (b == LF) {
+                    return true;
+                } else if (b != SP && b != HT) {
+                    throw new HttpProtocolException("Folded header field lines are not supported");
+                }
+                break;
+            case HEADER_END_LF:
+                this.expectLF(b);
+                return true;
+            default:
+                throw new IllegalStateException("Unknown state " + this.state);
+        }
+        return false;
+    }
+
+    /**
+     * Processes the first byte of a header line
+     *
+     * @param b
+     *            the first byte of the line
+     * @return <code>true</code> if the header is complete
+     * @throws HttpProtocolException
+     */
+    private boolean startField(final byte b) throws HttpProtocolException {
+        switch (b) {
+            case CR:
+                this.state = State.HEADER_END_LF;
+                return false;
+            case LF:
+                return true;
+            case SP:
+            case HT:
+                this.state = State.BLANK_LINE;
+                return false;
+            default:
+                if (!isTokenChar(b)) {
+                    throw new HttpProtocolException("Field does not conform to http standard");
+                }
+                this.append(b);
+                this.state = State.FIELD_NAME;
+                return false;
+        }
+    }
+
+    /**
+     * Processes a byte of a field value
+     *
+     * @param b
+     *            the byte of the value or the end of the line
+     */
+    private void parseFieldValue(final byte b) {
+        if (b == CR) {
+            this.state = State.FIELD_LF;
+        } else if (b == LF) {
+            this.endField();
+        } else {
+            this.append(b);
+        }
+    }
+
+    private void expectLF(final byte b) throws HttpProtocolException {
+        if (b != LF) {
+            throw new HttpProtocolException("Line does not end with CRLF");
+        }
+    }
+
+    /**
+     * Completes the request line after the version has been read
+     *
+     * @throws HttpProtocolException
+     */
+    private void endRequestLine() throws HttpProtocolException {
+        this.version = this.parseVersion();
+        this.fields = new ArrayList<>();
+        this.state = State.FIELD_START;
+    }
+
+    /**
+     * Completes the field after the value has been read
+     */
+    private void endField() {
+        // remove trailing whitespace
+        while (this.tokenLength > 0 && isWhitespace(this.token[this.tokenLength - 1])) {
+            this.tokenLength--;
+        }
+        this.fields.add(new HttpHeaderField(this.fieldDefinition, this.tokenAsString()));
+        this.fieldDefinition = null;
+        this.state = State.FIELD_START;
+    }
+
+    private HttpCommands parseCommand() throws HttpProtocolException {
+        final int index = this.indexOfToken(COMMAND_NAMES);
+        if (index == -1) {
+            throw new HttpProtocolException("Command " + this.tokenAsString() + " is not supported");
+        }
+        this.tokenLength = 0;
+        return COMMANDS[index];
+    }
+
+    private URI parseResource() throws HttpProtocolException {
+        final String resourceId = this.tokenAsString();
+        try {
+            return new URI(resourceId);
+        } catch (final URISyntaxException e) {
+            throw new HttpProtocolException("Resource identifier in " + e.getInput() + " was invalid at position "
+                    + e.getIndex(), resourceId, e);
+        }
+    }
+
+    private HttpVersion parseVersion() throws HttpProtocolException {
+        final int index = this.indexOfToken(VERSION_NAMES);
+        if (index == -1) {
+            throw new HttpProtocolException("Version " + this.tokenAsString() + " is not supported");
+        }
+        this.tokenLength = 0;
+        return VERSIONS[index];
+    }
+
+    private HeaderFieldDefinition parseFieldDefinition() throws HttpProtocolException {
+        if (this.tokenLength == 0) {
+            throw new HttpProtocolException("Field name is missing");
+        }
+        // standard fields are resolved from the bytes, a String is only created for custom fields
+        final RequestHeaders standardField = RequestHeaders.fromBytes(this.token, 0, this.tokenLength);
+        if (standardField != null) {
+            this.tokenLength = 0;
+            return standardField;
+        }
+        return CustomHeaderFieldDefinition.forName(this.tokenAsString());
+    }
+
+    /**
+     * Creates the request from the parsed data and resets the parser for the next request.
+     *
+     * @return the parsed request
+     */
+    private HttpRequest createRequest() {
+        final HttpRequest request = new HttpRequest(this.command, this.resource, this.version);
+        request.setCharset(HTTP.CHARSET);
+        request.getHeader().addHttpHeaderFields(this.fields);
+        this.reset();
+        return request;
+    }
+
+    /**
+     * Searches for the current token in the list of names
+     *
+     * @param names
+     *            the byte representation of the names
+     * @return the index of the matching name or -1 if no name matches
+     */
+    private int indexOfToken(final byte[][] names) {
+        for (int i = 0; i < names.length; i++) {
+            if (this.tokenEquals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean tokenEquals(final byte[] name) {
+        if (name.length != this.tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != this.token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current token as string and clears the token.
+     *
+     * @return the token decoded as ISO-8859-1
+     */
+    @SuppressWarnings("deprecation")
+    private String tokenAsString() {
+        // the deprecated constructor copies the bytes as ISO-8859-1 chars without involving a decoder
+        final String value = new String(this.token, 0, 0, this.tokenLength);
+        this.tokenLength = 0;
+        return value;
+    }
+
+    private void append(final byte b) {
+        if (this.tokenLength == this.token.length) {
+            final byte[] newToken = new byte[this.token.length * 2];
+            System.arraycopy(this.token, 0, newToken, 0, this.tokenLength);
+            this.token = newToken;
+        }
+        this.token[this.tokenLength++] = b;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == SP || b == HT;
+    }
+
+    private static boolean isControl(final byte b) {
+        return b >= 0 && b < SP || b == 0x7f;
+    }
+
+    /**
+     * Checks if the byte is a valid character of a token according to RFC 7230
+     */
+    private static boolean isTokenChar(final byte b) {
+        if (b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9') {
+            return true;
+        }
+        switch (b) {
+            case '!':
+            case '#':
+            case '$':
+            case '%':
+            case '&':
+            case '\'':
+            case '*':
+            case '+':
+            case '-':
+            case '.':
+            case '^':
+            case '_':
+            case '`':
+            case '|':
+            case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import li.moskito.awtt.protocol.HeaderField;
+
+/**
+ * Router selecting the handler of a request by its method, host and path. The path patterns of the routes are compiled
+ * into a trie of path segments, so that the lookup of a handler depends on the length of the requested path and not
+ * on the number of routes. A pattern consists of segments separated by '/' where each segment is either
+ * <ul>
+ * <li>a literal segment, matching the same segment of the path</li>
+ * <li><code>*</code>, matching any single segment of the path</li>
+ * <li><code>**</code> as last segment, matching the remainder of the path including an empty one</li>
+ * </ul>
+ * If several routes match a request, the route with the most literally matched segments is selected, a route matching
+ * the entire path is preferred over a prefix route. Remaining ties are resolved by the order in which the routes have
+ * been added. <br>
+ * Routes are added at configuration time, the router is not safe for concurrent modification.
+ *
+ * @author Gerald
+ */
+final class HttpRequestRouter {
+
+    private static final String SEPARATOR = "/";
+    private static final String ANY_SEGMENT = "*";
+    private static final String ANY_SUFFIX = "**";
+
+    private final Node root = new Node();
+
+    /**
+     * Number of routes added so far, used for the order of the routes
+     */
+    private int routeCount;
+
+    /**
+     * Node of the trie representing a path segment
+     *
+     * @author Gerald
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard;
+
+        /**
+         * Routes whose pattern ends at this node
+         */
+        private final List<Route> exactRoutes = new ArrayList<>(1);
+
+        /**
+         * Routes whose pattern ends with <code>**</code> following this node
+         */
+        private final List<Route> prefixRoutes = new ArrayList<>(1);
+    }
+
+    /**
+     * Route to a handler with the optional method and host constraints
+     *
+     * @author Gerald
+     */
+    private static final class Route {
+        private final HttpCommands method;
+        private final String host;
+        private final HttpProtocolHandler handler;
+        private final int order;
+
+        Route(final HttpCommands method, final String host, final HttpProtocolHandler handler, final int order) {
+            this.method = method;
+            this.host = host;
+            this.handler = handler;
+            this.order = order;
+        }
+
+        boolean matches(final HttpCommands method, final String host) {
+            return (this.method == null || this.method == method) && (this.host == null || this.host.equals(host));
+        }
+    }
+
+    /**
+     * A route matching a request
+     *
+     * @author Gerald
+     */
+    private static final class Match {
+        private final Route route;
+        private final int literals;
+        private final boolean exact;
+
+        Match(final Route route, final int literals, final boolean exact) {
+            this.route = route;
+            this.literals = literals;
+            this.exact = exact;
+        }
+
+        boolean isBetterThan(final Match other) {
+            if (other == null) {
+                return true;
+            }
+            if (this.literals != other.literals) {
+                return this.literals > other.literals;
+            }
+            if (this.exact != other.exact) {
+                return this.exact;
+            }
+            return this.route.order < other.route.order;
+        }
+    }
+
+    /**
+     * Adds a route to a handler
+     *
+     * @param method
+     *            the method of the requests or <code>null</code> for requests of any method
+     * @param host
+     *            the host of the requests without port or <code>null</code> for requests to any host
+     * @param pathPattern
+     *            the pattern of the requested paths
+     * @param handler
+     *            the handler processing the matching requests
+     * @throws IllegalArgumentException
+     *             if the pattern is not valid
+     */
+    void addRoute(final HttpCommands method, final String host, final String pathPattern,
+            final HttpProtocolHandler handler) {
+        if (pathPattern == null || !pathPattern.startsWith(SEPARATOR)) {
+            throw new IllegalArgumentException("Path pattern '" + pathPattern + "' does not start with '/'");
+        }
+        final String normalizedHost = host == null ? null : host.toLowerCase(Locale.ENGLISH);
+        final Route route = new Route(method, normalizedHost, handler, this.routeCount++);
+        final List<String> segments = splitPath(pathPattern);
+        Node node = this.root;
+        for (int i = 0; i < segments.size(); i++) {
+            final String segment = segments.get(i);
+            if (ANY_SUFFIX.equals(segment)) {
+                if (i != segments.size() - 1) {
+                    throw new IllegalArgumentException("'**' is only allowed as last segment of '" + pathPattern + "'");
+                }
+                node.prefixRoutes.add(route);
+                return;
+            }
+            node = this.getOrCreateChild(node, segment);
+        }
+        node.exactRoutes.add(route);
+    }
+
+    private Node getOrCreateChild(final Node node, final String segment) {
+        if (ANY_SEGMENT.equals(segment)) {
+            if (node.wildcard == null) {
+                node.wildcard = new Node();
+            }
+            return node.wildcard;
+        }
+        Node child = node.children.get(segment);
+        if (child == null) {
+            child = new Node();
+            node.children.put(segment, child);
+        }
+        return child;
+    }
+
+    /**
+     * Selects the handler for the request
+     *
+     * @param httpRequest
+     *            the request to be routed
+     * @return the handler of the best matching route or <code>null</code> if no route matches
+     */
+    HttpProtocolHandler route(final HttpRequest httpRequest) {
+        final URI resource = httpRequest.getResource();
+        if (this.routeCount == 0 || resource == null) {
+            return null;
+        }
+        final String path = resource.getPath();
+        if (path == null || !path.startsWith(SEPARATOR)) {
+            return null;
+        }
+        final Match match = this.find(this.root, splitPath(path), 0, 0, httpRequest.getCommand(), getHost(httpRequest),
+                null);
+        return match == null ? null : match.route.handler;
+    }
+
+    private Match find(final Node node, final List<String> segments, final int index, final int literals,
+            final HttpCommands method, final String host, final Match best) {
+        Match result = select(node.prefixRoutes, literals, false, method, host, best);
+        if (index == segments.size()) {
+            return select(node.exactRoutes, literals, true, method, host, result);
+        }
+        final Node child = node.children.get(segments.get(index));
+        if (child != null) {
+            result = this.find(child, segments, index + 1, literals + 1, method, host, result);
+        }
+        if (node.wildcard != null) {
+            result = this.find(node.wildcard, segments, index + 1, literals, method, host, result);
+        }
+        return result;
+    }
+
+    /**
+     * Selects the first route of the list matching method and host, if it is better than the best match so far.
+     */
+    private static Match select(final List<Route> routes, final int literals, final boolean exact,
+            final HttpCommands method, final String host, final Match best) {
+        for (final Route route : routes) {
+            if (route.matches(method, host)) {
+                final Match match = new Match(route, literals, exact);
+                return match.isBetterThan(best) ? match : best;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Determines the host of the request from the Host header or the absolute request URI
+     *
+     * @return the host in lower case without port or <code>null</code> if the request specifies no host
+     */
+    private static String getHost(final HttpRequest httpRequest) {
+        final HeaderField field = httpRequest.getHeader().getField(RequestHeaders.HOST);
+        String host;
+        if (field != null) {
+            host = (String) field.getValue();
+            final int portSeparator = host.lastIndexOf(':');
+            // an IPv6 address literal is enclosed in brackets
+            if (portSeparator != -1 && portSeparator > host.lastIndexOf(']')) {
+                host = host.substring(0, portSeparator);
+            }
+        } else {
+            host = httpRequest.getResource().getHost();
+        }
+        return host == null ? null : host.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Splits the path into its non-empty segments
+     */
+    private static List<String> splitPath(final String path) {
+        final List<String> segments = new ArrayList<>();
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+}
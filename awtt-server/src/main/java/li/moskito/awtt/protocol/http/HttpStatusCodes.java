@@ -182,6 +182,7 @@ public enum HttpStatusCodes {
     ;
     private final String reason;
     private final int code;
+    private final String string;
 
     /**
      * 
@@ -189,6 +190,7 @@ public enum HttpStatusCodes {
     private HttpStatusCodes(final int code, final String reason) {
         this.code = code;
         this.reason = reason;
+        this.string = code + " " + reason;
     }
 
     public String getReason() {
@@ -201,7 +203,7 @@ public enum HttpStatusCodes {
 
     @Override
     public String toString() {
-        return String.format("%s %s", this.code, this.reason);
+        return this.string;
     }
 
 }
@@ -18,10 +18,18 @@ public enum HttpVersion implements ProtocolVersion {
 
     static final String PROTOCOL_PREFIX = "HTTP/";
 
+    /**
+     * The versions, values() creates a copy on every invocation
+     */
+    private static final HttpVersion[] VALUES = values();
+
     private String version;
 
+    private String protocolName;
+
     HttpVersion(final String version) {
         this.version = version;
+        this.protocolName = PROTOCOL_PREFIX + version;
     }
 
     @Override
@@ -31,12 +39,12 @@ public enum HttpVersion implements ProtocolVersion {
 
     @Override
     public String toString() {
-        return PROTOCOL_PREFIX + this.version;
+        return this.protocolName;
     }
 
     public static HttpVersion fromString(final String string) {
-        for (final HttpVersion version : values()) {
-            if (version.toString().equals(string)) {
+        for (final HttpVersion version : VALUES) {
+            if (version.protocolName.equals(string)) {
                 return version;
             }
         }
@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package li.moskito.awtt.protocol.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import li.moskito.awtt.protocol.SpoolingBody;
+
+/**
+ * Decoder for the body of a request (RFC 7230, section 3.3). The body is either delimited by the Content-Length or
+ * transferred with the chunked transfer coding. The decoder consumes the body data of the buffers passed to it and
+ * appends it to a {@link SpoolingBody}. Data following the body, i.e. a pipelined request, is left in the buffer. <br>
+ * Chunk extensions and trailer fields are ignored.
+ *
+ * @author Gerald
+ */
+final class RequestBodyDecoder {
+
+    /**
+     * Maximum length of a chunk size line including extensions and of a trailer line
+     */
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    /**
+     * Maximum number of hex digits of a chunk size, sufficient for the maximum body size
+     */
+    private static final int MAX_SIZE_DIGITS = 15;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    /**
+     * States of the chunked decoding
+     *
+     * @author Gerald
+     */
+    private enum State {
+        /**
+         * Reading the hex digits of the chunk size
+         */
+        SIZE,
+        /**
+         * Skipping chunk extensions until the end of the line
+         */
+        SIZE_LINE,
+        /**
+         * Reading the data of the chunk
+         */
+        DATA,
+        /**
+         * Expecting the line break after the data of the chunk
+         */
+        DATA_END,
+        /**
+         * Skipping the trailer lines until the empty line
+         */
+        TRAILER,
+        /**
+         * The body is complete
+         */
+        DONE;
+    }
+
+    private final SpoolingBody body;
+    private final long maxSize;
+    private final boolean chunked;
+
+    /**
+     * Remaining bytes of the body if delimited by the content length, remaining bytes of the current chunk otherwise
+     */
+    private long remaining;
+
+    private State state;
+    private int lineLength;
+    private int sizeDigits;
+    private boolean lineStart;
+
+    private RequestBodyDecoder(final SpoolingBody body, final long maxSize, final boolean chunked,
+            final long contentLength) {
+        this.body = body;
+        this.maxSize = maxSize;
+        this.chunked = chunked;
+        this.remaining = contentLength;
+        if (chunked) {
+            this.state = State.SIZE;
+        } else if (contentLength == 0) {
+            this.state = State.DONE;
+        } else {
+            this.state = State.DATA;
+        }
+    }
+
+    /**
+     * Creates a decoder for a body delimited by the Content-Length
+     *
+     * @param contentLength
+     *            the length of the body
+     * @param memoryThreshold
+     *            the maximum number of bytes kept in memory before the body is spilled to a temporary file
+     * @return the decoder
+     */
+    static RequestBodyDecoder fixedLength(final long contentLength, final int memoryThreshold) {
+        return new RequestBodyDecoder(new SpoolingBody(memoryThreshold, contentLength), contentLength, false,
+                contentLength);
+    }
+
+    /**
+     * Creates a decoder for a body transferred with the chunked transfer coding
+     *
+     * @param maxSize
+     *            the maximum size of the decoded body
+     * @param memoryThreshold
+     *            the maximum number of bytes kept in memory before the body is spilled to a temporary file
+     * @return the decoder
+     */
+    static RequestBodyDecoder chunked(final long maxSize, final int memoryThreshold) {
+        return new RequestBodyDecoder(new SpoolingBody(memoryThreshold, -1), maxSize, true, 0);
+    }
+
+    /**
+     * Decodes the body data of the buffer.
+     *
+     * @param src
+     *            the buffer containing body data. Data following the body remains in the buffer.
+     * @return <code>true</code> if the body is complete
+     * @throws HttpProtocolException
+     *             if the chunked encoding is malformed or the body exceeds the maximum size
+     * @throws IOException
+     *             if the body could not be spilled to the temporary file
+     */
+    boolean decode(final ByteBuffer src) throws HttpProtocolException, IOException {
+        while (this.state != State.DONE && src.hasRemaining()) {
+            switch (this.state) {
+                case SIZE:
+                    this.readSize(src);
+                    break;
+                case SIZE_LINE:
+                    if (this.skipLine(src)) {
+                        this.startChunk();
+                    }
+                    break;
+                case DATA:
+                    this.readData(src);
+                    break;
+                case DATA_END:
+                    if (this.skipLine(src)) {
+                        if (this.lineLength > 0) {
+                            throw new HttpProtocolException("Chunk data is not terminated by a line break");
+                        }
+                        this.lineLength = 0;
+                        this.state = State.SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    this.readTrailer(src);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (this.state == State.DONE) {
+            this.body.complete();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the body the data is decoded into
+     */
+    SpoolingBody getBody() {
+        return this.body;
+    }
+
+    private void readSize(final ByteBuffer src) throws HttpProtocolException {
+        while (src.hasRemaining()) {
+            final byte b = src.get();
+            final int digit = Character.digit(b, 16);
+            if (digit == -1) {
+                if (this.sizeDigits == 0) {
+                    throw new HttpProtocolException("Invalid chunk size");
+                }
+                // the rest of the line contains chunk extensions
+                this.state = State.SIZE_LINE;
+                this.lineLength = this.sizeDigits;
+                src.position(src.position() - 1);
+                return;
+            }
+            if (++this.sizeDigits > MAX_SIZE_DIGITS) {
+                throw new HttpProtocolException("Chunk size too large", HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE);
+            }
+            this.remaining = this.remaining * 16 + digit;
+        }
+    }
+
+    private void startChunk() throws HttpProtocolException {
+        this.sizeDigits = 0;
+        this.lineLength = 0;
+        if (this.remaining == 0) {
+            this.lineStart = true;
+            this.state = State.TRAILER;
+            return;
+        }
+        if (this.body.getLength() + this.remaining > this.maxSize) {
+            throw new HttpProtocolException("Request body exceeds " + this.maxSize + " bytes",
+                    HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE);
+        }
+        this.state = State.DATA;
+    }
+
+    private void readData(final ByteBuffer src) throws IOException {
+        final int length = (int) Math.min(src.remaining(), this.remaining);
+        final ByteBuffer data = src.duplicate();
+        data.limit(src.position() + length);
+        this.body.append(data);
+        src.position(src.position() + length);
+        this.remaining -= length;
+        if (this.remaining == 0) {
+            this.state = this.chunked
+                    ? State.DATA_END
+                    : State.DONE;
+        }
+    }
+
+    /**
+     * Skips the data until the end of the line. A bare LF is accepted as line break.
+     *
+     * @return <code>true</code> if the end of the line has been reached
+     */
+    private boolean skipLine(final ByteBuffer src) throws HttpProtocolException {
+        while (src.hasRemaining()) {
+            final byte b = src.get();
+            if (b == LF) {
+                return true;
+            }
+            if (b != CR && ++this.lineLength > MAX_LINE_LENGTH) {
+                throw new HttpProtocolException("Chunk line too long");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the trailer fields until the terminating empty line
+     */
+    private void readTrailer(final ByteBuffer src) throws HttpProtocolException {
+        while (src.hasRemaining()) {
+            final byte b = src.get();
+            if (b == LF) {
+                if (this.lineStart) {
+                    this.state = State.DONE;
+                    return;
+                }
+                this.lineStart = true;
+                this.lineLength = 0;
+            } else if (b != CR) {
+                this.lineStart = false;
+                if (++this.lineLength > MAX_LINE_LENGTH) {
+                    throw new HttpProtocolException("Trailer line too long");
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@
 package li.moskito.awtt.protocol.http;
 
 import li.moskito.awtt.protocol.HeaderFieldDefinition;
+import li.moskito.awtt.protocol.HeaderFieldNameTable;
 
 /**
  * see <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec5.html#sec5.3">HTTP Request Header Fields</a>
@@ -44,6 +45,11 @@ public enum RequestHeaders implements HeaderFieldDefinition {
     VIA("Via"),
     WARNING("Warning"), ;
 
+    /**
+     * Lookup table for resolving the header fields by name
+     */
+    private static final HeaderFieldNameTable<RequestHeaders> NAMES = new HeaderFieldNameTable<>(values());
+
     private String headerFieldName;
 
     // TODO add value validation regex
@@ -57,20 +63,40 @@ public enum RequestHeaders implements HeaderFieldDefinition {
     }
 
     /**
-     * @param group
-     * @return
+     * Resolves the header field with the given name. Header field names are case-insensitive.
+     * 
+     * @param string
+     *            the name of the header field
+     * @return the header field
+     * @throws IllegalArgumentException
+     *             if there is no request header field with that name
      */
     public static RequestHeaders fromString(final String string) {
-        for (final RequestHeaders field : values()) {
-            if (field.headerFieldName.equals(string)) {
-                return field;
-            }
+        final RequestHeaders field = NAMES.get(string);
+        if (field != null) {
+            return field;
         }
         return valueOf(string);
     }
 
+    /**
+     * Resolves the header field with the name contained in the byte array without creating a String.
+     * 
+     * @param src
+     *            the array containing the name encoded as ISO-8859-1
+     * @param offset
+     *            the offset of the first byte of the name
+     * @param length
+     *            the number of bytes of the name
+     * @return the header field or <code>null</code> if there is no request header field with that name
+     */
+    public static RequestHeaders fromBytes(final byte[] src, final int offset, final int length) {
+        return NAMES.get(src, offset, length);
+    }
+
     @Override
     public String getName() {
         return this.headerFieldName;
     }
+
 }
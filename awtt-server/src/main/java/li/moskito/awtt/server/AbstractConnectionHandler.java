@@ -0,0 +1,208 @@
+/**
+ *
+ */
+package li.moskito.awtt.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import li.moskito.awtt.common.Configurable;
+import li.moskito.awtt.metrics.LatencyHistograms;
+import li.moskito.awtt.protocol.MessageChannel;
+import li.moskito.awtt.protocol.MessageChannelOption;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for {@link ConnectionHandler}s that accept connections on a server socket. The class keeps the
+ * configuration options of the handler, opens the server socket for the bound {@link Port} and creates the
+ * {@link MessageChannel}s for incoming connections. How the connections are processed is up to the subclasses.
+ *
+ * @author Gerald
+ */
+public abstract class AbstractConnectionHandler implements ConnectionHandler, Configurable {
+
+    /**
+     * Configuration parameter for keepAlive, this is the same name as in the HttpChannelOptions!
+     */
+    protected static final String KEEP_ALIVE_TIMEOUT_OPTION = "keepAliveTimeout";
+
+    /**
+     * Configuration parameter for the allowed maximum number of simultaneous connections
+     */
+    protected static final String MAX_CONNECTIONS_OPTION = "maxConnections";
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractConnectionHandler.class);
+
+    private Port port;
+    private LatencyHistograms latencyHistograms;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private final Map<String, String> connectionOptions = new HashMap<>();
+
+    @Override
+    public void run() {
+
+        // create a socket address from port configuration
+        final SocketAddress bindAddress = new InetSocketAddress(this.port.getHostname(), this.port.getPortNumber());
+
+        // open the server socket (AutoCloseable)
+        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+
+            // bind the channel to the address
+            this.initializeChannel(serverSocketChannel, bindAddress);
+
+            // handle incoming connections (blocking operation)
+            this.handleConnections(serverSocketChannel);
+
+        } catch (final IOException e) {
+            LOG.error("Could not create server socket", e);
+            throw new ServerRuntimeException(e);
+        }
+    }
+
+    /**
+     * Accepts incoming connection on the specified serverSocketChannel. The method has to block as long as the handler
+     * is running.
+     *
+     * @param serverSocketChannel
+     *            the bound server socket channel
+     */
+    protected abstract void handleConnections(final ServerSocketChannel serverSocketChannel);
+
+    /**
+     * Checks if the handler is still running, that is if it has not been closed yet.
+     *
+     * @return <code>true</code> as long as the handler accepts connections
+     */
+    protected boolean isRunning() {
+        return this.running.get();
+    }
+
+    /**
+     * Retrieves the port this handler is bound to
+     *
+     * @return the port
+     */
+    protected Port getPort() {
+        return this.port;
+    }
+
+    /**
+     * Retrieves the value of the specified connection option as int.
+     *
+     * @param option
+     *            the name of the option
+     * @param defaultValue
+     *            the value to be returned if the option is not configured
+     * @return the int value of the option
+     */
+    protected int getIntOption(final String option, final int defaultValue) {
+        if (this.connectionOptions.containsKey(option)) {
+            return Integer.parseInt(this.connectionOptions.get(option));
+        }
+        return defaultValue;
+    }
+
+    /**
+     * True, if a "keepAliveTimeout" property was configured
+     *
+     * @return
+     */
+    protected boolean isKeepAliveEnabled() {
+        return this.connectionOptions.containsKey(KEEP_ALIVE_TIMEOUT_OPTION);
+    }
+
+    /**
+     * Sets the keep alive socket option to the client if a keep alive timeout has been specified
+     *
+     * @param client
+     *            the client connection for which the keepalive option should be set
+     * @throws IOException
+     */
+    protected void setKeepAlive(final SocketChannel client) throws IOException {
+        if (this.isKeepAliveEnabled()) {
+            client.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.TRUE);
+        } else {
+            client.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Opens a new message channel using the protocol of the port. The channel's option are set according to the
+     * configuration of the connection handler.
+     *
+     * @param client
+     *            the connection of the client the channel processes the messages of
+     * @return the new message channel
+     * @throws IOException
+     *             if the address of the client could not be determined
+     */
+    protected MessageChannel openMessageChannel(final SocketChannel client) throws IOException {
+        final MessageChannel serverChannel = this.port.getProtocol().openChannel();
+        // pass the connection option to the message channel, if they are supported
+        for (final MessageChannelOption<?> option : serverChannel.getSupportedOptions()) {
+            if (this.connectionOptions.containsKey(option.name())) {
+                final Object optionValue = option.fromString(this.connectionOptions.get(option.name()));
+                LOG.debug("Setting channel option {} to {}", option, optionValue);
+                serverChannel.setOption(option, optionValue);
+            }
+        }
+        serverChannel.setLatencyHistograms(this.latencyHistograms);
+        serverChannel.setRemoteAddress(client.getRemoteAddress());
+        return serverChannel;
+    }
+
+    /**
+     * Initializes the channel by binding it to the specified address and setting it to blocking mode
+     *
+     * @param serverSocketChannel
+     * @param bindAddress
+     * @throws IOException
+     */
+    private void initializeChannel(final ServerSocketChannel serverSocketChannel, final SocketAddress bindAddress)
+            throws IOException {
+        serverSocketChannel.bind(bindAddress);
+        LOG.info("Listening on {}", bindAddress);
+        serverSocketChannel.configureBlocking(true);
+    }
+
+    @Override
+    public void configure(final HierarchicalConfiguration config) throws ConfigurationException {
+        // override default with settings from configuration
+        for (final Iterator<String> keyIt = config.getKeys(); keyIt.hasNext();) {
+            final String key = keyIt.next();
+            this.connectionOptions.put(key, config.getString(key));
+        }
+    }
+
+    @Override
+    public void bind(final Port port) {
+        this.port = port;
+        this.latencyHistograms = LatencyHistograms.forPort(port.getPortNumber());
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.running.set(false);
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ *
+ */
+package li.moskito.awtt.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control based on the time accepted connections wait in the queue of a connection handler until a worker
+ * picks them up (CoDel, controlled delay). A queue that is drained regularly lets some connections pass without
+ * delay, whereas the minimum waiting time of a queue that is permanently backed up stays above the target. <br>
+ * The controller observes the minimum waiting time over an interval. If it stayed above the target for the whole
+ * interval, the handler is overloaded and connections that waited longer than the target are rejected during the next
+ * interval, so that the queue drains fast. Otherwise only connections that waited longer than the interval are
+ * rejected, tolerating short bursts. <br>
+ * The controller only sees the waiting times of connections. Requests on a connection that a worker already processes
+ * are not checked.
+ *
+ * @author Gerald
+ */
+final class AdmissionController {
+
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    /**
+     * The minimum waiting time observed in the current interval, guarded by this
+     */
+    private long minSojourn = Long.MAX_VALUE;
+
+    /**
+     * The end of the current interval, guarded by this
+     */
+    private long intervalEnd;
+
+    /**
+     * Whether the minimum waiting time exceeded the target in the previous interval, guarded by this
+     */
+    private boolean overloaded;
+
+    /**
+     * @param target
+     *            the acceptable waiting time of a connection
+     * @param interval
+     *            the interval over which the minimum waiting time is observed, should be a multiple of the target
+     * @param unit
+     *            the unit of target and interval
+     */
+    AdmissionController(final long target, final long interval, final TimeUnit unit) {
+        if (target <= 0 || interval < target) {
+            throw new IllegalArgumentException("Target must be positive and not greater than the interval, target="
+                    + target + ", interval=" + interval);
+        }
+        this.targetNanos = unit.toNanos(target);
+        this.intervalNanos = unit.toNanos(interval);
+        this.intervalEnd = System.nanoTime() + this.intervalNanos;
+    }
+
+    /**
+     * Decides whether a connection that has been taken from the queue is processed or rejected
+     *
+     * @param sojournNanos
+     *            the time the connection waited in the queue
+     * @param now
+     *            the current time as of {@link System#nanoTime()}
+     * @return <code>true</code> if the connection should be processed, <code>false</code> if it should be rejected
+     */
+    boolean admit(final long sojournNanos, final long now) {
+        final boolean overloadedNow;
+        synchronized (this) {
+            if (now - this.intervalEnd >= 0) {
+                // if no connection has been taken for a whole interval, the queue has been idle
+                this.overloaded = now - this.intervalEnd < this.intervalNanos && this.minSojourn != Long.MAX_VALUE
+                        && this.minSojourn > this.targetNanos;
+                this.minSojourn = Long.MAX_VALUE;
+                this.intervalEnd = now + this.intervalNanos;
+            }
+            this.minSojourn = Math.min(this.minSojourn, sojournNanos);
+            overloadedNow = this.overloaded;
+        }
+        return sojournNanos <= (overloadedNow ? this.targetNanos : this.intervalNanos);
+    }
+
+    /**
+     * @return <code>true</code> if the minimum waiting time exceeded the target in the last completed interval
+     */
+    synchronized boolean isOverloaded() {
+        return this.overloaded;
+    }
+}
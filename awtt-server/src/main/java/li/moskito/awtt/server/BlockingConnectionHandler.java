@@ -4,78 +4,75 @@
 package li.moskito.awtt.server;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.SocketAddress;
-import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import li.moskito.awtt.common.Configurable;
+import li.moskito.awtt.protocol.Message;
 import li.moskito.awtt.protocol.MessageChannel;
-import li.moskito.awtt.protocol.MessageChannelOption;
+import li.moskito.awtt.util.Channels;
 
-import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A connection handler that processes every connection with a blocking {@link MessageWorker} on a pool of
+ * maxConnections threads. Accepted connections wait in the queue of the pool until a thread is available. <br>
+ * If an admission target in ms is configured, the connections are subject to admission control by their waiting time
+ * (see {@link AdmissionController}). Connections that waited too long are closed with the overload response of the
+ * protocol, i.e. 503 Service Unavailable with a Retry-After field, instead of being processed after the client has
+ * given up. A new connection is checked when it is accepted by the waiting time of the connection at the head of the
+ * queue, so that it is rejected right away while all workers are busy, and a queued connection is checked again by
+ * its own waiting time when a worker picks it up. <br>
+ * Admission control only covers connections. Once a worker has picked up a connection, it serves all requests of the
+ * connection until it is closed, so a request never waits for a worker. A request only waits behind earlier
+ * requests of its own connection, and that time is not a signal of overload and is not checked. The time a keep-alive
+ * connection may hold a worker while idle is limited by the keep alive timeout, and the time new connections wait in
+ * the meantime is checked as described above.
+ * 
  * @author Gerald
  */
-public class BlockingConnectionHandler implements ConnectionHandler, Configurable {
-
-    /**
-     * Configuration parameter for keepAlive, this is the same name as in the HttpChannelOptions!
-     */
-    private static final String KEEP_ALIVE_TIMEOUT_OPTION = "keepAliveTimeout";
+public class BlockingConnectionHandler extends AbstractConnectionHandler {
 
     /**
      * SLF4J Logger for this class
      */
     private static final Logger LOG = LoggerFactory.getLogger(BlockingConnectionHandler.class);
 
-    /**
-     * Configuration parameter for the allowed maximum number of simultaneous connections
-     */
-    private static final String MAX_CONNECTIONS_OPTION = "maxConnections";
-
     /**
      * Default number of maximum connections is 5
      */
     private static final int DEFAULT_MAX_CONNECTIONS = 5;
 
-    private Port port;
-    private final AtomicBoolean running = new AtomicBoolean(true);
-
-    private final Map<String, String> connectionOptions = new HashMap<>();
-
-    @Override
-    public void run() {
+    /**
+     * Acceptable time in ms a connection waits for a worker, admission control is disabled if not configured
+     */
+    private static final String ADMISSION_TARGET_OPTION = "admissionTarget";
 
-        // create a socket address from port configuration
-        final SocketAddress bindAddress = new InetSocketAddress(this.port.getHostname(), this.port.getPortNumber());
+    /**
+     * Interval in ms over which the waiting times are observed
+     */
+    private static final String ADMISSION_INTERVAL_OPTION = "admissionInterval";
 
-        // open the server socket (AutoCloseable)
-        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+    /**
+     * Time in seconds after which a rejected client may try again
+     */
+    private static final String RETRY_AFTER_OPTION = "retryAfter";
 
-            // bind the channel to the address
-            this.initializeChannel(serverSocketChannel, bindAddress);
+    private static final int DEFAULT_ADMISSION_INTERVAL = 100;
 
-            // handle incoming connections (blocking operation)
-            this.handleConnections(serverSocketChannel);
+    private static final int DEFAULT_RETRY_AFTER = 1;
 
-        } catch (final IOException e) {
-            LOG.error("Could not create server socket", e);
-            throw new ServerRuntimeException(e);
-        }
-    }
+    /**
+     * Size of the buffer for discarding the data a rejected client has sent already
+     */
+    private static final int DISCARD_BUFFER_SIZE = 4096;
 
     /**
      * Accepts incoming connection on the specified serverSocketChannel. Every incoming connection is dispatched to a
@@ -83,15 +80,22 @@ public class BlockingConnectionHandler implements ConnectionHandler, Configurabl
      * 
      * @param serverSocketChannel
      */
-    private void handleConnections(final ServerSocketChannel serverSocketChannel) {
+    @Override
+    protected void handleConnections(final ServerSocketChannel serverSocketChannel) {
 
-        // create a thread pool for incoming connections according to configuration
-        final ExecutorService connectionExecutorService = Executors.newFixedThreadPool(this.getMaxConnections());
+        // create a thread pool for incoming connections according to configuration, the queue of the pool is inspected
+        // by the admission control
+        final int maxConnections = this.getMaxConnections();
+        final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        final ExecutorService connectionExecutorService = new ThreadPoolExecutor(maxConnections, maxConnections, 0L,
+                TimeUnit.MILLISECONDS, queue);
+        final AdmissionController admission = this.createAdmissionController();
 
-        while (this.running.get()) {
+        while (this.isRunning()) {
             try {
                 // wait for incoming connections
                 final SocketChannel client = serverSocketChannel.accept();
+                ConnectionMetrics.ACCEPTED.increment();
 
                 LOG.debug("Dispatching connection from {}", client.getRemoteAddress());
 
@@ -99,7 +103,7 @@ public class BlockingConnectionHandler implements ConnectionHandler, Configurabl
                 // set to blocking
                 client.configureBlocking(true);
                 // dispatch the incoming connection to the thread pool
-                this.dispatchClientConnection(client, connectionExecutorService);
+                this.dispatchClientConnection(client, connectionExecutorService, queue, admission);
 
             } catch (final ClosedByInterruptException e) {
                 LOG.info("Received interrupt signal, shutting down connection if closed");
@@ -115,110 +119,156 @@ public class BlockingConnectionHandler implements ConnectionHandler, Configurabl
      * 
      * @return
      */
-    private Integer getMaxConnections() {
-        return Integer.valueOf(this.connectionOptions.get(MAX_CONNECTIONS_OPTION));
-    }
-
-    /**
-     * True, if a "keepAliveTimeout" property was configured
-     * 
-     * @return
-     */
-    private boolean isKeepAliveEnabled() {
-        return this.connectionOptions.containsKey(KEEP_ALIVE_TIMEOUT_OPTION);
+    private int getMaxConnections() {
+        return this.getIntOption(MAX_CONNECTIONS_OPTION, DEFAULT_MAX_CONNECTIONS);
     }
 
     /**
-     * Sets the keep alive socket option to the client if a keep alive timeout has been specified
+     * Creates the admission controller if an admission target is configured
      * 
-     * @param client
-     *            the client connection for which the keepalive option should be set
-     * @throws IOException
+     * @return the admission controller or <code>null</code> if all connections are admitted
      */
-    private void setKeepAlive(final SocketChannel client) throws IOException {
-        if (this.isKeepAliveEnabled()) {
-            client.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.TRUE);
-        } else {
-            client.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.FALSE);
+    private AdmissionController createAdmissionController() {
+        final int target = this.getIntOption(ADMISSION_TARGET_OPTION, 0);
+        if (target <= 0) {
+            return null;
         }
+        return new AdmissionController(target, this.getIntOption(ADMISSION_INTERVAL_OPTION,
+                DEFAULT_ADMISSION_INTERVAL), TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Dispatches the client connection to a worker.
+     * Dispatches the client connection to a worker. With admission control, the connection is rejected right away if
+     * the connections in the queue waited too long already, otherwise the time the connection waits for the worker is
+     * checked once the worker starts.
      * 
      * @param client
      * @param connectionExecutorService
+     * @param queue
+     *            the queue of the executor service
+     * @param admission
+     *            the admission controller or <code>null</code> if all connections are admitted
      * @throws IOException
      */
-    private void dispatchClientConnection(final SocketChannel client, final ExecutorService connectionExecutorService)
-            throws IOException {
+    private void dispatchClientConnection(final SocketChannel client, final ExecutorService connectionExecutorService,
+            final BlockingQueue<Runnable> queue, final AdmissionController admission) throws IOException {
 
         // open a new message channel to process messages from the client
-        final MessageChannel serverChannel = this.openMessageChannel();
+        final MessageChannel serverChannel = this.openMessageChannel(client);
 
         // create a new worker for the incoming connection
         final Runnable worker = new MessageWorker(client, serverChannel);
 
-        // and dispatch it to the thread pool
-        connectionExecutorService.execute(worker);
+        if (admission == null) {
+            // and dispatch it to the thread pool
+            connectionExecutorService.execute(worker);
+            return;
+        }
+        final long now = System.nanoTime();
+        if (!admitOnAccept(queue, admission, now)) {
+            this.shedConnection(client, serverChannel);
+            return;
+        }
+        connectionExecutorService.execute(new QueuedConnection(client, serverChannel, worker, admission, now));
     }
 
     /**
-     * Opens a new message channel using the protocol of the port. The channel's option are set according to the
-     * configuration of the connection handler.
+     * Decides whether a new connection is queued. If the queue is empty, the connection is queued, otherwise it would
+     * wait at least as long as the connection at the head of the queue, so the waiting time of that connection is
+     * checked by the admission controller. While all workers are busy, new connections are rejected therefore without
+     * waiting for a worker.
      * 
-     * @return the new message channel
+     * @param queue
+     *            the queue of the executor service
+     * @param admission
+     *            the admission controller
+     * @param now
+     *            the current time as of {@link System#nanoTime()}
+     * @return <code>true</code> if the connection should be queued, <code>false</code> if it should be rejected
      */
-    private MessageChannel openMessageChannel() {
-        final MessageChannel serverChannel = this.port.getProtocol().openChannel();
-        // pass the connection option to the message channel, if they are supported
-        for (final MessageChannelOption<?> option : serverChannel.getSupportedOptions()) {
-            if (this.connectionOptions.containsKey(option.name())) {
-                final Object optionValue = option.fromString(this.connectionOptions.get(option.name()));
-                LOG.debug("Setting channel option {} to {}", option, optionValue);
-                serverChannel.setOption(option, optionValue);
-            }
+    private static boolean admitOnAccept(final BlockingQueue<Runnable> queue, final AdmissionController admission,
+            final long now) {
+        final Runnable head = queue.peek();
+        if (!(head instanceof QueuedConnection)) {
+            return true;
         }
-        return serverChannel;
+        return admission.admit(now - ((QueuedConnection) head).queued, now);
     }
 
     /**
-     * Initializes the channel by binding it to the specified address and setting it to blocking mode
+     * A connection waiting in the queue for a worker. The time it waited is checked once the worker starts.
      * 
-     * @param serverSocketChannel
-     * @param bindAddress
-     * @throws IOException
+     * @author Gerald
      */
-    private void initializeChannel(final ServerSocketChannel serverSocketChannel, final SocketAddress bindAddress)
-            throws IOException {
-        serverSocketChannel.bind(bindAddress);
-        LOG.info("Listening on {}", bindAddress);
-        serverSocketChannel.configureBlocking(true);
-    }
-
-    @Override
-    public void configure(final HierarchicalConfiguration config) throws ConfigurationException {
-        // set defaults (as strings so they can be overriden by values from configuration)
-        this.connectionOptions.put(MAX_CONNECTIONS_OPTION, Integer.toString(DEFAULT_MAX_CONNECTIONS));
-        // override default with settings from configuration
-        for (final Iterator<String> keyIt = config.getKeys(); keyIt.hasNext();) {
-            final String key = keyIt.next();
-            this.connectionOptions.put(key, config.getString(key));
+    private final class QueuedConnection implements Runnable {
+
+        private final SocketChannel client;
+        private final MessageChannel serverChannel;
+        private final Runnable worker;
+        private final AdmissionController admission;
+
+        /**
+         * Time the connection was queued as of {@link System#nanoTime()}
+         */
+        private final long queued;
+
+        QueuedConnection(final SocketChannel client, final MessageChannel serverChannel, final Runnable worker,
+                final AdmissionController admission, final long queued) {
+            this.client = client;
+            this.serverChannel = serverChannel;
+            this.worker = worker;
+            this.admission = admission;
+            this.queued = queued;
         }
-    }
 
-    @Override
-    public void bind(final Port port) {
-        this.port = port;
+        @Override
+        public void run() {
+            final long now = System.nanoTime();
+            ConnectionMetrics.QUEUE_TIME.record(now - this.queued);
+            if (this.admission.admit(now - this.queued, now)) {
+                this.worker.run();
+            } else {
+                BlockingConnectionHandler.this.shedConnection(this.client, this.serverChannel);
+            }
+        }
     }
 
     /**
-     * @throws IOException
+     * Rejects a connection that waited too long for a worker. The overload response of the protocol is sent and the
+     * data received from the client so far is discarded, so that the connection is closed without a reset and the
+     * client receives the response.
+     * 
+     * @param client
+     *            the connection to reject
+     * @param serverChannel
+     *            the message channel of the connection
      */
-    @Override
-    public void close() throws IOException {
-        this.running.set(false);
-
+    private void shedConnection(final SocketChannel client, final MessageChannel serverChannel) {
+        ConnectionMetrics.SHED.increment();
+        LOG.debug("Overloaded, rejecting connection from {}", serverChannel.getRemoteAddress());
+        try {
+            final Message response = this.getPort().getProtocol().createOverloadedResponse(
+                    this.getIntOption(RETRY_AFTER_OPTION, DEFAULT_RETRY_AFTER));
+            if (response != null) {
+                serverChannel.write(response);
+                ConnectionMetrics.BYTES_SENT.add(Channels.stream(serverChannel, client));
+            }
+            client.shutdownOutput();
+            client.configureBlocking(false);
+            final ByteBuffer discard = ByteBuffer.allocate(DISCARD_BUFFER_SIZE);
+            while (client.read(discard) > 0) {
+                discard.clear();
+            }
+        } catch (final IOException e) {
+            LOG.debug("Could not send overload response", e);
+        } finally {
+            try {
+                client.close();
+                serverChannel.close();
+            } catch (final IOException e) {
+                LOG.warn("Closing rejected connection failed", e);
+            }
+        }
     }
 
 }
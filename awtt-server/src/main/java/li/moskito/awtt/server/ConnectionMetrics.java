@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package li.moskito.awtt.server;
+
+import li.moskito.awtt.metrics.Counter;
+import li.moskito.awtt.metrics.Histogram;
+import li.moskito.awtt.metrics.LatencyHistograms;
+import li.moskito.awtt.metrics.MetricsRegistry;
+import li.moskito.awtt.metrics.RequestPhase;
+import li.moskito.awtt.protocol.MessageChannel;
+
+/**
+ * Metrics of the client connections, shared by all connection handlers of the server
+ *
+ * @author Gerald
+ */
+final class ConnectionMetrics {
+
+    /**
+     * Connections accepted for processing
+     */
+    static final Counter ACCEPTED = MetricsRegistry.getInstance().counter("connections.accepted");
+
+    /**
+     * Connections closed immediately because the connection limit was reached
+     */
+    static final Counter REJECTED = MetricsRegistry.getInstance().counter("connections.rejected");
+
+    /**
+     * Connections closed with an overload response because they waited too long for a worker
+     */
+    static final Counter SHED = MetricsRegistry.getInstance().counter("connections.shed");
+
+    /**
+     * Time in nanoseconds accepted connections waited for a worker
+     */
+    static final Histogram QUEUE_TIME = MetricsRegistry.getInstance().histogram("connections.queueTime");
+
+    /**
+     * Connections currently being processed
+     */
+    static final Counter ACTIVE = MetricsRegistry.getInstance().counter("connections.active");
+
+    /**
+     * Requests received on a connection that has been kept alive after a previous request
+     */
+    static final Counter KEEP_ALIVE_REUSES = MetricsRegistry.getInstance().counter("connections.keepAliveReuses");
+
+    static final Counter BYTES_RECEIVED = MetricsRegistry.getInstance().counter("connections.bytesReceived");
+
+    static final Counter BYTES_SENT = MetricsRegistry.getInstance().counter("connections.bytesSent");
+
+    private ConnectionMetrics() {
+    }
+
+    /**
+     * Records the time spent writing the output of a channel to the client in the latency histograms of the channel
+     * 
+     * @param serverChannel
+     *            the channel whose output has been sent
+     * @param nanos
+     *            the time spent sending in nanoseconds
+     */
+    static void recordSend(final MessageChannel serverChannel, final long nanos) {
+        final LatencyHistograms histograms = serverChannel.getLatencyHistograms();
+        if (histograms != null) {
+            histograms.record(RequestPhase.SEND, nanos);
+        }
+    }
+}
@@ -4,17 +4,21 @@
 package li.moskito.awtt.server;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import li.moskito.awtt.protocol.ChannelEventListener;
+import li.moskito.awtt.protocol.Event;
 import li.moskito.awtt.protocol.MessageChannel;
+import li.moskito.awtt.protocol.MessageChannel.LifecycleEvents;
 import li.moskito.awtt.protocol.MessageChannelOptions;
+import li.moskito.awtt.util.ByteBufferPool;
 import li.moskito.awtt.util.Channels;
+import li.moskito.awtt.util.TimingWheel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,12 +40,32 @@ public class MessageWorker implements Runnable {
     private final MessageChannel serverChannel;
 
     /**
-     * Scheduler for monitoring connection timeouts
+     * Server-wide timing wheel for monitoring connection timeouts
      */
-    private final ScheduledExecutorService scheduler;
+    private final TimingWheel timingWheel;
 
     private final long keepAliveTimeout;
 
+    /**
+     * Released whenever responses that have been completed asynchronously are ready to be sent
+     */
+    private final Semaphore responsesReady = new Semaphore(0);
+
+    /**
+     * Size of the buffer for receiving the start of the next message, large enough for the header of a typical request
+     */
+    private static final int IDLE_BUFFER_SIZE = 2048;
+
+    /**
+     * Buffer for receiving the start of the next message, so that no pooled buffer is held by an idle connection
+     */
+    private final ByteBuffer idleBuffer = ByteBuffer.allocate(IDLE_BUFFER_SIZE);
+
+    /**
+     * Received data that has not been consumed by the server channel
+     */
+    private ByteBuffer pendingInput;
+
     /**
      * @param clientChannel
      *            a socket channel from the connecting client
@@ -53,8 +77,15 @@ public class MessageWorker implements Runnable {
         this.clientChannel = clientChannel;
         this.serverChannel = serverChannel;
 
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.timingWheel = TimingWheel.getInstance();
         this.keepAliveTimeout = serverChannel.getOption(MessageChannelOptions.KEEP_ALIVE_TIMEOUT).longValue();
+        serverChannel.subscribe(LifecycleEvents.RESPONSE_READY, new ChannelEventListener() {
+
+            @Override
+            public void onEvent(final Event<?> event) {
+                MessageWorker.this.responsesReady.release();
+            }
+        });
     }
 
     @Override
@@ -63,13 +94,19 @@ public class MessageWorker implements Runnable {
         // create a reusable timeou task for the current thread
         final ConnectionTimeout timeout = new ConnectionTimeout(Thread.currentThread(), this.keepAliveTimeout);
 
+        ConnectionMetrics.ACTIVE.increment();
         try {
             LOG.info("Connection from {}", this.clientChannel.getRemoteAddress());
+            boolean reused = false;
             while (this.channelsOpen() && this.receiveMessage(timeout)) {
+                if (reused) {
+                    ConnectionMetrics.KEEP_ALIVE_REUSES.increment();
+                }
+                reused = true;
                 // process the messages
                 this.serverChannel.processMessages();
                 // and send responses
-                Channels.stream(this.serverChannel, this.clientChannel);
+                this.sendResponses();
             }
 
         } catch (final ClosedByInterruptException e) {
@@ -78,11 +115,50 @@ public class MessageWorker implements Runnable {
             LOG.error("Error processing request", e);
         } finally {
             this.closeChannels();
+            ConnectionMetrics.ACTIVE.decrement();
         }
 
         LOG.debug("Connection closed");
     }
 
+    /**
+     * Sends the responses to the client. Responses that are completed asynchronously are sent once they are
+     * available, the method returns when all responses have been sent.
+     * 
+     * @throws IOException
+     */
+    private void sendResponses() throws IOException {
+        this.streamOutput();
+        while (this.channelsOpen() && this.serverChannel.hasPendingResponses()) {
+            try {
+                this.responsesReady.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for responses");
+            }
+            this.streamOutput();
+        }
+    }
+
+    /**
+     * Streams the pending output of the server channel to the client. The server channel signals the end of each
+     * message, so the output is streamed until the channel has no more pending messages, i.e. responses to pipelined
+     * requests.
+     * 
+     * @throws IOException
+     */
+    private void streamOutput() throws IOException {
+        final long start = System.nanoTime();
+        long sent = 0;
+        do {
+            sent += Channels.stream(this.serverChannel, this.clientChannel);
+        } while (this.channelsOpen() && this.serverChannel.hasPendingOutput());
+        if (sent > 0) {
+            ConnectionMetrics.recordSend(this.serverChannel, System.nanoTime() - start);
+            ConnectionMetrics.BYTES_SENT.add(sent);
+        }
+    }
+
     /**
      * Checks if both channels are open
      * 
@@ -118,51 +194,90 @@ public class MessageWorker implements Runnable {
      */
     private boolean receiveMessage(final ConnectionTimeout timeout) throws IOException {
 
-        // TODO read buffer size from port config
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
-
+        boolean idle = this.pendingInput == null;
         while (!this.serverChannel.hasMessage()) {
 
-            // TODO support partial messages
-            if (!this.receiveData(buffer, timeout)) {
+            if (!this.receiveData(timeout, idle)) {
                 return false;
             }
+            idle = false;
+            if (!this.serverChannel.hasMessage() && this.serverChannel.hasPendingOutput()) {
+                // interim responses, i.e. 100 Continue, are sent while the rest of the message is received
+                this.streamOutput();
+            }
         }
         return true;
     }
 
     /**
-     * This blocking method read from the clientChannel into the buffer and writes from the buffer to the server
-     * channel.
+     * This blocking method read from the clientChannel into a buffer and writes from the buffer to the server channel.
+     * The buffer is acquired from the pool for a single read and released afterwards. While the connection is idle,
+     * the start of the next message is read into a small heap buffer of the worker, so the connection does not hold a
+     * pooled buffer and small messages are received with a single read.
      * 
-     * @param buffer
-     *            the buffer to be used for the transfer of the received data
      * @param timeout
      *            the task that is performed once the timeout is reached. The task interrupts the read operation
+     * @param idle
+     *            <code>true</code> if no data of the next message has been received yet
      * @return <code>true</code> if data was read or <code>false</code> if the client sent EOF
      * @throws IOException
      * @throws ClosedByInterruptException
      *             if the blocking read operation was interruped
      */
-    private boolean receiveData(final ByteBuffer buffer, final ConnectionTimeout timeout) throws IOException {
+    private boolean receiveData(final ConnectionTimeout timeout, final boolean idle) throws IOException {
+        if (idle) {
+            this.idleBuffer.clear();
+            return this.transferData(this.idleBuffer, timeout);
+        }
+        final ByteBuffer buffer = ByteBufferPool.getInstance().acquire();
+        try {
+            if (this.pendingInput != null) {
+                buffer.put(this.pendingInput);
+                this.pendingInput = null;
+            }
+            return this.transferData(buffer, timeout);
+        } finally {
+            ByteBufferPool.getInstance().release(buffer);
+        }
+    }
+
+    /**
+     * Reads from the clientChannel into the buffer and writes the buffer to the server channel. Data that is not
+     * consumed by the server channel is kept until the next read.
+     * 
+     * @param buffer
+     *            the buffer to be used for the transfer of the received data
+     * @param timeout
+     *            the task that is performed once the timeout is reached. The task interrupts the read operation
+     * @return <code>true</code> if data was read or <code>false</code> if the client sent EOF
+     * @throws IOException
+     */
+    private boolean transferData(final ByteBuffer buffer, final ConnectionTimeout timeout) throws IOException {
         /*
          * The blocking read operation that needs to be monitored. Once the timeout is reached, this thread will be
          * interrupted, stopping the read operation
          */
-        final ScheduledFuture<?> timer = this.startTimer(timeout);
-
-        final boolean result;
-        if (this.clientChannel.read(buffer) != -1) {
-            buffer.flip();
-            this.serverChannel.write(buffer);
-            buffer.compact();
-            result = true;
-        } else {
-            result = false;
+        final TimingWheel.Timeout timer = this.startTimer(timeout);
+
+        final int read;
+        try {
+            read = this.clientChannel.read(buffer);
+        } finally {
+            // stop the timer if data has been read or the read failed, so that the thread is not interrupted later on
+            this.stopTimer(timer);
         }
-        // stop the timer if data has been read
-        this.stopTimer(timer);
-        return result;
+        if (read == -1) {
+            return false;
+        }
+        ConnectionMetrics.BYTES_RECEIVED.add(read);
+        buffer.flip();
+        this.serverChannel.write(buffer);
+        if (buffer.hasRemaining()) {
+            this.pendingInput = ByteBuffer.allocate(buffer.remaining());
+            this.pendingInput.put(buffer);
+            this.pendingInput.flip();
+        }
+        return true;
     }
 
     /**
@@ -170,28 +285,26 @@ public class MessageWorker implements Runnable {
      * 
      * @param timeout
      *            the timeout task that is executed if the time is up.
-     * @return the future for cancelling the timer or <code>null</code> if the timeout value of the timeout task is 0 or
-     *         negative.
+     * @return the timer for cancelling or <code>null</code> if the timeout value of the timeout task is 0 or negative.
      */
-    @SuppressWarnings("rawtypes")
-    private ScheduledFuture startTimer(final ConnectionTimeout timeout) {
-        final ScheduledFuture<?> future;
+    private TimingWheel.Timeout startTimer(final ConnectionTimeout timeout) {
+        final TimingWheel.Timeout timer;
         if (timeout.getTimeout() > 0) {
-            future = this.scheduler.schedule(timeout, timeout.getTimeout(), TimeUnit.SECONDS);
+            timer = this.timingWheel.schedule(timeout, timeout.getTimeout(), TimeUnit.SECONDS);
         } else {
-            future = null;
+            timer = null;
         }
-        return future;
+        return timer;
     }
 
     /**
      * Cancells the timer task from execution
      * 
-     * @param future
+     * @param timer
      */
-    private void stopTimer(final ScheduledFuture<?> future) {
-        if (future != null) {
-            future.cancel(true);
+    private void stopTimer(final TimingWheel.Timeout timer) {
+        if (timer != null) {
+            timer.cancel();
         }
     }
 
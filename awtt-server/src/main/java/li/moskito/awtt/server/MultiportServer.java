@@ -3,6 +3,7 @@
  */
 package li.moskito.awtt.server;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -34,6 +35,7 @@ public class MultiportServer implements Server {
     private static final Logger LOG = LoggerFactory.getLogger(MultiportServer.class);
 
     private final List<ConnectionHandler> connectionHandlers;
+    private final List<Protocol> protocols;
     private ExecutorService portExecutorService;
 
     /**
@@ -41,6 +43,7 @@ public class MultiportServer implements Server {
      */
     public MultiportServer() {
         this.connectionHandlers = new ArrayList<>();
+        this.protocols = new ArrayList<>();
     }
 
     @Override
@@ -67,6 +70,20 @@ public class MultiportServer implements Server {
         } finally {
             // send interrupt signal to all handlers
             this.portExecutorService.shutdownNow();
+            // release the resources of the protocols, i.e. flush the access log
+            this.closeProtocols();
+        }
+    }
+
+    private void closeProtocols() {
+        for (final Protocol protocol : this.protocols) {
+            if (protocol instanceof Closeable) {
+                try {
+                    ((Closeable) protocol).close();
+                } catch (final IOException e) {
+                    LOG.warn("Error on closing protocol {}", protocol, e);
+                }
+            }
         }
     }
 
@@ -128,7 +145,7 @@ public class MultiportServer implements Server {
 
         for (final HierarchicalConfiguration protocolConfig : protocolConfigs) {
 
-            this.createProtocol(protocolConfig);
+            this.protocols.add(this.createProtocol(protocolConfig));
         }
     }
 
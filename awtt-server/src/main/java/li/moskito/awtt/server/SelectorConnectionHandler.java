@@ -0,0 +1,208 @@
+/**
+ *
+ */
+package li.moskito.awtt.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import li.moskito.awtt.protocol.MessageChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection handler that processes the connections using non-blocking channels. The handler accepts incoming
+ * connections and distributes them round-robin among a configurable number of {@link SelectorLoop}s. Each loop serves
+ * many connections on a single thread, so idle keep-alive connections don't occupy a thread as they do with the
+ * {@link BlockingConnectionHandler}. <br>
+ * Supported options are
+ * <ul>
+ * <li>selectorThreads: the number of selector loops, default is the number of available processors</li>
+ * <li>workerThreads: the number of threads processing the received messages, so that handlers may block without
+ * stalling a selector loop. Default is twice the number of available processors</li>
+ * <li>maxConnections: the maximum number of simultaneous connections, further connections are closed immediately.
+ * Default is 10000</li>
+ * </ul>
+ * All other options are passed to the message channels as for the {@link BlockingConnectionHandler}.
+ *
+ * @author Gerald
+ */
+public class SelectorConnectionHandler extends AbstractConnectionHandler {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorConnectionHandler.class);
+
+    /**
+     * Configuration parameter for the number of selector loops
+     */
+    private static final String SELECTOR_THREADS_OPTION = "selectorThreads";
+
+    /**
+     * Configuration parameter for the number of worker threads
+     */
+    private static final String WORKER_THREADS_OPTION = "workerThreads";
+
+    /**
+     * Default number of maximum connections is 10000
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    @Override
+    protected void handleConnections(final ServerSocketChannel serverSocketChannel) {
+
+        final ExecutorService workerExecutorService = this.createWorkerExecutorService();
+        final SelectorLoop[] loops;
+        try {
+            loops = this.createSelectorLoops(workerExecutorService);
+        } catch (final RuntimeException e) {
+            workerExecutorService.shutdown();
+            throw e;
+        }
+        final ExecutorService loopExecutorService = Executors.newFixedThreadPool(loops.length);
+        for (final SelectorLoop loop : loops) {
+            loopExecutorService.execute(loop);
+        }
+
+        try {
+            int nextLoop = 0;
+            while (this.isRunning()) {
+                try {
+                    // wait for incoming connections
+                    final SocketChannel client = serverSocketChannel.accept();
+
+                    if (this.activeConnections.get() >= this.getMaxConnections()) {
+                        this.rejectClientConnection(client);
+                        continue;
+                    }
+                    if (this.dispatchClientConnection(client, loops[nextLoop])) {
+                        nextLoop = (nextLoop + 1) % loops.length;
+                    }
+
+                } catch (final ClosedByInterruptException e) {
+                    LOG.info("Received interrupt signal, shutting down connection if closed");
+                    LOG.debug("Received interrupt exception", e);
+                } catch (final IOException e) {
+                    throw new ServerRuntimeException("Error occured", e);
+                }
+            }
+        } finally {
+            for (final SelectorLoop loop : loops) {
+                loop.close();
+            }
+            loopExecutorService.shutdown();
+            workerExecutorService.shutdown();
+        }
+    }
+
+    /**
+     * Prepares the client connection for non-blocking operation and registers it at the selector loop. The connection
+     * is only counted as active once it has been registered. If the connection can not be set up, it is closed without
+     * affecting the accepting of further connections.
+     *
+     * @param client
+     *            the accepted client connection
+     * @param loop
+     *            the loop that should serve the connection
+     * @return <code>true</code> if the connection has been registered
+     */
+    private boolean dispatchClientConnection(final SocketChannel client, final SelectorLoop loop) {
+        try {
+            LOG.debug("Dispatching connection from {}", client.getRemoteAddress());
+            this.setKeepAlive(client);
+            client.configureBlocking(false);
+            final MessageChannel serverChannel = this.openMessageChannel(client);
+            this.activeConnections.incrementAndGet();
+            loop.register(client, serverChannel);
+        } catch (final IOException | RuntimeException e) {
+            LOG.warn("Could not dispatch client connection", e);
+            closeClientConnection(client);
+            return false;
+        }
+        ConnectionMetrics.ACCEPTED.increment();
+        return true;
+    }
+
+    /**
+     * Closes a client connection that could not be dispatched
+     *
+     * @param client
+     *            the client to close
+     */
+    private static void closeClientConnection(final SocketChannel client) {
+        try {
+            client.close();
+        } catch (final IOException e) {
+            LOG.warn("Closing client channel failed", e);
+        }
+    }
+
+    /**
+     * Creates the executor on which the selector loops process the received messages
+     *
+     * @return a thread pool of the configured size
+     */
+    private ExecutorService createWorkerExecutorService() {
+        final int numWorkers = this.getIntOption(WORKER_THREADS_OPTION,
+                2 * Runtime.getRuntime().availableProcessors());
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of worker threads must be positive: " + numWorkers);
+        }
+        return Executors.newFixedThreadPool(numWorkers);
+    }
+
+    /**
+     * Creates the configured number of selector loops
+     *
+     * @param workers
+     *            the executor on which the loops process the received messages
+     * @return an array of selector loops
+     */
+    private SelectorLoop[] createSelectorLoops(final Executor workers) {
+        final int numLoops = this.getIntOption(SELECTOR_THREADS_OPTION, Runtime.getRuntime().availableProcessors());
+        if (numLoops < 1) {
+            throw new IllegalArgumentException("Number of selector threads must be positive: " + numLoops);
+        }
+        final SelectorLoop[] loops = new SelectorLoop[numLoops];
+        try {
+            for (int i = 0; i < numLoops; i++) {
+                loops[i] = new SelectorLoop(this.activeConnections, workers);
+            }
+        } catch (final IOException e) {
+            throw new ServerRuntimeException("Could not open selector", e);
+        }
+        return loops;
+    }
+
+    /**
+     * Closes a client connection that exceeds the connection limit
+     *
+     * @param client
+     *            the client to reject
+     */
+    private void rejectClientConnection(final SocketChannel client) {
+        ConnectionMetrics.REJECTED.increment();
+        LOG.warn("Connection limit reached, rejecting connection");
+        closeClientConnection(client);
+    }
+
+    /**
+     * Retrieves the max connection count from the connection options
+     *
+     * @return
+     */
+    private int getMaxConnections() {
+        return this.getIntOption(MAX_CONNECTIONS_OPTION, DEFAULT_MAX_CONNECTIONS);
+    }
+
+}
@@ -0,0 +1,562 @@
+/**
+ *
+ */
+package li.moskito.awtt.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import li.moskito.awtt.protocol.ChannelEventListener;
+import li.moskito.awtt.protocol.Event;
+import li.moskito.awtt.protocol.MessageChannel;
+import li.moskito.awtt.protocol.MessageChannel.LifecycleEvents;
+import li.moskito.awtt.protocol.MessageChannelOptions;
+import li.moskito.awtt.util.ByteBufferPool;
+import li.moskito.awtt.util.TimingWheel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An event loop that multiplexes a set of non-blocking client connections on a single thread using a {@link Selector}.
+ * Data received from a client is written to the {@link MessageChannel} of the connection, the messages are processed
+ * on a worker executor and the responses are written back to the client by the loop once the socket is ready to
+ * accept them. <br>
+ * The read and write buffers are shared among all connections of the loop. Only data that could not be consumed
+ * completely by either the message channel or the client socket is kept per connection. <br>
+ * Idle connections are closed using timeouts of the server-wide {@link TimingWheel}. A timeout is not rescheduled on
+ * every read, instead it checks on expiry when the connection was active the last time and reschedules itself for the
+ * remaining time.
+ *
+ * @author Gerald
+ */
+class SelectorLoop implements Runnable, Closeable {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorLoop.class);
+
+    private final Selector selector;
+
+    /**
+     * Tasks that have to be executed on the thread of the loop, i.e. registration of new connections
+     */
+    private final Queue<Runnable> tasks;
+
+    private final AtomicBoolean running;
+
+    /**
+     * Counter of connections of the connection handler, is decreased once a connection of this loop is closed
+     */
+    private final AtomicInteger activeConnections;
+
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+
+    private final TimingWheel timingWheel;
+
+    /**
+     * Executor on which the received messages are processed, so that synchronous handlers don't block the loop
+     */
+    private final Executor workers;
+
+    /**
+     * @param activeConnections
+     *            the counter for the open connections of the connection handler
+     * @param workers
+     *            the executor on which the received messages are processed
+     * @throws IOException
+     *             if the selector could not be opened
+     */
+    SelectorLoop(final AtomicInteger activeConnections, final Executor workers) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.running = new AtomicBoolean(true);
+        this.activeConnections = activeConnections;
+        this.workers = workers;
+        this.readBuffer = ByteBufferPool.getInstance().acquire();
+        this.writeBuffer = ByteBufferPool.getInstance().acquire();
+        this.timingWheel = TimingWheel.getInstance();
+    }
+
+    /**
+     * Registers a new client connection at this loop. The registration is performed asynchronously on the thread of
+     * the loop.
+     *
+     * @param client
+     *            the non-blocking socket channel of the client
+     * @param serverChannel
+     *            the message channel that processes the messages of the client
+     */
+    void register(final SocketChannel client, final MessageChannel serverChannel) {
+        ConnectionMetrics.ACTIVE.increment();
+        this.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                SelectorLoop.this.registerConnection(new Connection(client, serverChannel));
+            }
+        });
+    }
+
+    /**
+     * Executes the task asynchronously on the thread of the loop
+     *
+     * @param task
+     *            the task to execute
+     */
+    private void execute(final Runnable task) {
+        this.tasks.offer(task);
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running.get()) {
+                this.selector.select();
+                this.runTasks();
+                this.processSelectedKeys();
+            }
+        } catch (final IOException e) {
+            LOG.error("Selector loop terminated", e);
+        } finally {
+            this.closeConnections();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running.set(false);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Executes all pending tasks
+     */
+    private void runTasks() {
+        Runnable task = this.tasks.poll();
+        while (task != null) {
+            task.run();
+            task = this.tasks.poll();
+        }
+    }
+
+    /**
+     * Registers the connection for read operations at the selector
+     *
+     * @param connection
+     *            the connection to be registered
+     */
+    private void registerConnection(final Connection connection) {
+        if (!this.running.get()) {
+            // the loop has been closed before the connection could be registered
+            this.closeConnection(connection);
+            return;
+        }
+        try {
+            connection.key = connection.client.register(this.selector, SelectionKey.OP_READ, connection);
+            // streamed content must not block the loop, the output is continued once the content is available
+            connection.serverChannel.configureBlocking(false);
+            final ChannelEventListener outputListener = new ChannelEventListener() {
+
+                @Override
+                public void onEvent(final Event<?> event) {
+                    SelectorLoop.this.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            SelectorLoop.this.sendResponses(connection);
+                        }
+                    });
+                }
+            };
+            connection.serverChannel.subscribe(LifecycleEvents.RESPONSE_READY, outputListener);
+            connection.serverChannel.subscribe(LifecycleEvents.OUTPUT_AVAILABLE, outputListener);
+            connection.touch();
+            this.scheduleIdleTimeout(connection, connection.timeout);
+            LOG.debug("Connection from {}", connection.client.getRemoteAddress());
+        } catch (final IOException e) {
+            LOG.warn("Could not register connection", e);
+            this.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Processes the readiness events of all selected keys
+     */
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> keyIt = this.selector.selectedKeys().iterator();
+        while (keyIt.hasNext()) {
+            final SelectionKey key = keyIt.next();
+            keyIt.remove();
+            final Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    this.sendData(connection);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    this.receiveData(connection);
+                }
+            } catch (final IOException | RuntimeException e) {
+                LOG.debug("Error processing connection", e);
+                this.closeConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Reads the available data from the client and writes it to the message channel. If the message channel has
+     * received complete messages, they are processed on a worker thread and pending responses are sent.
+     *
+     * @param connection
+     *            the connection that is ready to be read
+     * @throws IOException
+     */
+    private void receiveData(final Connection connection) throws IOException {
+        final ByteBuffer buffer = this.readBuffer;
+        buffer.clear();
+        if (connection.pendingInput != null) {
+            buffer.put(connection.pendingInput);
+            connection.pendingInput = null;
+        }
+        final int read = connection.client.read(buffer);
+        if (read == -1) {
+            this.closeConnection(connection);
+            return;
+        }
+        ConnectionMetrics.BYTES_RECEIVED.add(read);
+        connection.touch();
+        buffer.flip();
+        connection.serverChannel.write(buffer);
+        if (buffer.hasRemaining()) {
+            connection.pendingInput = copyOf(buffer);
+        }
+        if (connection.serverChannel.hasMessage()) {
+            if (connection.reused) {
+                ConnectionMetrics.KEEP_ALIVE_REUSES.increment();
+            }
+            connection.reused = true;
+            this.processMessages(connection);
+        }
+        this.sendData(connection);
+    }
+
+    /**
+     * Processes the received messages of the connection on a worker thread. The messages of a connection are processed
+     * by one worker at a time to keep the order of the responses. Once the worker is done, the responses are sent on
+     * the thread of the loop and messages that have been received in the meantime are processed.
+     *
+     * @param connection
+     *            the connection whose messages should be processed
+     */
+    private void processMessages(final Connection connection) {
+        if (connection.processing) {
+            return;
+        }
+        connection.processing = true;
+        this.workers.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    connection.serverChannel.processMessages();
+                } finally {
+                    SelectorLoop.this.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            SelectorLoop.this.messagesProcessed(connection);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the responses of the processed messages and continues the processing of messages that have been received
+     * while the worker was busy. The task is executed on the thread of the loop.
+     *
+     * @param connection
+     *            the connection whose messages have been processed
+     */
+    private void messagesProcessed(final Connection connection) {
+        connection.processing = false;
+        if (connection.closed) {
+            return;
+        }
+        try {
+            if (connection.serverChannel.hasMessage()) {
+                this.processMessages(connection);
+            }
+        } catch (final RuntimeException e) {
+            LOG.debug("Error processing messages", e);
+            this.closeConnection(connection);
+            return;
+        }
+        this.sendResponses(connection);
+    }
+
+    /**
+     * Sends responses that have been completed asynchronously or content of streamed bodies that has become available.
+     * The task is executed on the thread of the loop.
+     *
+     * @param connection
+     *            the connection whose responses are ready
+     */
+    private void sendResponses(final Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        try {
+            this.sendData(connection);
+        } catch (final IOException | RuntimeException e) {
+            LOG.debug("Error sending responses", e);
+            this.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Writes all pending output of the message channel to the client as long as the client accepts data. If the
+     * client is not able to take all the data, the remainder is kept and the connection is registered for write
+     * operations. No further data is read from the client until all pending output has been written. File regions are
+     * transferred directly to the client socket. If the content of a streamed body is not available yet, the connection
+     * neither reads nor writes until the producer of the content signals that it has continued.
+     *
+     * @param connection
+     *            the connection whose pending output should be written
+     * @throws IOException
+     */
+    private void sendData(final Connection connection) throws IOException {
+        final boolean sending = connection.pendingOutput != null || connection.serverChannel.hasPendingOutput();
+        final long start = System.nanoTime();
+        this.writeOutput(connection);
+        if (sending) {
+            ConnectionMetrics.recordSend(connection.serverChannel, System.nanoTime() - start);
+        }
+    }
+
+    private void writeOutput(final Connection connection) throws IOException {
+        connection.outputStalled = false;
+        if (connection.pendingOutput != null) {
+            ConnectionMetrics.BYTES_SENT.add(connection.client.write(connection.pendingOutput));
+            if (connection.pendingOutput.hasRemaining()) {
+                connection.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.pendingOutput = null;
+        }
+        final ByteBuffer buffer = this.writeBuffer;
+        final MessageChannel serverChannel = connection.serverChannel;
+        while (serverChannel.isOpen() && serverChannel.hasPendingOutput()) {
+            if (serverChannel.hasTransferableRegion()) {
+                ConnectionMetrics.BYTES_SENT.add(serverChannel.transferTo(connection.client));
+                if (serverChannel.hasTransferableRegion()) {
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                continue;
+            }
+            buffer.clear();
+            if (serverChannel.read(buffer) == 0 && buffer.position() == 0) {
+                connection.outputStalled = true;
+                connection.key.interestOps(0);
+                return;
+            }
+            buffer.flip();
+            ConnectionMetrics.BYTES_SENT.add(connection.client.write(buffer));
+            if (buffer.hasRemaining()) {
+                connection.pendingOutput = copyOf(buffer);
+                connection.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        if (serverChannel.isOpen()) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } else {
+            this.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Schedules the check for an idle connection. Once the timeout expires, the check is executed on the thread of the
+     * loop.
+     *
+     * @param connection
+     *            the connection to check
+     * @param delay
+     *            the delay in ms after which the connection is checked
+     */
+    private void scheduleIdleTimeout(final Connection connection, final long delay) {
+        if (connection.timeout <= 0) {
+            return;
+        }
+        connection.idleTimeout = this.timingWheel.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                SelectorLoop.this.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        SelectorLoop.this.checkIdleConnection(connection);
+                    }
+                });
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connection if it has not received data within its keep alive timeout. Otherwise the check is
+     * rescheduled for the remaining time.
+     *
+     * @param connection
+     *            the connection to check
+     */
+    private void checkIdleConnection(final Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        if (connection.processing || connection.outputStalled || connection.serverChannel.hasPendingResponses()) {
+            // the connection is waiting for responses being processed, completed asynchronously or streamed
+            this.scheduleIdleTimeout(connection, connection.timeout);
+            return;
+        }
+        final long idleTime = this.timingWheel.getElapsedMillis() - connection.lastActivity;
+        if (idleTime >= connection.timeout) {
+            LOG.debug("Connection terminated by timeout");
+            this.closeConnection(connection);
+        } else {
+            this.scheduleIdleTimeout(connection, connection.timeout - idleTime);
+        }
+    }
+
+    /**
+     * Closes all connections of this loop and the selector
+     */
+    private void closeConnections() {
+        for (final SelectionKey key : this.selector.keys()) {
+            final Connection connection = (Connection) key.attachment();
+            if (connection != null) {
+                this.closeConnection(connection);
+            }
+        }
+        // pending registrations close their connections as the loop is not running anymore
+        this.runTasks();
+        try {
+            this.selector.close();
+        } catch (final IOException e) {
+            LOG.warn("Closing selector failed", e);
+        }
+        ByteBufferPool.getInstance().release(this.readBuffer);
+        ByteBufferPool.getInstance().release(this.writeBuffer);
+    }
+
+    /**
+     * Closes client and server channel of the connection
+     *
+     * @param connection
+     *            the connection to close
+     */
+    private void closeConnection(final Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        if (connection.idleTimeout != null) {
+            connection.idleTimeout.cancel();
+        }
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        try {
+            connection.client.close();
+        } catch (final IOException e) {
+            LOG.warn("Closing client channel failed", e);
+        }
+        try {
+            connection.serverChannel.close();
+        } catch (final IOException e) {
+            LOG.warn("Closing message channel failed", e);
+        }
+        this.activeConnections.decrementAndGet();
+        ConnectionMetrics.ACTIVE.decrement();
+        LOG.debug("Connection closed");
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer into a new heap buffer.
+     *
+     * @param buffer
+     *            the buffer to copy
+     * @return a buffer in read mode containing the remaining data of the source buffer
+     */
+    private static ByteBuffer copyOf(final ByteBuffer buffer) {
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * State of a single client connection
+     *
+     * @author Gerald
+     */
+    private final class Connection {
+
+        private final SocketChannel client;
+        private final MessageChannel serverChannel;
+        /**
+         * Timeout in ms after which an idle connection is closed, 0 or negative for no timeout
+         */
+        private final long timeout;
+
+        private SelectionKey key;
+        private ByteBuffer pendingInput;
+        private ByteBuffer pendingOutput;
+        private TimingWheel.Timeout idleTimeout;
+        /**
+         * Time of the last activity in ms according to the clock of the timing wheel
+         */
+        private long lastActivity;
+        /**
+         * Flag indicating that the connection has already received a request
+         */
+        private boolean reused;
+        /**
+         * Flag indicating that the received messages are being processed by a worker
+         */
+        private boolean processing;
+        /**
+         * Flag indicating that the output waits for the producer of a streamed body
+         */
+        private boolean outputStalled;
+        private boolean closed;
+
+        Connection(final SocketChannel client, final MessageChannel serverChannel) {
+            this.client = client;
+            this.serverChannel = serverChannel;
+            this.timeout = TimeUnit.SECONDS.toMillis(serverChannel.getOption(MessageChannelOptions.KEEP_ALIVE_TIMEOUT)
+                    .longValue());
+        }
+
+        void touch() {
+            this.lastActivity = SelectorLoop.this.timingWheel.getElapsedMillis();
+        }
+    }
+
+}
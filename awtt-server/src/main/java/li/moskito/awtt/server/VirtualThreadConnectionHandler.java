@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package li.moskito.awtt.server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection handler that processes every connection with a blocking {@link MessageWorker} on its own virtual
+ * thread. Unlike the {@link BlockingConnectionHandler} the maxConnections option does not size a pool of platform
+ * threads but limits the number of simultaneously admitted connections. Once the limit is reached, no further
+ * connections are accepted until an admitted connection is closed, so pending connections wait in the backlog of the
+ * server socket. <br>
+ * If the runtime does not support virtual threads, a pool of platform threads bounded by the maxConnections option is
+ * used instead.
+ *
+ * @author Gerald
+ */
+public class VirtualThreadConnectionHandler extends AbstractConnectionHandler {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadConnectionHandler.class);
+
+    /**
+     * Default number of maximum connections is 10000
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+    /**
+     * Time in seconds after which idle platform threads of the fallback pool are terminated
+     */
+    private static final long FALLBACK_KEEP_ALIVE = 60;
+
+    @Override
+    protected void handleConnections(final ServerSocketChannel serverSocketChannel) {
+
+        final int maxConnections = this.getMaxConnections();
+        final Semaphore admission = new Semaphore(maxConnections);
+        final ExecutorService connectionExecutorService = newVirtualThreadExecutor(maxConnections);
+
+        try {
+            while (this.isRunning()) {
+                try {
+                    // wait for a free slot before accepting the next connection, the wait is interrupted on shutdown
+                    admission.acquire();
+                    this.acceptClientConnection(serverSocketChannel, connectionExecutorService, admission);
+
+                } catch (final ClosedByInterruptException e) {
+                    LOG.info("Received interrupt signal, shutting down connection if closed");
+                    LOG.debug("Received interrupt exception", e);
+                } catch (final InterruptedException e) {
+                    LOG.info("Interrupted while waiting for a free connection slot");
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (final IOException e) {
+                    throw new ServerRuntimeException("Error occured", e);
+                }
+            }
+        } finally {
+            connectionExecutorService.shutdown();
+        }
+    }
+
+    /**
+     * Accepts the next incoming connection and dispatches it to a worker. The admission permit is held by the worker
+     * and released once the connection is closed.
+     *
+     * @param serverSocketChannel
+     *            the channel to accept the connection from
+     * @param connectionExecutorService
+     *            the executor to run the worker
+     * @param admission
+     *            the semaphore from which a permit has been acquired for the connection
+     * @throws IOException
+     */
+    private void acceptClientConnection(final ServerSocketChannel serverSocketChannel,
+            final ExecutorService connectionExecutorService, final Semaphore admission) throws IOException {
+
+        boolean dispatched = false;
+        try {
+            // wait for incoming connections
+            final SocketChannel client = serverSocketChannel.accept();
+            ConnectionMetrics.ACCEPTED.increment();
+
+            LOG.debug("Dispatching connection from {}", client.getRemoteAddress());
+
+            this.setKeepAlive(client);
+            client.configureBlocking(true);
+
+            final MessageWorker worker = new MessageWorker(client, this.openMessageChannel(client));
+            connectionExecutorService.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        worker.run();
+                    } finally {
+                        admission.release();
+                    }
+                }
+            });
+            dispatched = true;
+        } finally {
+            if (!dispatched) {
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the max connection count from the connection options
+     *
+     * @return
+     */
+    private int getMaxConnections() {
+        final int maxConnections = this.getIntOption(MAX_CONNECTIONS_OPTION, DEFAULT_MAX_CONNECTIONS);
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Number of max connections must be positive: " + maxConnections);
+        }
+        return maxConnections;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task. As virtual threads are not available on all
+     * supported runtimes, the factory method is resolved reflectively and a pool of platform threads is created if it
+     * does not exist. The pool starts threads on demand up to the given maximum and terminates them when idle.
+     *
+     * @param maxThreads
+     *            the maximum number of platform threads of the fallback pool
+     * @return an executor service
+     */
+    static ExecutorService newVirtualThreadExecutor(final int maxThreads) {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.info("Virtual threads are not supported by the runtime, using platform threads");
+            LOG.debug("Could not create virtual thread executor", e);
+            return new ThreadPoolExecutor(0, maxThreads, FALLBACK_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>());
+        }
+    }
+
+}
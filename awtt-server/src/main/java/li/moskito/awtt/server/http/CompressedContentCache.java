@@ -0,0 +1,565 @@
+/**
+ *
+ */
+package li.moskito.awtt.server.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import li.moskito.awtt.protocol.BinaryBody;
+import li.moskito.awtt.protocol.ByteBufferBody;
+import li.moskito.awtt.protocol.FileRegionBody;
+import li.moskito.awtt.protocol.http.ContentCoding;
+import li.moskito.awtt.protocol.http.EntityTag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for gzip compressed variants of files, so compressible content is compressed only once per version of a file.
+ * A variant is keyed by the file and the entity tag of the version it was compressed from, a request for a newer
+ * version replaces the outdated variant. <br>
+ * The variants are kept in direct buffers up to a byte budget. If the budget is exceeded, the least recently used
+ * variants are moved to files in a spool directory if one is configured, otherwise they are dropped. The spool has a
+ * byte budget of its own, spooled variants exceeding it are deleted in least recently used order. <br>
+ * Concurrent requests for the same version of a file share a single compression. The spool files are named
+ * <code>variant*.gz</code>, the ones left over in the spool directory are deleted when the cache is created and when
+ * it is closed. Spool files are always deleted outside the lock of the cache.
+ *
+ * @author Gerald
+ */
+public final class CompressedContentCache implements Closeable {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CompressedContentCache.class);
+
+    private static final String SPOOL_FILE_PREFIX = "variant";
+
+    private final GzipCompressor compressor;
+    private final long maxFileSize;
+    private final long maxSize;
+    private final Path spoolDirectory;
+    private final long maxSpoolSize;
+
+    /**
+     * The variants in least recently used order, guarded by the cache
+     */
+    private final LinkedHashMap<Path, Variant> entries;
+    private long size;
+    private long spoolSize;
+
+    /**
+     * Variants that have been evicted from memory and are being written to the spool, guarded by the cache. They are
+     * still counted in the size of the memory.
+     */
+    private final Set<Variant> spooling;
+    private long spoolingSize;
+
+    /**
+     * Running compressions by file and entity tag of the version being compressed
+     */
+    private final Map<Map.Entry<Path, String>, FutureTask<Variant>> compressions;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final AtomicLong compressed;
+
+    /**
+     * A compressed variant of a file, either held in memory or in a spool file. Variants are immutable.
+     *
+     * @author Gerald
+     */
+    public static final class Variant {
+
+        private final Path file;
+        private final String sourceEntityTag;
+        private final String entityTag;
+        private final long lastModified;
+        private final int size;
+        private final ByteBuffer content;
+        private final Path spoolFile;
+
+        Variant(final Path file, final String sourceEntityTag, final long lastModified, final ByteBuffer content,
+                final Path spoolFile, final int size) {
+            this.file = file;
+            this.sourceEntityTag = sourceEntityTag;
+            this.entityTag = EntityTag.variant(sourceEntityTag, ContentCoding.GZIP);
+            this.lastModified = lastModified;
+            this.content = content;
+            this.spoolFile = spoolFile;
+            this.size = size;
+        }
+
+        /**
+         * @return the path of the uncompressed file
+         */
+        public Path getFile() {
+            return this.file;
+        }
+
+        /**
+         * @return the strong entity tag of the compressed variant including the double quotes, which differs from the
+         *         entity tag of the uncompressed file
+         */
+        public String getEntityTag() {
+            return this.entityTag;
+        }
+
+        /**
+         * @return the time of the last modification of the uncompressed file in milliseconds since the epoch
+         */
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * @return the size of the compressed content in bytes
+         */
+        public int getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return <code>true</code> if the content is held in a spool file rather than in memory
+         */
+        public boolean isSpooled() {
+            return this.spoolFile != null;
+        }
+
+        /**
+         * Creates a new body for a response containing the compressed content
+         *
+         * @return a body reading the content or <code>null</code> if the spool file has been removed in the meantime
+         * @throws IOException
+         *             if the spool file could not be opened
+         */
+        public BinaryBody createBody() throws IOException {
+            if (this.spoolFile == null) {
+                return new ByteBufferBody(this.content);
+            }
+            try {
+                return new FileRegionBody(FileChannel.open(this.spoolFile, StandardOpenOption.READ), 0, this.size);
+            } catch (final NoSuchFileException e) {
+                LOG.debug("Spool file {} has been removed", this.spoolFile);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @param level
+     *            the compression level from 1 (fastest) to 9 (best compression)
+     * @param maxFileSize
+     *            the maximum size of an uncompressed file to be compressed
+     * @param maxSize
+     *            the maximum of bytes of all variants held in memory
+     * @param spoolDirectory
+     *            the directory for the spool files or <code>null</code> if variants should not be spooled
+     * @param maxSpoolSize
+     *            the maximum of bytes of all spool files
+     * @throws IOException
+     *             if the spool directory could not be created
+     */
+    public CompressedContentCache(final int level, final long maxFileSize, final long maxSize,
+            final Path spoolDirectory, final long maxSpoolSize) throws IOException {
+        this.compressor = new GzipCompressor(level, Runtime.getRuntime().availableProcessors());
+        // the content is compressed in a single array
+        this.maxFileSize = Math.min(maxFileSize, Integer.MAX_VALUE / 2);
+        this.maxSize = maxSize;
+        this.spoolDirectory = spoolDirectory;
+        this.maxSpoolSize = maxSpoolSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.spooling = new HashSet<>();
+        this.compressions = new ConcurrentHashMap<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.compressed = new AtomicLong();
+        if (spoolDirectory != null) {
+            Files.createDirectories(spoolDirectory);
+            // spool files of a previous run are not referenced anymore
+            this.deleteSpoolFiles();
+        }
+    }
+
+    /**
+     * Looks up the compressed variant of a version of a file
+     *
+     * @param file
+     *            the uncompressed file
+     * @param entityTag
+     *            the entity tag of the current version of the file
+     * @return the variant or <code>null</code> if there is no variant of the version
+     */
+    public synchronized Variant get(final Path file, final String entityTag) {
+        final Variant variant = this.entries.get(file);
+        if (variant != null && variant.sourceEntityTag.equals(entityTag)) {
+            this.hits.incrementAndGet();
+            return variant;
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Compresses a version of a file and caches the compressed variant. If the version is already being compressed by
+     * another thread, the result of that compression is awaited. If the variant of the version is held in memory
+     * already, it is returned without compressing the file again.
+     *
+     * @param file
+     *            the uncompressed file
+     * @param entityTag
+     *            the entity tag of the version to be compressed
+     * @param lastModified
+     *            the time of the last modification of the version in milliseconds since the epoch
+     * @return the compressed variant held in memory or <code>null</code> if the file is too large or is not the
+     *         expected version
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public Variant compress(final Path file, final String entityTag, final long lastModified) throws IOException {
+        final Map.Entry<Path, String> key = new AbstractMap.SimpleImmutableEntry<>(file, entityTag);
+        final FutureTask<Variant> compression = new FutureTask<>(new Callable<Variant>() {
+
+            @Override
+            public Variant call() throws IOException {
+                return CompressedContentCache.this.compressVersion(file, entityTag, lastModified);
+            }
+        });
+        final FutureTask<Variant> running = this.compressions.putIfAbsent(key, compression);
+        if (running != null) {
+            return awaitCompression(running);
+        }
+        try {
+            compression.run();
+        } finally {
+            this.compressions.remove(key, compression);
+        }
+        return awaitCompression(compression);
+    }
+
+    /**
+     * Waits for the result of a compression
+     *
+     * @param compression
+     *            the compression that has been started by this or another thread
+     * @return the variant created by the compression
+     * @throws IOException
+     *             if the compression failed or the thread was interrupted while waiting
+     */
+    private static Variant awaitCompression(final FutureTask<Variant> compression) throws IOException {
+        try {
+            return compression.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compression");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Compresses a version of a file unless its variant is held in memory already
+     *
+     * @see #compress(Path, String, long)
+     */
+    private Variant compressVersion(final Path file, final String entityTag, final long lastModified)
+            throws IOException {
+        synchronized (this) {
+            final Variant cached = this.entries.get(file);
+            if (cached != null && !cached.isSpooled() && cached.sourceEntityTag.equals(entityTag)) {
+                return cached;
+            }
+        }
+        final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attrs.isRegularFile() || attrs.size() > this.maxFileSize
+                || !FileMetadataCache.createEntityTag(attrs).equals(entityTag)) {
+            return null;
+        }
+        final byte[] content = Files.readAllBytes(file);
+        final BasicFileAttributes readAttrs = Files.readAttributes(file, BasicFileAttributes.class);
+        if (content.length != readAttrs.size() || !FileMetadataCache.createEntityTag(readAttrs).equals(entityTag)) {
+            LOG.debug("File {} changed while reading", file);
+            return null;
+        }
+        final byte[] compressed = this.compressor.compress(content);
+        this.compressed.incrementAndGet();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(compressed.length);
+        buffer.put(compressed).flip();
+        final Variant variant = new Variant(file, entityTag, lastModified, buffer.asReadOnlyBuffer(), null,
+                compressed.length);
+        LOG.debug("Compressed {} from {} to {} bytes", file, content.length, compressed.length);
+
+        final List<Variant> evicted;
+        final List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            this.remove(this.entries.put(file, variant), obsolete);
+            this.size += variant.size;
+            evicted = this.evictFromMemory();
+        }
+        delete(obsolete);
+        for (final Variant victim : evicted) {
+            this.spool(victim);
+        }
+        return variant;
+    }
+
+    /**
+     * Removes all variants and deletes all spool files
+     */
+    public void clear() {
+        final List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            for (final Iterator<Variant> it = this.entries.values().iterator(); it.hasNext();) {
+                final Variant variant = it.next();
+                it.remove();
+                this.remove(variant, obsolete);
+            }
+        }
+        delete(obsolete);
+    }
+
+    /**
+     * Removes all variants and deletes all spool files in the spool directory, including those of variants that are
+     * being spooled.
+     */
+    @Override
+    public void close() {
+        this.clear();
+        if (this.spoolDirectory != null) {
+            this.deleteSpoolFiles();
+        }
+    }
+
+    /**
+     * @return the number of lookups that found a variant of the requested version
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no variant of the requested version
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of files that have been compressed
+     */
+    public long getCompressions() {
+        return this.compressed.get();
+    }
+
+    /**
+     * @return the number of variants that were dropped to keep the size of memory and spool within the limits
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return the number of bytes of all variants held in memory
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of bytes of all spool files
+     */
+    public synchronized long getSpoolSize() {
+        return this.spoolSize;
+    }
+
+    /**
+     * @return the number of cached variants in memory and in the spool
+     */
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the maximum size of an uncompressed file to be compressed
+     */
+    public long getMaxFileSize() {
+        return this.maxFileSize;
+    }
+
+    /**
+     * Removes the least recently used variants from memory until the size is within the limit. If there is a spool
+     * directory, the variants are kept in the map until they are spooled, so concurrent requests can still use them.
+     *
+     * @return the variants to be spooled
+     */
+    private List<Variant> evictFromMemory() {
+        final List<Variant> evicted = new ArrayList<>();
+        for (final Iterator<Variant> it = this.entries.values().iterator(); it.hasNext()
+                && this.size - this.spoolingSize > this.maxSize;) {
+            final Variant variant = it.next();
+            if (variant.isSpooled() || this.spooling.contains(variant)) {
+                continue;
+            }
+            if (this.spoolDirectory == null) {
+                it.remove();
+                // variants in memory have no spool file to be deleted
+                this.remove(variant, null);
+                this.evictions.incrementAndGet();
+                LOG.debug("Evicted compressed variant of {}", variant.file);
+            } else {
+                this.spooling.add(variant);
+                this.spoolingSize += variant.size;
+                evicted.add(variant);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Writes a variant that has been evicted from memory to a spool file and replaces the variant in memory with the
+     * spooled one, unless the variant has been replaced in the meantime.
+     */
+    private void spool(final Variant variant) {
+        Path spoolFile = null;
+        try {
+            spoolFile = Files.createTempFile(this.spoolDirectory, SPOOL_FILE_PREFIX,
+                    ContentCoding.GZIP_FILE_EXTENSION);
+            try (FileChannel channel = FileChannel.open(spoolFile, StandardOpenOption.WRITE)) {
+                final ByteBuffer content = variant.content.duplicate();
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+        } catch (final IOException e) {
+            LOG.warn("Could not spool compressed variant of {}", variant.file, e);
+            delete(spoolFile);
+            spoolFile = null;
+        }
+
+        final List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            this.spooling.remove(variant);
+            this.spoolingSize -= variant.size;
+            if (spoolFile == null || this.entries.get(variant.file) != variant) {
+                // the variant has been replaced or removed in the meantime
+                if (this.entries.remove(variant.file, variant)) {
+                    this.remove(variant, obsolete);
+                }
+                this.evictions.incrementAndGet();
+                if (spoolFile != null) {
+                    obsolete.add(spoolFile);
+                }
+            } else {
+                final Variant spooled = new Variant(variant.file, variant.sourceEntityTag, variant.lastModified,
+                        null, spoolFile, variant.size);
+                this.entries.put(variant.file, spooled);
+                this.remove(variant, obsolete);
+                this.spoolSize += spooled.size;
+                this.evictFromSpool(obsolete);
+            }
+        }
+        delete(obsolete);
+    }
+
+    /**
+     * Removes the least recently used spool files until the size of the spool is within the limit
+     *
+     * @param obsolete
+     *            the list the spool files to be deleted are added to
+     */
+    private void evictFromSpool(final List<Path> obsolete) {
+        for (final Iterator<Variant> it = this.entries.values().iterator(); it.hasNext()
+                && this.spoolSize > this.maxSpoolSize;) {
+            final Variant variant = it.next();
+            if (variant.isSpooled()) {
+                it.remove();
+                this.remove(variant, obsolete);
+                this.evictions.incrementAndGet();
+                LOG.debug("Evicted spooled variant of {}", variant.file);
+            }
+        }
+    }
+
+    /**
+     * Releases the memory or the spool file of a variant that has been removed from the map. The spool file is not
+     * deleted, so that it can be deleted after the lock of the cache has been released.
+     *
+     * @param obsolete
+     *            the list the spool file of the variant is added to
+     */
+    private void remove(final Variant variant, final List<Path> obsolete) {
+        if (variant == null) {
+            return;
+        }
+        if (variant.isSpooled()) {
+            this.spoolSize -= variant.size;
+            obsolete.add(variant.spoolFile);
+        } else {
+            this.size -= variant.size;
+        }
+    }
+
+    /**
+     * Deletes all spool files in the spool directory
+     */
+    private void deleteSpoolFiles() {
+        try (DirectoryStream<Path> spoolFiles = Files.newDirectoryStream(this.spoolDirectory, SPOOL_FILE_PREFIX + "*"
+                + ContentCoding.GZIP_FILE_EXTENSION)) {
+            for (final Path spoolFile : spoolFiles) {
+                delete(spoolFile);
+            }
+        } catch (final IOException e) {
+            LOG.warn("Could not delete spool files in {}", this.spoolDirectory, e);
+        }
+    }
+
+    private static void delete(final List<Path> spoolFiles) {
+        for (final Path spoolFile : spoolFiles) {
+            delete(spoolFile);
+        }
+    }
+
+    private static void delete(final Path spoolFile) {
+        if (spoolFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spoolFile);
+        } catch (final IOException e) {
+            LOG.warn("Could not delete spool file {}", spoolFile, e);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ *
+ */
+package li.moskito.awtt.server.http;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import li.moskito.awtt.protocol.http.ContentType;
+import li.moskito.awtt.protocol.http.EntityTag;
+
+/**
+ * Cache for the file system metadata of requested resources. For each normalized request path the cache holds the
+ * file the path resolves to, its type, size, modification time, entity tag and content type. Paths that do not exist
+ * are cached as well, so repeated requests for missing resources do not access the file system either. <br>
+ * Entries expire after a fixed time to live, changes of the file system become visible after that time at the latest.
+ * Lookups do not take a lock. The number of entries is limited, if the limit is reached an entry is evicted using a
+ * sampled LRU policy: a few entries are picked at random and an expired or the least recently used one is evicted.
+ * Missing paths are limited separately, so that requests for many different missing resources, i.e. of a scanner, do
+ * not evict the entries of existing resources. Expired entries are removed when they are looked up.
+ *
+ * @author Gerald
+ */
+public final class FileMetadataCache {
+
+    /**
+     * Number of entries that are compared when selecting an entry for eviction
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final long timeToLive;
+    private final int maxEntries;
+    private final int maxMissingEntries;
+
+    /**
+     * Entries of existing resources
+     */
+    private final ConcurrentHashMap<Path, Node> entries;
+
+    /**
+     * Entries of paths that do not exist
+     */
+    private final ConcurrentHashMap<Path, Node> missingEntries;
+
+    /**
+     * Serializes evictions, lookups do not take this lock
+     */
+    private final Object evictionLock;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Types of the resources a request path can be resolved to
+     *
+     * @author Gerald
+     */
+    public enum FileType {
+        /**
+         * A regular file
+         */
+        FILE,
+        /**
+         * A directory without an index file
+         */
+        DIRECTORY,
+        /**
+         * Any other file or a path that does not exist
+         */
+        MISSING
+    }
+
+    /**
+     * The metadata of a resolved resource. Entries are immutable.
+     *
+     * @author Gerald
+     */
+    public static final class Entry {
+
+        private final Path file;
+        private final FileType type;
+        private final long size;
+        private final long lastModified;
+        private final String entityTag;
+        private final ContentType contentType;
+        private final long created;
+
+        private Entry(final Path file, final FileType type, final long size, final long lastModified,
+                final String entityTag, final ContentType contentType) {
+            this.file = file;
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.entityTag = entityTag;
+            this.contentType = contentType;
+            this.created = System.nanoTime();
+        }
+
+        /**
+         * Creates the metadata of an existing resource
+         *
+         * @param file
+         *            the file the request path resolves to
+         * @param attrs
+         *            the attributes of the file
+         * @param contentType
+         *            the content type of the file or <code>null</code> if unknown
+         * @return the metadata of the resource
+         */
+        public static Entry of(final Path file, final BasicFileAttributes attrs, final ContentType contentType) {
+            final FileType type;
+            if (attrs.isRegularFile()) {
+                type = FileType.FILE;
+            } else if (attrs.isDirectory()) {
+                type = FileType.DIRECTORY;
+            } else {
+                type = FileType.MISSING;
+            }
+            // HTTP dates have no milliseconds
+            return new Entry(file, type, attrs.size(), attrs.lastModifiedTime().toMillis() / 1000 * 1000,
+                    createEntityTag(attrs), contentType);
+        }
+
+        /**
+         * Creates the metadata of a resource that does not exist
+         *
+         * @param file
+         *            the file the request path resolves to
+         * @return the metadata of the missing resource
+         */
+        public static Entry missing(final Path file) {
+            return new Entry(file, FileType.MISSING, 0, 0, null, null);
+        }
+
+        /**
+         * @return the file the request path resolves to
+         */
+        public Path getFile() {
+            return this.file;
+        }
+
+        /**
+         * @return the type of the resource
+         */
+        public FileType getType() {
+            return this.type;
+        }
+
+        /**
+         * @return the size of the file in bytes
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return the time of the last modification in milliseconds since the epoch, rounded down to seconds
+         */
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * @return the strong entity tag of the current version of the file including the double quotes
+         */
+        public String getEntityTag() {
+            return this.entityTag;
+        }
+
+        /**
+         * @return the content type of the file or <code>null</code> if unknown
+         */
+        public ContentType getContentType() {
+            return this.contentType;
+        }
+    }
+
+    /**
+     * A cached entry with the time of its last lookup
+     *
+     * @author Gerald
+     */
+    private static final class Node {
+
+        private final Entry entry;
+
+        private volatile long lastAccess;
+
+        Node(final Entry entry) {
+            this.entry = entry;
+            this.lastAccess = entry.created;
+        }
+    }
+
+    /**
+     * @param timeToLive
+     *            the time in milliseconds after which an entry expires
+     * @param maxEntries
+     *            the maximum number of cached entries of existing resources and of missing paths each
+     */
+    public FileMetadataCache(final long timeToLive, final int maxEntries) {
+        this(timeToLive, maxEntries, maxEntries);
+    }
+
+    /**
+     * @param timeToLive
+     *            the time in milliseconds after which an entry expires
+     * @param maxEntries
+     *            the maximum number of cached entries of existing resources
+     * @param maxMissingEntries
+     *            the maximum number of cached entries of paths that do not exist
+     */
+    public FileMetadataCache(final long timeToLive, final int maxEntries, final int maxMissingEntries) {
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        this.maxEntries = maxEntries;
+        this.maxMissingEntries = maxMissingEntries;
+        this.entries = new ConcurrentHashMap<>();
+        this.missingEntries = new ConcurrentHashMap<>();
+        this.evictionLock = new Object();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Looks up the metadata for the request path
+     *
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @return the metadata or <code>null</code> if there is no entry or the entry has expired
+     */
+    public Entry get(final Path requestPath) {
+        ConcurrentHashMap<Path, Node> map = this.entries;
+        Node node = map.get(requestPath);
+        if (node == null) {
+            map = this.missingEntries;
+            node = map.get(requestPath);
+        }
+        final long now = System.nanoTime();
+        if (node == null || this.isExpired(node.entry, now)) {
+            if (node != null) {
+                map.remove(requestPath, node);
+            }
+            this.misses.incrementAndGet();
+            return null;
+        }
+        node.lastAccess = now;
+        this.hits.incrementAndGet();
+        return node.entry;
+    }
+
+    /**
+     * Caches the metadata for the request path. If the cache is full, an entry of the same kind, existing or missing,
+     * is evicted.
+     *
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @param entry
+     *            the metadata of the resource
+     */
+    public void put(final Path requestPath, final Entry entry) {
+        final Node node = new Node(entry);
+        if (entry.getType() == FileType.MISSING) {
+            this.entries.remove(requestPath);
+            this.put(this.missingEntries, this.maxMissingEntries, requestPath, node);
+        } else {
+            this.missingEntries.remove(requestPath);
+            this.put(this.entries, this.maxEntries, requestPath, node);
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        this.entries.clear();
+        this.missingEntries.clear();
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups of paths without valid entry
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of cached entries including expired entries that have not been removed yet
+     */
+    public int getEntryCount() {
+        return this.entries.size() + this.missingEntries.size();
+    }
+
+    /**
+     * @return the number of cached entries of paths that do not exist
+     */
+    public int getMissingEntryCount() {
+        return this.missingEntries.size();
+    }
+
+    /**
+     * Creates the entity tag for a version of a file. The tag is derived from the modification time in milliseconds,
+     * the size and the key of the file (i.e. device and inode), so a file that is replaced by another file gets a new
+     * tag even if size and modification time are equal.
+     *
+     * @param attrs
+     *            the attributes of the file
+     * @return the strong entity tag including the double quotes
+     */
+    static String createEntityTag(final BasicFileAttributes attrs) {
+        final StringBuilder tag = new StringBuilder(32);
+        tag.append(Long.toHexString(attrs.lastModifiedTime().toMillis())).append('-')
+                .append(Long.toHexString(attrs.size()));
+        final Object fileKey = attrs.fileKey();
+        if (fileKey != null) {
+            tag.append('-').append(Integer.toHexString(fileKey.hashCode()));
+        }
+        return EntityTag.strong(tag.toString());
+    }
+
+    private boolean isExpired(final Entry entry, final long now) {
+        return now - entry.created >= this.timeToLive;
+    }
+
+    private void put(final ConcurrentHashMap<Path, Node> map, final int max, final Path requestPath, final Node node) {
+        map.put(requestPath, node);
+        if (map.size() > max) {
+            this.evict(map, max, node);
+        }
+    }
+
+    /**
+     * Evicts entries until the number of entries is within the limit. The new entry is never chosen.
+     */
+    private void evict(final ConcurrentHashMap<Path, Node> map, final int max, final Node newNode) {
+        synchronized (this.evictionLock) {
+            while (map.size() > max) {
+                final Map.Entry<Path, Node> victim = this.sampleVictim(map, newNode);
+                if (victim == null) {
+                    return;
+                }
+                map.remove(victim.getKey(), victim.getValue());
+            }
+        }
+    }
+
+    /**
+     * Picks the least recently used entry of a sequence of entries starting at a random position. An expired entry is
+     * picked right away.
+     */
+    private Map.Entry<Path, Node> sampleVictim(final ConcurrentHashMap<Path, Node> map, final Node excluded) {
+        final int count = map.size();
+        if (count == 0) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        int skip = ThreadLocalRandom.current().nextInt(count);
+        int sampled = 0;
+        Map.Entry<Path, Node> victim = null;
+        for (int round = 0; round < 2 && sampled < EVICTION_SAMPLES; round++) {
+            for (final Map.Entry<Path, Node> candidate : map.entrySet()) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                if (candidate.getValue() == excluded) {
+                    continue;
+                }
+                if (this.isExpired(candidate.getValue().entry, now)) {
+                    return candidate;
+                }
+                if (victim == null || candidate.getValue().lastAccess - victim.getValue().lastAccess < 0) {
+                    victim = candidate;
+                }
+                if (++sampled == EVICTION_SAMPLES) {
+                    break;
+                }
+            }
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package li.moskito.awtt.server.http;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses content into the gzip format (RFC 1952). The compressor keeps a pool of {@link Deflater}s, as creating a
+ * deflater allocates a considerable amount of native memory. The deflaters produce raw deflate data, the gzip header
+ * and trailer are written by the compressor.
+ *
+ * @author Gerald
+ */
+final class GzipCompressor {
+
+    /**
+     * gzip header with magic number, deflate method, no flags, no modification time and unknown operating system
+     */
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private static final int TRAILER_LENGTH = 8;
+
+    private final int level;
+    private final BlockingQueue<Deflater> pool;
+
+    /**
+     * @param level
+     *            the compression level from 1 (fastest) to 9 (best compression)
+     * @param poolSize
+     *            the maximum number of idle deflaters that are kept for reuse
+     */
+    GzipCompressor(final int level, final int poolSize) {
+        this.level = level;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Compresses the content
+     *
+     * @param content
+     *            the uncompressed content
+     * @return the content in gzip format
+     */
+    byte[] compress(final byte[] content) {
+        // compressible content usually shrinks considerably, the buffer grows if it does not
+        byte[] output = new byte[HEADER.length + content.length / 2 + 64];
+        System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+        int length = HEADER.length;
+
+        final Deflater deflater = this.borrow();
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+        } finally {
+            this.release(deflater);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        if (output.length < length + TRAILER_LENGTH) {
+            output = Arrays.copyOf(output, length + TRAILER_LENGTH);
+        }
+        writeInt(output, length, (int) crc.getValue());
+        writeInt(output, length + 4, content.length);
+        length += TRAILER_LENGTH;
+
+        return output.length == length
+                ? output
+                : Arrays.copyOf(output, length);
+    }
+
+    /**
+     * @return the number of idle deflaters in the pool
+     */
+    int getPoolSize() {
+        return this.pool.size();
+    }
+
+    private Deflater borrow() {
+        final Deflater deflater = this.pool.poll();
+        if (deflater != null) {
+            return deflater;
+        }
+        return new Deflater(this.level, true);
+    }
+
+    private void release(final Deflater deflater) {
+        deflater.reset();
+        if (!this.pool.offer(deflater)) {
+            // free the native memory right away instead of waiting for the finalizer
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a 32 bit value in little endian byte order as used by gzip
+     */
+    private static void writeInt(final byte[] output, final int pos, final int value) {
+        output[pos] = (byte) value;
+        output[pos + 1] = (byte) (value >>> 8);
+        output[pos + 2] = (byte) (value >>> 16);
+        output[pos + 3] = (byte) (value >>> 24);
+    }
+}
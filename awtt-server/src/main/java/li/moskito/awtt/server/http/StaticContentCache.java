@@ -0,0 +1,553 @@
+/**
+ *
+ */
+package li.moskito.awtt.server.http;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.ACCEPT_RANGES;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_LENGTH;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_TYPE;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.ETAG;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.LAST_MODIFIED;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import li.moskito.awtt.protocol.ByteBufferBody;
+import li.moskito.awtt.protocol.HeaderField;
+import li.moskito.awtt.protocol.http.ByteRange;
+import li.moskito.awtt.protocol.http.ContentType;
+import li.moskito.awtt.protocol.http.EncodedHeaderField;
+import li.moskito.awtt.protocol.http.HttpDate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory cache for the content of small files below a content root. The content is kept in direct buffers, so it
+ * does not burden the heap and can be written to a socket without an additional copy. Together with the content, the
+ * response header fields of the file are cached in their encoded form. A cache hit requires no access to the file
+ * system. <br>
+ * The total size of the cached content is limited to a byte budget. If the budget is exceeded, entries are evicted
+ * using a sampled LFU policy: a few entries are picked at random and the least frequently used one is evicted. The
+ * access frequencies are halved periodically, so entries that were popular in the past but are no longer requested
+ * age out. <br>
+ * The cache watches the content root and all its subdirectories with a {@link WatchService} and invalidates entries
+ * as soon as their file or one of their parent directories is changed.
+ *
+ * @author Gerald
+ */
+public final class StaticContentCache {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(StaticContentCache.class);
+
+    /**
+     * Number of entries that are compared when selecting an entry for eviction
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    /**
+     * Upper bound for the access frequency of an entry
+     */
+    private static final int MAX_FREQUENCY = 255;
+
+    /**
+     * Minimum number of hits after which all frequencies are halved
+     */
+    private static final int MIN_AGING_INTERVAL = 1024;
+
+    private final Path contentRoot;
+    private final long maxSize;
+    private final long maxFileSize;
+
+    private final Map<Path, Entry> entries;
+    private final AtomicLong size;
+    private final Object evictionLock;
+
+    /**
+     * Incremented on every change in the content root. Content that has been read while the generation changed is not
+     * cached as it may be outdated already.
+     */
+    private final AtomicLong generation;
+    private final AtomicInteger hitsSinceAging;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * A cached file with its content and response header fields.
+     *
+     * @author Gerald
+     */
+    public static final class Entry {
+
+        private final Path file;
+        private final ByteBuffer content;
+        private final long lastModified;
+        private final String entityTag;
+        private final ContentType contentType;
+        private final List<HeaderField> headerFields;
+        private volatile int frequency;
+
+        Entry(final Path file, final ByteBuffer content, final long lastModified, final String entityTag,
+                final ContentType contentType) {
+            this.file = file;
+            this.content = content.asReadOnlyBuffer();
+            this.lastModified = lastModified;
+            this.entityTag = entityTag;
+            this.contentType = contentType;
+            final List<HeaderField> fields = new ArrayList<>(5);
+            fields.add(new EncodedHeaderField(LAST_MODIFIED, HttpDate.format(lastModified)));
+            fields.add(new EncodedHeaderField(ETAG, entityTag));
+            fields.add(new EncodedHeaderField(CONTENT_LENGTH, String.valueOf(content.remaining())));
+            fields.add(new EncodedHeaderField(ACCEPT_RANGES, ByteRange.BYTES_UNIT));
+            if (contentType != null) {
+                fields.add(new EncodedHeaderField(CONTENT_TYPE, contentType.toString()));
+            }
+            this.headerFields = Collections.unmodifiableList(fields);
+            this.frequency = 1;
+        }
+
+        /**
+         * @return the path of the cached file
+         */
+        public Path getFile() {
+            return this.file;
+        }
+
+        /**
+         * @return the time of the last modification of the file in milliseconds since the epoch, rounded down to
+         *         seconds
+         */
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * @return the strong entity tag of the cached version of the file including the double quotes
+         */
+        public String getEntityTag() {
+            return this.entityTag;
+        }
+
+        /**
+         * @return the content type of the file or <code>null</code> if unknown
+         */
+        public ContentType getContentType() {
+            return this.contentType;
+        }
+
+        /**
+         * @return the Last-Modified, ETag, Content-Length, Accept-Ranges and Content-Type (if known) header fields of
+         *         the file. The fields are immutable.
+         */
+        public List<HeaderField> getHeaderFields() {
+            return this.headerFields;
+        }
+
+        /**
+         * @return the size of the content in bytes
+         */
+        public int getSize() {
+            return this.content.capacity();
+        }
+
+        /**
+         * Creates a new body for a response containing the cached content
+         *
+         * @return a body reading the content
+         */
+        public ByteBufferBody createBody() {
+            return new ByteBufferBody(this.content);
+        }
+    }
+
+    /**
+     * @param contentRoot
+     *            the directory containing all files that may be cached
+     * @param maxSize
+     *            the maximum of bytes of all cached files
+     * @param maxFileSize
+     *            the maximum size of a single file to be cached
+     */
+    public StaticContentCache(final Path contentRoot, final long maxSize, final long maxFileSize) {
+        this.contentRoot = contentRoot;
+        this.maxSize = maxSize;
+        this.maxFileSize = Math.min(maxFileSize, Math.min(maxSize, Integer.MAX_VALUE));
+        this.entries = new ConcurrentHashMap<>();
+        this.size = new AtomicLong();
+        this.evictionLock = new Object();
+        this.generation = new AtomicLong();
+        this.hitsSinceAging = new AtomicInteger();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    /**
+     * Starts watching the content root for changes. Entries are only cached while the content root is watched.
+     *
+     * @throws IOException
+     *             if the content root could not be watched
+     */
+    public synchronized void start() throws IOException {
+        if (this.watchService != null) {
+            return;
+        }
+        final WatchService service = this.contentRoot.getFileSystem().newWatchService();
+        try {
+            register(service, this.contentRoot);
+        } catch (final IOException e) {
+            service.close();
+            throw e;
+        }
+        this.watchService = service;
+        this.watcher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                StaticContentCache.this.watch();
+            }
+        }, "awtt-content-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+        LOG.info("Caching content of {}, max {} Bytes", this.contentRoot, this.maxSize);
+    }
+
+    /**
+     * Stops watching the content root and removes all entries
+     */
+    public synchronized void stop() {
+        if (this.watchService == null) {
+            return;
+        }
+        try {
+            this.watchService.close();
+        } catch (final IOException e) {
+            LOG.warn("Could not close watch service", e);
+        }
+        this.watchService = null;
+        this.watcher = null;
+        this.clear();
+    }
+
+    /**
+     * Looks up the entry for the requested path and updates the hit and miss counters.
+     *
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @return the cached entry or <code>null</code> if the content is not cached
+     */
+    public Entry get(final Path requestPath) {
+        final Entry entry = this.entries.get(requestPath);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        if (entry.frequency < MAX_FREQUENCY) {
+            // lost updates are acceptable as the frequency is only an estimate
+            entry.frequency++;
+        }
+        if (this.hitsSinceAging.incrementAndGet() > Math.max(MIN_AGING_INTERVAL, this.entries.size() * 10)) {
+            this.age();
+        }
+        return entry;
+    }
+
+    /**
+     * Looks up the entry for the requested path without counting an access, so the caller can decide whether the
+     * cached content is served at all.
+     *
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @return the cached entry or <code>null</code> if the content is not cached
+     */
+    public Entry peek(final Path requestPath) {
+        return this.entries.get(requestPath);
+    }
+
+    /**
+     * Checks if the content for the requested path is cached without counting an access.
+     *
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @return <code>true</code> if the content is cached
+     */
+    public boolean contains(final Path requestPath) {
+        return this.entries.containsKey(requestPath);
+    }
+
+    /**
+     * Reads the file and caches its content for the requested path.
+     *
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @param file
+     *            the file the requested path has been resolved to
+     * @param contentType
+     *            the content type of the file or <code>null</code> if unknown
+     * @return the entry containing the content or <code>null</code> if the file is too large to be cached or changed
+     *         while it was read
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public Entry load(final Path requestPath, final Path file, final ContentType contentType) throws IOException {
+        final long readGeneration = this.generation.get();
+        final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attrs.isRegularFile() || attrs.size() > this.maxFileSize) {
+            return null;
+        }
+        final ByteBuffer content = ByteBuffer.allocateDirect((int) attrs.size());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (content.hasRemaining()) {
+                if (channel.read(content) == -1) {
+                    LOG.debug("File {} was truncated while reading", file);
+                    return null;
+                }
+            }
+            if (channel.size() != attrs.size()) {
+                LOG.debug("File {} changed its size while reading", file);
+                return null;
+            }
+        }
+        content.flip();
+        final Entry entry = new Entry(file, content, attrs.lastModifiedTime().toMillis() / 1000 * 1000,
+                FileMetadataCache.createEntityTag(attrs), contentType);
+        if (this.watchService != null && this.generation.get() == readGeneration) {
+            this.put(requestPath, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes all entries for the path and all paths below it
+     *
+     * @param path
+     *            the path of a changed file or directory
+     */
+    public void invalidate(final Path path) {
+        this.generation.incrementAndGet();
+        for (final Iterator<Map.Entry<Path, Entry>> it = this.entries.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Path, Entry> mapEntry = it.next();
+            if (mapEntry.getKey().startsWith(path) || mapEntry.getValue().file.startsWith(path)) {
+                this.remove(mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        this.generation.incrementAndGet();
+        for (final Map.Entry<Path, Entry> mapEntry : this.entries.entrySet()) {
+            this.remove(mapEntry.getKey(), mapEntry.getValue());
+        }
+    }
+
+    /**
+     * @return the number of requests that were served from the cache
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of requests for content that was not cached
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of entries that were removed to keep the size within the limit
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return the number of bytes of all cached files
+     */
+    public long getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * @return the number of cached files
+     */
+    public int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the maximum size of a single file to be cached
+     */
+    public long getMaxFileSize() {
+        return this.maxFileSize;
+    }
+
+    private void put(final Path requestPath, final Entry entry) {
+        final Entry previous = this.entries.put(requestPath, entry);
+        this.size.addAndGet(entry.getSize());
+        if (previous != null) {
+            this.size.addAndGet(-previous.getSize());
+        }
+        if (this.size.get() > this.maxSize) {
+            this.evict(entry);
+        }
+    }
+
+    private boolean remove(final Path requestPath, final Entry entry) {
+        if (this.entries.remove(requestPath, entry)) {
+            this.size.addAndGet(-entry.getSize());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evicts entries until the size is within the limit. The new entry is never chosen, so that an entry gets the
+     * chance to prove its popularity.
+     */
+    private void evict(final Entry newEntry) {
+        synchronized (this.evictionLock) {
+            while (this.size.get() > this.maxSize) {
+                final Map.Entry<Path, Entry> victim = this.sampleVictim(newEntry);
+                if (victim == null) {
+                    return;
+                }
+                if (this.remove(victim.getKey(), victim.getValue())) {
+                    this.evictions.incrementAndGet();
+                    LOG.debug("Evicted {} from content cache", victim.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the least frequently used entry of a sequence of entries starting at a random position
+     */
+    private Map.Entry<Path, Entry> sampleVictim(final Entry excluded) {
+        final int count = this.entries.size();
+        if (count == 0) {
+            return null;
+        }
+        int skip = ThreadLocalRandom.current().nextInt(count);
+        int sampled = 0;
+        Map.Entry<Path, Entry> victim = null;
+        for (int round = 0; round < 2 && sampled < EVICTION_SAMPLES; round++) {
+            for (final Map.Entry<Path, Entry> candidate : this.entries.entrySet()) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                if (candidate.getValue() == excluded) {
+                    continue;
+                }
+                if (victim == null || candidate.getValue().frequency < victim.getValue().frequency) {
+                    victim = candidate;
+                }
+                if (++sampled == EVICTION_SAMPLES) {
+                    break;
+                }
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Halves the frequencies of all entries
+     */
+    private void age() {
+        this.hitsSinceAging.set(0);
+        for (final Entry entry : this.entries.values()) {
+            entry.frequency = Math.max(1, entry.frequency / 2);
+        }
+    }
+
+    /**
+     * Registers the directory and all its subdirectories at the watch service
+     */
+    private static void register(final WatchService service, final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                    throws IOException {
+                dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Processes the events of the watch service until it is closed
+     */
+    private void watch() {
+        final WatchService service = this.watchService;
+        try {
+            while (true) {
+                final WatchKey key = service.take();
+                final Path directory = (Path) key.watchable();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    this.onEvent(service, directory, event);
+                }
+                key.reset();
+            }
+        } catch (final ClosedWatchServiceException | InterruptedException e) {
+            LOG.debug("Stopped watching {}", this.contentRoot);
+        }
+    }
+
+    private void onEvent(final WatchService service, final Path directory, final WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            LOG.debug("Missed changes in {}, clearing cache", this.contentRoot);
+            this.clear();
+            return;
+        }
+        final Path changed = directory.resolve((Path) event.context());
+        LOG.debug("{} {}, invalidating cached content", event.kind(), changed);
+        this.invalidate(changed);
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                register(service, changed);
+            } catch (final IOException e) {
+                LOG.warn("Could not watch directory {}, clearing cache", changed, e);
+                this.clear();
+            }
+        }
+    }
+}
@@ -3,32 +3,46 @@
  */
 package li.moskito.awtt.server.http;
 
+import static li.moskito.awtt.protocol.http.ResponseHeaders.ACCEPT_RANGES;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_ENCODING;
 import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_LENGTH;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_RANGE;
 import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_TYPE;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.ETAG;
 import static li.moskito.awtt.protocol.http.ResponseHeaders.LAST_MODIFIED;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.VARY;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.text.ParseException;
 import java.util.ArrayDeque;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import li.moskito.awtt.common.Configurable;
 import li.moskito.awtt.protocol.BinaryBody;
+import li.moskito.awtt.protocol.FileRegionBody;
+import li.moskito.awtt.protocol.http.ByteRange;
+import li.moskito.awtt.protocol.http.ContentCoding;
 import li.moskito.awtt.protocol.http.ContentType;
+import li.moskito.awtt.protocol.http.EntityTag;
 import li.moskito.awtt.protocol.http.HTTP;
 import li.moskito.awtt.protocol.http.HTTP.ResponseOptions;
 import li.moskito.awtt.protocol.http.HttpCommands;
+import li.moskito.awtt.protocol.http.HttpDate;
 import li.moskito.awtt.protocol.http.HttpHeader;
 import li.moskito.awtt.protocol.http.HttpMessage;
 import li.moskito.awtt.protocol.http.HttpProtocolHandler;
@@ -36,6 +50,7 @@ import li.moskito.awtt.protocol.http.HttpRequest;
 import li.moskito.awtt.protocol.http.HttpResponse;
 import li.moskito.awtt.protocol.http.HttpStatusCodes;
 import li.moskito.awtt.protocol.http.RequestHeaders;
+import li.moskito.awtt.server.http.FileMetadataCache.FileType;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
@@ -45,20 +60,99 @@ import org.slf4j.LoggerFactory;
 /**
  * A HTTP Request Handler that serves static files of a directory. If the requested resource is a directory the handler
  * returns its index file if existing. The handler does not provide directory listings. The handler does only serve GET
- * requests.
+ * requests. <br>
+ * If compression is configured, content of compressible types is served gzip encoded to clients accepting it. A
+ * precompressed sibling file with the extension <code>.gz</code> is served if it is not older than the file, otherwise
+ * the file is compressed on the fly and the compressed variant is cached. Closing the handler releases the caches
+ * and deletes the spooled compressed variants.
  * 
  * @author Gerald
  */
-public class StaticFileContentRequestHandler extends HttpProtocolHandler implements Configurable {
+public class StaticFileContentRequestHandler extends HttpProtocolHandler implements Configurable, Closeable {
 
     /**
      * SLF4J Logger for this class
      */
     private static final Logger LOG = LoggerFactory.getLogger(StaticFileContentRequestHandler.class);
 
+    /**
+     * Default maximum of bytes of all cached files
+     */
+    private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Default maximum size of a single cached file
+     */
+    private static final long DEFAULT_CACHED_FILE_SIZE = 256 * 1024;
+
+    /**
+     * Default time in milliseconds the metadata of a resource is cached
+     */
+    private static final long DEFAULT_METADATA_TTL = 1000;
+
+    /**
+     * Default maximum number of resources whose metadata is cached
+     */
+    private static final int DEFAULT_METADATA_ENTRIES = 10000;
+
+    /**
+     * Default maximum number of missing resources whose metadata is cached
+     */
+    private static final int DEFAULT_METADATA_MISSING_ENTRIES = 1000;
+
+    /**
+     * Default compression level, a good tradeoff between speed and compression
+     */
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    /**
+     * Default minimum size of a file to be compressed, smaller files hardly get smaller
+     */
+    private static final long DEFAULT_MIN_COMPRESSED_SIZE = 256;
+
+    /**
+     * Default maximum size of a file to be compressed on the fly
+     */
+    private static final long DEFAULT_COMPRESSED_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * Default maximum of bytes of all compressed variants held in memory
+     */
+    private static final long DEFAULT_COMPRESSED_CACHE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Default maximum of bytes of all spooled compressed variants
+     */
+    private static final long DEFAULT_SPOOL_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * MIME types that are compressed if no types are configured. A type ending with <code>/*</code> matches all
+     * subtypes.
+     */
+    private static final String[] DEFAULT_COMPRESSIBLE_TYPES = {
+            "text/*", "application/javascript", "application/json", "application/xml", "image/svg+xml"
+    };
+
     private Path contentRoot;
     private String indexFileName;
 
+    /**
+     * Cache for the content of small files, <code>null</code> if caching is disabled
+     */
+    private StaticContentCache contentCache;
+
+    /**
+     * Cache for the metadata of requested resources, <code>null</code> if caching is disabled
+     */
+    private FileMetadataCache metadataCache;
+
+    /**
+     * Cache for gzip compressed variants of files, <code>null</code> if compression is disabled
+     */
+    private CompressedContentCache compressedContentCache;
+    private long minCompressedSize;
+    private String[] compressibleTypes;
+
     private final Map<String, ContentType> contentTypes;
 
     public StaticFileContentRequestHandler() {
@@ -81,140 +175,502 @@ public class StaticFileContentRequestHandler extends HttpProtocolHandler impleme
                 this.contentTypes.put(fileExtension, contentType);
             }
 
+            final long metadataTimeToLive = config.getLong("metadataCache/timeToLive", DEFAULT_METADATA_TTL);
+            if (metadataTimeToLive > 0) {
+                this.metadataCache = new FileMetadataCache(metadataTimeToLive, config.getInt(
+                        "metadataCache/maxEntries", DEFAULT_METADATA_ENTRIES), config.getInt(
+                        "metadataCache/maxMissingEntries", DEFAULT_METADATA_MISSING_ENTRIES));
+            }
+
+            if (!config.configurationsAt("contentCache").isEmpty()) {
+                this.contentCache = new StaticContentCache(this.contentRoot, config.getLong("contentCache/maxSize",
+                        DEFAULT_CACHE_SIZE), config.getLong("contentCache/maxFileSize", DEFAULT_CACHED_FILE_SIZE));
+                this.contentCache.start();
+            }
+
+            if (!config.configurationsAt("compression").isEmpty()) {
+                this.configureCompression(config);
+            }
+
         } catch (final URISyntaxException e) {
             throw new ConfigurationException("ContentRoot not valid", e);
+        } catch (final IOException e) {
+            throw new ConfigurationException("ContentRoot can not be watched for the content cache", e);
+        }
+    }
+
+    private void configureCompression(final HierarchicalConfiguration config) throws ConfigurationException {
+        try {
+            final String spoolDirectory = config.getString("compression/spoolDirectory");
+            this.compressedContentCache = new CompressedContentCache(config.getInt("compression/level",
+                    DEFAULT_COMPRESSION_LEVEL), config.getLong("compression/maxFileSize", DEFAULT_COMPRESSED_FILE_SIZE),
+                    config.getLong("compression/cacheSize", DEFAULT_COMPRESSED_CACHE_SIZE), spoolDirectory == null
+                            ? null
+                            : Paths.get(new URI(spoolDirectory)), config.getLong("compression/spoolSize",
+                            DEFAULT_SPOOL_SIZE));
+        } catch (final URISyntaxException e) {
+            throw new ConfigurationException("SpoolDirectory not valid", e);
+        } catch (final IOException e) {
+            throw new ConfigurationException("SpoolDirectory can not be created", e);
+        }
+        this.minCompressedSize = config.getLong("compression/minSize", DEFAULT_MIN_COMPRESSED_SIZE);
+        final String[] types = config.getStringArray("compression/mimeTypes/mimeType");
+        this.compressibleTypes = types.length == 0
+                ? DEFAULT_COMPRESSIBLE_TYPES
+                : types;
+    }
+
+    /**
+     * @return the cache for the content of small files or <code>null</code> if caching is disabled
+     */
+    public StaticContentCache getContentCache() {
+        return this.contentCache;
+    }
+
+    /**
+     * @return the cache for the metadata of requested resources or <code>null</code> if caching is disabled
+     */
+    public FileMetadataCache getMetadataCache() {
+        return this.metadataCache;
+    }
+
+    /**
+     * @return the cache for compressed variants of files or <code>null</code> if compression is disabled
+     */
+    public CompressedContentCache getCompressedContentCache() {
+        return this.compressedContentCache;
+    }
+
+    /**
+     * Stops watching the content root for the content cache and removes the cached content including the spooled
+     * compressed variants.
+     */
+    @Override
+    public void close() {
+        if (this.contentCache != null) {
+            this.contentCache.stop();
+        }
+        if (this.compressedContentCache != null) {
+            this.compressedContentCache.close();
         }
     }
 
     /**
-     * Accepts GET requests to an existing file or directory with an index file
+     * Accepts GET requests to a cached resource, an existing file or directory with an index file
      */
     @Override
     public boolean accepts(final HttpRequest httpRequest) {
-        final boolean commandSupported = httpRequest.getCommand() == HttpCommands.GET;
-        final boolean resourceValid = this.isFileResource(httpRequest.getResource());
-        return commandSupported && resourceValid;
+        if (httpRequest.getCommand() != HttpCommands.GET) {
+            return false;
+        }
+        final URI resource = httpRequest.getResource();
+        final Path requestPath = this.normalizeResourcePath(resource);
+        if (this.contentCache != null && this.contentCache.contains(requestPath)) {
+            return true;
+        }
+        final FileMetadataCache.Entry metadata = this.getMetadata(requestPath);
+        return metadata.getType() == FileType.FILE || !resource.getPath().endsWith("/");
     }
 
     @Override
     protected HttpResponse onGet(final HttpRequest httpRequest) {
         final URI resource = httpRequest.getResource();
         LOG.debug("Requested to read resource {}", resource);
-        final Path resourcePath = this.resolveFileResource(resource);
+        final Path requestPath = this.normalizeResourcePath(resource);
+
+        // range requests are served from the file
+        if (this.contentCache != null && !httpRequest.getHeader().hasField(RequestHeaders.RANGE)) {
+            // the compressed variant is served based on the metadata, so the access is only counted otherwise
+            final StaticContentCache.Entry peeked = this.contentCache.peek(requestPath);
+            if (peeked == null || !this.isCompressible(peeked.getContentType(), peeked.getSize())
+                    || !this.acceptsGzip(httpRequest)) {
+                final StaticContentCache.Entry cached = this.contentCache.get(requestPath);
+                if (cached != null) {
+                    final HttpResponse cachedResponse = this.createCachedResponse(httpRequest, cached);
+                    return this.isCompressible(cached.getContentType(), cached.getSize())
+                            ? this.addVary(cachedResponse)
+                            : cachedResponse;
+                }
+            }
+        }
 
-        if (Files.isRegularFile(resourcePath)) {
-            return this.createResponse(httpRequest, resourcePath);
+        final FileMetadataCache.Entry metadata = this.getMetadata(requestPath);
+        if (metadata.getType() == FileType.FILE) {
+            return this.createResponse(httpRequest, requestPath, metadata);
         } else {
             return HTTP.createResponse(HttpStatusCodes.NOT_FOUND, ResponseOptions.FORCE_CLOSE);
         }
     }
 
     /**
-     * Checks if the the URI points to a valid and existing file resource. If the resource points to a directory it is
-     * still valid if the directory contains an index file
+     * Provides the metadata of the resource the request path resolves to, either from the metadata cache or from the
+     * file system.
      * 
-     * @param resourceId
-     *            the resource to verify
-     * @return <code>true</code> if the resource points to a file or a directory with an index file
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @return the metadata of the resource
      */
-    private boolean isFileResource(final URI resourceId) {
-        final Path resourcePath = this.resolveFileResource(resourceId);
-        return resourcePath != null && (Files.isRegularFile(resourcePath) || !resourceId.getPath().endsWith("/"));
-    }
-
-    /**
-     * Resolves the URI resource to a local file resource that is identified by its {@link Path}
-     * 
-     * @param resource
-     *            the resource to be resolved
-     * @return the {@link Path} pointing to the local file or directory
-     */
-    private Path resolveFileResource(final URI resource) {
-        final Path resourcePath = this.normalizeResourcePath(resource);
-        return this.resolveFileResourcePath(resourcePath);
+    private FileMetadataCache.Entry getMetadata(final Path requestPath) {
+        if (this.metadataCache != null) {
+            final FileMetadataCache.Entry cached = this.metadataCache.get(requestPath);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final FileMetadataCache.Entry metadata = this.readMetadata(requestPath);
+        if (this.metadataCache != null) {
+            this.metadataCache.put(requestPath, metadata);
+        }
+        return metadata;
     }
 
     /**
-     * Resolves the given resource path to a file resource path. If the path points to a directory, the configured index
-     * file will be used if a file with the configured index file name exists.
+     * Resolves the given resource path to a file resource and reads its metadata. If the path points to a directory,
+     * the configured index file will be used if a file with the configured index file name exists.
      * 
      * @param resourcePath
      *            the resource path to be resolved
-     * @return the path to an existing resource in the filesystem. The resource is either a concrete file or a
-     *         directory.
-     */
-    private Path resolveFileResourcePath(final Path resourcePath) {
-        Path fileResourcePath = resourcePath;
-        if (Files.isDirectory(resourcePath)) {
-            final Path indexResourcePath = resourcePath.resolve(this.indexFileName);
-            if (Files.exists(indexResourcePath)) {
-                fileResourcePath = indexResourcePath;
+     * @return the metadata of the file or directory the path resolves to or of the missing resource
+     */
+    private FileMetadataCache.Entry readMetadata(final Path resourcePath) {
+        try {
+            final BasicFileAttributes attrs = Files.readAttributes(resourcePath, BasicFileAttributes.class);
+            if (attrs.isDirectory()) {
+                final Path indexResourcePath = resourcePath.resolve(this.indexFileName);
+                try {
+                    return this.createMetadata(indexResourcePath,
+                            Files.readAttributes(indexResourcePath, BasicFileAttributes.class));
+                } catch (final NoSuchFileException e) {
+                    LOG.debug("No index file in directory {}", resourcePath);
+                }
             }
+            return this.createMetadata(resourcePath, attrs);
+        } catch (final IOException e) {
+            LOG.debug("Resource {} not available", resourcePath, e);
+            return FileMetadataCache.Entry.missing(resourcePath);
         }
-        return fileResourcePath;
+    }
+
+    private FileMetadataCache.Entry createMetadata(final Path path, final BasicFileAttributes attrs) {
+        final ContentType contentType = attrs.isRegularFile()
+                ? this.getContentType(path)
+                : null;
+        return FileMetadataCache.Entry.of(path, attrs, contentType);
     }
 
     /**
-     * Creates a HTTP response for the resolved resource. If the resourcePath points to a concrete file, it will be
-     * returned in the response otherwise a 404 NOT FOUND response will be created
+     * Creates a HTTP response for the resolved file resource. If the file does no longer exist, a 404 NOT FOUND
+     * response will be created
      * 
      * @param httpRequest
      *            the httpRequest containing additional information for the file retrieval (like if-modified-date)
-     * @param resourcePath
-     *            the resource path of the local filesystem resource
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @param metadata
+     *            the metadata of the local filesystem resource
      * @return a HttpResponse to be returned to the client
      */
-    private HttpResponse createResponse(final HttpRequest httpRequest, final Path resourcePath) {
+    private HttpResponse createResponse(final HttpRequest httpRequest, final Path requestPath,
+            final FileMetadataCache.Entry metadata) {
+        final Path resourcePath = metadata.getFile();
         try {
             LOG.debug("Resolved path to resource {}", resourcePath);
-            if (Files.isRegularFile(resourcePath)) {
-                return this.createFileResponse(httpRequest, resourcePath);
-            }
+            return this.createFileResponse(httpRequest, requestPath, metadata);
+        } catch (final NoSuchFileException e) {
+            LOG.debug("Resource {} has been removed", resourcePath);
+            return HTTP.createResponse(HttpStatusCodes.NOT_FOUND, ResponseOptions.FORCE_CLOSE);
         } catch (final IOException e) {
             LOG.error("Error reading resource {}", resourcePath, e);
             return HTTP.createResponse(HttpStatusCodes.INTERNAL_SERVER_ERROR, ResponseOptions.FORCE_CLOSE);
         }
-        return HTTP.createResponse(HttpStatusCodes.NOT_FOUND, ResponseOptions.FORCE_CLOSE);
     }
 
     /**
-     * Creates a HTTP Response serving the data from the given fileResourcePath. If the file was not modified according
-     * to the information from the http request header, a 304 Not Modified will be returned, otherwise a 200 OK
+     * Creates a HTTP Response serving the data of the given file. If the file was not modified according to the
+     * conditional header fields of the request, a 304 Not Modified will be returned, if a precondition failed a 412
+     * Precondition Failed, otherwise a 200 OK. The conditions are evaluated without opening the file. The file is
+     * served compressed if it is compressible and the client accepts gzip.
      * 
      * @param httpRequest
-     *            the http request containing information regarding the constraining modification date
-     * @param fileResourcePath
-     *            the file resource to server
+     *            the http request containing the conditional header fields
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @param metadata
+     *            the metadata of the file resource to serve
      * @return the http response to be returned to the client
      * @throws IOException
      */
-    private HttpResponse createFileResponse(final HttpRequest httpRequest, final Path fileResourcePath)
-            throws IOException {
-        if (this.isModified(httpRequest, fileResourcePath)) {
-            return this.createFileContentResponse(fileResourcePath);
+    private HttpResponse createFileResponse(final HttpRequest httpRequest, final Path requestPath,
+            final FileMetadataCache.Entry metadata) throws IOException {
+        final boolean compressible = this.isCompressible(metadata.getContentType(), metadata.getSize());
+        // ranges are served from the uncompressed file
+        if (compressible && !httpRequest.getHeader().hasField(RequestHeaders.RANGE) && this.acceptsGzip(httpRequest)) {
+            final HttpResponse compressedResponse = this.createCompressedResponse(httpRequest, metadata);
+            if (compressedResponse != null) {
+                return this.addVary(compressedResponse);
+            }
+        }
+        HttpResponse httpResponse = this.evaluatePreconditions(httpRequest, metadata.getEntityTag(),
+                metadata.getLastModified());
+        if (httpResponse == null) {
+            httpResponse = this.createFileContentResponse(httpRequest, requestPath, metadata);
+        }
+        return compressible
+                ? this.addVary(httpResponse)
+                : httpResponse;
+    }
+
+    /**
+     * Creates a HTTP Response serving the gzip compressed variant of a file. A precompressed sibling file is preferred
+     * if it is not older than the file, otherwise the compressed variant is taken from the cache or the file is
+     * compressed. The conditional header fields are evaluated against the compressed variant.
+     * 
+     * @param httpRequest
+     *            the http request containing the conditional header fields
+     * @param metadata
+     *            the metadata of the uncompressed file
+     * @return the http response to be returned to the client or <code>null</code> if there is no compressed variant
+     *         or it is not smaller than the file
+     * @throws IOException
+     */
+    private HttpResponse createCompressedResponse(final HttpRequest httpRequest,
+            final FileMetadataCache.Entry metadata) throws IOException {
+        final Path file = metadata.getFile();
+        final FileMetadataCache.Entry precompressed = this.getMetadata(file.resolveSibling(file.getFileName()
+                + ContentCoding.GZIP_FILE_EXTENSION));
+        if (precompressed.getType() == FileType.FILE && precompressed.getLastModified() >= metadata.getLastModified()) {
+            final HttpResponse conditionalResponse = this.evaluatePreconditions(httpRequest,
+                    precompressed.getEntityTag(), precompressed.getLastModified());
+            if (conditionalResponse != null) {
+                return conditionalResponse;
+            }
+            return this.createCompressedContentResponse(new FileRegionBody(FileChannel.open(precompressed.getFile(),
+                    StandardOpenOption.READ), 0, precompressed.getSize()), precompressed.getSize(),
+                    precompressed.getLastModified(), precompressed.getEntityTag(), metadata.getContentType());
+        }
+
+        if (metadata.getSize() > this.compressedContentCache.getMaxFileSize()) {
+            return null;
+        }
+        CompressedContentCache.Variant variant = this.compressedContentCache.get(file, metadata.getEntityTag());
+        if (variant == null) {
+            variant = this.compressedContentCache.compress(file, metadata.getEntityTag(), metadata.getLastModified());
+            if (variant == null) {
+                return null;
+            }
+        }
+        if (variant.getSize() >= metadata.getSize()) {
+            LOG.debug("Compression does not reduce the size of {}", file);
+            return null;
+        }
+        final HttpResponse conditionalResponse = this.evaluatePreconditions(httpRequest, variant.getEntityTag(),
+                variant.getLastModified());
+        if (conditionalResponse != null) {
+            return conditionalResponse;
+        }
+        BinaryBody body = variant.createBody();
+        if (body == null) {
+            // the spool file has been evicted
+            variant = this.compressedContentCache.compress(file, metadata.getEntityTag(), metadata.getLastModified());
+            if (variant == null) {
+                return null;
+            }
+            body = variant.createBody();
+        }
+        return this.createCompressedContentResponse(body, variant.getSize(), variant.getLastModified(),
+                variant.getEntityTag(), metadata.getContentType());
+    }
+
+    /**
+     * Creates a response for returning gzip compressed content
+     * 
+     * @param body
+     *            the body containing the compressed content
+     * @param size
+     *            the size of the compressed content
+     * @param lastModified
+     *            the time of the last modification of the content in milliseconds since the epoch
+     * @param entityTag
+     *            the entity tag of the compressed content
+     * @param contentType
+     *            the content type of the uncompressed content or <code>null</code> if unknown
+     * @return the http response to be returned to the client
+     */
+    private HttpResponse createCompressedContentResponse(final BinaryBody body, final long size,
+            final long lastModified, final String entityTag, final ContentType contentType) {
+        final HttpResponse httpResponse = new HttpResponse(HttpStatusCodes.OK);
+        httpResponse.setBody(body);
+        httpResponse.addField(LAST_MODIFIED, HttpDate.format(lastModified));
+        httpResponse.addField(ETAG, entityTag);
+        httpResponse.addField(CONTENT_LENGTH, size);
+        httpResponse.addField(CONTENT_ENCODING, ContentCoding.GZIP);
+        if (contentType != null) {
+            httpResponse.addField(CONTENT_TYPE, contentType);
+        }
+        return httpResponse;
+    }
+
+    /**
+     * Determines if content is served compressed to clients accepting it
+     * 
+     * @param contentType
+     *            the content type of the content or <code>null</code> if unknown
+     * @param size
+     *            the size of the uncompressed content
+     * @return <code>true</code> if compression is enabled, the content type is compressible and the content is not too
+     *         small
+     */
+    private boolean isCompressible(final ContentType contentType, final long size) {
+        if (this.compressedContentCache == null || contentType == null || size < this.minCompressedSize) {
+            return false;
+        }
+        final String mimeType = contentType.getMIMEType();
+        for (final String type : this.compressibleTypes) {
+            if (type.endsWith("/*")) {
+                if (mimeType.regionMatches(true, 0, type, 0, type.length() - 1)) {
+                    return true;
+                }
+            } else if (mimeType.regionMatches(true, 0, type, 0, type.length())
+                    && (mimeType.length() == type.length() || mimeType.charAt(type.length()) == ';')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the Accept-Encoding header of the request accepts gzip
+     */
+    private boolean acceptsGzip(final HttpMessage request) {
+        final HttpHeader header = request.getHeader();
+        return header.hasField(RequestHeaders.ACCEPT_ENCODING)
+                && ContentCoding.isAccepted((String) header.getField(RequestHeaders.ACCEPT_ENCODING).getValue(),
+                        ContentCoding.GZIP);
+    }
+
+    /**
+     * Adds the Vary header to a response for content that is served compressed or uncompressed depending on the
+     * Accept-Encoding header, so shared caches do not serve the wrong variant
+     * 
+     * @param httpResponse
+     *            the response
+     * @return the response
+     */
+    private HttpResponse addVary(final HttpResponse httpResponse) {
+        httpResponse.addField(VARY, RequestHeaders.ACCEPT_ENCODING.getName());
+        return httpResponse;
+    }
+
+    /**
+     * Creates a HTTP Response serving cached content. If the content was not modified according to the conditional
+     * header fields of the request, a 304 Not Modified will be returned, if a precondition failed a 412 Precondition
+     * Failed, otherwise a 200 OK
+     * 
+     * @param httpRequest
+     *            the http request containing the conditional header fields
+     * @param cached
+     *            the cached content
+     * @return the http response to be returned to the client
+     */
+    private HttpResponse createCachedResponse(final HttpRequest httpRequest, final StaticContentCache.Entry cached) {
+        final HttpResponse conditionalResponse = this.evaluatePreconditions(httpRequest, cached.getEntityTag(),
+                cached.getLastModified());
+        if (conditionalResponse != null) {
+            return conditionalResponse;
+        }
+        return this.createCachedContentResponse(cached);
+    }
+
+    /**
+     * Evaluates the conditional header fields of the request against the current version of a file in the order
+     * defined by RFC 7232. If-Match is evaluated first, If-Modified-Since only if the request has no If-None-Match
+     * header.
+     * 
+     * @param request
+     *            the request containing the headers
+     * @param entityTag
+     *            the entity tag of the current version of the file
+     * @param lastModified
+     *            the time of the last modification of the file in milliseconds since the epoch
+     * @return a 412 Precondition Failed or 304 Not Modified response or <code>null</code> if the file should be served
+     */
+    private HttpResponse evaluatePreconditions(final HttpMessage request, final String entityTag,
+            final long lastModified) {
+        final HttpHeader header = request.getHeader();
+        if (header.hasField(RequestHeaders.IF_MATCH)
+                && !EntityTag.matches((String) header.getField(RequestHeaders.IF_MATCH).getValue(), entityTag, false)) {
+            final HttpResponse httpResponse = HTTP.createResponse(HttpStatusCodes.PRECONDITION_FAILED);
+            httpResponse.addField(CONTENT_LENGTH, 0);
+            return httpResponse;
+        }
+        final boolean modified;
+        if (header.hasField(RequestHeaders.IF_NONE_MATCH)) {
+            modified = !EntityTag.matches((String) header.getField(RequestHeaders.IF_NONE_MATCH).getValue(),
+                    entityTag, true);
         } else {
-            return HTTP.createResponse(HttpStatusCodes.NOT_MODIFIED);
+            modified = this.isModified(request, lastModified);
         }
+        if (modified) {
+            return null;
+        }
+        final HttpResponse httpResponse = HTTP.createResponse(HttpStatusCodes.NOT_MODIFIED);
+        httpResponse.addField(ETAG, entityTag);
+        return httpResponse;
     }
 
     /**
-     * Creates a response for returning the content of a file
+     * Creates a response for returning cached content. The header fields have been created when the content was
+     * cached.
      * 
-     * @param fileResourcePath
-     *            the path to the file resource whose content should be returned to the client
-     * @param attrs
-     * @return
+     * @param cached
+     *            the cached content
+     * @return the http response to be returned to the client
+     */
+    private HttpResponse createCachedContentResponse(final StaticContentCache.Entry cached) {
+        final HttpResponse httpResponse = new HttpResponse(HttpStatusCodes.OK);
+        httpResponse.setBody(cached.createBody());
+        httpResponse.getHeader().addFields(cached.getHeaderFields());
+        return httpResponse;
+    }
+
+    /**
+     * Creates a response for returning the content of a file or the requested ranges of it. Small files are put into
+     * the content cache if caching is enabled.
+     * 
+     * @param httpRequest
+     *            the http request that may request ranges of the file
+     * @param requestPath
+     *            the normalized path of the requested resource
+     * @param metadata
+     *            the metadata of the file resource whose content should be returned to the client
+     * @return the http response to be returned to the client
      * @throws IOException
      */
-    private HttpResponse createFileContentResponse(final Path fileResourcePath) throws IOException {
-        final BasicFileAttributes attrs = Files.readAttributes(fileResourcePath, BasicFileAttributes.class);
+    private HttpResponse createFileContentResponse(final HttpRequest httpRequest, final Path requestPath,
+            final FileMetadataCache.Entry metadata) throws IOException {
+        final List<ByteRange> ranges = this.getRequestedRanges(httpRequest, metadata);
+        if (ranges != null) {
+            return this.createRangeResponse(ranges, metadata);
+        }
+        final Path fileResourcePath = metadata.getFile();
+        if (this.contentCache != null && metadata.getSize() <= this.contentCache.getMaxFileSize()) {
+            final StaticContentCache.Entry cached = this.contentCache.load(requestPath, fileResourcePath,
+                    metadata.getContentType());
+            if (cached != null) {
+                return this.createCachedContentResponse(cached);
+            }
+        }
         final HttpResponse httpResponse = new HttpResponse(HttpStatusCodes.OK);
 
-        httpResponse.setBody(new BinaryBody(Files.newByteChannel(fileResourcePath)));
+        // the file is sent as region, allowing the connection to transfer it without copying
+        httpResponse.setBody(new FileRegionBody(FileChannel.open(fileResourcePath, StandardOpenOption.READ), 0,
+                metadata.getSize()));
 
-        httpResponse.addField(LAST_MODIFIED, this.getLastModified(fileResourcePath));
-        httpResponse.addField(CONTENT_LENGTH, attrs.size());
-        final ContentType contentType = this.getContentType(fileResourcePath);
+        httpResponse.addField(LAST_MODIFIED, HttpDate.format(metadata.getLastModified()));
+        httpResponse.addField(ETAG, metadata.getEntityTag());
+        httpResponse.addField(CONTENT_LENGTH, metadata.getSize());
+        httpResponse.addField(ACCEPT_RANGES, ByteRange.BYTES_UNIT);
+        final ContentType contentType = metadata.getContentType();
         if (contentType != null) {
             httpResponse.addField(CONTENT_TYPE, contentType);
         }
@@ -222,6 +678,100 @@ public class StaticFileContentRequestHandler extends HttpProtocolHandler impleme
         return httpResponse;
     }
 
+    /**
+     * Determines the ranges of the file requested with the Range header. The header is ignored if the request contains
+     * an If-Range header with an entity tag or a date that does not match the current version of the file.
+     * 
+     * @param request
+     *            the request containing the headers
+     * @param metadata
+     *            the metadata of the requested file
+     * @return the satisfiable ranges, an empty list if no range is satisfiable or <code>null</code> if the complete
+     *         file should be served
+     */
+    private List<ByteRange> getRequestedRanges(final HttpMessage request, final FileMetadataCache.Entry metadata) {
+        final HttpHeader header = request.getHeader();
+        if (!header.hasField(RequestHeaders.RANGE)) {
+            return null;
+        }
+        if (header.hasField(RequestHeaders.IF_RANGE)) {
+            final String ifRange = (String) header.getField(RequestHeaders.IF_RANGE).getValue();
+            final boolean matching = EntityTag.isEntityTag(ifRange)
+                    ? EntityTag.matches(ifRange, metadata.getEntityTag(), false)
+                    : HttpDate.parse(ifRange) == metadata.getLastModified();
+            if (!matching) {
+                LOG.debug("If-Range {} does not match, serving complete file", ifRange);
+                return null;
+            }
+        }
+        return ByteRange.parse((String) header.getField(RequestHeaders.RANGE).getValue(), metadata.getSize());
+    }
+
+    /**
+     * Creates a 206 Partial Content response for the requested ranges of a file. A single range is sent as region of
+     * the file, multiple ranges as multipart/byteranges body whose parts are regions of the file as well. If no range
+     * is satisfiable, a 416 Requested Range Not Satisfiable response is created.
+     * 
+     * @param ranges
+     *            the ranges to be sent
+     * @param metadata
+     *            the metadata of the requested file
+     * @return the http response to be returned to the client
+     * @throws IOException
+     */
+    private HttpResponse createRangeResponse(final List<ByteRange> ranges, final FileMetadataCache.Entry metadata)
+            throws IOException {
+        final long size = metadata.getSize();
+        if (ranges.isEmpty()) {
+            final HttpResponse httpResponse = HTTP.createResponse(HttpStatusCodes.REQUESTED_RANGE_NOT_SATISFIABLE);
+            httpResponse.addField(CONTENT_RANGE, ByteRange.toUnsatisfiedContentRange(size));
+            httpResponse.addField(CONTENT_LENGTH, 0);
+            return httpResponse;
+        }
+
+        final HttpResponse httpResponse = new HttpResponse(HttpStatusCodes.PARTIAL_CONTENT);
+        final FileChannel fileChannel = FileChannel.open(metadata.getFile(), StandardOpenOption.READ);
+        final ContentType contentType = metadata.getContentType();
+        httpResponse.addField(LAST_MODIFIED, HttpDate.format(metadata.getLastModified()));
+        httpResponse.addField(ETAG, metadata.getEntityTag());
+
+        if (ranges.size() == 1) {
+            final ByteRange range = ranges.get(0);
+            httpResponse.setBody(new FileRegionBody(fileChannel, range.getFirst(), range.getLength()));
+            httpResponse.addField(CONTENT_RANGE, range.toContentRange(size));
+            httpResponse.addField(CONTENT_LENGTH, range.getLength());
+            if (contentType != null) {
+                httpResponse.addField(CONTENT_TYPE, contentType);
+            }
+            return httpResponse;
+        }
+
+        final String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        final List<FileRegionBody.Segment> segments = new ArrayList<>(ranges.size() * 2 + 1);
+        long length = 0;
+        for (final ByteRange range : ranges) {
+            final StringBuilder partHeader = new StringBuilder(128);
+            partHeader.append(HTTP.CRLF).append("--").append(boundary).append(HTTP.CRLF);
+            if (contentType != null) {
+                partHeader.append(CONTENT_TYPE.getName()).append(": ").append(contentType).append(HTTP.CRLF);
+            }
+            partHeader.append(CONTENT_RANGE.getName()).append(": ").append(range.toContentRange(size))
+                    .append(HTTP.CRLF).append(HTTP.CRLF);
+            final byte[] partHeaderBytes = partHeader.toString().getBytes(HTTP.CHARSET);
+            segments.add(FileRegionBody.Segment.data(partHeaderBytes));
+            segments.add(FileRegionBody.Segment.region(range.getFirst(), range.getLength()));
+            length += partHeaderBytes.length + range.getLength();
+        }
+        final byte[] closeDelimiter = (HTTP.CRLF + "--" + boundary + "--" + HTTP.CRLF).getBytes(HTTP.CHARSET);
+        segments.add(FileRegionBody.Segment.data(closeDelimiter));
+        length += closeDelimiter.length;
+
+        httpResponse.setBody(new FileRegionBody(fileChannel, segments));
+        httpResponse.addField(CONTENT_TYPE, new ContentType("multipart/byteranges; boundary=" + boundary));
+        httpResponse.addField(CONTENT_LENGTH, length);
+        return httpResponse;
+    }
+
     /**
      * Extracts the path value of the URI and normalizes it by dereferencing all relative path elements (. and ..) The
      * method ensures that the path does not reference a resource that is parent to root.
@@ -262,22 +812,28 @@ public class StaticFileContentRequestHandler extends HttpProtocolHandler impleme
     }
 
     /**
-     * Determines if the file is modified according to the If-Modified-Since header
+     * Determines if content with the given modification time is modified according to the If-Modified-Since header
      * 
      * @param request
      *            the request containing the headers
-     * @param fileResourcePath
-     *            the fileResource that should be checked regarding modification date
-     * @return <code>true</code> if the file was modified since the date in the request
-     * @throws IOException
+     * @param lastModified
+     *            the time of the last modification of the content in milliseconds since the epoch
+     * @return <code>true</code> if the content was modified since the date in the request
      */
-    private boolean isModified(final HttpMessage request, final Path fileResourcePath) throws IOException {
+    private boolean isModified(final HttpMessage request, final long lastModified) {
+        final String date = this.getIfModifiedSince(request);
+        return date == null || this.isModifiedSince(date, lastModified);
+    }
+
+    /**
+     * @return the value of the If-Modified-Since header or <code>null</code> if the request has no such header
+     */
+    private String getIfModifiedSince(final HttpMessage request) {
         final HttpHeader header = request.getHeader();
         if (header.hasField(RequestHeaders.IF_MODIFIED_SINCE)) {
-            final String date = (String) header.getField(RequestHeaders.IF_MODIFIED_SINCE).getValue();
-            return this.isModifiedSince(date, fileResourcePath);
+            return (String) header.getField(RequestHeaders.IF_MODIFIED_SINCE).getValue();
         }
-        return true;
+        return null;
     }
 
     /**
@@ -286,25 +842,20 @@ public class StaticFileContentRequestHandler extends HttpProtocolHandler impleme
      * 
      * @param httpDate
      *            the date to check the actual and the system date against
-     * @param fileResourcePath
-     *            the filesystem that should be checked against the date
+     * @param lastModified
+     *            the time of the last modification of the file in milliseconds since the epoch
      * @return <code>true</code> if the httpDate is after the current system date (in the future), or if it is before
      *         the actual modified date of the file (the file has been modified since that date) or if the date could
      *         not be parsed. In all other cases, the method returns <code>false</code>
-     * @throws IOException
      */
-    private boolean isModifiedSince(final String httpDate, final Path fileResourcePath) throws IOException {
-        try {
-            final Date ifModifiedDateDate = HTTP.fromHttpDate(httpDate);
-            final Date systemDate = new Date(System.currentTimeMillis());
-            final Date modifiedDate = this.getLastModifiedDate(fileResourcePath);
-
-            return ifModifiedDateDate.after(systemDate) || ifModifiedDateDate.before(modifiedDate);
-
-        } catch (final ParseException e) {
-            LOG.debug("Could not parse date {}", httpDate, e);
+    private boolean isModifiedSince(final String httpDate, final long lastModified) {
+        final long ifModifiedDate = HttpDate.parse(httpDate);
+        if (ifModifiedDate == HttpDate.INVALID) {
+            LOG.debug("Could not parse date {}", httpDate);
+            return true;
         }
-        return true;
+        return ifModifiedDate > System.currentTimeMillis()
+                || ifModifiedDate < lastModified;
     }
 
     /**
@@ -338,31 +889,4 @@ public class StaticFileContentRequestHandler extends HttpProtocolHandler impleme
         }
         return null;
     }
-
-    /**
-     * Determines the last modified date and returns the date as String in HTTP Date format.
-     * 
-     * @param fileResourcePath
-     *            the path to the file resource
-     * @return the String representing the last modified date
-     * @throws IOException
-     */
-    private String getLastModified(final Path fileResourcePath) throws IOException {
-        final Date modifiedTime = this.getLastModifiedDate(fileResourcePath);
-        return HTTP.toHttpDate(modifiedTime);
-    }
-
-    /**
-     * Determines the date of the last modification of the specified Resource
-     * 
-     * @param path
-     *            the resource to check
-     * @return the date of the last modification
-     * @throws IOException
-     */
-    private Date getLastModifiedDate(final Path path) throws IOException {
-        final long fileTimestamp = Files.getLastModifiedTime(path).toMillis();
-        // we have to cut the ms part of the time (round down by 1000) as HTTP date doesn't have ms
-        return new Date(fileTimestamp / 1000 * 1000);
-    }
 }
@@ -0,0 +1,617 @@
+/**
+ *
+ */
+package li.moskito.awtt.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import li.moskito.awtt.metrics.Gauge;
+import li.moskito.awtt.metrics.MetricsRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of direct {@link ByteBuffer}s that avoids the costly allocation of direct memory for every request and
+ * response. The buffers are organized in size classes of powers of 2, each class having a global free list and a small
+ * cache per thread, so that a thread that releases and acquires buffers of the same class doesn't contend with other
+ * threads. Virtual threads don't use a cache, as they are short lived and numerous, so their caches would rarely be hit
+ * but would withhold buffers from the free lists. <br>
+ * The direct memory allocated by the pool is limited. If the limit is reached, heap buffers are handed out instead,
+ * which are not pooled. Buffers larger than the largest size class are heap buffers as well. <br>
+ * If the system property <code>awtt.bufferPool.leakDetection</code> is set to true, every acquired buffer is tracked
+ * and a warning with the stack trace of the acquisition is logged if a buffer is garbage collected without being
+ * released. As the tracking records a stack trace per buffer, it should not be enabled in production.<br>
+ * The following system properties are supported
+ * <ul>
+ * <li>awtt.bufferPool.maxDirectMemory: maximum of direct memory in bytes allocated by the pool, default is 64 MB</li>
+ * <li>awtt.bufferPool.threadCacheSize: number of buffers per size class cached by each thread, default is 4</li>
+ * <li>awtt.bufferPool.leakDetection: enables the leak detection</li>
+ * </ul>
+ *
+ * @author Gerald
+ */
+public final class ByteBufferPool {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ByteBufferPool.class);
+
+    /**
+     * Size of the smallest size class, 4 KB
+     */
+    private static final int MIN_BUFFER_SHIFT = 12;
+
+    /**
+     * Size of the largest size class, 64 KB
+     */
+    private static final int MAX_BUFFER_SHIFT = 16;
+
+    /**
+     * The default size of buffers for network and file transfers
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private static final long DEFAULT_MAX_DIRECT_MEMORY = 64L * 1024 * 1024;
+
+    private static final int DEFAULT_THREAD_CACHE_SIZE = 4;
+
+    /**
+     * Number of created thread caches after which the caches of terminated threads are reclaimed
+     */
+    private static final int RECLAIM_INTERVAL = 64;
+
+    /**
+     * Handle of the Thread.isVirtual() method, or of a method always returning <code>false</code> if the runtime does
+     * not support virtual threads. The handle is resolved once, so the check is as cheap as a direct call.
+     */
+    private static final MethodHandle IS_VIRTUAL = findIsVirtualMethod();
+
+    /**
+     * Holder idiom
+     */
+    private static class Holder {
+        private static final ByteBufferPool INSTANCE = new ByteBufferPool(Long.getLong(
+                "awtt.bufferPool.maxDirectMemory", DEFAULT_MAX_DIRECT_MEMORY), Integer.getInteger(
+                "awtt.bufferPool.threadCacheSize", DEFAULT_THREAD_CACHE_SIZE),
+                Boolean.getBoolean("awtt.bufferPool.leakDetection"));
+
+        static {
+            INSTANCE.registerMetrics(MetricsRegistry.getInstance());
+        }
+
+        private Holder() {
+        }
+    }
+
+    private final long maxDirectMemory;
+    private final int threadCacheSize;
+    private final boolean leakDetection;
+
+    /**
+     * Free buffers per size class
+     */
+    private final List<Queue<ByteBuffer>> freeLists;
+
+    private final ThreadLocal<ThreadCache> threadCache;
+
+    /**
+     * All thread caches, used for reclaiming the buffers of terminated threads
+     */
+    private final Queue<ThreadCache> threadCaches;
+    private final AtomicInteger threadCacheCount;
+
+    /**
+     * Leak trackers by identity hash code of the tracked buffer, only used if leak detection is enabled
+     */
+    private final Map<Integer, List<LeakTracker>> leakTrackers;
+    private final ReferenceQueue<ByteBuffer> collectedBuffers;
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong releaseCount = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private final AtomicLong heapFallbackCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    /**
+     * Creates a new buffer pool. Use {@link #getInstance()} to retrieve the shared pool of the server.
+     *
+     * @param maxDirectMemory
+     *            the maximum number of bytes of direct memory to allocate
+     * @param threadCacheSize
+     *            number of buffers per size class cached by each thread, 0 disables the thread caches
+     * @param leakDetection
+     *            flag to enable the tracking of acquired buffers
+     */
+    ByteBufferPool(final long maxDirectMemory, final int threadCacheSize, final boolean leakDetection) {
+        this.maxDirectMemory = maxDirectMemory;
+        this.threadCacheSize = threadCacheSize;
+        this.leakDetection = leakDetection;
+        this.freeLists = new ArrayList<>();
+        for (int shift = MIN_BUFFER_SHIFT; shift <= MAX_BUFFER_SHIFT; shift++) {
+            this.freeLists.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+        this.threadCaches = new ConcurrentLinkedQueue<>();
+        this.threadCacheCount = new AtomicInteger();
+        this.threadCache = new ThreadLocal<ThreadCache>() {
+            @Override
+            protected ThreadCache initialValue() {
+                return ByteBufferPool.this.createThreadCache();
+            }
+        };
+        this.leakTrackers = new HashMap<>();
+        this.collectedBuffers = new ReferenceQueue<>();
+    }
+
+    /**
+     * Provides the buffer pool that is shared by all components of the server.
+     *
+     * @return the singleton instance
+     */
+    public static ByteBufferPool getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Acquires a buffer of the {@link #DEFAULT_BUFFER_SIZE}
+     *
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire() {
+        return this.acquire(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Acquires a buffer with at least the specified capacity. The buffer has to be returned to the pool using
+     * {@link #release(ByteBuffer)} once it is not used anymore.
+     *
+     * @param capacity
+     *            the minimum capacity of the buffer
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire(final int capacity) {
+        this.acquireCount.incrementAndGet();
+        final int sizeClass = sizeClassOf(capacity);
+        if (sizeClass < 0) {
+            this.heapFallbackCount.incrementAndGet();
+            return ByteBuffer.allocate(capacity);
+        }
+
+        ByteBuffer buffer = this.useThreadCache()
+                ? this.threadCache.get().poll(sizeClass)
+                : null;
+        if (buffer == null) {
+            buffer = this.freeLists.get(sizeClass).poll();
+        }
+        if (buffer == null) {
+            buffer = this.allocate(sizeClass);
+        }
+        buffer.clear();
+        if (this.leakDetection && buffer.isDirect()) {
+            this.track(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used after it has been released. Buffers that have not been
+     * allocated by the pool are ignored.
+     *
+     * @param buffer
+     *            the buffer to return, may be <code>null</code>
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        final int sizeClass = sizeClassOf(buffer.capacity());
+        if (sizeClass < 0 || buffer.capacity() != 1 << (sizeClass + MIN_BUFFER_SHIFT)) {
+            return;
+        }
+        this.releaseCount.incrementAndGet();
+        if (this.leakDetection) {
+            this.untrack(buffer);
+        }
+        if (!this.useThreadCache() || !this.threadCache.get().offer(sizeClass, buffer)) {
+            this.freeLists.get(sizeClass).offer(buffer);
+        }
+    }
+
+    /**
+     * @return the number of bytes of direct memory allocated by the pool
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.get();
+    }
+
+    /**
+     * @return the maximum number of bytes of direct memory the pool allocates
+     */
+    public long getMaxDirectMemory() {
+        return this.maxDirectMemory;
+    }
+
+    /**
+     * @return the number of acquired buffers
+     */
+    public long getAcquireCount() {
+        return this.acquireCount.get();
+    }
+
+    /**
+     * @return the number of released buffers
+     */
+    public long getReleaseCount() {
+        return this.releaseCount.get();
+    }
+
+    /**
+     * @return the number of direct buffers that had to be allocated because no free buffer was available
+     */
+    public long getAllocationCount() {
+        return this.allocationCount.get();
+    }
+
+    /**
+     * @return the number of heap buffers handed out because either the requested capacity was too large or the memory
+     *         limit was reached
+     */
+    public long getHeapFallbackCount() {
+        return this.heapFallbackCount.get();
+    }
+
+    /**
+     * @return the number of buffers that were garbage collected without being released. Only available if the leak
+     *         detection is enabled
+     */
+    public long getLeakCount() {
+        this.detectLeaks();
+        return this.leakCount.get();
+    }
+
+    /**
+     * Registers gauges for the statistics of the pool with the names <code>bufferPool.&lt;statistic&gt;</code>
+     *
+     * @param registry
+     *            the registry to register the gauges at
+     */
+    void registerMetrics(final MetricsRegistry registry) {
+        registry.gauge("bufferPool.allocatedBytes", new Gauge() {
+
+            @Override
+            public long getValue() {
+                return ByteBufferPool.this.getAllocatedBytes();
+            }
+        });
+        registry.gauge("bufferPool.acquired", new Gauge() {
+
+            @Override
+            public long getValue() {
+                return ByteBufferPool.this.getAcquireCount();
+            }
+        });
+        registry.gauge("bufferPool.released", new Gauge() {
+
+            @Override
+            public long getValue() {
+                return ByteBufferPool.this.getReleaseCount();
+            }
+        });
+        registry.gauge("bufferPool.allocations", new Gauge() {
+
+            @Override
+            public long getValue() {
+                return ByteBufferPool.this.getAllocationCount();
+            }
+        });
+        registry.gauge("bufferPool.heapFallbacks", new Gauge() {
+
+            @Override
+            public long getValue() {
+                return ByteBufferPool.this.getHeapFallbackCount();
+            }
+        });
+        registry.gauge("bufferPool.leaks", new Gauge() {
+
+            @Override
+            public long getValue() {
+                return ByteBufferPool.this.getLeakCount();
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ByteBufferPool [allocatedBytes=" + this.getAllocatedBytes() + ", acquired=" + this.getAcquireCount()
+                + ", released=" + this.getReleaseCount() + ", allocations=" + this.getAllocationCount()
+                + ", heapFallbacks=" + this.getHeapFallbackCount() + ", leaks=" + this.leakCount.get() + "]";
+    }
+
+    /**
+     * Checks if the current thread should use a thread cache. Caches are enabled and the thread is not virtual.
+     *
+     * @return <code>true</code> if the buffers should be taken from and returned to the cache of the current thread
+     */
+    private boolean useThreadCache() {
+        return this.threadCacheSize > 0 && !isVirtual(Thread.currentThread());
+    }
+
+    /**
+     * Checks if the thread is a virtual thread
+     *
+     * @param thread
+     *            the thread to check
+     * @return <code>true</code> if the runtime supports virtual threads and the thread is one
+     */
+    static boolean isVirtual(final Thread thread) {
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (final Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the Thread.isVirtual() method as it is not available on all supported runtimes.
+     *
+     * @return the handle of the method or of a method always returning <code>false</code> if virtual threads are not
+     *         supported
+     */
+    private static MethodHandle findIsVirtualMethod() {
+        final MethodType type = MethodType.methodType(boolean.class);
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", type);
+        } catch (final ReflectiveOperationException e) {
+            return MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, Thread.class);
+        }
+    }
+
+    /**
+     * Determines the index of the smallest size class that can hold a buffer of the specified capacity.
+     *
+     * @param capacity
+     *            the requested capacity
+     * @return the index of the size class or -1 if the capacity exceeds the largest size class
+     */
+    private static int sizeClassOf(final int capacity) {
+        if (capacity > 1 << MAX_BUFFER_SHIFT) {
+            return -1;
+        }
+        if (capacity <= 1 << MIN_BUFFER_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_BUFFER_SHIFT;
+    }
+
+    /**
+     * Allocates a new direct buffer of the size class if the memory limit permits, otherwise a heap buffer is
+     * allocated.
+     *
+     * @param sizeClass
+     *            the index of the size class
+     * @return the new buffer
+     */
+    private ByteBuffer allocate(final int sizeClass) {
+        final int size = 1 << (sizeClass + MIN_BUFFER_SHIFT);
+        if (!this.reserve(size)) {
+            // buffers of terminated threads or collected leaks may free some memory
+            this.reclaimThreadCaches();
+            this.detectLeaks();
+            final ByteBuffer buffer = this.freeLists.get(sizeClass).poll();
+            if (buffer != null) {
+                return buffer;
+            }
+            if (!this.reserve(size)) {
+                this.heapFallbackCount.incrementAndGet();
+                LOG.debug("Direct memory limit of buffer pool reached, allocating heap buffer");
+                return ByteBuffer.allocate(size);
+            }
+        }
+        this.allocationCount.incrementAndGet();
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Reserves the specified number of bytes of the direct memory limit
+     *
+     * @param size
+     *            the number of bytes to reserve
+     * @return <code>true</code> if the memory was reserved
+     */
+    private boolean reserve(final int size) {
+        long allocated;
+        do {
+            allocated = this.allocatedBytes.get();
+            if (allocated + size > this.maxDirectMemory) {
+                return false;
+            }
+        } while (!this.allocatedBytes.compareAndSet(allocated, allocated + size));
+        return true;
+    }
+
+    /**
+     * Creates the buffer cache for the current thread and registers it for reclamation once the thread terminates.
+     *
+     * @return the new cache
+     */
+    private ThreadCache createThreadCache() {
+        final ThreadCache cache = new ThreadCache(Thread.currentThread(), this.freeLists.size(), this.threadCacheSize);
+        this.threadCaches.offer(cache);
+        if (this.threadCacheCount.incrementAndGet() % RECLAIM_INTERVAL == 0) {
+            this.reclaimThreadCaches();
+        }
+        return cache;
+    }
+
+    /**
+     * Moves the cached buffers of terminated threads to the global free lists
+     */
+    private void reclaimThreadCaches() {
+        for (final Iterator<ThreadCache> it = this.threadCaches.iterator(); it.hasNext();) {
+            final ThreadCache cache = it.next();
+            // only the thread that removes the cache from the queue may drain it
+            if (!cache.isOwnerAlive() && this.threadCaches.remove(cache)) {
+                cache.drainTo(this.freeLists);
+            }
+        }
+    }
+
+    /**
+     * Starts tracking the buffer for leak detection
+     *
+     * @param buffer
+     *            the buffer that has been acquired
+     */
+    private void track(final ByteBuffer buffer) {
+        this.detectLeaks();
+        final LeakTracker tracker = new LeakTracker(buffer, this.collectedBuffers);
+        synchronized (this.leakTrackers) {
+            List<LeakTracker> trackers = this.leakTrackers.get(tracker.hash);
+            if (trackers == null) {
+                trackers = new ArrayList<>(1);
+                this.leakTrackers.put(tracker.hash, trackers);
+            }
+            trackers.add(tracker);
+        }
+    }
+
+    /**
+     * Stops tracking the buffer as it has been released properly
+     *
+     * @param buffer
+     *            the released buffer
+     */
+    private void untrack(final ByteBuffer buffer) {
+        final Integer hash = System.identityHashCode(buffer);
+        synchronized (this.leakTrackers) {
+            final List<LeakTracker> trackers = this.leakTrackers.get(hash);
+            if (trackers == null) {
+                return;
+            }
+            for (final Iterator<LeakTracker> it = trackers.iterator(); it.hasNext();) {
+                final LeakTracker tracker = it.next();
+                if (tracker.get() == buffer) {
+                    it.remove();
+                    tracker.clear();
+                }
+            }
+            if (trackers.isEmpty()) {
+                this.leakTrackers.remove(hash);
+            }
+        }
+    }
+
+    /**
+     * Reports all buffers that have been garbage collected without being released. The direct memory of these buffers
+     * is freed by the garbage collector and is therefore removed from the allocated bytes.
+     */
+    private void detectLeaks() {
+        Reference<? extends ByteBuffer> ref = this.collectedBuffers.poll();
+        while (ref != null) {
+            final LeakTracker tracker = (LeakTracker) ref;
+            boolean leaked;
+            synchronized (this.leakTrackers) {
+                final List<LeakTracker> trackers = this.leakTrackers.get(tracker.hash);
+                leaked = trackers != null && trackers.remove(tracker);
+                if (trackers != null && trackers.isEmpty()) {
+                    this.leakTrackers.remove(tracker.hash);
+                }
+            }
+            if (leaked) {
+                this.leakCount.incrementAndGet();
+                this.allocatedBytes.addAndGet(-tracker.capacity);
+                LOG.warn("ByteBuffer was garbage collected without being released to the pool", tracker.acquisition);
+            }
+            ref = this.collectedBuffers.poll();
+        }
+    }
+
+    /**
+     * Cache of free buffers of a single thread. The cache is only accessed by the owning thread or - after the owner
+     * has terminated - by the thread reclaiming the buffers.
+     *
+     * @author Gerald
+     */
+    private static final class ThreadCache {
+
+        private final WeakReference<Thread> owner;
+        private final ByteBuffer[][] buffers;
+        private final int[] counts;
+
+        ThreadCache(final Thread owner, final int sizeClasses, final int size) {
+            this.owner = new WeakReference<>(owner);
+            this.buffers = new ByteBuffer[sizeClasses][size];
+            this.counts = new int[sizeClasses];
+        }
+
+        ByteBuffer poll(final int sizeClass) {
+            if (this.counts[sizeClass] == 0) {
+                return null;
+            }
+            final int index = --this.counts[sizeClass];
+            final ByteBuffer buffer = this.buffers[sizeClass][index];
+            this.buffers[sizeClass][index] = null;
+            return buffer;
+        }
+
+        boolean offer(final int sizeClass, final ByteBuffer buffer) {
+            if (this.counts[sizeClass] == this.buffers[sizeClass].length) {
+                return false;
+            }
+            this.buffers[sizeClass][this.counts[sizeClass]++] = buffer;
+            return true;
+        }
+
+        boolean isOwnerAlive() {
+            final Thread thread = this.owner.get();
+            return thread != null && thread.isAlive();
+        }
+
+        void drainTo(final List<Queue<ByteBuffer>> freeLists) {
+            for (int sizeClass = 0; sizeClass < this.counts.length; sizeClass++) {
+                ByteBuffer buffer = this.poll(sizeClass);
+                while (buffer != null) {
+                    freeLists.get(sizeClass).offer(buffer);
+                    buffer = this.poll(sizeClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * Weak reference to an acquired buffer that keeps the stack trace of the acquisition.
+     *
+     * @author Gerald
+     */
+    private static final class LeakTracker extends WeakReference<ByteBuffer> {
+
+        private final Integer hash;
+        private final int capacity;
+        private final Throwable acquisition;
+
+        LeakTracker(final ByteBuffer buffer, final ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+            this.capacity = buffer.capacity();
+            this.acquisition = new Throwable("Buffer acquired");
+        }
+    }
+
+}
@@ -16,16 +16,50 @@ public final class Channels {
     private Channels() {
     }
 
-    public static void stream(final ReadableByteChannel src, final WritableByteChannel dest) throws IOException {
+    /**
+     * Streams all data from the source to the destination channel using a buffer of the {@link ByteBufferPool}. If the
+     * source is a {@link TransferableChannel}, its transferable regions are transferred directly to the destination.
+     * 
+     * @param src
+     *            the channel to read from until EOF
+     * @param dest
+     *            the channel to write to
+     * @return the number of bytes written to the destination
+     * @throws IOException
+     */
+    public static long stream(final ReadableByteChannel src, final WritableByteChannel dest) throws IOException {
+        final ByteBuffer buffer = ByteBufferPool.getInstance().acquire();
+        try {
+            return stream(src, dest, buffer);
+        } finally {
+            ByteBufferPool.getInstance().release(buffer);
+        }
+    }
+
+    /**
+     * Streams all data from the source to the destination channel using the specified buffer.
+     * 
+     * @param src
+     *            the channel to read from until EOF
+     * @param dest
+     *            the channel to write to
+     * @param buffer
+     *            the buffer for the transfer, it has to be empty
+     * @return the number of bytes written to the destination
+     * @throws IOException
+     */
+    private static long stream(final ReadableByteChannel src, final WritableByteChannel dest, final ByteBuffer buffer)
+            throws IOException {
+        long written = 0;
+        long transferred;
         // streaming implementation from
         // http://thomaswabner.wordpress.com/2007/10/09/fast-stream-copy-using-javanio-channels/
         // BEGIN COPIED CODE
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
-        while (src.read(buffer) != -1) {
+        while ((transferred = transferRegion(src, dest, buffer)) == -1 && src.read(buffer) != -1) {
             // prepare the buffer to be drained
             buffer.flip();
             // write to the channel, may block
-            dest.write(buffer);
+            written += dest.write(buffer);
             // If partial transfer, shift remainder down
             // If buffer is empty, same as doing clear()
             buffer.compact();
@@ -34,9 +68,43 @@ public final class Channels {
         buffer.flip();
         // make sure the buffer is fully drained.
         while (buffer.hasRemaining()) {
-            dest.write(buffer);
+            written += dest.write(buffer);
         }
         // END COPIED CODE
+        return written + Math.max(transferred, 0);
+    }
+
+    /**
+     * Transfers the current region of the source channel if it is a {@link TransferableChannel} providing a
+     * transferable region. All data in the buffer is written to the destination before the region is transferred.
+     * 
+     * @param src
+     *            the source channel
+     * @param dest
+     *            the destination channel
+     * @param buffer
+     *            the buffer containing data read from the source that have not been written yet
+     * @return the number of bytes written if a region was transferred completely and the source reached the end of the
+     *         current data, as if the read method returned -1, or -1 if the source has no transferable region
+     * @throws IOException
+     */
+    private static long transferRegion(final ReadableByteChannel src, final WritableByteChannel dest,
+            final ByteBuffer buffer) throws IOException {
+        if (!(src instanceof TransferableChannel) || !((TransferableChannel) src).hasTransferableRegion()) {
+            return -1;
+        }
+        final TransferableChannel transferable = (TransferableChannel) src;
+        long written = 0;
+        // flush the buffer, the data of the region has to be written after it
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += dest.write(buffer);
+        }
+        buffer.clear();
+        while (transferable.hasTransferableRegion()) {
+            written += transferable.transferTo(dest);
+        }
+        return written;
     }
 
 }
@@ -0,0 +1,397 @@
+/**
+ *
+ */
+package li.moskito.awtt.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel for scheduling a large number of timeouts that are mostly cancelled before they expire, such
+ * as keep-alive and read timeouts of connections. Scheduling and cancelling a timeout are O(1) operations and all
+ * timeouts are processed by a single daemon ticker thread that is shared by the entire server. <br>
+ * The wheel consists of a fixed number of buckets, each covering the duration of one tick. A timeout is put into the
+ * bucket of its deadline and is expired once the ticker reaches the bucket in the round of the deadline. Timeouts are
+ * therefore expired with a delay of at most one tick. <br>
+ * The expiry tasks are executed on the ticker thread and must not block. Longer operations have to be passed to
+ * another thread by the task. <br>
+ * Besides the timeouts, the wheel provides a coarse clock with the resolution of a tick that can be read without a
+ * system call.
+ *
+ * @author Gerald
+ */
+public final class TimingWheel {
+
+    /**
+     * SLF4J Logger for this class
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * Duration of a tick of the shared instance in ms
+     */
+    private static final long DEFAULT_TICK_DURATION = 10;
+
+    /**
+     * Number of buckets of the shared instance, covering about 10 s per round
+     */
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    /**
+     * Holder idiom
+     */
+    private static class Holder {
+        private static final TimingWheel INSTANCE = new TimingWheel(DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS,
+                DEFAULT_WHEEL_SIZE);
+
+        private Holder() {
+        }
+    }
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    /**
+     * Timeouts that have been scheduled but not yet put into their bucket by the ticker
+     */
+    private final Queue<Timeout> pendingTimeouts;
+
+    /**
+     * Timeouts that have been cancelled but not yet removed from their bucket by the ticker
+     */
+    private final Queue<Timeout> cancelledTimeouts;
+
+    private final long startTime;
+    private final Thread ticker;
+
+    /**
+     * The number of ticks since the start of the wheel, only modified by the ticker thread
+     */
+    private volatile long tick;
+    private volatile boolean running;
+
+    /**
+     * Creates and starts a new timing wheel. Use {@link #getInstance()} to retrieve the shared instance of the server.
+     *
+     * @param tickDuration
+     *            the duration of a single tick
+     * @param unit
+     *            the unit of the tick duration
+     * @param wheelSize
+     *            the number of buckets of the wheel, it will be rounded up to the next power of 2
+     */
+    TimingWheel(final long tickDuration, final TimeUnit unit, final int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("Wheel size must be positive and not greater than 2^30: " + wheelSize);
+        }
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[normalizeWheelSize(wheelSize)];
+        for (int i = 0; i < this.wheel.length; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = this.wheel.length - 1;
+        this.pendingTimeouts = new ConcurrentLinkedQueue<>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.running = true;
+        this.ticker = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                TimingWheel.this.runTicker();
+            }
+        }, "awtt-timing-wheel");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Provides the timing wheel that is shared by all components of the server.
+     *
+     * @return the singleton instance
+     */
+    public static TimingWheel getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Schedules a task to be executed once the delay has passed.
+     *
+     * @param task
+     *            the task to be executed on expiry. The task is run on the ticker thread and must not block
+     * @param delay
+     *            the delay after which the task is executed
+     * @param unit
+     *            the unit of the delay
+     * @return the timeout that can be used to cancel the execution
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final long deadline = System.nanoTime() - this.startTime + unit.toNanos(Math.max(delay, 0));
+        final Timeout timeout = new Timeout(this, task, deadline);
+        this.pendingTimeouts.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the time that has passed since the start of the wheel in ms with the resolution of one tick. The value
+     * is monotonic and not related to the system time.
+     *
+     * @return the elapsed time in ms
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.tick * this.tickDuration);
+    }
+
+    /**
+     * Returns the time that has passed since the start of the wheel in seconds.
+     *
+     * @return the elapsed time in seconds
+     */
+    public long getElapsedSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(this.tick * this.tickDuration);
+    }
+
+    /**
+     * Stops the ticker thread. Timeouts that have not expired yet are not executed anymore. The shared instance is
+     * never stopped.
+     */
+    void stop() {
+        this.running = false;
+        this.ticker.interrupt();
+    }
+
+    /**
+     * Rounds the wheel size up to the next power of 2 so that the bucket index can be determined by a bit mask
+     *
+     * @param wheelSize
+     *            the requested wheel size
+     * @return the actual wheel size
+     */
+    private static int normalizeWheelSize(final int wheelSize) {
+        int normalized = 1;
+        while (normalized < wheelSize) {
+            normalized <<= 1;
+        }
+        return normalized;
+    }
+
+    /**
+     * The main loop of the ticker thread
+     */
+    private void runTicker() {
+        while (this.running) {
+            final long deadline = this.waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            this.removeCancelledTimeouts();
+            this.transferPendingTimeouts();
+            this.wheel[(int) (this.tick & this.mask)].expireTimeouts(deadline);
+            this.tick++;
+        }
+        LOG.debug("Timing wheel stopped");
+    }
+
+    /**
+     * Waits until the end of the current tick is reached
+     *
+     * @return the time in ns since the start of the wheel or -1 if the ticker has been interrupted
+     */
+    private long waitForNextTick() {
+        final long deadline = this.tickDuration * (this.tick + 1);
+        while (true) {
+            final long currentTime = System.nanoTime() - this.startTime;
+            final long sleepTime = deadline - currentTime;
+            if (sleepTime <= 0) {
+                return currentTime;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepTime);
+            } catch (final InterruptedException e) {
+                if (!this.running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts all scheduled timeouts into their buckets
+     */
+    private void transferPendingTimeouts() {
+        Timeout timeout = this.pendingTimeouts.poll();
+        while (timeout != null) {
+            if (timeout.state.get() == Timeout.ST_INIT) {
+                final long calculated = timeout.deadline / this.tickDuration;
+                timeout.remainingRounds = (calculated - this.tick) / this.wheel.length;
+                // timeouts of the past are expired with the current tick
+                final long ticks = Math.max(calculated, this.tick);
+                this.wheel[(int) (ticks & this.mask)].add(timeout);
+            }
+            timeout = this.pendingTimeouts.poll();
+        }
+    }
+
+    /**
+     * Removes all cancelled timeouts from their buckets
+     */
+    private void removeCancelledTimeouts() {
+        Timeout timeout = this.cancelledTimeouts.poll();
+        while (timeout != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            timeout = this.cancelledTimeouts.poll();
+        }
+    }
+
+    /**
+     * A scheduled task that may be cancelled as long as it has not expired.
+     *
+     * @author Gerald
+     */
+    public static final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final TimingWheel timingWheel;
+        private final Runnable task;
+        /**
+         * Deadline in ns since the start of the wheel
+         */
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // the following fields are only accessed by the ticker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        Timeout(final TimingWheel timingWheel, final Runnable task, final long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(ST_INIT);
+        }
+
+        /**
+         * Cancels the timeout so that the task won't be executed.
+         *
+         * @return <code>true</code> if the timeout was cancelled, <code>false</code> if it had already expired or was
+         *         cancelled before
+         */
+        public boolean cancel() {
+            if (!this.state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            this.timingWheel.cancelledTimeouts.offer(this);
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if the timeout has been cancelled
+         */
+        public boolean isCancelled() {
+            return this.state.get() == ST_CANCELLED;
+        }
+
+        /**
+         * @return <code>true</code> if the task of the timeout has been executed
+         */
+        public boolean isExpired() {
+            return this.state.get() == ST_EXPIRED;
+        }
+
+        /**
+         * Executes the task of the timeout if it has not been cancelled
+         */
+        private void expire() {
+            if (!this.state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            try {
+                this.task.run();
+            } catch (final RuntimeException e) {
+                LOG.warn("Timeout task failed", e);
+            }
+        }
+    }
+
+    /**
+     * A bucket of the wheel containing a doubly linked list of timeouts. The bucket is only accessed by the ticker
+     * thread.
+     *
+     * @author Gerald
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = timeout;
+                this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        /**
+         * Expires all timeouts of the bucket whose deadline has been reached.
+         *
+         * @param deadline
+         *            the current time in ns since the start of the wheel
+         */
+        void expireTimeouts(final long deadline) {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    this.remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    this.remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(final Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                this.head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                this.tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+}
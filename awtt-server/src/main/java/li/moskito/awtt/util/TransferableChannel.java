@@ -0,0 +1,38 @@
+/**
+ *
+ */
+package li.moskito.awtt.util;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A readable channel that is able to transfer parts of its data directly to a target channel without copying them
+ * through a buffer of the application, i.e. regions of files. Consumers should check for a transferable region before
+ * reading the next chunk of data from the channel and - once a region is available - flush all data read so far before
+ * transferring the region.
+ *
+ * @author Gerald
+ */
+public interface TransferableChannel extends ReadableByteChannel {
+
+    /**
+     * Checks if the next data of the channel can be transferred directly.
+     *
+     * @return <code>true</code> if {@link #transferTo(WritableByteChannel)} should be used instead of read for the
+     *         next data
+     */
+    boolean hasTransferableRegion();
+
+    /**
+     * Transfers the current region to the target channel. The region may be transferred partially, i.e. if the target
+     * is a non-blocking channel. In that case, {@link #hasTransferableRegion()} returns still <code>true</code>.
+     *
+     * @param target
+     *            the channel to write the data to
+     * @return the number of bytes transferred or -1 if there was no transferable region
+     * @throws IOException
+     */
+    long transferTo(WritableByteChannel target) throws IOException;
+}
@@ -0,0 +1,116 @@
+package li.moskito.awtt.accesslog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessLogFileTest {
+
+    private Path file;
+
+    private AccessLogFile subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = Files.createTempDirectory("accessLog").resolve("access.log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.subject != null) {
+            this.subject.close();
+        }
+    }
+
+    private void write(final String data) throws Exception {
+        this.subject.write(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(final Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWrite_appendsToExistingFile() throws Exception {
+        Files.write(this.file, "first\n".getBytes(StandardCharsets.UTF_8));
+        this.subject = new AccessLogFile(this.file, 100, 1);
+
+        this.write("second\n");
+
+        assertEquals("first\nsecond\n", read(this.file));
+        assertEquals(13, this.subject.size());
+    }
+
+    @Test
+    public void testWrite_rotates() throws Exception {
+        this.subject = new AccessLogFile(this.file, 10, 2);
+
+        this.write("aaaaaa\n");
+        this.write("bbbbbb\n");
+        this.write("cccccc\n");
+        this.write("dddddd\n");
+
+        assertEquals("dddddd\n", read(this.file));
+        assertEquals("cccccc\n", read(this.subject.backup(1)));
+        assertEquals("bbbbbb\n", read(this.subject.backup(2)));
+        assertFalse(Files.exists(this.subject.backup(3)));
+    }
+
+    @Test
+    public void testWrite_rotatesWithoutBackups() throws Exception {
+        this.subject = new AccessLogFile(this.file, 10, 0);
+
+        this.write("aaaaaa\n");
+        this.write("bbbbbb\n");
+
+        assertEquals("bbbbbb\n", read(this.file));
+        assertFalse(Files.exists(this.subject.backup(1)));
+    }
+
+    @Test
+    public void testWrite_rotationFails() throws Exception {
+        this.subject = new AccessLogFile(this.file, 10, 1);
+        // the current file can not replace a directory that is not empty
+        Files.createDirectories(this.subject.backup(1));
+        Files.createFile(this.subject.backup(1).resolve("blocked"));
+
+        this.write("aaaaaa\n");
+        this.write("bbbbbb\n");
+
+        // the records are appended to the current file instead
+        assertEquals("aaaaaa\nbbbbbb\n", read(this.file));
+        assertEquals(14, this.subject.size());
+
+        // the rotation is tried again once the file has grown by the maximum size
+        Files.delete(this.subject.backup(1).resolve("blocked"));
+        Files.delete(this.subject.backup(1));
+        this.write("cccccc\n");
+
+        assertEquals("cccccc\n", read(this.file));
+        assertEquals("aaaaaa\nbbbbbb\n", read(this.subject.backup(1)));
+    }
+
+    @Test
+    public void testWrite_largerThanMaxFileSize() throws Exception {
+        this.subject = new AccessLogFile(this.file, 4, 1);
+
+        this.write("aaaaaa\n");
+
+        // an empty file is not rotated
+        assertEquals("aaaaaa\n", read(this.file));
+        assertFalse(Files.exists(this.subject.backup(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxFileSize() throws Exception {
+        new AccessLogFile(this.file, 0, 1);
+    }
+}
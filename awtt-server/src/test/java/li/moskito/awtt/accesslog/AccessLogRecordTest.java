@@ -0,0 +1,76 @@
+package li.moskito.awtt.accesslog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessLogRecordTest {
+
+    private AccessLogRecord subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new AccessLogRecord();
+    }
+
+    private String format() {
+        final StringBuilder line = new StringBuilder();
+        this.subject.format(line);
+        return line.toString();
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        this.subject.set(1399557041012L, new InetSocketAddress("127.0.0.1", 54321), "GET", "/index.html", 200, 1234,
+                TimeUnit.MICROSECONDS.toNanos(567));
+
+        assertEquals("2014-05-08T13:50:41.012Z 127.0.0.1 GET /index.html 200 1234 567\n", this.format());
+    }
+
+    @Test
+    public void testFormat_unknownValues() throws Exception {
+        this.subject.set(0, null, null, null, 204, -1, 999);
+
+        assertEquals("1970-01-01T00:00:00.000Z - - - 204 - 0\n", this.format());
+    }
+
+    @Test
+    public void testFormat_unknownStatus() throws Exception {
+        this.subject.set(0, null, "GET", "/", -1, -1, 0);
+
+        assertEquals("1970-01-01T00:00:00.000Z - GET / - - 0\n", this.format());
+    }
+
+    @Test
+    public void testFormat_unresolvedAddress() throws Exception {
+        this.subject.set(0, InetSocketAddress.createUnresolved("client", 80), "HEAD", "/", 200, 0, 0);
+
+        assertEquals("1970-01-01T00:00:00.000Z - HEAD / 200 0 0\n", this.format());
+    }
+
+    @Test
+    public void testFormat_longPathTruncated() throws Exception {
+        final StringBuilder path = new StringBuilder("/");
+        while (path.length() < AccessLogRecord.MAX_PATH_LENGTH + 10) {
+            path.append('a');
+        }
+        this.subject.set(0, null, "GET", path.toString(), 414, -1, 0);
+
+        final String line = this.format();
+
+        assertEquals(path.substring(0, AccessLogRecord.MAX_PATH_LENGTH), line.split(" ")[3]);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        this.subject.set(0, new InetSocketAddress("127.0.0.1", 80), "GET", "/", 200, 0, 0);
+
+        this.subject.clear();
+
+        assertEquals("1970-01-01T00:00:00.000Z - - - 200 0 0\n", this.format());
+    }
+}
@@ -0,0 +1,167 @@
+package li.moskito.awtt.accesslog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessLogTest {
+
+    private Path file;
+
+    private AccessLog subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = Files.createTempDirectory("accessLog").resolve("access.log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.subject != null) {
+            this.subject.close();
+        }
+    }
+
+    private List<String> readLines() throws Exception {
+        return Files.readAllLines(this.file, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        this.subject = new AccessLog(this.file, 1024 * 1024, 1, 16, OverflowPolicy.DROP);
+
+        assertTrue(this.subject.append(new InetSocketAddress("127.0.0.1", 4711), "GET", "/index.html", 200, 10,
+                TimeUnit.MILLISECONDS.toNanos(2)));
+        assertTrue(this.subject.append(null, "HEAD", "/missing", 404, -1, 0));
+        this.subject.close();
+
+        final List<String> lines = this.readLines();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith(" 127.0.0.1 GET /index.html 200 10 2000"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(" - HEAD /missing 404 - 0"));
+    }
+
+    @Test
+    public void testAppend_written() throws Exception {
+        this.subject = new AccessLog(this.file, 1024 * 1024, 1, 16, OverflowPolicy.DROP);
+
+        this.subject.append(null, "GET", "/", 200, 0, 0);
+
+        // the records are written by the writer thread without closing the log
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Files.size(this.file) == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, this.readLines().size());
+        assertEquals(0, this.subject.getPending());
+    }
+
+    @Test
+    public void testAppend_writerParkedWhileIdle() throws Exception {
+        this.subject = new AccessLog(this.file, 1024 * 1024, 1, 16, OverflowPolicy.DROP);
+        Thread writer = null;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("awtt-access-log".equals(thread.getName())) {
+                writer = thread;
+            }
+        }
+        assertNotNull(writer);
+
+        // the idle writer waits without a timeout instead of polling for records
+        this.awaitState(writer, Thread.State.WAITING);
+        this.subject.append(null, "GET", "/", 200, 0, 0);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (this.subject.getPending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertEquals(0, this.subject.getPending());
+        this.awaitState(writer, Thread.State.WAITING);
+        assertEquals(1, this.readLines().size());
+    }
+
+    private void awaitState(final Thread thread, final Thread.State state) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(state, thread.getState());
+    }
+
+    @Test
+    public void testAppend_afterClose_dropped() throws Exception {
+        this.subject = new AccessLog(this.file, 1024 * 1024, 1, 16, OverflowPolicy.BLOCK);
+        this.subject.close();
+        final long dropped = MetricsRegistry.getInstance().counter("accesslog.dropped").getCount();
+
+        assertFalse(this.subject.append(null, "GET", "/", 200, 0, 0));
+
+        assertEquals(dropped + 1, MetricsRegistry.getInstance().counter("accesslog.dropped").getCount());
+        assertTrue(this.readLines().isEmpty());
+    }
+
+    @Test
+    public void testAppend_concurrentlyBlocking() throws Exception {
+        // a small buffer that is full most of the time
+        this.subject = new AccessLog(this.file, 1024 * 1024, 1, 4, OverflowPolicy.BLOCK);
+        final int threads = 4;
+        final int perThread = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        AccessLogTest.this.subject.append(null, "GET", "/" + i, 200, i, 0);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        this.subject.close();
+
+        // no record is lost
+        assertEquals(threads * perThread, this.readLines().size());
+    }
+
+    @Test
+    public void testAppend_rotates() throws Exception {
+        // a file holds a single record
+        this.subject = new AccessLog(this.file, 50, 10, 16, OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 5; i++) {
+            this.subject.append(null, "GET", "/" + i, 200, 0, 0);
+            while (this.subject.getPending() > 0) {
+                Thread.sleep(1);
+            }
+        }
+        this.subject.close();
+
+        assertTrue(Files.exists(this.file.resolveSibling("access.log.1")));
+        int lines = this.readLines().size();
+        for (int i = 1; i <= 10; i++) {
+            final Path backup = this.file.resolveSibling("access.log." + i);
+            if (Files.exists(backup)) {
+                lines += Files.readAllLines(backup, StandardCharsets.UTF_8).size();
+            }
+        }
+        assertEquals(5, lines);
+    }
+}
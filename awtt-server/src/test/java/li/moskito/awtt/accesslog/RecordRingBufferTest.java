@@ -0,0 +1,133 @@
+package li.moskito.awtt.accesslog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordRingBufferTest {
+
+    private RecordRingBuffer subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new RecordRingBuffer(3);
+    }
+
+    @Test
+    public void testCapacity_roundedToPowerOf2() throws Exception {
+        assertEquals(4, this.subject.capacity());
+        assertEquals(8, new RecordRingBuffer(8).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacity_notPositive() throws Exception {
+        new RecordRingBuffer(0);
+    }
+
+    @Test
+    public void testClaim_full() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, this.subject.claim());
+        }
+
+        assertEquals(-1, this.subject.claim());
+        assertEquals(4, this.subject.size());
+    }
+
+    @Test
+    public void testPeek_notPublished() throws Exception {
+        final long sequence = this.subject.claim();
+
+        assertNull(this.subject.peek());
+
+        this.subject.publish(sequence);
+        assertSame(this.subject.get(sequence), this.subject.peek());
+    }
+
+    @Test
+    public void testPeek_inOrderOfSequences() throws Exception {
+        final long first = this.subject.claim();
+        final long second = this.subject.claim();
+        this.subject.publish(second);
+
+        // the second record is not taken before the first one is published
+        assertNull(this.subject.peek());
+
+        this.subject.publish(first);
+        assertSame(this.subject.get(first), this.subject.peek());
+        this.subject.release();
+        assertSame(this.subject.get(second), this.subject.peek());
+        this.subject.release();
+        assertNull(this.subject.peek());
+        assertEquals(0, this.subject.size());
+    }
+
+    @Test
+    public void testRelease_slotReused() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            this.subject.publish(this.subject.claim());
+        }
+        final AccessLogRecord first = this.subject.peek();
+        this.subject.release();
+
+        final long sequence = this.subject.claim();
+
+        assertEquals(4, sequence);
+        assertSame(first, this.subject.get(sequence));
+        assertEquals(-1, this.subject.claim());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final RecordRingBuffer ring = new RecordRingBuffer(64);
+        final int producers = 4;
+        final int perProducer = 10000;
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final int status = p;
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        long sequence;
+                        while ((sequence = ring.claim()) < 0) {
+                            Thread.yield();
+                        }
+                        ring.get(sequence).set(0, null, "GET", "/", status, i, 0);
+                        ring.publish(sequence);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        final int[] counts = new int[producers];
+        int consumed = 0;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (consumed < producers * perProducer && System.nanoTime() < deadline) {
+            final AccessLogRecord record = ring.peek();
+            if (record == null) {
+                Thread.yield();
+                continue;
+            }
+            final StringBuilder line = new StringBuilder();
+            record.format(line);
+            counts[Integer.parseInt(line.toString().split(" ")[4])]++;
+            ring.release();
+            consumed++;
+        }
+
+        assertEquals(producers * perProducer, consumed);
+        for (final int count : counts) {
+            assertEquals(perProducer, count);
+        }
+        done.await(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,65 @@
+package li.moskito.awtt.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CounterTest {
+
+    @Test
+    public void testIncrement() throws Exception {
+        final Counter subject = new Counter();
+
+        subject.increment();
+        subject.increment();
+
+        assertEquals(2, subject.getCount());
+    }
+
+    @Test
+    public void testDecrement() throws Exception {
+        final Counter subject = new Counter();
+        subject.increment();
+
+        subject.decrement();
+        subject.decrement();
+
+        assertEquals(-1, subject.getCount());
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        final Counter subject = new Counter();
+
+        subject.add(10);
+        subject.add(-3);
+
+        assertEquals(7, subject.getCount());
+        assertEquals("7", subject.toString());
+    }
+
+    @Test
+    public void testIncrement_concurrently() throws Exception {
+        final Counter subject = new Counter();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        subject.increment();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(40000, subject.getCount());
+    }
+}
@@ -0,0 +1,135 @@
+package li.moskito.awtt.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testRecord() throws Exception {
+        final Histogram subject = new Histogram();
+
+        subject.record(10);
+        subject.record(20);
+        subject.record(30);
+
+        assertEquals(3, subject.getCount());
+        assertEquals(60, subject.getSum());
+        assertEquals(30, subject.getMax());
+        assertEquals(20.0, subject.getMean(), 0.001);
+    }
+
+    @Test
+    public void testRecord_negativeValue() throws Exception {
+        final Histogram subject = new Histogram();
+
+        subject.record(-5);
+
+        assertEquals(1, subject.getCount());
+        assertEquals(0, subject.getSum());
+        assertEquals(0, subject.get50thPercentile());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        final Histogram subject = new Histogram();
+
+        assertEquals(0, subject.getCount());
+        assertEquals(0.0, subject.getMean(), 0.0);
+        assertEquals(0, subject.get99thPercentile());
+    }
+
+    @Test
+    public void testGetPercentile_smallValuesExact() throws Exception {
+        final Histogram subject = new Histogram();
+        for (int i = 1; i <= 20; i++) {
+            subject.record(i);
+        }
+
+        assertEquals(10, subject.get50thPercentile());
+        assertEquals(18, subject.get90thPercentile());
+        assertEquals(20, subject.get99thPercentile());
+        assertEquals(1, subject.getPercentile(0));
+        assertEquals(20, subject.getPercentile(1));
+    }
+
+    @Test
+    public void testGetPercentile_relativeError() throws Exception {
+        final Histogram subject = new Histogram();
+        for (int i = 1; i <= 100000; i++) {
+            subject.record(i);
+        }
+
+        this.assertApproximately(50000, subject.get50thPercentile());
+        this.assertApproximately(90000, subject.get90thPercentile());
+        this.assertApproximately(99000, subject.get99thPercentile());
+        this.assertApproximately(99900, subject.get999thPercentile());
+        assertEquals(100000, subject.getPercentile(1));
+    }
+
+    @Test
+    public void testGetPercentile_notAboveMax() throws Exception {
+        final Histogram subject = new Histogram();
+
+        subject.record(1000);
+
+        assertEquals(1000, subject.get50thPercentile());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPercentile_invalidQuantile() throws Exception {
+        new Histogram().getPercentile(1.5);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final Histogram subject = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            subject.record(i);
+        }
+
+        final HistogramSnapshot snapshot = subject.snapshot();
+        subject.record(100000);
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500, snapshot.getSum());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(subject.getPercentile(0.5), snapshot.get50thPercentile());
+        assertTrue(Math.abs(snapshot.get99thPercentile() - 990) <= 990 / 16);
+        assertEquals(1000, snapshot.get999thPercentile());
+    }
+
+    @Test
+    public void testSnapshot_merge() throws Exception {
+        final Histogram first = new Histogram();
+        final Histogram second = new Histogram();
+        for (int i = 0; i < 10; i++) {
+            first.record(i);
+            second.record(10 + i);
+        }
+
+        final HistogramSnapshot merged = first.snapshot().merge(second.snapshot());
+
+        assertEquals(20, merged.getCount());
+        assertEquals(190, merged.getSum());
+        assertEquals(19, merged.getMax());
+        assertEquals(9.5, merged.getMean(), 0.001);
+        assertEquals(9, merged.get50thPercentile());
+        assertEquals(10, first.snapshot().getCount());
+    }
+
+    @Test
+    public void testBucketOf_bounds() throws Exception {
+        for (final long value : new long[] { 0, 15, 16, 31, 32, 33, 34, 1000, 123456789, Long.MAX_VALUE }) {
+            final int bucket = Histogram.bucketOf(value);
+            assertTrue(value + " above bucket", value <= Histogram.upperBoundOf(bucket));
+            assertTrue(value + " below bucket", bucket == 0 || value > Histogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    private void assertApproximately(final long expected, final long actual) {
+        assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 16);
+    }
+}
@@ -0,0 +1,57 @@
+package li.moskito.awtt.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyHistogramsTest {
+
+    private MetricsRegistry registry;
+    private LatencyHistograms subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.registry = new MetricsRegistry(null);
+        this.subject = new LatencyHistograms(this.registry, "port.8080");
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        this.subject.record(RequestPhase.PARSE, 1000);
+        this.subject.record(RequestPhase.PARSE, 3000);
+        this.subject.record(RequestPhase.SEND, 500);
+
+        assertEquals(2, this.subject.get(RequestPhase.PARSE).getCount());
+        assertEquals(1, this.subject.get(RequestPhase.SEND).getCount());
+        assertEquals(0, this.subject.get(RequestPhase.RECEIVE).getCount());
+        assertEquals(3000, this.subject.snapshot(RequestPhase.PARSE).getMax());
+    }
+
+    @Test
+    public void testGet_registeredHistograms() throws Exception {
+        for (final RequestPhase phase : RequestPhase.values()) {
+            assertSame(this.registry.histogram("latency.port.8080." + phase.metricName()), this.subject.get(phase));
+        }
+        assertEquals(RequestPhase.values().length, this.registry.getMetrics().size());
+    }
+
+    @Test
+    public void testSameScope_sharesHistograms() throws Exception {
+        final LatencyHistograms other = new LatencyHistograms(this.registry, "port.8080");
+
+        other.record(RequestPhase.PROCESS, 42);
+
+        assertEquals(1, this.subject.get(RequestPhase.PROCESS).getCount());
+    }
+
+    @Test
+    public void testForHandler() throws Exception {
+        final LatencyHistograms handler = LatencyHistograms.forHandler("LatencyHistogramsTest");
+
+        assertEquals("handler.LatencyHistogramsTest", handler.getScope());
+        assertSame(MetricsRegistry.getInstance().histogram("latency.handler.LatencyHistogramsTest.process"),
+                handler.get(RequestPhase.PROCESS));
+    }
+}
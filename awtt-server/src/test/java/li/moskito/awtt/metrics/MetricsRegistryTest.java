@@ -0,0 +1,123 @@
+package li.moskito.awtt.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    private MBeanServer mbeanServer;
+
+    private MetricsRegistry subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.mbeanServer = MBeanServerFactory.newMBeanServer();
+        this.subject = new MetricsRegistry(this.mbeanServer);
+    }
+
+    @Test
+    public void testGetInstance() throws Exception {
+        assertNotNull(MetricsRegistry.getInstance());
+        assertSame(MetricsRegistry.getInstance(), MetricsRegistry.getInstance());
+    }
+
+    @Test
+    public void testCounter() throws Exception {
+        final Counter counter = this.subject.counter("test.counter");
+        counter.add(5);
+
+        assertSame(counter, this.subject.counter("test.counter"));
+        final ObjectName name = new ObjectName("li.moskito.awtt:type=Counter,name=test.counter");
+        assertEquals(5L, this.mbeanServer.getAttribute(name, "Count"));
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        final Histogram histogram = this.subject.histogram("test.histogram");
+        histogram.record(7);
+
+        assertSame(histogram, this.subject.histogram("test.histogram"));
+        final ObjectName name = new ObjectName("li.moskito.awtt:type=Histogram,name=test.histogram");
+        assertEquals(1L, this.mbeanServer.getAttribute(name, "Count"));
+        assertEquals(7L, this.mbeanServer.getAttribute(name, "99thPercentile"));
+    }
+
+    @Test
+    public void testGauge() throws Exception {
+        final Gauge gauge = new Gauge() {
+
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        };
+
+        assertSame(gauge, this.subject.gauge("test.gauge", gauge));
+
+        final ObjectName name = new ObjectName("li.moskito.awtt:type=Gauge,name=test.gauge");
+        assertEquals(42L, this.mbeanServer.getAttribute(name, "Value"));
+    }
+
+    @Test
+    public void testGauge_existingGaugeKept() throws Exception {
+        final Gauge first = new Gauge() {
+
+            @Override
+            public long getValue() {
+                return 1;
+            }
+        };
+        final Gauge second = new Gauge() {
+
+            @Override
+            public long getValue() {
+                return 2;
+            }
+        };
+        this.subject.gauge("test.gauge", first);
+
+        assertSame(first, this.subject.gauge("test.gauge", second));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCounter_nameOfOtherMetric() throws Exception {
+        this.subject.histogram("test.metric");
+
+        this.subject.counter("test.metric");
+    }
+
+    @Test
+    public void testCounter_withoutMBeanServer() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry(null);
+
+        registry.counter("test.counter").increment();
+
+        assertEquals(1, registry.counter("test.counter").getCount());
+    }
+
+    @Test
+    public void testCounter_invalidName() throws Exception {
+        // the counter is usable even if it can not be exported
+        this.subject.counter("test:counter").increment();
+
+        assertEquals(1, this.subject.counter("test:counter").getCount());
+    }
+
+    @Test
+    public void testGetMetrics() throws Exception {
+        this.subject.counter("b.counter").increment();
+        this.subject.histogram("a.histogram");
+
+        assertEquals("[a.histogram, b.counter]", this.subject.getMetrics().keySet().toString());
+        assertTrue(this.subject.toString().contains("b.counter=1"));
+    }
+}
@@ -0,0 +1,66 @@
+package li.moskito.awtt.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.junit.Test;
+
+public class ByteBufferBodyTest {
+
+    @Test
+    public void testGetByteChannel_read() throws Exception {
+        final ByteBufferBody subject = new ByteBufferBody(ByteBuffer.wrap("0123456789".getBytes()));
+        final ByteBuffer buffer = ByteBuffer.allocate(6);
+
+        assertEquals(6, subject.getByteChannel().read(buffer));
+        assertEquals("012345", new String(buffer.array()));
+        assertEquals(4, subject.getRemaining());
+
+        buffer.clear();
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        assertEquals("6789", new String(buffer.array(), 0, 4));
+        assertEquals(-1, subject.getByteChannel().read(buffer));
+    }
+
+    @Test
+    public void testGetByteChannel_sharedContent() throws Exception {
+        final ByteBuffer content = ByteBuffer.allocateDirect(4);
+        content.put("abcd".getBytes()).flip();
+        final ByteBufferBody first = new ByteBufferBody(content);
+        final ByteBufferBody second = new ByteBufferBody(content);
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+
+        first.getByteChannel().read(buffer);
+        assertEquals(0, first.getRemaining());
+        assertEquals(4, second.getRemaining());
+        assertEquals(4, content.remaining());
+
+        buffer.clear();
+        assertEquals(4, second.getByteChannel().read(buffer));
+        assertEquals("abcd", new String(buffer.array()));
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testGetByteChannel_closed() throws Exception {
+        final ByteBufferBody subject = new ByteBufferBody(ByteBuffer.wrap("0123".getBytes()));
+        final ReadableByteChannel channel = subject.getByteChannel();
+
+        channel.close();
+
+        assertFalse(channel.isOpen());
+        channel.read(ByteBuffer.allocate(4));
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testGetByteChannel_write() throws Exception {
+        final ByteBufferBody subject = new ByteBufferBody(ByteBuffer.wrap("0123".getBytes()));
+
+        ((WritableByteChannel) subject.getByteChannel()).write(ByteBuffer.allocate(4));
+    }
+}
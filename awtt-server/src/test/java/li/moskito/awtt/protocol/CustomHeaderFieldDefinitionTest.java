@@ -1,8 +1,14 @@
 package li.moskito.awtt.protocol;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -31,4 +37,35 @@ public class CustomHeaderFieldDefinitionTest {
         assertEquals("test", field.toString());
     }
 
+    @Test
+    public void testForName_concurrent() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Callable<CustomHeaderFieldDefinition> task = new Callable<CustomHeaderFieldDefinition>() {
+
+                @Override
+                public CustomHeaderFieldDefinition call() throws Exception {
+                    return CustomHeaderFieldDefinition.forName("X-Concurrent");
+                }
+            };
+            final Future<CustomHeaderFieldDefinition> first = executor.submit(task);
+            for (int i = 0; i < 100; i++) {
+                assertSame(first.get(), executor.submit(task).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEquals() throws Exception {
+        final CustomHeaderFieldDefinition field = CustomHeaderFieldDefinition.forName("test");
+
+        assertEquals(field, field);
+        assertEquals("test".hashCode(), field.hashCode());
+        assertFalse(field.equals(CustomHeaderFieldDefinition.forName("Test")));
+        assertFalse(field.equals("test"));
+        assertFalse(field.equals(null));
+    }
+
 }
@@ -0,0 +1,161 @@
+package li.moskito.awtt.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileRegionBodyTest {
+
+    private Path file;
+    private FileChannel fileChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = Files.createTempFile("fileRegion", "txt");
+        Files.write(this.file, "0123456789".getBytes());
+        this.fileChannel = FileChannel.open(this.file, StandardOpenOption.READ);
+    }
+
+    @Test
+    public void testTransferTo() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, 3, 4);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(4, subject.transferTo(Channels.newChannel(out)));
+
+        assertEquals("3456", out.toString());
+        assertEquals(0, subject.getRemaining());
+        assertFalse(this.fileChannel.isOpen());
+        assertEquals(-1, subject.transferTo(Channels.newChannel(out)));
+    }
+
+    @Test
+    public void testGetByteChannel_read() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, 3, 4);
+        final ByteBuffer buffer = ByteBuffer.allocate(3);
+
+        assertEquals(3, subject.getByteChannel().read(buffer));
+        assertEquals("345", new String(buffer.array()));
+        assertEquals(1, subject.getRemaining());
+        assertTrue(subject.getByteChannel().isOpen());
+
+        buffer.clear();
+        // the region ends before the file
+        assertEquals(1, subject.getByteChannel().read(buffer));
+        assertEquals('6', buffer.get(0));
+        assertEquals(-1, subject.getByteChannel().read(buffer));
+        assertFalse(subject.getByteChannel().isOpen());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTransferTo_regionExceedsFile() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, 8, 5);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        subject.transferTo(Channels.newChannel(out));
+        subject.transferTo(Channels.newChannel(out));
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetByteChannel_regionExceedsFile() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, 8, 5);
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        subject.getByteChannel().read(buffer);
+        subject.getByteChannel().read(buffer);
+    }
+
+    @Test
+    public void testTransferTo_segments() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, Arrays.asList(
+                FileRegionBody.Segment.data("[".getBytes()), FileRegionBody.Segment.region(1, 2),
+                FileRegionBody.Segment.data("|".getBytes()), FileRegionBody.Segment.region(7, 3),
+                FileRegionBody.Segment.data("]".getBytes())));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(8, subject.getRemaining());
+        assertEquals(8, subject.transferTo(Channels.newChannel(out)));
+
+        assertEquals("[12|789]", out.toString());
+        assertFalse(this.fileChannel.isOpen());
+        assertEquals(-1, subject.transferTo(Channels.newChannel(out)));
+    }
+
+    @Test
+    public void testGetByteChannel_readSegments() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, Arrays.asList(
+                FileRegionBody.Segment.data("[".getBytes()), FileRegionBody.Segment.region(1, 2),
+                FileRegionBody.Segment.data("|".getBytes()), FileRegionBody.Segment.region(7, 3),
+                FileRegionBody.Segment.data("]".getBytes())));
+        final ByteBuffer buffer = ByteBuffer.allocate(5);
+
+        assertEquals(5, subject.getByteChannel().read(buffer));
+        assertEquals("[12|7", new String(buffer.array()));
+        assertEquals(3, subject.getRemaining());
+
+        buffer.clear();
+        assertEquals(3, subject.getByteChannel().read(buffer));
+        assertEquals("89]", new String(buffer.array(), 0, 3));
+        assertFalse(this.fileChannel.isOpen());
+        assertEquals(-1, subject.getByteChannel().read(buffer));
+    }
+
+    @Test
+    public void testTransferTo_partialSegment() throws Exception {
+        final FileRegionBody subject = new FileRegionBody(this.fileChannel, Arrays.asList(
+                FileRegionBody.Segment.data("--".getBytes()), FileRegionBody.Segment.region(0, 4)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final WritableByteChannel target = Channels.newChannel(out);
+        // a target accepting a single byte per write
+        final WritableByteChannel slowTarget = new WritableByteChannel() {
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public int write(final ByteBuffer src) throws IOException {
+                final ByteBuffer single = src.duplicate();
+                single.limit(single.position() + 1);
+                final int written = target.write(single);
+                src.position(src.position() + written);
+                return written;
+            }
+        };
+
+        assertEquals(1, subject.transferTo(slowTarget));
+        assertEquals(5, subject.getRemaining());
+        assertEquals(5, subject.transferTo(target));
+        assertEquals("--0123", out.toString());
+    }
+
+    @Test
+    public void testGetFileChannel() throws Exception {
+        assertSame(this.fileChannel, new FileRegionBody(this.fileChannel, 0, 10).getFileChannel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNew_invalidRegion() throws Exception {
+        new FileRegionBody(this.fileChannel, -1, 10);
+    }
+}
@@ -0,0 +1,65 @@
+package li.moskito.awtt.protocol;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import li.moskito.awtt.protocol.http.RequestHeaders;
+import li.moskito.awtt.protocol.http.ResponseHeaders;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeaderFieldNameTableTest {
+
+    private HeaderFieldNameTable<RequestHeaders> subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new HeaderFieldNameTable<>(RequestHeaders.values());
+    }
+
+    @Test
+    public void testGet_allNames() throws Exception {
+        for (final RequestHeaders field : RequestHeaders.values()) {
+            final byte[] name = field.getName().getBytes(StandardCharsets.ISO_8859_1);
+            assertSame(field, this.subject.get(field.getName()));
+            assertSame(field, this.subject.get(name, 0, name.length));
+        }
+    }
+
+    @Test
+    public void testGet_allResponseNames() throws Exception {
+        final HeaderFieldNameTable<ResponseHeaders> table = new HeaderFieldNameTable<>(ResponseHeaders.values());
+        for (final ResponseHeaders field : ResponseHeaders.values()) {
+            assertSame(field, table.get(field.getName()));
+        }
+    }
+
+    @Test
+    public void testGet_caseInsensitive() throws Exception {
+        final byte[] name = "content-LENGTH".getBytes(StandardCharsets.ISO_8859_1);
+
+        assertSame(RequestHeaders.CONTENT_LENGTH, this.subject.get(name, 0, name.length));
+        assertSame(RequestHeaders.CONTENT_LENGTH, this.subject.get("CONTENT-length"));
+    }
+
+    @Test
+    public void testGet_offset() throws Exception {
+        final byte[] data = "xxHostxx".getBytes(StandardCharsets.ISO_8859_1);
+
+        assertSame(RequestHeaders.HOST, this.subject.get(data, 2, 4));
+    }
+
+    @Test
+    public void testGet_unknownName() throws Exception {
+        final byte[] name = "X-Host".getBytes(StandardCharsets.ISO_8859_1);
+
+        assertNull(this.subject.get(name, 0, name.length));
+        assertNull(this.subject.get(name, 2, 3));
+        assertNull(this.subject.get("Hos"));
+        assertNull(this.subject.get(""));
+        assertNull(this.subject.get("Hőst"));
+    }
+}
@@ -0,0 +1,112 @@
+package li.moskito.awtt.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import li.moskito.awtt.protocol.http.HttpHeaderField;
+import li.moskito.awtt.protocol.http.RequestHeaders;
+import li.moskito.awtt.protocol.http.ResponseHeaders;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeaderFieldTableTest {
+
+    private HeaderFieldTable subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new HeaderFieldTable();
+    }
+
+    @Test
+    public void testPut_insertionOrder() throws Exception {
+        final HeaderField host = new HttpHeaderField(RequestHeaders.HOST, "localhost");
+        final HeaderField custom = new HttpHeaderField(CustomHeaderFieldDefinition.forName("X-Custom"), "value");
+        final HeaderField accept = new HttpHeaderField(RequestHeaders.ACCEPT, "*/*");
+
+        this.subject.put(host);
+        this.subject.put(custom);
+        this.subject.put(accept);
+
+        assertEquals(Arrays.asList(host, custom, accept), this.subject.fields());
+        final Iterator<HeaderFieldDefinition> definitions = this.subject.definitions().iterator();
+        assertSame(RequestHeaders.HOST, definitions.next());
+        assertSame(custom.getHeaderFieldDefinition(), definitions.next());
+        assertSame(RequestHeaders.ACCEPT, definitions.next());
+        assertFalse(definitions.hasNext());
+    }
+
+    @Test
+    public void testPut_replaceKeepsPosition() throws Exception {
+        final HeaderField custom = new HttpHeaderField(CustomHeaderFieldDefinition.forName("X-Custom"), "value");
+        final HeaderField host = new HttpHeaderField(RequestHeaders.HOST, "localhost");
+        final HeaderField newHost = new HttpHeaderField(RequestHeaders.HOST, "otherhost");
+        final HeaderField newCustom = new HttpHeaderField(custom.getHeaderFieldDefinition(), "other");
+
+        this.subject.put(host);
+        this.subject.put(custom);
+        this.subject.put(newHost);
+        this.subject.put(newCustom);
+
+        assertEquals(Arrays.asList(newHost, newCustom), this.subject.fields());
+        assertSame(newHost, this.subject.get(RequestHeaders.HOST));
+        assertSame(newCustom, this.subject.get(custom.getHeaderFieldDefinition()));
+    }
+
+    @Test
+    public void testGet_differentEnumTypes() throws Exception {
+        final HeaderField requestField = new HttpHeaderField(RequestHeaders.CONNECTION, "close");
+        final HeaderField responseField = new HttpHeaderField(ResponseHeaders.CONNECTION, "keep-alive");
+
+        this.subject.put(requestField);
+        this.subject.put(responseField);
+
+        assertEquals(2, this.subject.size());
+        assertSame(requestField, this.subject.get(RequestHeaders.CONNECTION));
+        assertSame(responseField, this.subject.get(ResponseHeaders.CONNECTION));
+        assertNull(this.subject.get(ResponseHeaders.SERVER));
+    }
+
+    @Test
+    public void testGet_manyCustomFields() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            this.subject.put(new HttpHeaderField(CustomHeaderFieldDefinition.forName("X-Field-" + i), "value" + i));
+        }
+
+        assertEquals(100, this.subject.size());
+        for (int i = 0; i < 100; i++) {
+            final HeaderFieldDefinition definition = CustomHeaderFieldDefinition.forName("X-Field-" + i);
+            assertEquals("value" + i, this.subject.get(definition).getValue());
+            assertSame(definition, this.subject.fields().get(i).getHeaderFieldDefinition());
+        }
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        this.subject.put(new HttpHeaderField(RequestHeaders.HOST, "localhost"));
+
+        assertTrue(this.subject.contains(RequestHeaders.HOST));
+        assertTrue(this.subject.definitions().contains(RequestHeaders.HOST));
+        assertFalse(this.subject.contains(RequestHeaders.ACCEPT));
+        assertFalse(this.subject.contains(CustomHeaderFieldDefinition.forName("Host")));
+        assertFalse(this.subject.contains(null));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFields_unmodifiable() throws Exception {
+        this.subject.fields().add(new HttpHeaderField(RequestHeaders.HOST, "localhost"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFields_indexOutOfBounds() throws Exception {
+        this.subject.put(new HttpHeaderField(RequestHeaders.HOST, "localhost"));
+        this.subject.fields().get(1);
+    }
+}
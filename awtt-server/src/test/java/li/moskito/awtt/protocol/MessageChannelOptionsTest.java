@@ -11,12 +11,16 @@ public class MessageChannelOptionsTest {
     public void testType() throws Exception {
         assertEquals(Integer.class, MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES.type());
         assertEquals(Integer.class, MessageChannelOptions.KEEP_ALIVE_TIMEOUT.type());
+        assertEquals(Long.class, MessageChannelOptions.MAX_BODY_SIZE.type());
+        assertEquals(Integer.class, MessageChannelOptions.BODY_MEMORY_THRESHOLD.type());
     }
 
     @Test
     public void testName() throws Exception {
         assertEquals("maxMessagesPerConnection", MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES.name());
         assertEquals("keepAliveTimeout", MessageChannelOptions.KEEP_ALIVE_TIMEOUT.name());
+        assertEquals("maxBodySize", MessageChannelOptions.MAX_BODY_SIZE.name());
+        assertEquals("bodyMemoryThreshold", MessageChannelOptions.BODY_MEMORY_THRESHOLD.name());
     }
 
     @Test
@@ -29,12 +33,15 @@ public class MessageChannelOptionsTest {
     public void testGetDefault() throws Exception {
         assertEquals(100, MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES.getDefault().intValue());
         assertEquals(5, MessageChannelOptions.KEEP_ALIVE_TIMEOUT.getDefault().intValue());
+        assertEquals(10L * 1024 * 1024, MessageChannelOptions.MAX_BODY_SIZE.getDefault().longValue());
+        assertEquals(64 * 1024, MessageChannelOptions.BODY_MEMORY_THRESHOLD.getDefault().intValue());
     }
 
     @Test
     public void testFromString() throws Exception {
         assertEquals(Integer.valueOf(100), MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES.fromString("100"));
         assertEquals(Integer.valueOf(5), MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES.fromString("5"));
+        assertEquals(Long.valueOf(1024), MessageChannelOptions.MAX_BODY_SIZE.fromString("1024"));
     }
 
 }
@@ -3,14 +3,19 @@ package li.moskito.awtt.protocol;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -23,9 +28,13 @@ import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import li.moskito.awtt.metrics.LatencyHistograms;
+import li.moskito.awtt.metrics.RequestPhase;
 import li.moskito.awtt.protocol.MessageChannel.ErrorEvents;
 import li.moskito.awtt.protocol.MessageChannel.LifecycleEvents;
 
@@ -63,6 +72,11 @@ public class MessageChannelTest {
         public Set<MessageChannelOption> getSupportedOptions() {
             return mock.getSupportedOptions();
         }
+
+        @Override
+        protected void messageProcessed(final Message request, final Message response, final long durationNanos) {
+            mock.messageProcessed(request, response, durationNanos);
+        }
     }
 
     public static class TestMessageChannelOption implements MessageChannelOption<String> {
@@ -94,6 +108,8 @@ public class MessageChannelTest {
     private Message outMessage;
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private MessageChannel channel;
+    @Mock
+    private Protocol protocol;
 
     private ByteBuffer buffer;
 
@@ -104,6 +120,7 @@ public class MessageChannelTest {
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
         TestMessageChannel.mock = this.channel;
+        when(this.channel.getProtocol()).thenReturn(this.protocol);
         this.buffer = ByteBuffer.allocate(16 * 1024);
         when(this.outMessage.getCharset()).thenReturn(StandardCharsets.ISO_8859_1);
 
@@ -164,6 +181,62 @@ public class MessageChannelTest {
         this.subject.read(ByteBuffer.allocate(5));
     }
 
+    @Test
+    public void testRead_ByteBuffer_fileRegion() throws Exception {
+        final String expectedMessage = "TestMessage";
+        when(this.channel.serializeHeader(any(Header.class))).thenReturn(CharBuffer.wrap(expectedMessage));
+        when(this.outMessage.getBody()).thenReturn(this.createFileRegionBody("0123456789", 2, 5));
+        final Path tempFile = Files.createTempFile("binaryChannelData", "txt");
+        final FileChannel dest = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+
+        this.subject.write(this.outMessage);
+        // without transfer, the region is copied
+        this.copy(this.subject, dest, ByteBuffer.allocate(16));
+        dest.close();
+
+        assertEquals(expectedMessage + "23456", new String(Files.readAllBytes(tempFile)));
+        assertFalse(this.subject.hasPendingOutput());
+    }
+
+    @Test
+    public void testTransferTo_fileRegion() throws Exception {
+        final String expectedMessage = "TestMessage";
+        when(this.channel.serializeHeader(any(Header.class))).thenReturn(CharBuffer.wrap(expectedMessage));
+        when(this.outMessage.getBody()).thenReturn(this.createFileRegionBody("0123456789", 2, 5));
+        final ChannelEventListener listener = mock(ChannelEventListener.class);
+        this.subject.subscribe(LifecycleEvents.OUTPUT_QUEUE_EMPTY, listener);
+        final Path tempFile = Files.createTempFile("binaryChannelData", "txt");
+        final FileChannel dest = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+
+        this.subject.write(this.outMessage);
+        assertFalse(this.subject.hasTransferableRegion());
+
+        // only the header is read
+        assertEquals(expectedMessage.length(), this.subject.read(this.buffer));
+        assertTrue(this.subject.hasTransferableRegion());
+        this.buffer.flip();
+        dest.write(this.buffer);
+
+        assertEquals(5, this.subject.transferTo(dest));
+        dest.close();
+
+        assertEquals(expectedMessage + "23456", new String(Files.readAllBytes(tempFile)));
+        assertFalse(this.subject.hasTransferableRegion());
+        assertFalse(this.subject.hasPendingOutput());
+        assertEquals(-1, this.subject.transferTo(dest));
+        verify(listener).onEvent(LifecycleEvents.OUTPUT_QUEUE_EMPTY);
+    }
+
+    /**
+     * Creates a body for a region of a temporary file with the specified content
+     */
+    private FileRegionBody createFileRegionBody(final String content, final long position, final long count)
+            throws IOException {
+        final Path file = Files.createTempFile("fileRegion", "txt");
+        Files.write(file, content.getBytes());
+        return new FileRegionBody(FileChannel.open(file, StandardOpenOption.READ), position, count);
+    }
+
     /**
      * Copies the data from the source channel to the dest channel using the specified buffer as transfer buffer
      * 
@@ -387,7 +460,7 @@ public class MessageChannelTest {
     public void testProcessMessages() throws Exception {
         final String expectedMessage = "TestMessage";
         when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage);
-        when(this.channel.getProtocol().process(this.inMessage)).thenReturn(this.outMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(this.inMessage);
         when(this.channel.serializeHeader(this.outMessage.getHeader())).thenReturn(CharBuffer.wrap(expectedMessage));
 
         // write from byteBuffer
@@ -403,6 +476,34 @@ public class MessageChannelTest {
 
     }
 
+    @Test
+    public void testProcessMessages_releasesSpoolingBody() throws Exception {
+        final SpoolingBody body = new SpoolingBody(16, 4);
+        body.append(ByteBuffer.wrap("body".getBytes()));
+        body.complete();
+        when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage);
+        when(this.inMessage.getBody()).thenReturn(body);
+        doReturn(CompletableFuture.completedFuture(null)).when(this.protocol).processAsync(this.inMessage);
+
+        this.subject.write(this.buffer);
+        this.subject.processMessages();
+
+        assertFalse(body.getByteChannel().isOpen());
+    }
+
+    @Test
+    public void testClose_closesUnsentBodies() throws Exception {
+        final StreamingBody body = new StreamingBody();
+        when(this.outMessage.getBody()).thenReturn(body);
+        this.subject.write(this.outMessage);
+
+        this.subject.close();
+
+        assertFalse(this.subject.isOpen());
+        assertFalse(body.getByteChannel().isOpen());
+        assertFalse(body.getSink().isOpen());
+    }
+
     @Test
     public void testProcessMessages_andNotify() throws Exception {
         final ChannelEventListener listener = mock(ChannelEventListener.class);
@@ -414,6 +515,185 @@ public class MessageChannelTest {
 
     }
 
+    @Test
+    public void testProcessMessages_messageProcessed() throws Exception {
+        when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(this.inMessage);
+
+        this.subject.write(this.buffer);
+        this.subject.processMessages();
+
+        verify(this.channel).messageProcessed(same(this.inMessage), same(this.outMessage), anyLong());
+    }
+
+    @Test
+    public void testSetRemoteAddress() throws Exception {
+        final InetSocketAddress address = new InetSocketAddress("127.0.0.1", 4711);
+        assertNull(this.subject.getRemoteAddress());
+
+        this.subject.setRemoteAddress(address);
+
+        assertSame(address, this.subject.getRemoteAddress());
+    }
+
+    @Test
+    public void testRecordLatencies() throws Exception {
+        final LatencyHistograms latencies = LatencyHistograms.forPort(-1);
+        final long[] counts = new long[RequestPhase.values().length];
+        for (final RequestPhase phase : RequestPhase.values()) {
+            counts[phase.ordinal()] = latencies.get(phase).getCount();
+        }
+        this.subject.setLatencyHistograms(latencies);
+        this.buffer.put((byte) 'x').flip();
+        when(this.channel.parseMessage(any(ByteBuffer.class))).thenReturn(null, this.inMessage);
+        when(this.channel.serializeHeader(any(Header.class))).thenReturn(CharBuffer.wrap("response"));
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(this.inMessage);
+
+        // the message is completed by the second buffer
+        this.subject.write(this.buffer);
+        assertEquals(counts[RequestPhase.PARSE.ordinal()], latencies.get(RequestPhase.PARSE).getCount());
+        this.buffer.rewind();
+        this.subject.write(this.buffer);
+        this.subject.processMessages();
+        this.subject.read(ByteBuffer.allocate(64));
+
+        assertSame(latencies, this.subject.getLatencyHistograms());
+        for (final RequestPhase phase : EnumSet.range(RequestPhase.RECEIVE, RequestPhase.SERIALIZE)) {
+            assertEquals(phase.name(), counts[phase.ordinal()] + 1, latencies.get(phase).getCount());
+        }
+        assertEquals(counts[RequestPhase.SEND.ordinal()], latencies.get(RequestPhase.SEND).getCount());
+    }
+
+    @Test
+    public void testProcessMessages_asyncResponsesInOrder() throws Exception {
+        final Message secondMessage = mock(Message.class, Answers.RETURNS_DEEP_STUBS.get());
+        final Message secondResponse = mock(Message.class, Answers.RETURNS_DEEP_STUBS.get());
+        when(secondResponse.getCharset()).thenReturn(StandardCharsets.ISO_8859_1);
+        when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage, secondMessage);
+        when(this.channel.serializeHeader(this.outMessage.getHeader())).thenReturn(CharBuffer.wrap("first"));
+        when(this.channel.serializeHeader(secondResponse.getHeader())).thenReturn(CharBuffer.wrap("second"));
+        final CompletableFuture<Message> firstFuture = new CompletableFuture<>();
+        doReturn(firstFuture).when(this.protocol).processAsync(this.inMessage);
+        doReturn(CompletableFuture.completedFuture(secondResponse)).when(this.protocol).processAsync(secondMessage);
+        final ChannelEventListener listener = mock(ChannelEventListener.class);
+        this.subject.subscribe(LifecycleEvents.RESPONSE_READY, listener);
+        this.subject.subscribe(LifecycleEvents.OUTPUT_QUEUE_EMPTY, listener);
+
+        this.subject.write(this.buffer);
+        this.subject.write(this.buffer.duplicate());
+        this.subject.processMessages();
+
+        // the second response must not overtake the first one
+        assertTrue(this.subject.hasPendingResponses());
+        assertFalse(this.subject.hasPendingOutput());
+        final ByteBuffer out = ByteBuffer.allocate(64);
+        assertEquals(-1, this.subject.read(out));
+        verify(listener, times(0)).onEvent(any(Event.class));
+
+        firstFuture.complete(this.outMessage);
+
+        assertFalse(this.subject.hasPendingResponses());
+        verify(listener).onEvent(LifecycleEvents.RESPONSE_READY);
+        this.subject.read(out);
+        this.subject.read(out);
+        out.flip();
+        assertEquals("firstsecond", StandardCharsets.ISO_8859_1.decode(out).toString());
+    }
+
+    @Test
+    public void testWriteInterimResponse() throws Exception {
+        final Message interim = mock(Message.class, Answers.RETURNS_DEEP_STUBS.get());
+
+        this.subject.writeInterimResponse(interim);
+
+        assertTrue(this.subject.hasPendingOutput());
+    }
+
+    @Test
+    public void testWriteInterimResponse_afterPendingResponses() throws Exception {
+        final Message interim = mock(Message.class, Answers.RETURNS_DEEP_STUBS.get());
+        when(interim.getCharset()).thenReturn(StandardCharsets.ISO_8859_1);
+        when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage);
+        when(this.channel.serializeHeader(this.outMessage.getHeader())).thenReturn(CharBuffer.wrap("final"));
+        when(this.channel.serializeHeader(interim.getHeader())).thenReturn(CharBuffer.wrap("interim"));
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+        doReturn(future).when(this.protocol).processAsync(this.inMessage);
+
+        this.subject.write(this.buffer);
+        this.subject.processMessages();
+        this.subject.writeInterimResponse(interim);
+
+        // the interim response of the next message must not overtake the response of the previous message
+        assertFalse(this.subject.hasPendingOutput());
+
+        future.complete(this.outMessage);
+
+        final ByteBuffer out = ByteBuffer.allocate(64);
+        this.subject.read(out);
+        this.subject.read(out);
+        out.flip();
+        assertEquals("finalinterim", StandardCharsets.ISO_8859_1.decode(out).toString());
+    }
+
+    @Test
+    public void testRead_ByteBuffer_nonBlocking_streamingBody() throws Exception {
+        final StreamingBody body = new StreamingBody();
+        when(this.outMessage.getBody()).thenReturn(body);
+        when(this.channel.serializeHeader(this.outMessage.getHeader())).thenReturn(CharBuffer.wrap("header"));
+        final ChannelEventListener listener = mock(ChannelEventListener.class);
+        this.subject.subscribe(LifecycleEvents.OUTPUT_AVAILABLE, listener);
+        this.subject.configureBlocking(false);
+        this.subject.write(this.outMessage);
+
+        assertFalse(this.subject.isBlocking());
+        assertEquals(6, this.subject.read(this.buffer));
+        // no content is available yet, the read does not block
+        assertEquals(0, this.subject.read(this.buffer));
+        assertTrue(this.subject.hasPendingOutput());
+
+        body.getSink().write(ByteBuffer.wrap("body".getBytes()));
+
+        verify(listener).onEvent(LifecycleEvents.OUTPUT_AVAILABLE);
+        assertEquals(4, this.subject.read(this.buffer));
+    }
+
+    @Test
+    public void testProcessMessages_asyncResponseFailed() throws Exception {
+        final SpoolingBody body = new SpoolingBody(16, 4);
+        body.append(ByteBuffer.wrap("body".getBytes()));
+        body.complete();
+        when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage);
+        when(this.inMessage.getBody()).thenReturn(body);
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+        doReturn(future).when(this.protocol).processAsync(this.inMessage);
+
+        this.subject.write(this.buffer);
+        this.subject.processMessages();
+        assertTrue(body.getByteChannel().isOpen());
+        future.completeExceptionally(new IllegalStateException("failed"));
+
+        assertFalse(this.subject.hasPendingResponses());
+        assertFalse(this.subject.hasPendingOutput());
+        assertFalse(body.getByteChannel().isOpen());
+    }
+
+    @Test
+    public void testProcessMessages_completedAfterClose() throws Exception {
+        final StreamingBody body = new StreamingBody();
+        when(this.outMessage.getBody()).thenReturn(body);
+        when(this.channel.parseMessage(this.buffer)).thenReturn(this.inMessage);
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+        doReturn(future).when(this.protocol).processAsync(this.inMessage);
+
+        this.subject.write(this.buffer);
+        this.subject.processMessages();
+        this.subject.close();
+        future.complete(this.outMessage);
+
+        assertFalse(this.subject.hasPendingOutput());
+        assertFalse(body.getSink().isOpen());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testSetOption_invalidOption() throws Exception {
         @SuppressWarnings("rawtypes")
@@ -12,8 +12,10 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-        BinaryBodyTest.class, CustomHeaderFieldDefinitionTest.class, HeaderFieldTest.class, HeaderTest.class,
-        MessageTest.class, ProtocolExceptionTest.class, ProtocolRegistryTest.class
+        BinaryBodyTest.class, ByteBufferBodyTest.class, CustomHeaderFieldDefinitionTest.class, FileRegionBodyTest.class,
+        HeaderFieldTest.class, HeaderFieldNameTableTest.class, HeaderFieldTableTest.class, HeaderTest.class,
+        MessageTest.class, ProtocolExceptionTest.class, ProtocolRegistryTest.class, SpoolingBodyTest.class,
+        StreamingBodyTest.class
 })
 public class ProtocolTestSuite {
 
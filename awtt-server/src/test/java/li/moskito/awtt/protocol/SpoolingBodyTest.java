@@ -0,0 +1,112 @@
+package li.moskito.awtt.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.junit.Test;
+
+public class SpoolingBodyTest {
+
+    @Test
+    public void testAppend_inMemory() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(16, -1);
+
+        subject.append(ByteBuffer.wrap("0123".getBytes()));
+        subject.append(ByteBuffer.wrap("4567".getBytes()));
+        subject.complete();
+
+        assertFalse(subject.isSpooled());
+        assertEquals(8, subject.getLength());
+        assertEquals("01234567", this.readContent(subject));
+    }
+
+    @Test
+    public void testAppend_consumesBuffer() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(16, 4);
+        final ByteBuffer src = ByteBuffer.wrap("0123".getBytes());
+
+        subject.append(src);
+
+        assertFalse(src.hasRemaining());
+    }
+
+    @Test
+    public void testAppend_growsUpToThreshold() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(8, 2);
+
+        subject.append(ByteBuffer.wrap("012".getBytes()));
+        subject.append(ByteBuffer.wrap("34567".getBytes()));
+        subject.complete();
+
+        assertFalse(subject.isSpooled());
+        assertEquals("01234567", this.readContent(subject));
+    }
+
+    @Test
+    public void testAppend_spilledToFile() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(8, -1);
+
+        subject.append(ByteBuffer.wrap("0123".getBytes()));
+        subject.append(ByteBuffer.wrap("456789".getBytes()));
+        subject.append(ByteBuffer.wrap("ab".getBytes()));
+        subject.complete();
+
+        assertTrue(subject.isSpooled());
+        assertEquals(12, subject.getLength());
+        assertEquals("0123456789ab", this.readContent(subject));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRead_incomplete() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(8, -1);
+        subject.append(ByteBuffer.wrap("0123".getBytes()));
+
+        subject.getByteChannel().read(ByteBuffer.allocate(4));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppend_complete() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(8, -1);
+        subject.complete();
+
+        subject.append(ByteBuffer.wrap("0123".getBytes()));
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testClose() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(4, -1);
+        subject.append(ByteBuffer.wrap("0123456789".getBytes()));
+        subject.complete();
+        final ReadableByteChannel channel = subject.getByteChannel();
+
+        channel.close();
+
+        assertFalse(channel.isOpen());
+        channel.read(ByteBuffer.allocate(4));
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testWrite() throws Exception {
+        final SpoolingBody subject = new SpoolingBody(4, -1);
+
+        ((WritableByteChannel) subject.getByteChannel()).write(ByteBuffer.wrap("0123".getBytes()));
+    }
+
+    private String readContent(final SpoolingBody body) throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(5);
+        final StringBuilder content = new StringBuilder();
+        while (body.getByteChannel().read(buffer) != -1) {
+            buffer.flip();
+            content.append(new String(buffer.array(), 0, buffer.limit()));
+            buffer.clear();
+        }
+        return content.toString();
+    }
+}
@@ -23,6 +23,14 @@ public class StandardConvertersTest {
         assertEquals(Integer.valueOf(string), StandardConverters.INTEGER_CONVERTER.convert(string));
     }
 
+    @Test
+    public void testLongConverter() throws Exception {
+
+        final String string = "10485760";
+
+        assertEquals(Long.valueOf(string), StandardConverters.LONG_CONVERTER.convert(string));
+    }
+
     @Test
     public void testBooleanConverter() throws Exception {
 
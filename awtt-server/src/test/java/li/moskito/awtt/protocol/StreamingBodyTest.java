@@ -0,0 +1,231 @@
+package li.moskito.awtt.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import li.moskito.awtt.protocol.http.ResponseHeaders;
+
+import org.junit.Test;
+
+public class StreamingBodyTest {
+
+    @Test
+    public void testRead_written() throws Exception {
+        final StreamingBody subject = new StreamingBody(16);
+        subject.getSink().write(ByteBuffer.wrap("0123".getBytes()));
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        assertEquals("0123", new String(buffer.array(), 0, 4));
+    }
+
+    @Test
+    public void testRead_sinkClosed() throws Exception {
+        final StreamingBody subject = new StreamingBody(16);
+        subject.getSink().write(ByteBuffer.wrap("0123".getBytes()));
+        subject.getSink().close();
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        assertFalse(subject.getSink().isOpen());
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        assertEquals(-1, subject.getByteChannel().read(buffer));
+    }
+
+    @Test
+    public void testRead_partially() throws Exception {
+        final StreamingBody subject = new StreamingBody(16);
+        subject.getSink().write(ByteBuffer.wrap("0123456789".getBytes()));
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        buffer.clear();
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        assertEquals("4567", new String(buffer.array()));
+    }
+
+    @Test
+    public void testRead_waitsForProducer() throws Exception {
+        final StreamingBody subject = new StreamingBody(16);
+        final Thread producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    subject.getSink().write(ByteBuffer.wrap("0123".getBytes()));
+                    subject.getSink().close();
+                } catch (final InterruptedException | IOException e) {
+                    subject.abort(e);
+                }
+            }
+        });
+        producer.start();
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        assertEquals(-1, subject.getByteChannel().read(buffer));
+        producer.join();
+    }
+
+    @Test
+    public void testWrite_blocksWhileFull() throws Exception {
+        final StreamingBody subject = new StreamingBody(4);
+        final CountDownLatch written = new CountDownLatch(1);
+        final Thread producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    subject.getSink().write(ByteBuffer.wrap("01234567".getBytes()));
+                    written.countDown();
+                    subject.getSink().close();
+                } catch (final IOException e) {
+                    subject.abort(e);
+                }
+            }
+        });
+        producer.start();
+
+        assertFalse(written.await(50, TimeUnit.MILLISECONDS));
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        while (subject.getByteChannel().read(buffer) != -1) {
+            // read until the producer completed the content
+        }
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+        assertEquals("01234567", new String(buffer.array(), 0, buffer.position()));
+        producer.join();
+    }
+
+    @Test
+    public void testRead_nonBlocking() throws Exception {
+        final StreamingBody subject = new StreamingBody(16);
+        final AtomicInteger notifications = new AtomicInteger();
+        subject.configureNonBlocking(new Runnable() {
+
+            @Override
+            public void run() {
+                notifications.incrementAndGet();
+            }
+        });
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        assertEquals(0, subject.getByteChannel().read(buffer));
+        subject.getSink().write(ByteBuffer.wrap("01".getBytes()));
+        // the reader is notified once per read that found no data
+        subject.getSink().write(ByteBuffer.wrap("23".getBytes()));
+        assertEquals(1, notifications.get());
+
+        assertEquals(4, subject.getByteChannel().read(buffer));
+        assertEquals(0, subject.getByteChannel().read(buffer));
+        subject.getSink().close();
+        assertEquals(2, notifications.get());
+        assertEquals(-1, subject.getByteChannel().read(buffer));
+    }
+
+    @Test
+    public void testWrite_nonBlocking_notifiesBeforeWaiting() throws Exception {
+        final StreamingBody subject = new StreamingBody(4);
+        final CountDownLatch notified = new CountDownLatch(1);
+        subject.configureNonBlocking(new Runnable() {
+
+            @Override
+            public void run() {
+                notified.countDown();
+            }
+        });
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        assertEquals(0, subject.getByteChannel().read(buffer));
+        final Thread producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    subject.getSink().write(ByteBuffer.wrap("01234567".getBytes()));
+                    subject.getSink().close();
+                } catch (final IOException e) {
+                    subject.abort(e);
+                }
+            }
+        });
+        producer.start();
+
+        // the producer waits for the full buffer to be drained, so it has to notify the reader before
+        assertTrue(notified.await(1, TimeUnit.SECONDS));
+        while (subject.getByteChannel().read(buffer) != -1) {
+            Thread.sleep(1);
+        }
+        assertEquals("01234567", new String(buffer.array(), 0, buffer.position()));
+        producer.join();
+    }
+
+    @Test
+    public void testWrite_channelClosed() throws Exception {
+        final StreamingBody subject = new StreamingBody(4);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Thread producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    subject.getSink().write(ByteBuffer.wrap("01234567".getBytes()));
+                } catch (final IOException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+
+        subject.getByteChannel().close();
+        producer.join(1000);
+
+        assertTrue(failure.get() instanceof ClosedChannelException);
+        assertFalse(subject.getSink().isOpen());
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        final StreamingBody subject = new StreamingBody(16);
+        final Exception cause = new IllegalStateException("failed");
+        subject.getSink().write(ByteBuffer.wrap("0123".getBytes()));
+
+        subject.abort(cause);
+
+        try {
+            subject.getByteChannel().read(ByteBuffer.allocate(16));
+            fail("IOException expected");
+        } catch (final IOException e) {
+            assertEquals(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void testAddTrailer() throws Exception {
+        final StreamingBody subject = new StreamingBody();
+        final HeaderField field = new HeaderField(ResponseHeaders.ETAG, "\"1\"");
+
+        subject.addTrailer(field);
+
+        assertEquals(1, subject.getTrailers().size());
+        assertEquals(field, subject.getTrailers().get(0));
+    }
+
+    @Test(expected = NonWritableChannelException.class)
+    public void testWrite() throws Exception {
+        final StreamingBody subject = new StreamingBody();
+
+        ((WritableByteChannel) subject.getByteChannel()).write(ByteBuffer.wrap("0123".getBytes()));
+    }
+}
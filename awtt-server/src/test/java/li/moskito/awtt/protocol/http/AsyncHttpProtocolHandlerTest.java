@@ -0,0 +1,117 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class AsyncHttpProtocolHandlerTest {
+
+    @Mock
+    private HttpRequest request;
+
+    private AsyncHttpProtocolHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        this.handler = new AsyncHttpProtocolHandler();
+    }
+
+    @Test
+    public void testAccepts() throws Exception {
+        assertTrue(this.handler.accepts(this.request));
+    }
+
+    private void assertStatusCodeOnCommand(final HttpStatusCodes statusCode, final HttpCommands command) {
+        when(this.request.getCommand()).thenReturn(command);
+        final HttpResponse response = this.handler.processAsync(this.request).toCompletableFuture().join();
+        assertNotNull(response);
+        assertEquals(statusCode, response.getStatusCode());
+    }
+
+    @Test
+    public void testProcessAsync_allCommands() throws Exception {
+        for (final HttpCommands command : HttpCommands.values()) {
+            this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, command);
+        }
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+
+        final HttpResponse response = this.handler.process(this.request);
+
+        assertEquals(HttpStatusCodes.NOT_IMPLEMENTED, response.getStatusCode());
+    }
+
+    @Test
+    public void testProcessAsync_completedLater() throws Exception {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        this.handler = new AsyncHttpProtocolHandler() {
+            @Override
+            protected CompletionStage<HttpResponse> onGetAsync(final HttpRequest httpRequest) {
+                return future;
+            }
+        };
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+
+        final CompletableFuture<HttpResponse> actual = this.handler.processAsync(this.request).toCompletableFuture();
+        assertFalse(actual.isDone());
+
+        final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+        future.complete(response);
+        assertSame(response, actual.join());
+    }
+
+    @Test
+    public void testOnGetAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.GET);
+    }
+
+    @Test
+    public void testOnPostAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.POST);
+    }
+
+    @Test
+    public void testOnPutAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.PUT);
+    }
+
+    @Test
+    public void testOnDeleteAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.DELETE);
+    }
+
+    @Test
+    public void testOnHeadAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.HEAD);
+    }
+
+    @Test
+    public void testOnOptionsAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.OPTIONS);
+    }
+
+    @Test
+    public void testOnConnectAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.CONNECT);
+    }
+
+    @Test
+    public void testOnTraceAsync() throws Exception {
+        this.assertStatusCodeOnCommand(HttpStatusCodes.NOT_IMPLEMENTED, HttpCommands.TRACE);
+    }
+}
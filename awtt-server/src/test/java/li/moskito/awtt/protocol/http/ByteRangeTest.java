@@ -0,0 +1,94 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testParse_singleRange() throws Exception {
+        assertEquals(Arrays.asList(new ByteRange(0, 499)), ByteRange.parse("bytes=0-499", 10000));
+        assertEquals(Arrays.asList(new ByteRange(500, 999)), ByteRange.parse("bytes = 500-999", 10000));
+    }
+
+    @Test
+    public void testParse_openRange() throws Exception {
+        assertEquals(Arrays.asList(new ByteRange(9500, 9999)), ByteRange.parse("bytes=9500-", 10000));
+    }
+
+    @Test
+    public void testParse_suffixRange() throws Exception {
+        assertEquals(Arrays.asList(new ByteRange(9500, 9999)), ByteRange.parse("bytes=-500", 10000));
+        assertEquals(Arrays.asList(new ByteRange(0, 99)), ByteRange.parse("bytes=-500", 100));
+    }
+
+    @Test
+    public void testParse_lastExceedsSize() throws Exception {
+        assertEquals(Arrays.asList(new ByteRange(50, 99)), ByteRange.parse("bytes=50-5000", 100));
+    }
+
+    @Test
+    public void testParse_multipleRanges() throws Exception {
+        final List<ByteRange> ranges = ByteRange.parse("bytes=500-600, 0-99,,-100", 10000);
+
+        assertEquals(Arrays.asList(new ByteRange(0, 99), new ByteRange(500, 600), new ByteRange(9900, 9999)), ranges);
+    }
+
+    @Test
+    public void testParse_coalesceOverlapping() throws Exception {
+        final List<ByteRange> ranges = ByteRange.parse("bytes=0-99,50-149,150-199,300-399", 10000);
+
+        assertEquals(Arrays.asList(new ByteRange(0, 199), new ByteRange(300, 399)), ranges);
+    }
+
+    @Test
+    public void testParse_unsatisfiable() throws Exception {
+        assertTrue(ByteRange.parse("bytes=100-199", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-10", 0).isEmpty());
+        assertEquals(Arrays.asList(new ByteRange(0, 9)), ByteRange.parse("bytes=200-299,0-9", 100));
+    }
+
+    @Test
+    public void testParse_invalid() throws Exception {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("items=0-9", 100));
+        assertNull(ByteRange.parse("bytes0-9", 100));
+        assertNull(ByteRange.parse("bytes=", 100));
+        assertNull(ByteRange.parse("bytes=9-0", 100));
+        assertNull(ByteRange.parse("bytes=a-9", 100));
+        assertNull(ByteRange.parse("bytes=-", 100));
+        assertNull(ByteRange.parse("bytes=5", 100));
+        assertNull(ByteRange.parse("bytes=0-99999999999999999999", 100));
+    }
+
+    @Test
+    public void testParse_tooManyRanges() throws Exception {
+        final StringBuilder value = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+            value.append(',').append(i * 2).append('-').append(i * 2);
+        }
+
+        assertNull(ByteRange.parse(value.toString(), 1000));
+    }
+
+    @Test
+    public void testToContentRange() throws Exception {
+        final ByteRange subject = new ByteRange(10, 19);
+
+        assertEquals(10, subject.getLength());
+        assertEquals("bytes 10-19/100", subject.toContentRange(100));
+        assertEquals("bytes */100", ByteRange.toUnsatisfiedContentRange(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNew_invalid() throws Exception {
+        new ByteRange(10, 9);
+    }
+}
@@ -0,0 +1,107 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+
+import li.moskito.awtt.protocol.HeaderField;
+import li.moskito.awtt.protocol.StreamingBody;
+
+import org.junit.Test;
+
+public class ChunkedEncoderTest {
+
+    @Test
+    public void testEncode() throws Exception {
+        final StreamingBody body = new StreamingBody(64);
+        body.getSink().write(ByteBuffer.wrap("0123456789".getBytes()));
+        body.getSink().close();
+        final ChunkedEncoder subject = new ChunkedEncoder(body);
+        final ByteBuffer dst = ByteBuffer.allocate(64);
+
+        assertEquals(16, subject.encode(dst));
+        // the size is padded to the number of hex digits of the remaining space of the buffer (64 = 0x40)
+        assertEquals("0a\r\n0123456789\r\n", this.toString(dst));
+        assertEquals(5, subject.encode(dst));
+        assertEquals("0a\r\n0123456789\r\n0\r\n\r\n", this.toString(dst));
+        assertEquals(-1, subject.encode(dst));
+        assertFalse(body.getByteChannel().isOpen());
+    }
+
+    @Test
+    public void testEncode_severalChunks() throws Exception {
+        final StreamingBody body = new StreamingBody(64);
+        final ChunkedEncoder subject = new ChunkedEncoder(body);
+        final ByteBuffer dst = ByteBuffer.allocate(256);
+
+        body.getSink().write(ByteBuffer.wrap("abc".getBytes()));
+        subject.encode(dst);
+        body.getSink().write(ByteBuffer.wrap("de".getBytes()));
+        body.getSink().close();
+        subject.encode(dst);
+        subject.encode(dst);
+
+        assertEquals("003\r\nabc\r\n02\r\nde\r\n0\r\n\r\n", this.toString(dst));
+    }
+
+    @Test
+    public void testEncode_limitedBySpace() throws Exception {
+        final StreamingBody body = new StreamingBody(64);
+        body.getSink().write(ByteBuffer.wrap("0123456789".getBytes()));
+        body.getSink().close();
+        final ChunkedEncoder subject = new ChunkedEncoder(body);
+        final ByteBuffer dst = ByteBuffer.allocate(10);
+
+        assertEquals(10, subject.encode(dst));
+
+        assertEquals("5\r\n01234\r\n", this.toString(dst));
+    }
+
+    @Test
+    public void testEncode_noSpaceForChunk() throws Exception {
+        final StreamingBody body = new StreamingBody(64);
+        body.getSink().write(ByteBuffer.wrap("0123456789".getBytes()));
+        final ChunkedEncoder subject = new ChunkedEncoder(body);
+        final ByteBuffer dst = ByteBuffer.allocate(5);
+
+        assertEquals(0, subject.encode(dst));
+        assertEquals(0, dst.position());
+    }
+
+    @Test
+    public void testEncode_trailers() throws Exception {
+        final StreamingBody body = new StreamingBody(64);
+        body.getSink().write(ByteBuffer.wrap("abc".getBytes()));
+        body.addTrailer(new HeaderField(ResponseHeaders.ETAG, "\"1\""));
+        body.getSink().close();
+        final ChunkedEncoder subject = new ChunkedEncoder(body);
+        final ByteBuffer dst = ByteBuffer.allocate(256);
+
+        subject.encode(dst);
+        subject.encode(dst);
+
+        assertEquals("003\r\nabc\r\n0\r\nETag: \"1\"\r\n\r\n", this.toString(dst));
+    }
+
+    @Test
+    public void testEncode_trailerSplit() throws Exception {
+        final StreamingBody body = new StreamingBody(64);
+        body.addTrailer(new HeaderField(ResponseHeaders.ETAG, "\"1\""));
+        body.getSink().close();
+        final ChunkedEncoder subject = new ChunkedEncoder(body);
+        final ByteBuffer dst = ByteBuffer.allocate(8);
+
+        assertEquals(8, subject.encode(dst));
+        assertEquals("0\r\nETag:", this.toString(dst));
+
+        dst.clear();
+        assertEquals(8, subject.encode(dst));
+        assertEquals(" \"1\"\r\n\r\n", this.toString(dst));
+        assertEquals(-1, subject.encode(dst));
+    }
+
+    private String toString(final ByteBuffer dst) {
+        return new String(dst.array(), 0, dst.position(), HTTP.CHARSET);
+    }
+}
@@ -0,0 +1,34 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ContentCodingTest {
+
+    @Test
+    public void testIsAccepted() throws Exception {
+        assertTrue(ContentCoding.isAccepted("gzip", ContentCoding.GZIP));
+        assertTrue(ContentCoding.isAccepted("deflate, GZIP", ContentCoding.GZIP));
+        assertTrue(ContentCoding.isAccepted("deflate;q=1.0, gzip ; q=0.5", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted("deflate, br", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted("", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted(null, ContentCoding.GZIP));
+    }
+
+    @Test
+    public void testIsAccepted_qualityZero() throws Exception {
+        assertFalse(ContentCoding.isAccepted("gzip;q=0", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted("gzip;q=0.000, deflate", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted("gzip;q=invalid", ContentCoding.GZIP));
+    }
+
+    @Test
+    public void testIsAccepted_any() throws Exception {
+        assertTrue(ContentCoding.isAccepted("*", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted("*;q=0", ContentCoding.GZIP));
+        assertFalse(ContentCoding.isAccepted("*, gzip;q=0", ContentCoding.GZIP));
+        assertTrue(ContentCoding.isAccepted("*;q=0, gzip", ContentCoding.GZIP));
+    }
+}
@@ -0,0 +1,57 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EntityTagTest {
+
+    @Test
+    public void testStrong() throws Exception {
+        assertEquals("\"abc-1\"", EntityTag.strong("abc-1"));
+    }
+
+    @Test
+    public void testVariant() throws Exception {
+        assertEquals("\"abc-1-gzip\"", EntityTag.variant("\"abc-1\"", "gzip"));
+    }
+
+    @Test
+    public void testIsEntityTag() throws Exception {
+        assertTrue(EntityTag.isEntityTag("\"abc\""));
+        assertTrue(EntityTag.isEntityTag("W/\"abc\""));
+        assertFalse(EntityTag.isEntityTag("Thu, 08 May 2014 13:49:01 GMT"));
+        assertFalse(EntityTag.isEntityTag(null));
+    }
+
+    @Test
+    public void testMatches_list() throws Exception {
+        assertTrue(EntityTag.matches("\"abc\"", "\"abc\"", false));
+        assertTrue(EntityTag.matches("\"xyz\", \"abc\"", "\"abc\"", false));
+        assertTrue(EntityTag.matches(" \"xyz\" ,\t\"abc\" ", "\"abc\"", false));
+        assertFalse(EntityTag.matches("\"xyz\", \"abcd\"", "\"abc\"", false));
+        assertFalse(EntityTag.matches("abc", "\"abc\"", false));
+    }
+
+    @Test
+    public void testMatches_any() throws Exception {
+        assertTrue(EntityTag.matches("*", "\"abc\"", false));
+        assertTrue(EntityTag.matches(" * ", "\"abc\"", true));
+        assertFalse(EntityTag.matches("*", null, true));
+    }
+
+    @Test
+    public void testMatches_weak() throws Exception {
+        assertTrue(EntityTag.matches("W/\"abc\"", "\"abc\"", true));
+        assertFalse(EntityTag.matches("W/\"abc\"", "\"abc\"", false));
+        assertTrue(EntityTag.matches("W/\"abc\", \"abc\"", "\"abc\"", false));
+    }
+
+    @Test
+    public void testMatches_null() throws Exception {
+        assertFalse(EntityTag.matches(null, "\"abc\"", true));
+        assertFalse(EntityTag.matches("\"abc\"", null, true));
+    }
+}
@@ -3,20 +3,40 @@ package li.moskito.awtt.protocol.http;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
+import li.moskito.awtt.accesslog.AccessLog;
 import li.moskito.awtt.common.Configurable;
+import li.moskito.awtt.metrics.Counter;
+import li.moskito.awtt.metrics.Histogram;
+import li.moskito.awtt.metrics.MetricsRegistry;
 import li.moskito.awtt.protocol.HeaderField;
 import li.moskito.awtt.protocol.Message;
+import li.moskito.awtt.protocol.StreamingBody;
 import li.moskito.awtt.protocol.http.HTTP.ResponseOptions;
 
 import org.apache.commons.configuration.ConfigurationException;
@@ -32,7 +52,7 @@ public class HTTPTest {
     @Mock
     private TestHandler mockHandler;
 
-    public static class TestHandler extends HttpProtocolHandler implements Configurable {
+    public static class TestHandler extends HttpProtocolHandler implements Configurable, Closeable {
 
         private static TestHandler mock;
 
@@ -42,6 +62,11 @@ public class HTTPTest {
 
         }
 
+        @Override
+        public void close() throws IOException {
+            mock.close();
+        }
+
         @Override
         protected HttpResponse onGet(final HttpRequest httpRequest) {
             return mock.onGet(httpRequest);
@@ -49,6 +74,20 @@ public class HTTPTest {
 
     }
 
+    @Mock
+    private AsyncTestHandler mockAsyncHandler;
+
+    public static class AsyncTestHandler extends AsyncHttpProtocolHandler {
+
+        private static AsyncTestHandler mock;
+
+        @Override
+        protected CompletionStage<HttpResponse> onGetAsync(final HttpRequest httpRequest) {
+            return mock.onGetAsync(httpRequest);
+        }
+
+    }
+
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private HttpRequest request;
 
@@ -61,6 +100,7 @@ public class HTTPTest {
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
         TestHandler.mock = this.mockHandler;
+        AsyncTestHandler.mock = this.mockAsyncHandler;
         this.http = new HTTP();
 
     }
@@ -86,6 +126,153 @@ public class HTTPTest {
 
     }
 
+    @Test
+    public void testProcess_HttpRequest_streamingResponse() throws Exception {
+        this.testConfigure();
+        final HttpResponse streamingResponse = new HttpResponse(HttpStatusCodes.OK);
+        streamingResponse.setBody(new StreamingBody());
+        when(this.mockHandler.accepts(this.request)).thenReturn(true);
+        when(this.mockHandler.onGet(this.request)).thenReturn(streamingResponse);
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+        when(this.request.getHeader().getVersion()).thenReturn(HttpVersion.HTTP_1_1);
+
+        this.http.process(this.request);
+
+        assertEquals("chunked", streamingResponse.getHeader().getField(ResponseHeaders.TRANSFER_ENCODING).getValue());
+    }
+
+    @Test
+    public void testProcess_HttpRequest_streamingResponse_http10() throws Exception {
+        this.testConfigure();
+        final HttpResponse streamingResponse = new HttpResponse(HttpStatusCodes.OK);
+        streamingResponse.setBody(new StreamingBody());
+        when(this.mockHandler.accepts(this.request)).thenReturn(true);
+        when(this.mockHandler.onGet(this.request)).thenReturn(streamingResponse);
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+        when(this.request.getHeader().getVersion()).thenReturn(HttpVersion.HTTP_1_0);
+
+        this.http.process(this.request);
+
+        assertFalse(streamingResponse.getHeader().hasField(ResponseHeaders.TRANSFER_ENCODING));
+        assertEquals("close", streamingResponse.getHeader().getField(ResponseHeaders.CONNECTION).getValue());
+    }
+
+    @Test
+    public void testProcess_HttpRequest_streamingResponseWithLength() throws Exception {
+        this.testConfigure();
+        final HttpResponse streamingResponse = new HttpResponse(HttpStatusCodes.OK);
+        streamingResponse.setBody(new StreamingBody());
+        streamingResponse.addField(ResponseHeaders.CONTENT_LENGTH, "10");
+        when(this.mockHandler.accepts(this.request)).thenReturn(true);
+        when(this.mockHandler.onGet(this.request)).thenReturn(streamingResponse);
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+        when(this.request.getHeader().getVersion()).thenReturn(HttpVersion.HTTP_1_1);
+
+        this.http.process(this.request);
+
+        assertFalse(streamingResponse.getHeader().hasField(ResponseHeaders.TRANSFER_ENCODING));
+    }
+
+    @Test
+    public void testProcessAsync_asyncHandler() throws Exception {
+        this.configureAsyncHandler();
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        doReturn(future).when(this.mockAsyncHandler).onGetAsync(this.request);
+
+        final CompletableFuture<HttpResponse> actual = this.http.processAsync(this.request).toCompletableFuture();
+        assertFalse(actual.isDone());
+
+        future.complete(this.response);
+        assertEquals(this.response, actual.join());
+    }
+
+    @Test
+    public void testProcessAsync_asyncHandlerFailed() throws Exception {
+        this.configureAsyncHandler();
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        doReturn(future).when(this.mockAsyncHandler).onGetAsync(this.request);
+
+        final CompletableFuture<HttpResponse> actual = this.http.processAsync(this.request).toCompletableFuture();
+        future.completeExceptionally(new IllegalStateException("failed"));
+
+        final HttpResponse response = actual.join();
+        assertEquals(HttpStatusCodes.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals("close", response.getHeader().getField(ResponseHeaders.CONNECTION).getValue());
+    }
+
+    @Test
+    public void testProcessAsync_asyncHandlerStreamingResponse() throws Exception {
+        this.configureAsyncHandler();
+        final HttpResponse streamingResponse = new HttpResponse(HttpStatusCodes.OK);
+        streamingResponse.setBody(new StreamingBody());
+        doReturn(CompletableFuture.completedFuture(streamingResponse)).when(this.mockAsyncHandler).onGetAsync(
+                this.request);
+        when(this.request.getHeader().getVersion()).thenReturn(HttpVersion.HTTP_1_1);
+
+        this.http.processAsync(this.request).toCompletableFuture().join();
+
+        assertEquals("chunked", streamingResponse.getHeader().getField(ResponseHeaders.TRANSFER_ENCODING).getValue());
+    }
+
+    @Test
+    public void testProcess_asyncHandler() throws Exception {
+        this.configureAsyncHandler();
+        doReturn(CompletableFuture.completedFuture(this.response)).when(this.mockAsyncHandler).onGetAsync(
+                this.request);
+
+        assertEquals(this.response, this.http.process(this.request));
+    }
+
+    private void configureAsyncHandler() throws ConfigurationException {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", AsyncTestHandler.class.getName());
+        this.http.configure(config);
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+    }
+
+    @Test
+    public void testProcess_countsRequestsPerHandler() throws Exception {
+        this.testConfigure();
+        when(this.mockHandler.accepts(this.request)).thenReturn(true);
+        when(this.mockHandler.onGet(this.request)).thenReturn(this.response);
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+        final Counter requests = MetricsRegistry.getInstance().counter("http.requests");
+        final Counter handlerRequests = MetricsRegistry.getInstance().counter("http.handlers.TestHandler");
+        final long requestCount = requests.getCount();
+        final long handlerRequestCount = handlerRequests.getCount();
+
+        this.http.process(this.request);
+
+        assertEquals(requestCount + 1, requests.getCount());
+        assertEquals(handlerRequestCount + 1, handlerRequests.getCount());
+    }
+
+    @Test
+    public void testProcess_recordsHandlerLatency() throws Exception {
+        this.testConfigure();
+        when(this.mockHandler.accepts(this.request)).thenReturn(true);
+        when(this.mockHandler.onGet(this.request)).thenReturn(this.response);
+        when(this.request.getCommand()).thenReturn(HttpCommands.GET);
+        final Histogram latency = MetricsRegistry.getInstance().histogram("latency.handler.TestHandler.process");
+        final long count = latency.getCount();
+
+        this.http.process(this.request);
+
+        assertEquals(count + 1, latency.getCount());
+    }
+
+    @Test
+    public void testLogResponseLine_countsStatusCodes() throws Exception {
+        final Counter notFound = MetricsRegistry.getInstance().counter("http.responses.404");
+        final long count = notFound.getCount();
+
+        this.http.logResponseLine(new HttpHeader(HttpVersion.HTTP_1_1, HttpStatusCodes.NOT_FOUND));
+        this.http.logResponseLine(new HttpHeader(HttpVersion.HTTP_1_1, HttpStatusCodes.NOT_FOUND));
+
+        assertEquals(count + 2, notFound.getCount());
+    }
+
     @Test
     public void testProcess_HttpResponse() throws Exception {
         final HttpResponse response = mock(HttpResponse.class);
@@ -142,6 +329,176 @@ public class HTTPTest {
         verify(this.mockHandler).configure(any(HierarchicalConfiguration.class));
     }
 
+    @Test
+    public void testConfigure_routes() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", TestHandler.class.getName());
+        config.addProperty("handler.route", "");
+        config.addProperty("handler.route.@method", "get");
+        config.addProperty("handler.route.@path", "/api/**");
+        this.http.configure(config);
+        final HttpRequest routedRequest = new HttpRequest(HttpCommands.GET, URI.create("/api/items"),
+                HttpVersion.HTTP_1_1);
+        final HttpRequest otherRequest = new HttpRequest(HttpCommands.GET, URI.create("/index.html"),
+                HttpVersion.HTTP_1_1);
+        when(this.mockHandler.onGet(routedRequest)).thenReturn(this.response);
+
+        assertEquals(this.response, this.http.process(routedRequest));
+        assertEquals(HttpStatusCodes.NOT_IMPLEMENTED, this.http.process(otherRequest).getStatusCode());
+        // routed handlers are selected without checking acceptance
+        verify(this.mockHandler, never()).accepts(any(HttpRequest.class));
+    }
+
+    @Test
+    public void testConfigure_routesAndFallback() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", AsyncTestHandler.class.getName());
+        config.addProperty("handler.route.@path", "/async/*");
+        config.addProperty("handler(-1).@class", TestHandler.class.getName());
+        this.http.configure(config);
+        final HttpRequest routedRequest = new HttpRequest(HttpCommands.GET, URI.create("/async/items"),
+                HttpVersion.HTTP_1_1);
+        final HttpRequest otherRequest = new HttpRequest(HttpCommands.GET, URI.create("/index.html"),
+                HttpVersion.HTTP_1_1);
+        doReturn(CompletableFuture.completedFuture(this.response)).when(this.mockAsyncHandler).onGetAsync(
+                routedRequest);
+        when(this.mockHandler.accepts(otherRequest)).thenReturn(true);
+        final HttpResponse otherResponse = mock(HttpResponse.class);
+        when(this.mockHandler.onGet(otherRequest)).thenReturn(otherResponse);
+
+        assertEquals(this.response, this.http.process(routedRequest));
+        assertEquals(otherResponse, this.http.process(otherRequest));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testConfigure_invalidRouteMethod() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", TestHandler.class.getName());
+        config.addProperty("handler.route.@method", "FETCH");
+        this.http.configure(config);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testConfigure_invalidRoutePath() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", TestHandler.class.getName());
+        config.addProperty("handler.route.@path", "api/**");
+        this.http.configure(config);
+    }
+
+    @Test
+    public void testConfigure_accessLog() throws Exception {
+        final Path file = Files.createTempDirectory("accessLog").resolve("access.log");
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("accessLog.file", file.toUri().toString());
+        config.addProperty("accessLog.overflowPolicy", "block");
+        this.http.configure(config);
+        final HttpRequest request = new HttpRequest(HttpCommands.GET, URI.create("/a%20b.html?q=1"),
+                HttpVersion.HTTP_1_1);
+        final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+        response.addField(ResponseHeaders.CONTENT_LENGTH, "42");
+
+        this.http.logAccess(new InetSocketAddress("127.0.0.1", 4711), request, response,
+                TimeUnit.MILLISECONDS.toNanos(3));
+        this.http.logAccess(null, request, HTTP.createResponse(HttpStatusCodes.NO_CONTENT), 0);
+        // responses to invalid requests are not logged
+        this.http.logAccess(null, response, response, 0);
+        this.http.getAccessLog().close();
+
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith(" 127.0.0.1 GET /a%20b.html 200 42 3000"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(" - GET /a%20b.html 204 - 0"));
+    }
+
+    @Test
+    public void testConfigure_accessLogReconfigured() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("accessLog.file", Files.createTempDirectory("accessLog").resolve("access.log").toUri()
+                .toString());
+        this.http.configure(config);
+        final AccessLog first = this.http.getAccessLog();
+
+        this.http.configure(config);
+
+        assertNotSame(first, this.http.getAccessLog());
+        // the previous log has been closed
+        assertFalse(first.append(null, "GET", "/", 200, 0, 0));
+        this.http.getAccessLog().close();
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testConfigure_accessLogWithoutFile() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("accessLog.capacity", "16");
+        this.http.configure(config);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testConfigure_accessLogInvalidPolicy() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("accessLog.file", Files.createTempDirectory("accessLog").resolve("access.log").toUri()
+                .toString());
+        config.addProperty("accessLog.overflowPolicy", "wait");
+        this.http.configure(config);
+    }
+
+    @Test
+    public void testLogAccess_unknownStatus() throws Exception {
+        final Path file = Files.createTempDirectory("accessLog").resolve("access.log");
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("accessLog.file", file.toUri().toString());
+        this.http.configure(config);
+        final HttpRequest request = new HttpRequest(HttpCommands.GET, URI.create("/"), HttpVersion.HTTP_1_1);
+        final HttpResponse response = mock(HttpResponse.class, Answers.RETURNS_DEEP_STUBS.get());
+        when(response.getHeader().getStatusCode()).thenReturn(null);
+
+        this.http.logAccess(null, request, response, 0);
+        this.http.close();
+
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith(" - GET / - - 0"));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("accessLog.file", Files.createTempDirectory("accessLog").resolve("access.log").toUri()
+                .toString());
+        this.http.configure(config);
+        final AccessLog accessLog = this.http.getAccessLog();
+
+        this.http.close();
+
+        assertNull(this.http.getAccessLog());
+        assertFalse(accessLog.append(null, "GET", "/", 200, 0, 0));
+    }
+
+    @Test
+    public void testClose_closesHandlers() throws Exception {
+        final HierarchicalConfiguration config = new HierarchicalConfiguration();
+        config.addProperty("handler", "");
+        config.addProperty("handler.@class", TestHandler.class.getName());
+        config.addProperty("handler.route.@path", "/api/*");
+        this.http.configure(config);
+
+        this.http.close();
+
+        verify(this.mockHandler).close();
+    }
+
+    @Test
+    public void testLogAccess_noAccessLog() throws Exception {
+        this.http.logAccess(null, this.request, this.response, 0);
+
+        assertNull(this.http.getAccessLog());
+    }
+
     @Test
     public void testToHttpDate() throws Exception {
         final Calendar cal = Calendar.getInstance();
@@ -183,6 +540,15 @@ public class HTTPTest {
         assertEquals(1, cal.get(Calendar.SECOND));
     }
 
+    @Test
+    public void testCreateOverloadedResponse() throws Exception {
+        final HttpResponse response = this.http.createOverloadedResponse(5);
+
+        assertEquals(HttpStatusCodes.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("5", response.getHeader().getField(ResponseHeaders.RETRY_AFTER).getValue());
+        assertEquals("close", response.getHeader().getField(ResponseHeaders.CONNECTION).getValue());
+    }
+
     @Test
     public void testCreateResponse() throws Exception {
         final HttpResponse response = HTTP.createResponse(HttpStatusCodes.CONTINUE);
@@ -251,4 +617,17 @@ public class HTTPTest {
         assertEquals("timeout=3, max=257", headers.get(1).getValue());
 
     }
+
+    @Test
+    public void testGetKeepAliverHeaders_cached() throws Exception {
+        final List<HeaderField> headers = this.http.getKeepAliverHeaders(3, 257);
+
+        assertSame(headers, this.http.getKeepAliverHeaders(3, 257));
+        assertNotSame(headers, this.http.getKeepAliverHeaders(3, 256));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetKeepAliverHeaders_unmodifiable() throws Exception {
+        this.http.getKeepAliverHeaders(3, 257).get(0).setValue("close");
+    }
 }
@@ -5,7 +5,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -15,13 +17,23 @@ import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
-
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import li.moskito.awtt.metrics.LatencyHistograms;
+import li.moskito.awtt.metrics.RequestPhase;
 import li.moskito.awtt.protocol.CustomHeaderFieldDefinition;
 import li.moskito.awtt.protocol.HeaderField;
 import li.moskito.awtt.protocol.HeaderFieldDefinition;
 import li.moskito.awtt.protocol.Message;
 import li.moskito.awtt.protocol.MessageChannelOptions;
 import li.moskito.awtt.protocol.Protocol;
+import li.moskito.awtt.protocol.StreamingBody;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -46,6 +58,9 @@ public class HttpChannelTest {
         MockitoAnnotations.initMocks(this);
         when(this.outMessage.getCharset()).thenReturn(HTTP.CHARSET);
         when(this.outMessage.getBody()).thenReturn(null);
+        when(this.outMessage.getHeader().isResponse()).thenReturn(true);
+        when(this.outMessage.getHeader().getVersion()).thenReturn(HttpVersion.HTTP_1_1);
+        when(this.outMessage.getHeader().getStatusCode()).thenReturn(HttpStatusCodes.OK);
         this.httpChannel = new HttpChannel(this.protocol);
     }
 
@@ -62,7 +77,8 @@ public class HttpChannelTest {
         final String rawMessage = 
                 "GET / HTTP/1.1\r\n" 
               + "Connection: keep-alive\r\n" 
-              + "Host: localhost:80\r\n";
+              + "Host: localhost:80\r\n"
+              + "\r\n";
         // @formatter:on
 
         final ByteBuffer in = this.toByteBuffer(rawMessage);
@@ -107,7 +123,7 @@ public class HttpChannelTest {
     @Test
     public void testParseMessageByteBuffer_allCommands() throws Exception {
         for (final HttpCommands command : HttpCommands.values()) {
-            final ByteBuffer in = this.toByteBuffer(command + " /someFile HTTP/1.1");
+            final ByteBuffer in = this.toByteBuffer(command + " /someFile HTTP/1.1\r\n\r\n");
             final HttpRequest httpRequest = (HttpRequest) this.httpChannel.parseMessage(in);
             this.assertHttpRequest(command, new URI("/someFile"), HttpVersion.HTTP_1_1, httpRequest);
         }
@@ -116,7 +132,7 @@ public class HttpChannelTest {
     @Test
     public void testParseMessageByteBuffer_allVersions() throws Exception {
         for (final HttpVersion version : HttpVersion.values()) {
-            final ByteBuffer in = this.toByteBuffer("GET /someFile " + version);
+            final ByteBuffer in = this.toByteBuffer("GET /someFile " + version + "\r\n\r\n");
             final HttpRequest httpRequest = (HttpRequest) this.httpChannel.parseMessage(in);
             this.assertHttpRequest(HttpCommands.GET, new URI("/someFile"), version, httpRequest);
         }
@@ -125,7 +141,11 @@ public class HttpChannelTest {
     @Test
     public void testParseMessageByteBuffer_allStandardFields() throws Exception {
         for (final RequestHeaders fieldName : RequestHeaders.values()) {
-            final ByteBuffer in = this.toByteBuffer("GET /someFile HTTP/1.1\r\n" + fieldName + ": someValue");
+            if (fieldName == RequestHeaders.CONTENT_LENGTH || fieldName == RequestHeaders.TRANSFER_ENCODING) {
+                // the message framing fields are validated, see testWrite_requestWithContentLength ff.
+                continue;
+            }
+            final ByteBuffer in = this.toByteBuffer("GET /someFile HTTP/1.1\r\n" + fieldName + ": someValue\r\n\r\n");
             final HttpRequest httpRequest = (HttpRequest) this.httpChannel.parseMessage(in);
             final HeaderField field = httpRequest.getHeader().getField(fieldName);
             this.assertHeaderField(fieldName, "someValue", field);
@@ -136,7 +156,7 @@ public class HttpChannelTest {
     public void testParseMessageByteBuffer_unknownHeaderField() throws Exception {
         final HeaderFieldDefinition fieldName = CustomHeaderFieldDefinition.forName("Cookie");
 
-        final ByteBuffer in = this.toByteBuffer("GET /someFile HTTP/1.1\r\n" + fieldName + ": someValue");
+        final ByteBuffer in = this.toByteBuffer("GET /someFile HTTP/1.1\r\n" + fieldName + ": someValue\r\n\r\n");
         final HttpRequest httpRequest = (HttpRequest) this.httpChannel.parseMessage(in);
         final HeaderField field = httpRequest.getHeader().getField(fieldName);
         this.assertHeaderField(fieldName, "someValue", field);
@@ -151,7 +171,7 @@ public class HttpChannelTest {
 
     @Test(expected = HttpProtocolException.class)
     public void testParseMessageByteBuffer_invalidHeader_invalidField() throws Exception {
-        final ByteBuffer in = this.toByteBuffer("GET /someFile HTTP/1.1\r\nCookie");
+        final ByteBuffer in = this.toByteBuffer("GET /someFile HTTP/1.1\r\nCookie\r\n\r\n");
         this.httpChannel.parseMessage(in);
     }
 
@@ -170,6 +190,216 @@ public class HttpChannelTest {
         assertTrue(message.getHeader().getFields().isEmpty());
     }
 
+    @Test
+    public void testParseMessageByteBuffer_incompleteHeader() throws Exception {
+        assertNull(this.httpChannel.parseMessage(this.toByteBuffer("GET / HTTP/1.1\r\nHost: local")));
+
+        final HttpMessage message = this.httpChannel.parseMessage(this.toByteBuffer("host\r\n\r\n"));
+        assertNotNull(message);
+        assertEquals("localhost", message.getHeader().getField(RequestHeaders.HOST).getValue());
+    }
+
+    @Test
+    public void testWrite_pipelinedRequests() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n"));
+
+        assertEquals(new URI("/a"), ((HttpRequest) this.httpChannel.readMessage()).getResource());
+        assertEquals(new URI("/b"), ((HttpRequest) this.httpChannel.readMessage()).getResource());
+        assertNull(this.httpChannel.readMessage());
+    }
+
+    @Test
+    public void testWrite_splitRequest() throws Exception {
+        final ByteBuffer first = this.toByteBuffer("GET /a HTTP/1.1\r\nHo");
+        this.httpChannel.write(first);
+        assertFalse(first.hasRemaining());
+        assertFalse(this.httpChannel.hasMessage());
+
+        this.httpChannel.write(this.toByteBuffer("st: localhost\r\n\r\n"));
+        assertTrue(this.httpChannel.hasMessage());
+    }
+
+    @Test
+    public void testWrite_requestWithContentLength() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody"));
+
+        final HttpRequest request = (HttpRequest) this.httpChannel.readMessage();
+        assertEquals("body", this.readBody(request));
+    }
+
+    @Test
+    public void testWrite_requestWithSplitBody() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 8\r\n\r\nbo"));
+        assertFalse(this.httpChannel.hasMessage());
+
+        this.httpChannel.write(this.toByteBuffer("dy"));
+        assertFalse(this.httpChannel.hasMessage());
+
+        this.httpChannel.write(this.toByteBuffer("body"));
+        assertEquals("bodybody", this.readBody((HttpRequest) this.httpChannel.readMessage()));
+    }
+
+    @Test
+    public void testWrite_chunkedRequest() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "2\r\nbo\r\n2\r\ndy\r\n0\r\n\r\n"));
+
+        assertEquals("body", this.readBody((HttpRequest) this.httpChannel.readMessage()));
+    }
+
+    @Test
+    public void testClose_partialSpooledBody() throws Exception {
+        final Set<String> before = this.listSpoolFiles();
+        this.httpChannel.setOption(MessageChannelOptions.BODY_MEMORY_THRESHOLD, 4);
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "10\r\n0123456789abcdef\r\n"));
+        final Set<String> spooled = this.listSpoolFiles();
+        spooled.removeAll(before);
+        assertEquals(1, spooled.size());
+
+        // the client disconnects before the upload is complete
+        this.httpChannel.close();
+
+        assertFalse(this.listSpoolFiles().removeAll(spooled));
+    }
+
+    @Test
+    public void testClose_unprocessedSpooledBody() throws Exception {
+        final Set<String> before = this.listSpoolFiles();
+        this.httpChannel.setOption(MessageChannelOptions.BODY_MEMORY_THRESHOLD, 4);
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 8\r\n\r\nbodybody"));
+        final Set<String> spooled = this.listSpoolFiles();
+        spooled.removeAll(before);
+        assertEquals(1, spooled.size());
+
+        // the received request is not processed before the channel is closed
+        this.httpChannel.close();
+
+        assertFalse(this.listSpoolFiles().removeAll(spooled));
+    }
+
+    /**
+     * Lists the temporary files of spooled bodies that are held open by this process. The files are deleted from the
+     * directory when they are opened, so the open file descriptors are inspected.
+     */
+    private Set<String> listSpoolFiles() throws IOException {
+        final Path descriptors = Paths.get("/proc/self/fd");
+        assumeTrue(Files.isDirectory(descriptors));
+        final Set<String> files = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(descriptors)) {
+            for (final Path descriptor : stream) {
+                try {
+                    final String target = Files.readSymbolicLink(descriptor).toString();
+                    if (target.contains("awtt-body")) {
+                        files.add(target);
+                    }
+                } catch (final IOException e) {
+                    // the descriptor has been closed meanwhile
+                }
+            }
+        }
+        return files;
+    }
+
+    @Test
+    public void testWrite_pipelinedRequestAfterBody() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody"
+                + "GET /b HTTP/1.1\r\n\r\n"));
+
+        assertEquals("body", this.readBody((HttpRequest) this.httpChannel.readMessage()));
+        final HttpRequest second = (HttpRequest) this.httpChannel.readMessage();
+        assertEquals(new URI("/b"), second.getResource());
+        assertFalse(second.hasBody());
+    }
+
+    @Test
+    public void testWrite_emptyBody() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 0\r\n\r\n"));
+
+        assertFalse(this.httpChannel.readMessage().hasBody());
+    }
+
+    @Test
+    public void testWrite_expectContinue() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 4\r\n"
+                + "Expect: 100-continue\r\n\r\n"));
+        assertFalse(this.httpChannel.hasMessage());
+        assertTrue(this.httpChannel.hasPendingOutput());
+
+        final ByteBuffer out = ByteBuffer.allocate(1024);
+        this.httpChannel.read(out);
+        out.flip();
+        assertEquals("HTTP/1.1 100 Continue\r\n\r\n", HTTP.CHARSET.decode(out).toString());
+
+        this.httpChannel.write(this.toByteBuffer("body"));
+        assertEquals("body", this.readBody((HttpRequest) this.httpChannel.readMessage()));
+    }
+
+    @Test
+    public void testWrite_expectContinue_bodyAlreadyReceived() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 4\r\n"
+                + "Expect: 100-continue\r\n\r\nbody"));
+
+        assertFalse(this.httpChannel.hasPendingOutput());
+        assertTrue(this.httpChannel.hasMessage());
+    }
+
+    @Test
+    public void testWrite_unsupportedExpectation() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 4\r\n"
+                + "Expect: something\r\n\r\nbody"));
+
+        assertEquals(HttpStatusCodes.EXPECTATION_FAILED,
+                ((HttpResponse) this.httpChannel.readMessage()).getStatusCode());
+    }
+
+    @Test
+    public void testWrite_bodyTooLarge() throws Exception {
+        this.httpChannel.setOption(MessageChannelOptions.MAX_BODY_SIZE, 3L);
+
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody"));
+
+        assertEquals(HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE,
+                ((HttpResponse) this.httpChannel.readMessage()).getStatusCode());
+    }
+
+    @Test
+    public void testWrite_unsupportedTransferEncoding() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n"));
+
+        assertEquals(HttpStatusCodes.NOT_IMPLEMENTED,
+                ((HttpResponse) this.httpChannel.readMessage()).getStatusCode());
+    }
+
+    @Test
+    public void testWrite_invalidContentLength() throws Exception {
+        this.httpChannel.write(this.toByteBuffer("POST /a HTTP/1.1\r\nContent-Length: abc\r\n\r\n"));
+
+        assertEquals(HttpStatusCodes.BAD_REQUEST, ((HttpResponse) this.httpChannel.readMessage()).getStatusCode());
+    }
+
+    @Test
+    public void testRead_chunkedResponse() throws Exception {
+        final StreamingBody body = new StreamingBody();
+        body.getSink().write(this.toByteBuffer("body"));
+        body.getSink().close();
+        final HttpResponse response = new HttpResponse(HttpStatusCodes.OK);
+        response.addField(ResponseHeaders.TRANSFER_ENCODING, "chunked");
+        response.setBody(body);
+        when(this.protocol.isClosedByHeader(any(HttpHeader.class))).thenReturn(true);
+
+        this.httpChannel.write(response);
+        final ByteBuffer out = ByteBuffer.allocate(1024);
+        while (this.httpChannel.read(out) != -1) {
+            // read until the response has been written completely
+        }
+        out.flip();
+
+        // the chunk size is padded to the number of hex digits of the remaining space of the buffer
+        assertEquals("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "004\r\nbody\r\n0\r\n\r\n", HTTP.CHARSET.decode(out).toString());
+    }
+
     @Test
     public void testSerializeHeader_Header_Simple() throws Exception {
 
@@ -208,6 +438,21 @@ public class HttpChannelTest {
 
     }
 
+    @Test
+    public void testWriteHeader() throws Exception {
+        final HttpHeader header = new HttpHeader(HttpStatusCodes.NOT_FOUND);
+        header.addField(new HttpHeaderField(ResponseHeaders.CONNECTION, "close"));
+        when(this.protocol.isClosedByHeader(header)).thenReturn(true);
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        final int length = this.httpChannel.writeHeader(header, buffer, HTTP.CHARSET);
+
+        buffer.flip();
+        final String expectedHeader = "HTTP/1.1 404 Not Found\r\nConnection: close\r\n\r\n";
+        assertEquals(expectedHeader, HTTP.CHARSET.decode(buffer).toString());
+        assertEquals(expectedHeader.length(), length);
+    }
+
     @Test
     public void testHttpChannel() throws Exception {
         final HTTP protocol = mock(HTTP.class);
@@ -218,7 +463,8 @@ public class HttpChannelTest {
 
     @Test
     public void testProcessMessages_andCloseAfterwardsByRequest() throws Exception {
-        when(this.protocol.process(any(Message.class))).thenReturn(this.outMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(
+                any(Message.class));
 
         when(this.protocol.isClosedByRequest(any(Message.class))).thenReturn(true);
         this.httpChannel.setOption(MessageChannelOptions.KEEP_ALIVE_MAX_MESSAGES, 100);
@@ -231,7 +477,8 @@ public class HttpChannelTest {
 
     @Test
     public void testProcessMessages_andCloseAfterwardsByResponse() throws Exception {
-        when(this.protocol.process(any(Message.class))).thenReturn(this.outMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(
+                any(Message.class));
 
         when(this.protocol.isClosedByHeader(this.outMessage.getHeader())).thenReturn(true);
         when(this.protocol.isClosedByRequest(any(Message.class))).thenReturn(false);
@@ -245,7 +492,8 @@ public class HttpChannelTest {
 
     @Test
     public void testProcessMessages_andCloseAfterwardsByMessageCount() throws Exception {
-        when(this.protocol.process(any(Message.class))).thenReturn(this.outMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(
+                any(Message.class));
 
         when(this.protocol.isClosedByHeader(this.outMessage.getHeader())).thenReturn(false);
         when(this.protocol.isClosedByRequest(any(Message.class))).thenReturn(false);
@@ -259,7 +507,8 @@ public class HttpChannelTest {
 
     @Test
     public void testProcessMessages_andCloseAfterwardsByTimeOut() throws Exception {
-        when(this.protocol.process(any(Message.class))).thenReturn(this.outMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(
+                any(Message.class));
 
         when(this.protocol.isClosedByHeader(this.outMessage.getHeader())).thenReturn(false);
         when(this.protocol.isClosedByRequest(any(Message.class))).thenReturn(false);
@@ -273,7 +522,8 @@ public class HttpChannelTest {
 
     @Test
     public void testProcessMessages_andRemainOpen() throws Exception {
-        when(this.protocol.process(any(Message.class))).thenReturn(this.outMessage);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(
+                any(Message.class));
 
         when(this.protocol.isClosedByHeader(this.outMessage.getHeader())).thenReturn(false);
         when(this.protocol.isClosedByRequest(any(Message.class))).thenReturn(false);
@@ -285,12 +535,34 @@ public class HttpChannelTest {
         assertTrue(this.httpChannel.isOpen());
     }
 
+    @Test
+    public void testProcessMessages_recordsSerializeLatency() throws Exception {
+        final LatencyHistograms latencies = LatencyHistograms.forPort(-2);
+        final long count = latencies.get(RequestPhase.SERIALIZE).getCount();
+        this.httpChannel.setLatencyHistograms(latencies);
+        doReturn(CompletableFuture.completedFuture(this.outMessage)).when(this.protocol).processAsync(
+                any(Message.class));
+
+        this.doProcessMessage();
+
+        assertEquals(count + 1, latencies.get(RequestPhase.SERIALIZE).getCount());
+    }
+
     private void doProcessMessage() throws IOException {
-        this.httpChannel.write(this.toByteBuffer("GET / HTTP/1.1\r\n"));
+        this.httpChannel.write(this.toByteBuffer("GET / HTTP/1.1\r\n\r\n"));
         this.httpChannel.processMessages();
         this.httpChannel.read(ByteBuffer.allocate(1024));
     }
 
+    private String readBody(final HttpRequest request) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (request.getBody().getByteChannel().read(buffer) != -1) {
+            // read until the end of the body
+        }
+        buffer.flip();
+        return HTTP.CHARSET.decode(buffer).toString();
+    }
+
     private ByteBuffer toByteBuffer(final String rawMessage) {
         final ByteBuffer in = StandardCharsets.ISO_8859_1.encode(rawMessage);
         return in;
@@ -0,0 +1,93 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import li.moskito.awtt.protocol.HeaderField;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpDateTest {
+
+    private SimpleDateFormat referenceFormat;
+
+    @Before
+    public void setUp() throws Exception {
+        this.referenceFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+        this.referenceFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpDate.format(0));
+        assertEquals("Thu, 08 May 2014 13:49:01 GMT", HttpDate.format(1399556941999L));
+        assertEquals("Tue, 29 Feb 2000 23:59:59 GMT", HttpDate.format(951868799000L));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", HttpDate.format(-1));
+    }
+
+    @Test
+    public void testFormat_compareWithDateFormat() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final long millis = (long) (random.nextDouble() * 4102444800000L);
+            assertEquals(this.referenceFormat.format(new Date(millis)), HttpDate.format(millis));
+        }
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        assertEquals(1399556941000L, HttpDate.parse("Thu, 08 May 2014 13:49:01 GMT"));
+        assertEquals(1399556941000L, HttpDate.parse("Thu, 8 May 2014 13:49:01 GMT"));
+        assertEquals(0, HttpDate.parse("Thu, 01 Jan 1970 00:00:00 GMT"));
+        assertEquals(951868799000L, HttpDate.parse("Tue, 29 Feb 2000 23:59:59 GMT"));
+    }
+
+    @Test
+    public void testParse_roundtrip() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final long millis = (long) (random.nextDouble() * 4102444800L) * 1000;
+            assertEquals(millis, HttpDate.parse(HttpDate.format(millis)));
+        }
+    }
+
+    @Test
+    public void testParse_invalid() throws Exception {
+        assertEquals(HttpDate.INVALID, HttpDate.parse(null));
+        assertEquals(HttpDate.INVALID, HttpDate.parse(""));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thursday, 08-May-14 13:49:01 GMT"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu May  8 13:49:01 2014"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 08 Foo 2014 13:49:01 GMT"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 32 May 2014 13:49:01 GMT"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 08 May 2014 24:49:01 GMT"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 08 May 2014 13:49:01 CET"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 08 May 2014 13-49-01 GMT"));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 08 May 20x4 13:49:01 GMT"));
+    }
+
+    @Test
+    public void testNow() throws Exception {
+        final long before = System.currentTimeMillis() / 1000 * 1000;
+        final long now = HttpDate.parse(HttpDate.now());
+        final long after = System.currentTimeMillis();
+
+        assertTrue(now >= before);
+        assertTrue(now <= after);
+    }
+
+    @Test
+    public void testCurrentDateField() throws Exception {
+        final HeaderField field = HttpDate.currentDateField();
+
+        assertSame(ResponseHeaders.DATE, field.getHeaderFieldDefinition());
+        assertTrue(Math.abs(HttpDate.parse((String) field.getValue()) - System.currentTimeMillis()) < 2000);
+    }
+}
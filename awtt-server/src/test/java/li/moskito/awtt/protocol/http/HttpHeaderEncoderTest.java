@@ -0,0 +1,97 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import li.moskito.awtt.protocol.CustomHeaderFieldDefinition;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpHeaderEncoderTest {
+
+    private ByteBuffer buffer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.buffer = ByteBuffer.allocate(1024);
+    }
+
+    @Test
+    public void testEncode_statusLine() throws Exception {
+        for (final HttpVersion version : HttpVersion.values()) {
+            for (final HttpStatusCodes statusCode : HttpStatusCodes.values()) {
+                this.buffer.clear();
+                final int length = HttpHeaderEncoder.encode(new HttpHeader(version, statusCode), this.buffer);
+
+                final String expected = version + " " + statusCode.getCode() + " " + statusCode.getReason()
+                        + "\r\n\r\n";
+                assertEquals(expected, this.toString(this.buffer));
+                assertEquals(expected.length(), length);
+            }
+        }
+    }
+
+    @Test
+    public void testEncode_withFields() throws Exception {
+        final HttpHeader header = new HttpHeader(HttpStatusCodes.OK);
+        header.addField(new HttpHeaderField(ResponseHeaders.CONTENT_TYPE, "text/plain"));
+        header.addField(new HttpHeaderField(RequestHeaders.HOST, "localhost"));
+        header.addField(new HttpHeaderField(CustomHeaderFieldDefinition.forName("X-Custom"), "value"));
+        header.addField(new HttpHeaderField(ResponseHeaders.SERVER));
+
+        HttpHeaderEncoder.encode(header, this.buffer);
+
+        //@formatter:off
+        assertEquals("HTTP/1.1 200 OK\r\n"
+                   + "Content-Type: text/plain\r\n"
+                   + "Host: localhost\r\n"
+                   + "X-Custom: value\r\n"
+                   + "Server: \r\n"
+                   + "\r\n", this.toString(this.buffer));
+        // @formatter:on
+    }
+
+    @Test
+    public void testEncode_requestLine() throws Exception {
+        final HttpHeader header = new HttpHeader(HttpVersion.HTTP_1_0, HttpCommands.GET, new URI("/index.html"));
+        header.addField(new HttpHeaderField(RequestHeaders.HOST, "localhost"));
+
+        HttpHeaderEncoder.encode(header, this.buffer);
+
+        assertEquals("GET /index.html HTTP/1.0\r\nHost: localhost\r\n\r\n", this.toString(this.buffer));
+    }
+
+    @Test
+    public void testEncode_unmappableCharacter() throws Exception {
+        final HttpHeader header = new HttpHeader(HttpStatusCodes.OK);
+        header.addField(new HttpHeaderField(ResponseHeaders.LOCATION, "/ä€"));
+
+        HttpHeaderEncoder.encode(header, this.buffer);
+
+        assertEquals("HTTP/1.1 200 OK\r\nLocation: /ä?\r\n\r\n", this.toString(this.buffer));
+    }
+
+    @Test
+    public void testEncode_encodedField() throws Exception {
+        final HttpHeader header = new HttpHeader(HttpStatusCodes.OK);
+        header.addField(new EncodedHeaderField(ResponseHeaders.CONNECTION, "Keep-Alive"));
+
+        HttpHeaderEncoder.encode(header, this.buffer);
+
+        assertEquals("HTTP/1.1 200 OK\r\nConnection: Keep-Alive\r\n\r\n", this.toString(this.buffer));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testEncode_bufferTooSmall() throws Exception {
+        HttpHeaderEncoder.encode(new HttpHeader(HttpStatusCodes.OK), ByteBuffer.allocate(10));
+    }
+
+    private String toString(final ByteBuffer buffer) {
+        buffer.flip();
+        return HTTP.CHARSET.decode(buffer).toString();
+    }
+}
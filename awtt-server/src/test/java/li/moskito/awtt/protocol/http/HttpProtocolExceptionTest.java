@@ -36,6 +36,15 @@ public class HttpProtocolExceptionTest {
     public void testHttpProtocolExceptionString() throws Exception {
         final HttpProtocolException x = new HttpProtocolException("aMessage");
         assertEquals("aMessage", x.getMessage());
+        assertEquals(HttpStatusCodes.BAD_REQUEST, x.getStatusCode());
+    }
+
+    @Test
+    public void testHttpProtocolExceptionStringStatusCode() throws Exception {
+        final HttpProtocolException x = new HttpProtocolException("aMessage",
+                HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE);
+        assertEquals("aMessage", x.getMessage());
+        assertEquals(HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE, x.getStatusCode());
     }
 
     @Test
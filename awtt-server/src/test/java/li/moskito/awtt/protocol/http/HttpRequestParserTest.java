@@ -0,0 +1,209 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import li.moskito.awtt.protocol.CustomHeaderFieldDefinition;
+import li.moskito.awtt.protocol.HeaderField;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpRequestParserTest {
+
+    //@formatter:off
+    private static final String REQUEST =
+            "GET /index.html?q=1 HTTP/1.1\r\n"
+          + "Host: localhost:80\r\n"
+          + "Connection: keep-alive\r\n"
+          + "X-Custom: some value\r\n"
+          + "\r\n";
+    // @formatter:on
+
+    private HttpRequestParser subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new HttpRequestParser();
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        final ByteBuffer in = this.toByteBuffer(REQUEST);
+
+        final HttpRequest request = this.subject.parse(in);
+
+        this.assertRequest(request);
+        assertFalse(in.hasRemaining());
+        assertFalse(this.subject.hasPartialRequest());
+    }
+
+    @Test
+    public void testParse_splitAtEveryPosition() throws Exception {
+        final byte[] data = REQUEST.getBytes(StandardCharsets.ISO_8859_1);
+        for (int split = 1; split < data.length; split++) {
+            final ByteBuffer first = ByteBuffer.wrap(data, 0, split);
+            assertNull("split at " + split, this.subject.parse(first));
+            assertFalse(first.hasRemaining());
+            assertTrue(this.subject.hasPartialRequest());
+
+            final HttpRequest request = this.subject.parse(ByteBuffer.wrap(data, split, data.length - split));
+            this.assertRequest(request);
+        }
+    }
+
+    @Test
+    public void testParse_byteByByte() throws Exception {
+        final byte[] data = REQUEST.getBytes(StandardCharsets.ISO_8859_1);
+        HttpRequest request = null;
+        for (final byte b : data) {
+            assertNull(request);
+            request = this.subject.parse(ByteBuffer.wrap(new byte[] { b }));
+        }
+        this.assertRequest(request);
+    }
+
+    @Test
+    public void testParse_pipelined() throws Exception {
+        final ByteBuffer in = this.toByteBuffer(REQUEST + "HEAD /other HTTP/1.0\r\n\r\nGET");
+
+        this.assertRequest(this.subject.parse(in));
+        assertTrue(in.hasRemaining());
+
+        final HttpRequest second = this.subject.parse(in);
+        assertNotNull(second);
+        assertEquals(HttpCommands.HEAD, second.getCommand());
+        assertEquals(new URI("/other"), second.getResource());
+        assertEquals(HttpVersion.HTTP_1_0, second.getHeader().getVersion());
+
+        assertNull(this.subject.parse(in));
+        assertFalse(in.hasRemaining());
+        assertTrue(this.subject.hasPartialRequest());
+    }
+
+    @Test
+    public void testParse_lineFeedOnly() throws Exception {
+        final HttpRequest request = this.subject.parse(this.toByteBuffer(REQUEST.replace("\r\n", "\n")));
+
+        this.assertRequest(request);
+    }
+
+    @Test
+    public void testParse_leadingEmptyLines() throws Exception {
+        final ByteBuffer in = this.toByteBuffer("\r\n\n\r\n");
+
+        assertNull(this.subject.parse(in));
+        assertFalse(this.subject.hasPartialRequest());
+
+        this.assertRequest(this.subject.parse(this.toByteBuffer("\r\n" + REQUEST)));
+    }
+
+    @Test
+    public void testParse_whitespaceAroundValue() throws Exception {
+        final HttpRequest request = this.subject.parse(this.toByteBuffer(
+                "GET / HTTP/1.1\r\nHost: \t localhost \t\r\n\r\n"));
+
+        assertEquals("localhost", request.getHeader().getField(RequestHeaders.HOST).getValue());
+    }
+
+    @Test
+    public void testParse_emptyValue() throws Exception {
+        final HttpRequest request = this.subject.parse(this.toByteBuffer("GET / HTTP/1.1\r\nHost:\r\n\r\n"));
+
+        assertEquals("", request.getHeader().getField(RequestHeaders.HOST).getValue());
+    }
+
+    @Test
+    public void testParse_caseInsensitiveFieldName() throws Exception {
+        final HttpRequest request = this.subject.parse(this.toByteBuffer("GET / HTTP/1.1\r\nHOST: localhost\r\n\r\n"));
+
+        final HeaderField field = request.getHeader().getField(RequestHeaders.HOST);
+        assertNotNull(field);
+        assertSame(RequestHeaders.HOST, field.getHeaderFieldDefinition());
+    }
+
+    @Test
+    public void testParse_headerTooLarge() throws Exception {
+        this.subject = new HttpRequestParser(32);
+
+        try {
+            this.subject.parse(this.toByteBuffer(REQUEST));
+            fail("HttpProtocolException expected");
+        } catch (final HttpProtocolException e) {
+            // expected
+        }
+        assertFalse(this.subject.hasPartialRequest());
+        this.assertInvalid("GET / HTTP/1.1\r\n\r\n", false);
+    }
+
+    @Test
+    public void testParse_resetAfterError() throws Exception {
+        this.assertInvalid("FIND / HTTP/1.1\r\n\r\n", true);
+
+        this.assertRequest(this.subject.parse(this.toByteBuffer(REQUEST)));
+    }
+
+    @Test
+    public void testParse_invalidRequests() throws Exception {
+        this.assertInvalid("get / HTTP/1.1\r\n\r\n", true);
+        this.assertInvalid("GET / HTTP/1.1 \r\n\r\n", true);
+        this.assertInvalid("GET /\r\n\r\n", true);
+        this.assertInvalid("GET / HTTP/1.1\rX", true);
+        this.assertInvalid("GET / HTTP/1.1\r\nHost : localhost\r\n\r\n", true);
+        this.assertInvalid("GET / HTTP/1.1\r\n: localhost\r\n\r\n", true);
+        this.assertInvalid("GET / HTTP/1.1\r\nHost\r\n\r\n", true);
+        this.assertInvalid("GET / HTTP/1.1\r\nHost: a\r\n folded\r\n\r\n", true);
+        this.assertInvalid("GET / HTTP/1.1\r\nHost: a\r\n\rX", true);
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        this.subject.parse(this.toByteBuffer("GET / HT"));
+        assertTrue(this.subject.hasPartialRequest());
+
+        this.subject.reset();
+
+        assertFalse(this.subject.hasPartialRequest());
+        this.assertRequest(this.subject.parse(this.toByteBuffer(REQUEST)));
+    }
+
+    private void assertInvalid(final String rawMessage, final boolean expectException) {
+        try {
+            this.subject.parse(this.toByteBuffer(rawMessage));
+            if (expectException) {
+                fail("HttpProtocolException expected for " + rawMessage);
+            }
+        } catch (final HttpProtocolException e) {
+            if (!expectException) {
+                fail("Unexpected exception " + e);
+            }
+            assertFalse(this.subject.hasPartialRequest());
+        }
+    }
+
+    private void assertRequest(final HttpRequest request) throws Exception {
+        assertNotNull(request);
+        assertEquals(HttpCommands.GET, request.getCommand());
+        assertEquals(new URI("/index.html?q=1"), request.getResource());
+        assertEquals(HttpVersion.HTTP_1_1, request.getHeader().getVersion());
+        assertEquals(HTTP.CHARSET, request.getCharset());
+        assertEquals(3, request.getHeader().getFields().size());
+        assertEquals("localhost:80", request.getHeader().getField(RequestHeaders.HOST).getValue());
+        assertEquals("keep-alive", request.getHeader().getField(RequestHeaders.CONNECTION).getValue());
+        assertEquals("some value", request.getHeader().getField(CustomHeaderFieldDefinition.forName("X-Custom"))
+                .getValue());
+    }
+
+    private ByteBuffer toByteBuffer(final String rawMessage) {
+        return StandardCharsets.ISO_8859_1.encode(rawMessage);
+    }
+}
@@ -0,0 +1,177 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpRequestRouterTest {
+
+    private HttpProtocolHandler handler1;
+    private HttpProtocolHandler handler2;
+    private HttpProtocolHandler handler3;
+
+    private HttpRequestRouter subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.handler1 = new HttpProtocolHandler();
+        this.handler2 = new HttpProtocolHandler();
+        this.handler3 = new HttpProtocolHandler();
+        this.subject = new HttpRequestRouter();
+    }
+
+    private HttpRequest request(final HttpCommands command, final String resource) {
+        return new HttpRequest(command, URI.create(resource), HttpVersion.HTTP_1_1);
+    }
+
+    private HttpRequest request(final String resource) {
+        return this.request(HttpCommands.GET, resource);
+    }
+
+    @Test
+    public void testRoute_noRoutes() throws Exception {
+        assertNull(this.subject.route(this.request("/index.html")));
+    }
+
+    @Test
+    public void testRoute_exactPath() throws Exception {
+        this.subject.addRoute(null, null, "/static/index.html", this.handler1);
+
+        assertSame(this.handler1, this.subject.route(this.request("/static/index.html")));
+        assertNull(this.subject.route(this.request("/static/other.html")));
+        assertNull(this.subject.route(this.request("/static")));
+        assertNull(this.subject.route(this.request("/static/index.html/more")));
+    }
+
+    @Test
+    public void testRoute_root() throws Exception {
+        this.subject.addRoute(null, null, "/", this.handler1);
+
+        assertSame(this.handler1, this.subject.route(this.request("/")));
+        assertNull(this.subject.route(this.request("/index.html")));
+    }
+
+    @Test
+    public void testRoute_prefix() throws Exception {
+        this.subject.addRoute(null, null, "/static/**", this.handler1);
+
+        assertSame(this.handler1, this.subject.route(this.request("/static")));
+        assertSame(this.handler1, this.subject.route(this.request("/static/")));
+        assertSame(this.handler1, this.subject.route(this.request("/static/css/site.css")));
+        assertNull(this.subject.route(this.request("/staticfiles/site.css")));
+    }
+
+    @Test
+    public void testRoute_wildcardSegment() throws Exception {
+        this.subject.addRoute(null, null, "/users/*/profile", this.handler1);
+
+        assertSame(this.handler1, this.subject.route(this.request("/users/42/profile")));
+        assertNull(this.subject.route(this.request("/users/42/settings")));
+        assertNull(this.subject.route(this.request("/users/profile")));
+    }
+
+    @Test
+    public void testRoute_mostSpecificWins() throws Exception {
+        this.subject.addRoute(null, null, "/**", this.handler1);
+        this.subject.addRoute(null, null, "/api/**", this.handler2);
+        this.subject.addRoute(null, null, "/api/*/items", this.handler3);
+
+        assertSame(this.handler1, this.subject.route(this.request("/index.html")));
+        assertSame(this.handler2, this.subject.route(this.request("/api/v1/orders")));
+        assertSame(this.handler3, this.subject.route(this.request("/api/v1/items")));
+    }
+
+    @Test
+    public void testRoute_literalBeforeWildcard() throws Exception {
+        this.subject.addRoute(null, null, "/users/*", this.handler1);
+        this.subject.addRoute(null, null, "/users/me", this.handler2);
+
+        assertSame(this.handler2, this.subject.route(this.request("/users/me")));
+        assertSame(this.handler1, this.subject.route(this.request("/users/42")));
+    }
+
+    @Test
+    public void testRoute_exactBeforePrefix() throws Exception {
+        this.subject.addRoute(null, null, "/docs/**", this.handler1);
+        this.subject.addRoute(null, null, "/docs", this.handler2);
+
+        assertSame(this.handler2, this.subject.route(this.request("/docs")));
+        assertSame(this.handler1, this.subject.route(this.request("/docs/index.html")));
+    }
+
+    @Test
+    public void testRoute_tieResolvedByOrder() throws Exception {
+        this.subject.addRoute(null, null, "/static/**", this.handler1);
+        this.subject.addRoute(null, null, "/static/**", this.handler2);
+
+        assertSame(this.handler1, this.subject.route(this.request("/static/site.css")));
+    }
+
+    @Test
+    public void testRoute_method() throws Exception {
+        this.subject.addRoute(HttpCommands.GET, null, "/items/**", this.handler1);
+        this.subject.addRoute(HttpCommands.POST, null, "/items/**", this.handler2);
+
+        assertSame(this.handler1, this.subject.route(this.request(HttpCommands.GET, "/items/1")));
+        assertSame(this.handler2, this.subject.route(this.request(HttpCommands.POST, "/items/1")));
+        assertNull(this.subject.route(this.request(HttpCommands.DELETE, "/items/1")));
+    }
+
+    @Test
+    public void testRoute_host() throws Exception {
+        this.subject.addRoute(null, "Example.com", "/**", this.handler1);
+        this.subject.addRoute(null, null, "/**", this.handler2);
+        final HttpRequest request = this.request("/index.html");
+        request.addField(RequestHeaders.HOST, "example.COM:8080");
+        final HttpRequest otherRequest = this.request("/index.html");
+        otherRequest.addField(RequestHeaders.HOST, "other.com");
+
+        assertSame(this.handler1, this.subject.route(request));
+        assertSame(this.handler2, this.subject.route(otherRequest));
+        assertSame(this.handler2, this.subject.route(this.request("/index.html")));
+    }
+
+    @Test
+    public void testRoute_hostOfAbsoluteUri() throws Exception {
+        this.subject.addRoute(null, "example.com", "/**", this.handler1);
+
+        assertSame(this.handler1, this.subject.route(this.request("http://example.com:8080/index.html")));
+    }
+
+    @Test
+    public void testRoute_ipv6Host() throws Exception {
+        this.subject.addRoute(null, "[::1]", "/**", this.handler1);
+        final HttpRequest request = this.request("/index.html");
+        request.addField(RequestHeaders.HOST, "[::1]:8080");
+
+        assertSame(this.handler1, this.subject.route(request));
+    }
+
+    @Test
+    public void testRoute_emptySegmentsIgnored() throws Exception {
+        this.subject.addRoute(null, null, "/static/css", this.handler1);
+
+        assertSame(this.handler1, this.subject.route(this.request("/static//css/")));
+    }
+
+    @Test
+    public void testRoute_asteriskForm() throws Exception {
+        this.subject.addRoute(null, null, "/**", this.handler1);
+
+        assertNull(this.subject.route(this.request(HttpCommands.OPTIONS, "*")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddRoute_relativePath() throws Exception {
+        this.subject.addRoute(null, null, "static/**", this.handler1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddRoute_prefixNotLast() throws Exception {
+        this.subject.addRoute(null, null, "/static/**/css", this.handler1);
+    }
+}
@@ -14,10 +14,13 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-        ContentTypeTest.class, HttpChannelTest.class, HttpHeaderFieldTest.class, HttpHeaderTest.class,
-        HttpMessageTest.class, HttpProtocolExceptionTest.class, HttpProtocolHandlerTest.class, HttpRequestTest.class,
-        HttpResponseTest.class, HttpStatusCodesTest.class, HTTPTest.class, RequestHeadersTest.class,
-        ResponseHeadersTest.class, MessageChannelOptionsTest.class
+        AsyncHttpProtocolHandlerTest.class, ByteRangeTest.class, ChunkedEncoderTest.class, ContentCodingTest.class,
+        ContentTypeTest.class, EntityTagTest.class, HttpChannelTest.class, HttpDateTest.class,
+        HttpHeaderEncoderTest.class, HttpHeaderFieldTest.class, HttpHeaderTest.class, HttpMessageTest.class,
+        HttpProtocolExceptionTest.class, HttpProtocolHandlerTest.class, HttpRequestParserTest.class,
+        HttpRequestRouterTest.class, HttpRequestTest.class, HttpResponseTest.class, HttpStatusCodesTest.class,
+        HTTPTest.class, RequestBodyDecoderTest.class, RequestHeadersTest.class, ResponseHeadersTest.class,
+        MessageChannelOptionsTest.class
 })
 public class HttpTestSuite {
 
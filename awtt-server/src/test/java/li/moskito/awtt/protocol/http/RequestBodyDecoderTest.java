@@ -0,0 +1,144 @@
+package li.moskito.awtt.protocol.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import li.moskito.awtt.protocol.SpoolingBody;
+
+import org.junit.Test;
+
+public class RequestBodyDecoderTest {
+
+    @Test
+    public void testDecode_fixedLength() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.fixedLength(10, 1024);
+
+        assertTrue(subject.decode(this.toByteBuffer("0123456789")));
+
+        assertEquals("0123456789", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_fixedLength_split() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.fixedLength(10, 1024);
+
+        assertFalse(subject.decode(this.toByteBuffer("0123")));
+        assertTrue(subject.decode(this.toByteBuffer("456789")));
+
+        assertEquals("0123456789", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_fixedLength_pipelined() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.fixedLength(4, 1024);
+        final ByteBuffer src = this.toByteBuffer("0123GET");
+
+        assertTrue(subject.decode(src));
+
+        assertEquals("GET", HTTP.CHARSET.decode(src).toString());
+        assertEquals("0123", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_chunked() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+
+        assertTrue(subject.decode(this.toByteBuffer("4\r\n0123\r\nA\r\n456789abcd\r\n0\r\n\r\n")));
+
+        assertEquals("0123456789abcd", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_chunked_byteByByte() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+        final byte[] data = "4\r\n0123\r\n2\r\n45\r\n0\r\n\r\n".getBytes(HTTP.CHARSET);
+
+        for (int i = 0; i < data.length - 1; i++) {
+            assertFalse(subject.decode(ByteBuffer.wrap(data, i, 1)));
+        }
+        assertTrue(subject.decode(ByteBuffer.wrap(data, data.length - 1, 1)));
+
+        assertEquals("012345", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_chunked_extensionsAndTrailer() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+
+        assertTrue(subject.decode(this.toByteBuffer("4;name=value\r\n0123\r\n0\r\nExpires: never\r\n\r\n")));
+
+        assertEquals("0123", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_chunked_bareLineFeeds() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+
+        assertTrue(subject.decode(this.toByteBuffer("4\n0123\n0\n\n")));
+
+        assertEquals("0123", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_chunked_pipelined() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+        final ByteBuffer src = this.toByteBuffer("2\r\n01\r\n0\r\n\r\nGET");
+
+        assertTrue(subject.decode(src));
+
+        assertEquals("GET", HTTP.CHARSET.decode(src).toString());
+    }
+
+    @Test
+    public void testDecode_chunked_spooled() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 4);
+
+        assertTrue(subject.decode(this.toByteBuffer("4\r\n0123\r\n4\r\n4567\r\n0\r\n\r\n")));
+
+        assertTrue(subject.getBody().isSpooled());
+        assertEquals("01234567", this.readContent(subject.getBody()));
+    }
+
+    @Test
+    public void testDecode_chunked_tooLarge() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(6, 1024);
+
+        try {
+            subject.decode(this.toByteBuffer("4\r\n0123\r\n4\r\n4567\r\n0\r\n\r\n"));
+            fail("HttpProtocolException expected");
+        } catch (final HttpProtocolException e) {
+            assertEquals(HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE, e.getStatusCode());
+        }
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void testDecode_chunked_invalidSize() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+
+        subject.decode(this.toByteBuffer("x\r\n0123\r\n"));
+    }
+
+    @Test(expected = HttpProtocolException.class)
+    public void testDecode_chunked_missingLineBreak() throws Exception {
+        final RequestBodyDecoder subject = RequestBodyDecoder.chunked(1024, 1024);
+
+        subject.decode(this.toByteBuffer("2\r\n0123\r\n"));
+    }
+
+    private ByteBuffer toByteBuffer(final String data) {
+        return ByteBuffer.wrap(data.getBytes(HTTP.CHARSET));
+    }
+
+    private String readContent(final SpoolingBody body) throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (body.getByteChannel().read(buffer) != -1) {
+            // read until the end of the body
+        }
+        buffer.flip();
+        return HTTP.CHARSET.decode(buffer).toString();
+    }
+}
@@ -1,6 +1,9 @@
 package li.moskito.awtt.protocol.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
@@ -16,6 +19,18 @@ public class RequestHeadersTest {
         assertEquals(RequestHeaders.CONNECTION, RequestHeaders.fromString("Connection"));
     }
 
+    @Test
+    public void testFromString_caseInsensitive() throws Exception {
+        assertEquals(RequestHeaders.CONNECTION, RequestHeaders.fromString("CONNECTION"));
+    }
+
+    @Test
+    public void testFromBytes() throws Exception {
+        final byte[] name = "connection".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(RequestHeaders.CONNECTION, RequestHeaders.fromBytes(name, 0, name.length));
+        assertNull(RequestHeaders.fromBytes(name, 1, name.length - 1));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testFromString_noMatch() throws Exception {
         RequestHeaders.fromString("Nothing");
@@ -1,6 +1,9 @@
 package li.moskito.awtt.protocol.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
@@ -16,6 +19,18 @@ public class ResponseHeadersTest {
         assertEquals(ResponseHeaders.CONNECTION, ResponseHeaders.fromString("Connection"));
     }
 
+    @Test
+    public void testFromString_caseInsensitive() throws Exception {
+        assertEquals(ResponseHeaders.CONNECTION, ResponseHeaders.fromString("CONNECTION"));
+    }
+
+    @Test
+    public void testFromBytes() throws Exception {
+        final byte[] name = "connection".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(ResponseHeaders.CONNECTION, ResponseHeaders.fromBytes(name, 0, name.length));
+        assertNull(ResponseHeaders.fromBytes(name, 1, name.length - 1));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testFromString_noMatch() throws Exception {
         ResponseHeaders.fromString("Nothing");
@@ -0,0 +1,90 @@
+package li.moskito.awtt.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private AdmissionController subject;
+
+    /**
+     * Start of the first interval
+     */
+    private long start;
+
+    @Before
+    public void setUp() throws Exception {
+        this.start = System.nanoTime();
+        this.subject = new AdmissionController(5, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lets all connections of an interval wait longer than the target, starting the next interval
+     */
+    private void overload() {
+        this.subject.admit(TARGET + 1, this.start);
+        this.subject.admit(TARGET * 2, this.start + INTERVAL / 2);
+        this.subject.admit(TARGET * 2, this.start + INTERVAL * 2);
+    }
+
+    @Test
+    public void testAdmit_notOverloaded() throws Exception {
+        assertTrue(this.subject.admit(0, this.start));
+        assertTrue(this.subject.admit(TARGET * 2, this.start));
+        assertTrue(this.subject.admit(INTERVAL, this.start));
+        assertFalse(this.subject.isOverloaded());
+    }
+
+    @Test
+    public void testAdmit_longerThanInterval() throws Exception {
+        assertFalse(this.subject.admit(INTERVAL + 1, this.start));
+    }
+
+    @Test
+    public void testAdmit_overloaded() throws Exception {
+        this.overload();
+
+        assertTrue(this.subject.isOverloaded());
+        assertFalse(this.subject.admit(TARGET + 1, this.start + INTERVAL * 2));
+        assertTrue(this.subject.admit(TARGET, this.start + INTERVAL * 2));
+    }
+
+    @Test
+    public void testAdmit_recovers() throws Exception {
+        this.overload();
+
+        // the queue has been drained once in the interval
+        this.subject.admit(0, this.start + INTERVAL * 2);
+
+        assertTrue(this.subject.admit(TARGET * 2, this.start + INTERVAL * 3));
+        assertFalse(this.subject.isOverloaded());
+    }
+
+    @Test
+    public void testAdmit_idleIntervalNotOverloaded() throws Exception {
+        this.overload();
+
+        // no connections during the interval after the overload
+        assertTrue(this.subject.admit(TARGET * 2, this.start + INTERVAL * 4));
+        assertFalse(this.subject.isOverloaded());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTarget() throws Exception {
+        new AdmissionController(0, 100, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntervalShorterThanTarget() throws Exception {
+        new AdmissionController(10, 5, TimeUnit.MILLISECONDS);
+    }
+}
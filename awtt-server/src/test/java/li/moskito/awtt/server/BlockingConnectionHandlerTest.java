@@ -8,11 +8,14 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -23,6 +26,7 @@ import li.moskito.awtt.protocol.MessageChannel;
 import li.moskito.awtt.protocol.MessageChannelOption;
 import li.moskito.awtt.protocol.MessageChannelOptions;
 import li.moskito.awtt.protocol.Protocol;
+import li.moskito.awtt.protocol.http.HTTP;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.junit.After;
@@ -207,6 +211,122 @@ public class BlockingConnectionHandlerTest {
         LOG.trace("EXIT testRun_handlerClosed");
     }
 
+    @Test
+    public void testRun_shedsConnectionsWaitingTooLong() throws Exception {
+        LOG.trace("ENTER testRun_shedsConnectionsWaitingTooLong");
+        when(this.port.getProtocol()).thenReturn(new HTTP());
+        final HierarchicalConfiguration conf = new HierarchicalConfiguration();
+        conf.addProperty("maxConnections", "1");
+        conf.addProperty("admissionTarget", "5");
+        conf.addProperty("admissionInterval", "50");
+        conf.addProperty("retryAfter", "3");
+        this.subject.configure(conf);
+        this.subject.bind(this.port);
+        final long shed = ConnectionMetrics.SHED.getCount();
+
+        this.executorService.submit(this.subject);
+        Thread.sleep(200);
+
+        final SocketAddress address = new InetSocketAddress("localhost", TEST_PORT);
+        // the first connection occupies the only worker
+        final SocketChannel busyConnection = SocketChannel.open(address);
+        Thread.sleep(100);
+        final SocketChannel waitingConnection = SocketChannel.open(address);
+        waitingConnection.write(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1)));
+        Thread.sleep(200);
+        busyConnection.close();
+
+        final String response = readResponse(waitingConnection);
+        waitingConnection.close();
+        this.subject.close();
+        this.shutdownThreads();
+
+        assertTrue(response, response.startsWith("HTTP/1.1 503 Service Unavailable"));
+        assertTrue(response, response.contains("Retry-After: 3"));
+        assertEquals(shed + 1, ConnectionMetrics.SHED.getCount());
+        LOG.trace("EXIT testRun_shedsConnectionsWaitingTooLong");
+    }
+
+    @Test
+    public void testRun_shedsNewConnectionsWhileWorkersBusy() throws Exception {
+        LOG.trace("ENTER testRun_shedsNewConnectionsWhileWorkersBusy");
+        when(this.port.getProtocol()).thenReturn(new HTTP());
+        final HierarchicalConfiguration conf = new HierarchicalConfiguration();
+        conf.addProperty("maxConnections", "1");
+        conf.addProperty("admissionTarget", "5");
+        conf.addProperty("admissionInterval", "50");
+        this.subject.configure(conf);
+        this.subject.bind(this.port);
+        final long shed = ConnectionMetrics.SHED.getCount();
+
+        this.executorService.submit(this.subject);
+        Thread.sleep(200);
+
+        final SocketAddress address = new InetSocketAddress("localhost", TEST_PORT);
+        // the first connection pins the only worker for the whole test, the second waits in the queue
+        final SocketChannel busyConnection = SocketChannel.open(address);
+        Thread.sleep(100);
+        final SocketChannel waitingConnection = SocketChannel.open(address);
+        Thread.sleep(100);
+        final long start = System.nanoTime();
+        final SocketChannel newConnection = SocketChannel.open(address);
+        newConnection.write(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1)));
+
+        final String response = readResponse(newConnection);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        newConnection.close();
+        waitingConnection.close();
+        busyConnection.close();
+        this.subject.close();
+        this.shutdownThreads();
+
+        // the new connection is rejected when it is accepted, not once the worker is free
+        assertTrue(response, response.startsWith("HTTP/1.1 503 Service Unavailable"));
+        assertTrue("Rejected after " + elapsed + " ms", elapsed < 1000);
+        assertTrue(ConnectionMetrics.SHED.getCount() > shed);
+        LOG.trace("EXIT testRun_shedsNewConnectionsWhileWorkersBusy");
+    }
+
+    @Test
+    public void testRun_pipelinedRequests() throws Exception {
+        LOG.trace("ENTER testRun_pipelinedRequests");
+        when(this.port.getProtocol()).thenReturn(new HTTP());
+        this.subject.bind(this.port);
+
+        this.executorService.submit(this.subject);
+        Thread.sleep(200);
+
+        final SocketAddress address = new InetSocketAddress("localhost", TEST_PORT);
+        final SocketChannel connection = SocketChannel.open(address);
+        // all requests are sent at once, the last one closes the connection
+        connection.write(ByteBuffer.wrap(("GET /1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /2 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /3 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1)));
+
+        final String response = readResponse(connection);
+        connection.close();
+        this.subject.close();
+        this.shutdownThreads();
+
+        assertEquals(response, 3, response.split("HTTP/1.1 ", -1).length - 1);
+        LOG.trace("EXIT testRun_pipelinedRequests");
+    }
+
+    private static String readResponse(final SocketChannel connection) throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        connection.socket().setSoTimeout(5000);
+        final InputStream in = connection.socket().getInputStream();
+        int read;
+        while ((read = in.read()) >= 0) {
+            buffer.put((byte) read);
+        }
+        buffer.flip();
+        return StandardCharsets.ISO_8859_1.decode(buffer).toString();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testConfigure_invalidPoolSize() throws Exception {
         LOG.trace("ENTER testConfigure_invalidPoolSize");
@@ -1,5 +1,6 @@
 package li.moskito.awtt.server;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -12,14 +13,18 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import li.moskito.awtt.protocol.Message;
 import li.moskito.awtt.protocol.MessageChannel;
 import li.moskito.awtt.protocol.MessageChannelOptions;
 import li.moskito.awtt.protocol.Protocol;
+import li.moskito.awtt.util.ByteBufferPool;
 
 import org.junit.After;
 import org.junit.Before;
@@ -28,7 +33,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -180,6 +187,45 @@ public class MessageWorkerTest {
 
     }
 
+    @Test
+    public void testRun_idle_noPooledBuffer() throws Exception {
+
+        final MessageChannel mCh = this.port.getProtocol().openChannel();
+        when(mCh.hasMessage()).thenReturn(false);
+        final ByteBufferPool pool = ByteBufferPool.getInstance();
+        final long inUse = pool.getAcquireCount() - pool.getReleaseCount();
+
+        // the worker waits for the first message without holding a buffer of the pool
+        new Thread(this.messageWorker).start();
+        Thread.sleep(100);
+        assertTrue(this.clientChannel.isConnected());
+        assertEquals(inUse, pool.getAcquireCount() - pool.getReleaseCount());
+    }
+
+    @Test
+    public void testRun_smallMessage_singleRead() throws Exception {
+
+        final MessageChannel mCh = this.port.getProtocol().openChannel();
+        final List<Integer> writes = new CopyOnWriteArrayList<>();
+        when(mCh.write(any(ByteBuffer.class))).thenAnswer(new Answer<Integer>() {
+
+            @Override
+            public Integer answer(final InvocationOnMock invocation) throws Throwable {
+                final ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+                final int remaining = buffer.remaining();
+                buffer.position(buffer.limit());
+                writes.add(remaining);
+                return remaining;
+            }
+        });
+        this.server.write("message".getBytes());
+
+        this.messageWorker.run();
+
+        // the whole message is passed to the server channel at once
+        assertEquals(Arrays.asList(7), writes);
+    }
+
     /**
      * Prepares the channel of the protocol to return exactly 1 message.
      * 
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.verify;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
@@ -110,6 +111,8 @@ public class MultiportServerTest {
         assertTrue(this.subject.isRunning());
         this.subject.stopServer();
         assertFalse(this.subject.isRunning());
+        // the resources of the protocols are released
+        verify(TestProtocol.mock).close();
     }
     public static class TestProtocolHandler implements ProtocolHandler<Message, Message>, Configurable {
 
@@ -159,7 +162,7 @@ public class MultiportServerTest {
 
     }
 
-    public static class TestProtocol implements Protocol {
+    public static class TestProtocol implements Protocol, Closeable {
 
         public static TestProtocol mock;
 
@@ -178,6 +181,11 @@ public class MultiportServerTest {
             return mock.process(message);
         }
 
+        @Override
+        public void close() throws IOException {
+            mock.close();
+        }
+
     }
 
     public static class TestConnectionHandler implements ConnectionHandler, Configurable {
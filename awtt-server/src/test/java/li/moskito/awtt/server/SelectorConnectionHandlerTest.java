@@ -0,0 +1,328 @@
+package li.moskito.awtt.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.StreamingBody;
+import li.moskito.awtt.protocol.http.AsyncHttpProtocolHandler;
+import li.moskito.awtt.protocol.http.HTTP;
+import li.moskito.awtt.protocol.http.HttpProtocolHandler;
+import li.moskito.awtt.protocol.http.HttpRequest;
+import li.moskito.awtt.protocol.http.HttpResponse;
+import li.moskito.awtt.protocol.http.HttpStatusCodes;
+import li.moskito.awtt.protocol.http.ResponseHeaders;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class SelectorConnectionHandlerTest {
+
+    private static final int TEST_PORT = 55010;
+
+    private static final String REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+    @Mock
+    private Port port;
+
+    private SelectorConnectionHandler subject;
+
+    private ExecutorService executorService;
+
+    private HierarchicalConfiguration config;
+
+    public static class TestHandler extends HttpProtocolHandler {
+        @Override
+        protected HttpResponse onGet(final HttpRequest httpRequest) {
+            if ("/stream".equals(httpRequest.getResource().getPath())) {
+                return this.streamSlowly();
+            }
+            if ("/slow".equals(httpRequest.getResource().getPath())) {
+                try {
+                    Thread.sleep(1000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+            response.addField(ResponseHeaders.CONTENT_LENGTH, "0");
+            return response;
+        }
+
+        /**
+         * Creates a response whose content is produced after 500 ms
+         */
+        private HttpResponse streamSlowly() {
+            final StreamingBody body = new StreamingBody();
+            final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+            response.setBody(body);
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(500);
+                        body.getSink().write(StandardCharsets.ISO_8859_1.encode("streamed"));
+                        body.getSink().close();
+                    } catch (final IOException | InterruptedException e) {
+                        body.abort(e);
+                    }
+                }
+            }).start();
+            return response;
+        }
+    }
+
+    public static class AsyncTestHandler extends AsyncHttpProtocolHandler {
+
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+
+        @Override
+        protected CompletionStage<HttpResponse> onGetAsync(final HttpRequest httpRequest) {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            final boolean slow = "/slow".equals(httpRequest.getResource().getPath());
+            final HttpResponse response = HTTP.createResponse(slow ? HttpStatusCodes.OK : HttpStatusCodes.NO_CONTENT);
+            response.addField(ResponseHeaders.CONTENT_LENGTH, "0");
+            SCHEDULER.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    future.complete(response);
+                }
+            }, slow ? 200 : 10, TimeUnit.MILLISECONDS);
+            return future;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        final HTTP http = new HTTP();
+        final HierarchicalConfiguration httpConfig = new HierarchicalConfiguration();
+        httpConfig.addProperty("handler.@class", TestHandler.class.getName());
+        http.configure(httpConfig);
+
+        when(this.port.getHostname()).thenReturn(InetAddress.getLoopbackAddress());
+        when(this.port.getPortNumber()).thenReturn(TEST_PORT);
+        when(this.port.getProtocol()).thenReturn(http);
+
+        this.executorService = Executors.newFixedThreadPool(1);
+        this.subject = new SelectorConnectionHandler();
+        this.config = new HierarchicalConfiguration();
+        this.config.addProperty("selectorThreads", "2");
+        this.config.addProperty("keepAliveTimeout", "1");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.subject.close();
+        this.executorService.shutdownNow();
+        this.executorService.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRun_keepAliveConnection() throws Exception {
+        this.startSubject();
+
+        final long reuses = ConnectionMetrics.KEEP_ALIVE_REUSES.getCount();
+        final long bytesReceived = ConnectionMetrics.BYTES_RECEIVED.getCount();
+        try (SocketChannel client = this.connect()) {
+            for (int i = 0; i < 3; i++) {
+                client.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+                final String response = this.readResponse(client);
+                assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+                assertTrue(response, response.contains("Keep-Alive"));
+            }
+        }
+        assertEquals(reuses + 2, ConnectionMetrics.KEEP_ALIVE_REUSES.getCount());
+        assertEquals(bytesReceived + 3 * REQUEST.length(), ConnectionMetrics.BYTES_RECEIVED.getCount());
+    }
+
+    @Test
+    public void testRun_closedByRequest() throws Exception {
+        this.startSubject();
+
+        try (SocketChannel client = this.connect()) {
+            client.write(StandardCharsets.ISO_8859_1.encode("GET / HTTP/1.1\r\nConnection: close\r\n\r\n"));
+            final String response = this.readResponse(client);
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+            assertEquals(-1, client.read(ByteBuffer.allocate(16)));
+        }
+    }
+
+    @Test
+    public void testRun_idleConnectionTimeout() throws Exception {
+        this.startSubject();
+
+        try (SocketChannel client = this.connect()) {
+            // the idle connection is closed by the timing wheel after the keep alive timeout of 1 s
+            final long start = System.currentTimeMillis();
+            assertEquals(-1, client.read(ByteBuffer.allocate(16)));
+            assertTrue(System.currentTimeMillis() - start >= 900);
+        }
+    }
+
+    @Test
+    public void testRun_maxConnectionsExceeded() throws Exception {
+        this.config.addProperty("maxConnections", "1");
+        this.startSubject();
+        final long accepted = ConnectionMetrics.ACCEPTED.getCount();
+        final long rejected = ConnectionMetrics.REJECTED.getCount();
+
+        try (SocketChannel client1 = this.connect(); SocketChannel client2 = this.connect()) {
+            // the 2nd connection is closed immediately
+            assertEquals(-1, client2.read(ByteBuffer.allocate(16)));
+            // the 1st is still served
+            client1.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+            assertTrue(this.readResponse(client1).startsWith("HTTP/1.1 200 OK\r\n"));
+            assertEquals(accepted + 1, ConnectionMetrics.ACCEPTED.getCount());
+            assertEquals(rejected + 1, ConnectionMetrics.REJECTED.getCount());
+        }
+    }
+
+    @Test
+    public void testRun_asyncHandler_pipelinedResponsesInOrder() throws Exception {
+        final HTTP http = new HTTP();
+        final HierarchicalConfiguration httpConfig = new HierarchicalConfiguration();
+        httpConfig.addProperty("handler.@class", AsyncTestHandler.class.getName());
+        http.configure(httpConfig);
+        when(this.port.getProtocol()).thenReturn(http);
+        this.startSubject();
+
+        try (SocketChannel client = this.connect()) {
+            client.write(StandardCharsets.ISO_8859_1.encode("GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /fast HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+            String responses = this.readResponse(client);
+            final int end = responses.indexOf("\r\n\r\n") + 4;
+            if (responses.length() == end) {
+                responses += this.readResponse(client);
+            }
+            assertTrue(responses, responses.startsWith("HTTP/1.1 200 OK\r\n"));
+            assertTrue(responses, responses.substring(end).startsWith("HTTP/1.1 204 No Content\r\n"));
+        }
+    }
+
+    @Test
+    public void testRun_slowHandler_loopNotBlocked() throws Exception {
+        this.config.setProperty("selectorThreads", "1");
+        this.startSubject();
+
+        try (SocketChannel slowClient = this.connect(); SocketChannel client = this.connect()) {
+            slowClient.write(StandardCharsets.ISO_8859_1.encode("GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+            Thread.sleep(100);
+            // the other connection of the same loop is served while the slow handler is blocking its worker
+            final long start = System.currentTimeMillis();
+            client.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+            assertTrue(this.readResponse(client).startsWith("HTTP/1.1 200 OK\r\n"));
+            assertTrue(System.currentTimeMillis() - start < 500);
+            assertTrue(this.readResponse(slowClient).startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+    }
+
+    @Test
+    public void testRun_streamingBody_loopNotBlocked() throws Exception {
+        this.config.setProperty("selectorThreads", "1");
+        this.startSubject();
+
+        try (SocketChannel streamClient = this.connect(); SocketChannel client = this.connect()) {
+            streamClient.write(StandardCharsets.ISO_8859_1.encode("GET /stream HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+            Thread.sleep(100);
+            // the loop does not wait for the content of the streamed body
+            final long start = System.currentTimeMillis();
+            client.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+            assertTrue(this.readResponse(client).startsWith("HTTP/1.1 200 OK\r\n"));
+            assertTrue(System.currentTimeMillis() - start < 300);
+
+            final StringBuilder response = new StringBuilder();
+            final ByteBuffer buffer = ByteBuffer.allocate(1024);
+            while (response.indexOf("\r\n0\r\n\r\n") == -1 && streamClient.read(buffer) != -1) {
+                buffer.flip();
+                response.append(StandardCharsets.ISO_8859_1.decode(buffer));
+                buffer.clear();
+            }
+            assertTrue(response.toString(), response.toString().contains("streamed"));
+        }
+    }
+
+    @Test
+    public void testRun_dispatchFailure_acceptorContinues() throws Exception {
+        final HTTP http = spy((HTTP) this.port.getProtocol());
+        doThrow(new IllegalStateException("test")).doCallRealMethod().when(http).openChannel();
+        when(this.port.getProtocol()).thenReturn(http);
+        this.config.addProperty("maxConnections", "1");
+        this.startSubject();
+
+        try (SocketChannel failed = this.connect()) {
+            // the connection that could not be set up is closed and does not count against the limit
+            assertEquals(-1, failed.read(ByteBuffer.allocate(16)));
+        }
+        try (SocketChannel client = this.connect()) {
+            client.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+            assertTrue(this.readResponse(client).startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+    }
+
+    @Test
+    public void testRun_handlerClosed() throws Exception {
+        this.subject.configure(this.config);
+        this.subject.bind(this.port);
+        this.subject.close();
+
+        final Future<?> future = this.executorService.submit(this.subject);
+        future.get(2, TimeUnit.SECONDS);
+        assertTrue(future.isDone());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRun_invalidSelectorThreads() throws Exception {
+        this.config.setProperty("selectorThreads", "0");
+        this.subject.configure(this.config);
+        this.subject.bind(this.port);
+        this.subject.run();
+    }
+
+    private void startSubject() throws Exception {
+        this.subject.configure(this.config);
+        this.subject.bind(this.port);
+        this.executorService.submit(this.subject);
+        Thread.sleep(200);
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), TEST_PORT));
+    }
+
+    /**
+     * Reads a response without body from the channel
+     */
+    private String readResponse(final SocketChannel client) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (buf.indexOf("\r\n\r\n") == -1 && client.read(buffer) != -1) {
+            buffer.flip();
+            buf.append(StandardCharsets.ISO_8859_1.decode(buffer));
+            buffer.clear();
+        }
+        return buf.toString();
+    }
+}
@@ -12,8 +12,9 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-        BlockingConnectionHandlerTest.class, MessageWorkerTest.class, MultiportServerTest.class, PortTest.class,
-        ServerBuilderTest.class, ServerRuntimeExceptionTest.class, StartupTest.class
+        AdmissionControllerTest.class, BlockingConnectionHandlerTest.class, MessageWorkerTest.class,
+        MultiportServerTest.class, PortTest.class, SelectorConnectionHandlerTest.class, ServerBuilderTest.class,
+        ServerRuntimeExceptionTest.class, StartupTest.class, VirtualThreadConnectionHandlerTest.class
 })
 public class ServerTestSuite {
 
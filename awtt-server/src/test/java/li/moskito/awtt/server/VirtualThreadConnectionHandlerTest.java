@@ -0,0 +1,188 @@
+package li.moskito.awtt.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.http.HTTP;
+import li.moskito.awtt.protocol.http.HttpProtocolHandler;
+import li.moskito.awtt.protocol.http.HttpRequest;
+import li.moskito.awtt.protocol.http.HttpResponse;
+import li.moskito.awtt.protocol.http.HttpStatusCodes;
+import li.moskito.awtt.protocol.http.ResponseHeaders;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class VirtualThreadConnectionHandlerTest {
+
+    private static final int TEST_PORT = 55020;
+
+    private static final String REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+    @Mock
+    private Port port;
+
+    private VirtualThreadConnectionHandler subject;
+
+    private ExecutorService executorService;
+
+    private HierarchicalConfiguration config;
+
+    public static class TestHandler extends HttpProtocolHandler {
+        @Override
+        protected HttpResponse onGet(final HttpRequest httpRequest) {
+            final HttpResponse response = HTTP.createResponse(HttpStatusCodes.OK);
+            response.addField(ResponseHeaders.CONTENT_LENGTH, "0");
+            return response;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        final HTTP http = new HTTP();
+        final HierarchicalConfiguration httpConfig = new HierarchicalConfiguration();
+        httpConfig.addProperty("handler.@class", TestHandler.class.getName());
+        http.configure(httpConfig);
+
+        when(this.port.getHostname()).thenReturn(InetAddress.getLoopbackAddress());
+        when(this.port.getPortNumber()).thenReturn(TEST_PORT);
+        when(this.port.getProtocol()).thenReturn(http);
+
+        this.executorService = Executors.newFixedThreadPool(1);
+        this.subject = new VirtualThreadConnectionHandler();
+        this.config = new HierarchicalConfiguration();
+        this.config.addProperty("keepAliveTimeout", "1");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.subject.close();
+        this.executorService.shutdownNow();
+        this.executorService.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRun_keepAliveConnection() throws Exception {
+        this.startSubject();
+
+        try (SocketChannel client = this.connect()) {
+            for (int i = 0; i < 3; i++) {
+                client.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+                final String response = this.readResponse(client);
+                assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+                assertTrue(response, response.contains("Keep-Alive"));
+            }
+        }
+    }
+
+    @Test
+    public void testRun_closedByRequest() throws Exception {
+        this.startSubject();
+
+        try (SocketChannel client = this.connect()) {
+            client.write(StandardCharsets.ISO_8859_1.encode("GET / HTTP/1.1\r\nConnection: close\r\n\r\n"));
+            final String response = this.readResponse(client);
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+            assertEquals(-1, client.read(ByteBuffer.allocate(16)));
+        }
+    }
+
+    @Test
+    public void testRun_admissionLimit() throws Exception {
+        this.config.addProperty("maxConnections", "1");
+        this.startSubject();
+
+        try (SocketChannel client1 = this.connect(); SocketChannel client2 = this.connect()) {
+            client1.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+            assertTrue(this.readResponse(client1).startsWith("HTTP/1.1 200 OK\r\n"));
+
+            // the 2nd connection waits in the backlog until the 1st is closed
+            client2.write(StandardCharsets.ISO_8859_1.encode(REQUEST));
+            client1.close();
+            assertTrue(this.readResponse(client2).startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+    }
+
+    @Test
+    public void testNewVirtualThreadExecutor() throws Exception {
+        final ExecutorService executor = VirtualThreadConnectionHandler.newVirtualThreadExecutor(1);
+        try {
+            assertEquals(Boolean.TRUE, executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() throws Exception {
+                    return Boolean.TRUE;
+                }
+            }).get(1, TimeUnit.SECONDS));
+            if (executor instanceof ThreadPoolExecutor) {
+                // the fallback pool of platform threads is bounded
+                assertEquals(1, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRun_handlerClosed() throws Exception {
+        this.subject.configure(this.config);
+        this.subject.bind(this.port);
+        this.subject.close();
+
+        final Future<?> future = this.executorService.submit(this.subject);
+        future.get(2, TimeUnit.SECONDS);
+        assertTrue(future.isDone());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRun_invalidMaxConnections() throws Exception {
+        this.config.setProperty("maxConnections", "0");
+        this.subject.configure(this.config);
+        this.subject.bind(this.port);
+        this.subject.run();
+    }
+
+    private void startSubject() throws Exception {
+        this.subject.configure(this.config);
+        this.subject.bind(this.port);
+        this.executorService.submit(this.subject);
+        Thread.sleep(200);
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), TEST_PORT));
+    }
+
+    /**
+     * Reads a response without body from the channel
+     */
+    private String readResponse(final SocketChannel client) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (buf.indexOf("\r\n\r\n") == -1 && client.read(buffer) != -1) {
+            buffer.flip();
+            buf.append(StandardCharsets.ISO_8859_1.decode(buffer));
+            buffer.clear();
+        }
+        return buf.toString();
+    }
+}
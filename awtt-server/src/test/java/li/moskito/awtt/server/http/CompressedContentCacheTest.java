@@ -0,0 +1,294 @@
+package li.moskito.awtt.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import li.moskito.awtt.protocol.BinaryBody;
+import li.moskito.awtt.protocol.FileRegionBody;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompressedContentCacheTest {
+
+    private Path files;
+
+    private CompressedContentCache subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.files = Files.createTempDirectory("files");
+        this.subject = new CompressedContentCache(6, 10000, 10000, null, 0);
+    }
+
+    @Test
+    public void testCompress_and_get() throws Exception {
+        final Path file = this.createFile("a.txt", 'a', 1000);
+        final String entityTag = this.entityTag(file);
+
+        assertNull(this.subject.get(file, entityTag));
+        final CompressedContentCache.Variant variant = this.subject.compress(file, entityTag, 1399557041000L);
+
+        assertSame(variant, this.subject.get(file, entityTag));
+        assertEquals(1, this.subject.getHits());
+        assertEquals(1, this.subject.getMisses());
+        assertEquals(1, this.subject.getEntryCount());
+        assertEquals(variant.getSize(), this.subject.getSize());
+        assertEquals(file, variant.getFile());
+        assertEquals(1399557041000L, variant.getLastModified());
+        assertEquals(entityTag.substring(0, entityTag.length() - 1) + "-gzip\"", variant.getEntityTag());
+        assertFalse(variant.isSpooled());
+        assertEquals(this.content('a', 1000), this.gunzip(variant.createBody()));
+    }
+
+    @Test
+    public void testCompress_tooLarge() throws Exception {
+        final Path file = this.createFile("a.txt", 'a', 10001);
+
+        assertNull(this.subject.compress(file, this.entityTag(file), 0));
+        assertEquals(0, this.subject.getEntryCount());
+    }
+
+    @Test
+    public void testCompress_otherVersion() throws Exception {
+        final Path file = this.createFile("a.txt", 'a', 1000);
+
+        assertNull(this.subject.compress(file, "\"outdated\"", 0));
+        assertEquals(0, this.subject.getEntryCount());
+    }
+
+    @Test
+    public void testGet_newVersion() throws Exception {
+        final Path file = this.createFile("a.txt", 'a', 1000);
+        final String outdated = this.entityTag(file);
+        this.subject.compress(file, outdated, 0);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        final String current = this.entityTag(file);
+
+        assertNull(this.subject.get(file, current));
+        this.subject.compress(file, current, 0);
+
+        assertEquals(1, this.subject.getEntryCount());
+        assertNull(this.subject.get(file, outdated));
+        assertNotNull(this.subject.get(file, current));
+    }
+
+    @Test
+    public void testCompress_evictsLeastRecentlyUsed() throws Exception {
+        this.subject = new CompressedContentCache(6, 10000, 70, null, 0);
+        final Path first = this.createFile("a.txt", 'a', 1000);
+        final Path second = this.createFile("b.txt", 'b', 1000);
+        final Path third = this.createFile("c.txt", 'c', 1000);
+        this.subject.compress(first, this.entityTag(first), 0);
+        this.subject.compress(second, this.entityTag(second), 0);
+        this.subject.get(first, this.entityTag(first));
+
+        this.subject.compress(third, this.entityTag(third), 0);
+
+        assertEquals(2, this.subject.getEntryCount());
+        assertEquals(1, this.subject.getEvictions());
+        assertNull(this.subject.get(second, this.entityTag(second)));
+        assertNotNull(this.subject.get(first, this.entityTag(first)));
+    }
+
+    @Test
+    public void testCompress_spoolsEvicted() throws Exception {
+        final Path spool = Files.createTempDirectory("spool");
+        this.subject = new CompressedContentCache(6, 10000, 50, spool, 10000);
+        final Path first = this.createFile("a.txt", 'a', 1000);
+        final Path second = this.createFile("b.txt", 'b', 1000);
+        this.subject.compress(first, this.entityTag(first), 0);
+
+        this.subject.compress(second, this.entityTag(second), 0);
+
+        final CompressedContentCache.Variant spooled = this.subject.get(first, this.entityTag(first));
+        assertTrue(spooled.isSpooled());
+        assertEquals(2, this.subject.getEntryCount());
+        assertEquals(0, this.subject.getEvictions());
+        assertEquals(spooled.getSize(), this.subject.getSpoolSize());
+        assertEquals(this.subject.get(second, this.entityTag(second)).getSize(), this.subject.getSize());
+        final BinaryBody body = spooled.createBody();
+        assertTrue(body instanceof FileRegionBody);
+        assertEquals(this.content('a', 1000), this.gunzip(body));
+    }
+
+    @Test
+    public void testCompress_spoolFull() throws Exception {
+        final Path spool = Files.createTempDirectory("spool");
+        this.subject = new CompressedContentCache(6, 10000, 30, spool, 30);
+        final Path first = this.createFile("a.txt", 'a', 1000);
+        final Path second = this.createFile("b.txt", 'b', 1000);
+        final Path third = this.createFile("c.txt", 'c', 1000);
+        this.subject.compress(first, this.entityTag(first), 0);
+        this.subject.compress(second, this.entityTag(second), 0);
+
+        this.subject.compress(third, this.entityTag(third), 0);
+
+        assertEquals(1, this.subject.getEvictions());
+        assertEquals(2, this.subject.getEntryCount());
+        assertNull(this.subject.get(first, this.entityTag(first)));
+        assertEquals(1, this.countFiles(spool));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final Path spool = Files.createTempDirectory("spool");
+        this.subject = new CompressedContentCache(6, 10000, 50, spool, 10000);
+        final Path first = this.createFile("a.txt", 'a', 1000);
+        final Path second = this.createFile("b.txt", 'b', 1000);
+        this.subject.compress(first, this.entityTag(first), 0);
+        this.subject.compress(second, this.entityTag(second), 0);
+
+        this.subject.clear();
+
+        assertEquals(0, this.subject.getEntryCount());
+        assertEquals(0, this.subject.getSize());
+        assertEquals(0, this.subject.getSpoolSize());
+        assertEquals(0, this.countFiles(spool));
+    }
+
+    @Test
+    public void testCompress_concurrently() throws Exception {
+        final Path file = this.createFile("a.txt", 'a', 9000);
+        final String entityTag = this.entityTag(file);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<CompressedContentCache.Variant>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<CompressedContentCache.Variant>() {
+
+                    @Override
+                    public CompressedContentCache.Variant call() throws Exception {
+                        start.await();
+                        return CompressedContentCacheTest.this.subject.compress(file, entityTag, 0);
+                    }
+                }));
+            }
+            start.countDown();
+
+            // the file is compressed only once, all threads get the same variant
+            final CompressedContentCache.Variant variant = results.get(0).get();
+            for (final Future<CompressedContentCache.Variant> result : results) {
+                assertSame(variant, result.get());
+            }
+            assertEquals(1, this.subject.getCompressions());
+            assertEquals(1, this.subject.getEntryCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCreate_deletesLeftoverSpoolFiles() throws Exception {
+        final Path spool = Files.createTempDirectory("spool");
+        Files.createFile(spool.resolve("variant123.gz"));
+        Files.createFile(spool.resolve("other.gz"));
+
+        this.subject = new CompressedContentCache(6, 10000, 50, spool, 10000);
+
+        assertFalse(Files.exists(spool.resolve("variant123.gz")));
+        assertTrue(Files.exists(spool.resolve("other.gz")));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final Path spool = Files.createTempDirectory("spool");
+        this.subject = new CompressedContentCache(6, 10000, 50, spool, 10000);
+        final Path first = this.createFile("a.txt", 'a', 1000);
+        final Path second = this.createFile("b.txt", 'b', 1000);
+        this.subject.compress(first, this.entityTag(first), 0);
+        this.subject.compress(second, this.entityTag(second), 0);
+        // a spool file that is not referenced by a variant, i.e. of a variant being spooled
+        Files.createFile(spool.resolve("variant123.gz"));
+
+        this.subject.close();
+
+        assertEquals(0, this.subject.getEntryCount());
+        assertEquals(0, this.subject.getSpoolSize());
+        assertEquals(0, this.countFiles(spool));
+    }
+
+    @Test
+    public void testCreateBody_spoolFileRemoved() throws Exception {
+        final Path spool = Files.createTempDirectory("spool");
+        this.subject = new CompressedContentCache(6, 10000, 50, spool, 10000);
+        final Path first = this.createFile("a.txt", 'a', 1000);
+        final Path second = this.createFile("b.txt", 'b', 1000);
+        this.subject.compress(first, this.entityTag(first), 0);
+        this.subject.compress(second, this.entityTag(second), 0);
+        final CompressedContentCache.Variant spooled = this.subject.get(first, this.entityTag(first));
+
+        this.subject.clear();
+
+        assertNull(spooled.createBody());
+    }
+
+    private Path createFile(final String name, final char c, final int length) throws IOException {
+        final Path file = this.files.resolve(name);
+        Files.write(file, this.content(c, length).getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    private String content(final char c, final int length) {
+        final StringBuilder content = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            content.append(c);
+        }
+        return content.toString();
+    }
+
+    private String entityTag(final Path file) throws IOException {
+        return FileMetadataCache.createEntityTag(Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    private int countFiles(final Path directory) throws IOException {
+        int count = 0;
+        for (final Path file : Files.newDirectoryStream(directory)) {
+            assertNotNull(file);
+            count++;
+        }
+        return count;
+    }
+
+    private String gunzip(final BinaryBody body) throws IOException {
+        final ReadableByteChannel channel = body.getByteChannel();
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (channel.read(buffer) != -1) {
+            // read until the end of the body
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(buffer.array(), 0,
+                buffer.position()))) {
+            final byte[] bytes = new byte[1024];
+            int read;
+            while ((read = gzip.read(bytes)) != -1) {
+                out.write(bytes, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,218 @@
+package li.moskito.awtt.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import li.moskito.awtt.protocol.http.ContentType;
+import li.moskito.awtt.server.http.FileMetadataCache.FileType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileMetadataCacheTest {
+
+    private FileMetadataCache subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new FileMetadataCache(60000, 2);
+    }
+
+    @Test
+    public void testEntryOf_file() throws Exception {
+        final Path file = Files.createTempFile("metadata", ".txt");
+        Files.write(file, "0123456789".getBytes());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1399557041123L));
+        final ContentType contentType = new ContentType("text/plain");
+
+        final FileMetadataCache.Entry entry = FileMetadataCache.Entry.of(file,
+                Files.readAttributes(file, BasicFileAttributes.class), contentType);
+
+        assertSame(file, entry.getFile());
+        assertEquals(FileType.FILE, entry.getType());
+        assertEquals(10, entry.getSize());
+        assertEquals(1399557041000L, entry.getLastModified());
+        assertSame(contentType, entry.getContentType());
+        assertTrue(entry.getEntityTag().startsWith("\"" + Long.toHexString(1399557041123L) + "-a"));
+        assertTrue(entry.getEntityTag().endsWith("\""));
+    }
+
+    @Test
+    public void testEntryOf_entityTagChanges() throws Exception {
+        final Path file = Files.createTempFile("metadata", ".txt");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1399557041000L));
+        final String entityTag = FileMetadataCache.Entry.of(file,
+                Files.readAttributes(file, BasicFileAttributes.class), null).getEntityTag();
+
+        // the HTTP date does not change, the entity tag does
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1399557041500L));
+        final FileMetadataCache.Entry entry = FileMetadataCache.Entry.of(file,
+                Files.readAttributes(file, BasicFileAttributes.class), null);
+
+        assertEquals(1399557041000L, entry.getLastModified());
+        assertFalse(entityTag.equals(entry.getEntityTag()));
+    }
+
+    @Test
+    public void testEntryOf_directory() throws Exception {
+        final Path dir = Files.createTempDirectory("metadata");
+
+        final FileMetadataCache.Entry entry = FileMetadataCache.Entry.of(dir,
+                Files.readAttributes(dir, BasicFileAttributes.class), null);
+
+        assertEquals(FileType.DIRECTORY, entry.getType());
+    }
+
+    @Test
+    public void testGet_and_put() throws Exception {
+        final Path path = Paths.get("missing.txt");
+        final FileMetadataCache.Entry entry = FileMetadataCache.Entry.missing(path);
+
+        assertNull(this.subject.get(path));
+        this.subject.put(path, entry);
+
+        assertSame(entry, this.subject.get(path));
+        assertEquals(FileType.MISSING, entry.getType());
+        assertEquals(1, this.subject.getHits());
+        assertEquals(1, this.subject.getMisses());
+    }
+
+    @Test
+    public void testGet_expired() throws Exception {
+        this.subject = new FileMetadataCache(1, 2);
+        final Path path = Paths.get("missing.txt");
+        this.subject.put(path, FileMetadataCache.Entry.missing(path));
+
+        Thread.sleep(5);
+
+        assertNull(this.subject.get(path));
+        assertEquals(1, this.subject.getMisses());
+    }
+
+    @Test
+    public void testPut_full() throws Exception {
+        final Path first = Paths.get("first");
+        final Path second = Paths.get("second");
+        final Path third = Paths.get("third");
+        this.subject.put(first, FileMetadataCache.Entry.missing(first));
+        this.subject.put(second, FileMetadataCache.Entry.missing(second));
+        this.subject.get(first);
+
+        // the least recently used entry is evicted
+        this.subject.put(third, FileMetadataCache.Entry.missing(third));
+
+        assertEquals(2, this.subject.getEntryCount());
+        assertNull(this.subject.get(second));
+        assertNotNull(this.subject.get(first));
+        assertNotNull(this.subject.get(third));
+    }
+
+    @Test
+    public void testPut_missingEntriesLimitedSeparately() throws Exception {
+        this.subject = new FileMetadataCache(60000, 2, 1);
+        final Path dir = Files.createTempDirectory("metadata");
+        final FileMetadataCache.Entry existing = FileMetadataCache.Entry.of(dir,
+                Files.readAttributes(dir, BasicFileAttributes.class), null);
+        final Path hot = Paths.get("hot");
+        this.subject.put(hot, existing);
+
+        // requests for missing paths only evict other missing paths
+        for (int i = 0; i < 10; i++) {
+            final Path missing = Paths.get("missing" + i);
+            this.subject.put(missing, FileMetadataCache.Entry.missing(missing));
+        }
+
+        assertSame(existing, this.subject.get(hot));
+        assertEquals(1, this.subject.getMissingEntryCount());
+        assertEquals(2, this.subject.getEntryCount());
+        assertNotNull(this.subject.get(Paths.get("missing9")));
+    }
+
+    @Test
+    public void testPut_typeChanged() throws Exception {
+        final Path dir = Files.createTempDirectory("metadata");
+        final Path path = Paths.get("created");
+        this.subject.put(path, FileMetadataCache.Entry.missing(path));
+        final FileMetadataCache.Entry existing = FileMetadataCache.Entry.of(dir,
+                Files.readAttributes(dir, BasicFileAttributes.class), null);
+
+        this.subject.put(path, existing);
+
+        assertSame(existing, this.subject.get(path));
+        assertEquals(1, this.subject.getEntryCount());
+        assertEquals(0, this.subject.getMissingEntryCount());
+    }
+
+    @Test
+    public void testGet_concurrently() throws Exception {
+        this.subject = new FileMetadataCache(60000, 16);
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        final Path path = Paths.get("path" + i % 32);
+                        if (FileMetadataCacheTest.this.subject.get(path) == null) {
+                            FileMetadataCacheTest.this.subject.put(path, FileMetadataCache.Entry.missing(path));
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(this.subject.getEntryCount() <= 16);
+        assertEquals(threads * 1000, this.subject.getHits() + this.subject.getMisses());
+    }
+
+    @Test
+    public void testPut_replace() throws Exception {
+        final Path first = Paths.get("first");
+        final Path second = Paths.get("second");
+        this.subject.put(first, FileMetadataCache.Entry.missing(first));
+        this.subject.put(second, FileMetadataCache.Entry.missing(second));
+
+        final FileMetadataCache.Entry replaced = FileMetadataCache.Entry.missing(first);
+        this.subject.put(first, replaced);
+
+        assertEquals(2, this.subject.getEntryCount());
+        assertSame(replaced, this.subject.get(first));
+    }
+
+    @Test
+    public void testGet_expired_removesEntry() throws Exception {
+        this.subject = new FileMetadataCache(1, 2);
+        final Path first = Paths.get("first");
+        this.subject.put(first, FileMetadataCache.Entry.missing(first));
+        Thread.sleep(5);
+
+        assertNull(this.subject.get(first));
+        assertEquals(0, this.subject.getEntryCount());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final Path path = Paths.get("missing.txt");
+        this.subject.put(path, FileMetadataCache.Entry.missing(path));
+
+        this.subject.clear();
+
+        assertEquals(0, this.subject.getEntryCount());
+    }
+}
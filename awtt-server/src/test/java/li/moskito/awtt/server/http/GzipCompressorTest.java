@@ -0,0 +1,77 @@
+package li.moskito.awtt.server.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GzipCompressorTest {
+
+    private GzipCompressor subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new GzipCompressor(6, 1);
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("compressible text ").append(i % 10).append('\n');
+        }
+        final byte[] content = text.toString().getBytes();
+
+        final byte[] compressed = this.subject.compress(content);
+
+        assertTrue(compressed.length < content.length / 4);
+        assertArrayEquals(content, this.gunzip(compressed));
+    }
+
+    @Test
+    public void testCompress_incompressible() throws Exception {
+        final byte[] content = new byte[10000];
+        new Random(42).nextBytes(content);
+
+        final byte[] compressed = this.subject.compress(content);
+
+        assertTrue(compressed.length > content.length);
+        assertArrayEquals(content, this.gunzip(compressed));
+    }
+
+    @Test
+    public void testCompress_empty() throws Exception {
+        assertArrayEquals(new byte[0], this.gunzip(this.subject.compress(new byte[0])));
+    }
+
+    @Test
+    public void testCompress_reusesDeflater() throws Exception {
+        assertEquals(0, this.subject.getPoolSize());
+
+        this.subject.compress("first".getBytes());
+        final byte[] second = this.subject.compress("second".getBytes());
+
+        assertEquals(1, this.subject.getPoolSize());
+        assertArrayEquals("second".getBytes(), this.gunzip(second));
+    }
+
+    private byte[] gunzip(final byte[] compressed) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
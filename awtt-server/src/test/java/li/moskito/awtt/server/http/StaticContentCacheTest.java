@@ -0,0 +1,236 @@
+package li.moskito.awtt.server.http;
+
+import static li.moskito.awtt.protocol.http.ResponseHeaders.ACCEPT_RANGES;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_LENGTH;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.CONTENT_TYPE;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.ETAG;
+import static li.moskito.awtt.protocol.http.ResponseHeaders.LAST_MODIFIED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import li.moskito.awtt.protocol.HeaderField;
+import li.moskito.awtt.protocol.http.ContentType;
+import li.moskito.awtt.protocol.http.HttpDate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaticContentCacheTest {
+
+    private Path contentRoot;
+
+    /**
+     * Directory for files that are not watched, so the tests are not affected by events of the watcher
+     */
+    private Path files;
+
+    private StaticContentCache subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.contentRoot = Files.createTempDirectory("contentCache");
+        this.files = Files.createTempDirectory("contentCacheFiles");
+        this.subject = new StaticContentCache(this.contentRoot, 100, 40);
+        this.subject.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.subject.stop();
+    }
+
+    @Test
+    public void testLoad_and_get() throws Exception {
+        final Path file = this.createFile("test.txt", "0123456789");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1399557041123L));
+
+        final StaticContentCache.Entry loaded = this.subject.load(file, file, new ContentType("text/plain"));
+
+        assertNotNull(loaded);
+        assertSame(loaded, this.subject.get(file));
+        assertEquals(1, this.subject.getHits());
+        assertEquals(0, this.subject.getMisses());
+        assertEquals(10, this.subject.getSize());
+        assertEquals(1, this.subject.getEntryCount());
+        assertEquals(1399557041000L, loaded.getLastModified());
+        assertEquals("0123456789", this.read(loaded));
+
+        final List<HeaderField> fields = loaded.getHeaderFields();
+        assertEquals(5, fields.size());
+        assertSame(LAST_MODIFIED, fields.get(0).getHeaderFieldDefinition());
+        assertEquals(HttpDate.format(1399557041000L), fields.get(0).getValue());
+        assertSame(ETAG, fields.get(1).getHeaderFieldDefinition());
+        assertEquals(loaded.getEntityTag(), fields.get(1).getValue());
+        assertTrue(loaded.getEntityTag().startsWith("\"" + Long.toHexString(1399557041123L) + "-a"));
+        assertSame(CONTENT_LENGTH, fields.get(2).getHeaderFieldDefinition());
+        assertEquals("10", fields.get(2).getValue());
+        assertSame(ACCEPT_RANGES, fields.get(3).getHeaderFieldDefinition());
+        assertEquals("bytes", fields.get(3).getValue());
+        assertSame(CONTENT_TYPE, fields.get(4).getHeaderFieldDefinition());
+        assertEquals("text/plain", fields.get(4).getValue());
+    }
+
+    @Test
+    public void testGet_miss() throws Exception {
+        assertNull(this.subject.get(this.contentRoot.resolve("missing.txt")));
+        assertEquals(0, this.subject.getHits());
+        assertEquals(1, this.subject.getMisses());
+    }
+
+    @Test
+    public void testPeek_doesNotCount() throws Exception {
+        final Path file = this.createFile("test.txt", "0123456789");
+        final StaticContentCache.Entry loaded = this.subject.load(file, file, null);
+
+        assertSame(loaded, this.subject.peek(file));
+        assertNull(this.subject.peek(this.contentRoot.resolve("missing.txt")));
+        assertEquals(0, this.subject.getHits());
+        assertEquals(0, this.subject.getMisses());
+    }
+
+    @Test
+    public void testContains_doesNotCount() throws Exception {
+        final Path file = this.createFile("test.txt", "0123456789");
+        this.subject.load(file, file, null);
+
+        assertTrue(this.subject.contains(file));
+        assertFalse(this.subject.contains(this.contentRoot.resolve("missing.txt")));
+        assertEquals(0, this.subject.getHits());
+        assertEquals(0, this.subject.getMisses());
+    }
+
+    @Test
+    public void testLoad_fileTooLarge() throws Exception {
+        final Path file = this.createFile("large.txt", "01234567890123456789012345678901234567890");
+
+        assertNull(this.subject.load(file, file, null));
+        assertFalse(this.subject.contains(file));
+        assertEquals(0, this.subject.getSize());
+    }
+
+    @Test
+    public void testLoad_notStarted() throws Exception {
+        this.subject.stop();
+        final Path file = this.createFile("test.txt", "0123456789");
+
+        final StaticContentCache.Entry loaded = this.subject.load(file, file, null);
+
+        assertNotNull(loaded);
+        assertEquals(4, loaded.getHeaderFields().size());
+        assertFalse(this.subject.contains(file));
+    }
+
+    @Test
+    public void testLoad_evictsLeastFrequentlyUsed() throws Exception {
+        final Path popular = this.createFile("popular.txt", "0123456789012345678901234567890123456789");
+        final Path rare = this.createFile("rare.txt", "0123456789012345678901234567890123456789");
+        final Path added = this.createFile("added.txt", "0123456789012345678901234567890123456789");
+        this.subject.load(popular, popular, null);
+        this.subject.load(rare, rare, null);
+        for (int i = 0; i < 10; i++) {
+            this.subject.get(popular);
+        }
+
+        this.subject.load(added, added, null);
+
+        assertTrue(this.subject.contains(popular));
+        assertFalse(this.subject.contains(rare));
+        assertTrue(this.subject.contains(added));
+        assertEquals(1, this.subject.getEvictions());
+        assertEquals(80, this.subject.getSize());
+    }
+
+    @Test
+    public void testInvalidate_directory() throws Exception {
+        final Path dir = Files.createDirectory(this.files.resolve("dir"));
+        final Path index = this.createFile("dir/index.html", "<html/>");
+        final Path other = this.createFile("other.txt", "other");
+        this.subject.load(dir, index, null);
+        this.subject.load(other, other, null);
+
+        this.subject.invalidate(index);
+
+        assertFalse(this.subject.contains(dir));
+        assertTrue(this.subject.contains(other));
+        assertEquals(5, this.subject.getSize());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final Path file = this.createFile("test.txt", "0123456789");
+        this.subject.load(file, file, null);
+
+        this.subject.clear();
+
+        assertFalse(this.subject.contains(file));
+        assertEquals(0, this.subject.getSize());
+        assertEquals(0, this.subject.getEntryCount());
+    }
+
+    @Test
+    public void testWatch_modifiedFile() throws Exception {
+        final Path file = this.createWatchedFile("test.txt", "0123456789");
+        assertTrue(this.subject.contains(file));
+
+        Files.write(file, "changed".getBytes());
+
+        this.awaitInvalidation(file);
+        assertFalse(this.subject.contains(file));
+    }
+
+    @Test
+    public void testWatch_fileInNewDirectory() throws Exception {
+        Files.createDirectory(this.contentRoot.resolve("dir"));
+        final Path file = this.createWatchedFile("dir/test.txt", "0123456789");
+        assertTrue(this.subject.contains(file));
+
+        Files.delete(file);
+
+        this.awaitInvalidation(file);
+        assertFalse(this.subject.contains(file));
+    }
+
+    private Path createFile(final String name, final String content) throws Exception {
+        return Files.write(this.files.resolve(name), content.getBytes());
+    }
+
+    /**
+     * Creates a file in the content root and loads it into the cache once all events caused by its creation have been
+     * processed
+     */
+    private Path createWatchedFile(final String name, final String content) throws Exception {
+        final Path file = Files.write(this.contentRoot.resolve(name), content.getBytes());
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (!this.subject.contains(file) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100);
+            this.subject.load(file, file, null);
+            // events that arrive after loading remove it again
+            Thread.sleep(100);
+        }
+        return file;
+    }
+
+    private String read(final StaticContentCache.Entry entry) throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(entry.getSize());
+        entry.createBody().getByteChannel().read(buffer);
+        return new String(buffer.array());
+    }
+
+    private void awaitInvalidation(final Path path) throws Exception {
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (this.subject.contains(path) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+}
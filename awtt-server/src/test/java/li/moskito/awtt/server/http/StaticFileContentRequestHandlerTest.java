@@ -5,20 +5,30 @@ import static li.moskito.awtt.protocol.http.ResponseHeaders.LAST_MODIFIED;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import li.moskito.awtt.protocol.ByteBufferBody;
 import li.moskito.awtt.protocol.HeaderFieldDefinition;
 import li.moskito.awtt.protocol.http.HttpCommands;
 import li.moskito.awtt.protocol.http.HttpRequest;
@@ -31,6 +41,7 @@ import li.moskito.awtt.protocol.http.ResponseHeaders;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Answers;
@@ -62,6 +73,13 @@ public class StaticFileContentRequestHandlerTest {
         when(this.httpRequest.getHeader().getVersion()).thenReturn(HttpVersion.HTTP_1_1);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        if (this.subject.getContentCache() != null) {
+            this.subject.getContentCache().stop();
+        }
+    }
+
     private String createTestContentRoot() throws IOException {
         final Path tempContentRoot = Files.createTempDirectory("contentRoot");
         this.pathWithNoIndex = Files.createTempDirectory(tempContentRoot, "noIndex");
@@ -283,6 +301,569 @@ public class StaticFileContentRequestHandlerTest {
         this.assertStatus(HttpStatusCodes.NOT_MODIFIED, httpResponse);
     }
 
+    @Test
+    public void testOnGet_contentCache() throws Exception {
+        this.enableContentCache();
+        final String expectedLastModifiedDate = this.toHttpDate(Files.getLastModifiedTime(this.testFile).toMillis());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+
+        // act
+        final HttpResponse first = this.subject.process(this.httpRequest);
+        final HttpResponse second = this.subject.process(this.httpRequest);
+
+        // assert
+        final StaticContentCache cache = this.subject.getContentCache();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(first.getBody() instanceof ByteBufferBody);
+        assertTrue(second.getBody() instanceof ByteBufferBody);
+        this.assertStatus(HttpStatusCodes.OK, second);
+        this.assertHeaderField(expectedLastModifiedDate, second, LAST_MODIFIED);
+        this.assertHeaderField("text/plain", second, ResponseHeaders.CONTENT_TYPE);
+        this.assertHeaderField("0", second, ResponseHeaders.CONTENT_LENGTH);
+    }
+
+    @Test
+    public void testOnGet_contentCache_notModified() throws Exception {
+        final long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(this.testFile, FileTime.fromMillis(now - 8000));
+        // the content root is watched from now on
+        this.enableContentCache();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.subject.process(this.httpRequest);
+        this.setupHeaderField(IF_MODIFIED_SINCE, this.toHttpDate(now - 4000));
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        assertEquals(1, this.subject.getContentCache().getHits());
+        this.assertStatus(HttpStatusCodes.NOT_MODIFIED, httpResponse);
+    }
+
+    @Test
+    public void testAccepts_contentCache_cachedIndex() throws Exception {
+        this.enableContentCache();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource("/");
+        this.subject.process(this.httpRequest);
+
+        assertTrue(this.subject.getContentCache().contains(this.testFile.getParent()));
+        assertTrue(this.subject.accepts(this.httpRequest));
+    }
+
+    @Test
+    public void testOnGet_metadataCache_acceptsAndGetResolveOnce() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+
+        assertTrue(this.subject.accepts(this.httpRequest));
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+        assertEquals(1, this.subject.getMetadataCache().getMisses());
+        assertEquals(1, this.subject.getMetadataCache().getHits());
+    }
+
+    @Test
+    public void testOnGet_metadataCache_missingResource() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource("trallala");
+        this.subject.process(this.httpRequest);
+        // the file is not seen until the cached metadata expires
+        Files.createFile(this.testFile.getParent().resolve("trallala"));
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.NOT_FOUND, httpResponse);
+        assertEquals(1, this.subject.getMetadataCache().getHits());
+    }
+
+    @Test
+    public void testOnGet_metadataCache_disabled() throws Exception {
+        this.config.addProperty("metadataCache", "");
+        this.config.addProperty("metadataCache/timeToLive", "0");
+        this.subject = new StaticFileContentRequestHandler();
+        this.subject.configure(this.config);
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource("trallala");
+        this.subject.process(this.httpRequest);
+        Files.createFile(this.testFile.getParent().resolve("trallala"));
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        assertNull(this.subject.getMetadataCache());
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_metadataCache_removedFile() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        assertTrue(this.subject.accepts(this.httpRequest));
+        Files.delete(this.testFile);
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.NOT_FOUND, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_acceptRanges() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+        this.assertHeaderField("bytes", httpResponse, ResponseHeaders.ACCEPT_RANGES);
+    }
+
+    @Test
+    public void testOnGet_singleRange() throws Exception {
+        Files.write(this.testFile, "0123456789".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=2-5");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.PARTIAL_CONTENT, httpResponse);
+        this.assertHeaderField("bytes 2-5/10", httpResponse, ResponseHeaders.CONTENT_RANGE);
+        this.assertHeaderField("4", httpResponse, ResponseHeaders.CONTENT_LENGTH);
+        this.assertHeaderField("text/plain", httpResponse, ResponseHeaders.CONTENT_TYPE);
+        assertEquals("2345", this.readBody(httpResponse));
+    }
+
+    @Test
+    public void testOnGet_multipleRanges() throws Exception {
+        Files.write(this.testFile, "0123456789".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=0-1,-2");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.PARTIAL_CONTENT, httpResponse);
+        final String contentType = httpResponse.getHeader().getField(ResponseHeaders.CONTENT_TYPE).getValue()
+                .toString();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        final String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        final String partHeader = "\r\nContent-Type: text/plain\r\nContent-Range: bytes ";
+        final String expectedBody = "\r\n--" + boundary + partHeader + "0-1/10\r\n\r\n01" + "\r\n--" + boundary
+                + partHeader + "8-9/10\r\n\r\n89" + "\r\n--" + boundary + "--\r\n";
+        assertEquals(expectedBody, this.readBody(httpResponse));
+        this.assertHeaderField(String.valueOf(expectedBody.length()), httpResponse, ResponseHeaders.CONTENT_LENGTH);
+    }
+
+    @Test
+    public void testOnGet_unsatisfiableRange() throws Exception {
+        Files.write(this.testFile, "0123456789".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=10-");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.REQUESTED_RANGE_NOT_SATISFIABLE, httpResponse);
+        this.assertHeaderField("bytes */10", httpResponse, ResponseHeaders.CONTENT_RANGE);
+    }
+
+    @Test
+    public void testOnGet_ifRangeNotMatching() throws Exception {
+        Files.write(this.testFile, "0123456789".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=2-5");
+        this.setupHeaderField(RequestHeaders.IF_RANGE, this.toHttpDate(0));
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+        this.assertHeaderField("10", httpResponse, ResponseHeaders.CONTENT_LENGTH);
+    }
+
+    @Test
+    public void testOnGet_ifRangeMatching() throws Exception {
+        Files.write(this.testFile, "0123456789".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=2-5");
+        this.setupHeaderField(RequestHeaders.IF_RANGE,
+                this.toHttpDate(Files.getLastModifiedTime(this.testFile).toMillis()));
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.PARTIAL_CONTENT, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_entityTag() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+        assertTrue(httpResponse.getHeader().hasField(ResponseHeaders.ETAG));
+    }
+
+    @Test
+    public void testOnGet_ifNoneMatch() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        final String entityTag = this.getEntityTag();
+        this.setupHeaderField(RequestHeaders.IF_NONE_MATCH, "\"other\", W/" + entityTag);
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.NOT_MODIFIED, httpResponse);
+        this.assertHeaderField(entityTag, httpResponse, ResponseHeaders.ETAG);
+    }
+
+    @Test
+    public void testOnGet_ifNoneMatch_notMatching_overridesIfModifiedSince() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.IF_NONE_MATCH, "\"other\"");
+        this.setupHeaderField(IF_MODIFIED_SINCE, this.toHttpDate(System.currentTimeMillis()));
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_ifMatch() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.IF_MATCH, this.getEntityTag());
+
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_ifMatch_preconditionFailed() throws Exception {
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.IF_MATCH, "W/" + this.getEntityTag());
+
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        this.assertStatus(HttpStatusCodes.PRECONDITION_FAILED, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_ifRangeEntityTag() throws Exception {
+        Files.write(this.testFile, "0123456789".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=2-5");
+        this.setupHeaderField(RequestHeaders.IF_RANGE, this.getEntityTag());
+
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        this.assertStatus(HttpStatusCodes.PARTIAL_CONTENT, httpResponse);
+    }
+
+    @Test
+    public void testOnGet_contentCache_ifNoneMatch() throws Exception {
+        this.enableContentCache();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        final String entityTag = this.getEntityTag();
+        this.setupHeaderField(RequestHeaders.IF_NONE_MATCH, entityTag);
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        assertEquals(1, this.subject.getContentCache().getHits());
+        this.assertStatus(HttpStatusCodes.NOT_MODIFIED, httpResponse);
+        this.assertHeaderField(entityTag, httpResponse, ResponseHeaders.ETAG);
+    }
+
+    @Test
+    public void testOnGet_compression() throws Exception {
+        this.enableCompression();
+        final String content = this.writeCompressibleContent();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.5");
+
+        // act
+        final HttpResponse first = this.subject.process(this.httpRequest);
+        final HttpResponse second = this.subject.process(this.httpRequest);
+
+        // assert
+        final CompressedContentCache cache = this.subject.getCompressedContentCache();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        this.assertStatus(HttpStatusCodes.OK, second);
+        this.assertHeaderField("gzip", second, ResponseHeaders.CONTENT_ENCODING);
+        this.assertHeaderField("Accept-Encoding", second, ResponseHeaders.VARY);
+        this.assertHeaderField("text/plain", second, ResponseHeaders.CONTENT_TYPE);
+        final String entityTag = (String) second.getHeader().getField(ResponseHeaders.ETAG).getValue();
+        assertTrue(entityTag.endsWith("-gzip\""));
+        final byte[] compressed = this.readBodyBytes(second);
+        this.assertHeaderField(String.valueOf(compressed.length), second, ResponseHeaders.CONTENT_LENGTH);
+        assertEquals(content, this.gunzip(compressed));
+        assertEquals(content, this.gunzip(this.readBodyBytes(first)));
+    }
+
+    @Test
+    public void testClose_compression() throws Exception {
+        this.enableCompression();
+        this.writeCompressibleContent();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip");
+        this.subject.process(this.httpRequest);
+
+        // act
+        this.subject.close();
+
+        // assert
+        assertEquals(0, this.subject.getCompressedContentCache().getEntryCount());
+    }
+
+    @Test
+    public void testOnGet_compression_notAccepted() throws Exception {
+        this.enableCompression();
+        final String content = this.writeCompressibleContent();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip;q=0");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.OK, httpResponse);
+        assertFalse(httpResponse.getHeader().hasField(ResponseHeaders.CONTENT_ENCODING));
+        this.assertHeaderField("Accept-Encoding", httpResponse, ResponseHeaders.VARY);
+        assertEquals(content, this.readBody(httpResponse));
+    }
+
+    @Test
+    public void testOnGet_compression_tooSmall() throws Exception {
+        this.enableCompression();
+        Files.write(this.testFile, "small".getBytes());
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        assertFalse(httpResponse.getHeader().hasField(ResponseHeaders.CONTENT_ENCODING));
+        assertFalse(httpResponse.getHeader().hasField(ResponseHeaders.VARY));
+    }
+
+    @Test
+    public void testOnGet_compression_precompressed() throws Exception {
+        this.enableCompression();
+        this.writeCompressibleContent();
+        final Path precompressed = this.testFile.resolveSibling(this.testFile.getFileName() + ".gz");
+        Files.write(precompressed, this.gzip("precompressed"));
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "*");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        assertEquals(0, this.subject.getCompressedContentCache().getEntryCount());
+        this.assertHeaderField("gzip", httpResponse, ResponseHeaders.CONTENT_ENCODING);
+        this.assertHeaderField("Accept-Encoding", httpResponse, ResponseHeaders.VARY);
+        assertEquals("precompressed", this.gunzip(this.readBodyBytes(httpResponse)));
+    }
+
+    @Test
+    public void testOnGet_compression_precompressedOutdated() throws Exception {
+        this.enableCompression();
+        final String content = this.writeCompressibleContent();
+        final Path precompressed = this.testFile.resolveSibling(this.testFile.getFileName() + ".gz");
+        Files.write(precompressed, this.gzip("precompressed"));
+        Files.setLastModifiedTime(precompressed, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        assertEquals(1, this.subject.getCompressedContentCache().getEntryCount());
+        assertEquals(content, this.gunzip(this.readBodyBytes(httpResponse)));
+    }
+
+    @Test
+    public void testOnGet_compression_ifNoneMatch() throws Exception {
+        this.enableCompression();
+        this.writeCompressibleContent();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip");
+        final String entityTag = this.getEntityTag();
+        this.setupHeaderField(RequestHeaders.IF_NONE_MATCH, entityTag);
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.NOT_MODIFIED, httpResponse);
+        this.assertHeaderField(entityTag, httpResponse, ResponseHeaders.ETAG);
+        this.assertHeaderField("Accept-Encoding", httpResponse, ResponseHeaders.VARY);
+    }
+
+    @Test
+    public void testOnGet_compression_range() throws Exception {
+        this.enableCompression();
+        this.writeCompressibleContent();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip");
+        this.setupHeaderField(RequestHeaders.RANGE, "bytes=0-3");
+
+        // act
+        final HttpResponse httpResponse = this.subject.process(this.httpRequest);
+
+        // assert
+        this.assertStatus(HttpStatusCodes.PARTIAL_CONTENT, httpResponse);
+        assertFalse(httpResponse.getHeader().hasField(ResponseHeaders.CONTENT_ENCODING));
+        assertEquals("line", this.readBody(httpResponse));
+    }
+
+    @Test
+    public void testOnGet_compression_contentCache() throws Exception {
+        final String content = this.writeCompressibleContent();
+        this.config.addProperty("compression", "");
+        this.config.addProperty("compression/minSize", "100");
+        // the content root is watched from now on
+        this.enableContentCache();
+        this.setupCommand(HttpCommands.GET);
+        this.setupResource(this.testFile);
+        this.subject.process(this.httpRequest);
+
+        // act
+        final HttpResponse identity = this.subject.process(this.httpRequest);
+        this.setupHeaderField(RequestHeaders.ACCEPT_ENCODING, "gzip");
+        final HttpResponse compressed = this.subject.process(this.httpRequest);
+
+        // assert
+        assertTrue(identity.getBody() instanceof ByteBufferBody);
+        this.assertHeaderField("Accept-Encoding", identity, ResponseHeaders.VARY);
+        assertEquals(content, this.readBody(identity));
+        this.assertHeaderField("gzip", compressed, ResponseHeaders.CONTENT_ENCODING);
+        assertEquals(content, this.gunzip(this.readBodyBytes(compressed)));
+        // only the identity response is served from the content cache
+        assertEquals(1, this.subject.getContentCache().getHits());
+        assertEquals(1, this.subject.getContentCache().getMisses());
+    }
+
+    /**
+     * Writes text to the test file that is large enough to be compressed
+     */
+    private String writeCompressibleContent() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        Files.write(this.testFile, content.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return content.toString();
+    }
+
+    private byte[] gzip(final String content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return out.toByteArray();
+    }
+
+    private String gunzip(final byte[] compressed) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final byte[] buffer = new byte[256];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Requests the resource without conditions and returns its entity tag
+     */
+    private String getEntityTag() {
+        return this.subject.process(this.httpRequest).getHeader().getField(ResponseHeaders.ETAG).getValue()
+                .toString();
+    }
+
+    /**
+     * Reads the complete body of the response
+     */
+    private String readBody(final HttpResponse httpResponse) throws IOException {
+        return new String(this.readBodyBytes(httpResponse), StandardCharsets.ISO_8859_1);
+    }
+
+    private byte[] readBodyBytes(final HttpResponse httpResponse) throws IOException {
+        final ReadableByteChannel channel = httpResponse.getBody().getByteChannel();
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (channel.read(buffer) != -1) {
+            // read until the end of the body
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Configures a new subject with enabled content cache
+     */
+    private void enableContentCache() throws ConfigurationException {
+        this.config.addProperty("contentCache", "");
+        this.config.addProperty("contentCache/maxSize", "1024");
+        this.subject = new StaticFileContentRequestHandler();
+        this.subject.configure(this.config);
+    }
+
+    /**
+     * Configures a new subject with enabled compression
+     */
+    private void enableCompression() throws ConfigurationException {
+        this.config.addProperty("compression", "");
+        this.config.addProperty("compression/minSize", "100");
+        this.subject = new StaticFileContentRequestHandler();
+        this.subject.configure(this.config);
+    }
+
     /**
      * Asserts the value of the specified header field
      * 
@@ -366,7 +947,7 @@ public class StaticFileContentRequestHandlerTest {
      * @return
      */
     private String toHttpDate(final long ts) {
-        final SimpleDateFormat sdf = new SimpleDateFormat("EEE, d MMM yyy HH:mm:ss zzz", Locale.ENGLISH);
+        final SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
         sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
         final String expectedLastModifiedDate = sdf.format(new Date(ts));
         return expectedLastModifiedDate;
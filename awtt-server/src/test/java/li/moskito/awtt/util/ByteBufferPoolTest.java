@@ -0,0 +1,202 @@
+package li.moskito.awtt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import li.moskito.awtt.metrics.Gauge;
+import li.moskito.awtt.metrics.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+    private ByteBufferPool subject;
+
+    @Before
+    public void setUp() throws Exception {
+        this.subject = new ByteBufferPool(64 * 1024, 2, true);
+    }
+
+    @Test
+    public void testGetInstance() throws Exception {
+        assertSame(ByteBufferPool.getInstance(), ByteBufferPool.getInstance());
+    }
+
+    @Test
+    public void testRegisterMetrics() throws Exception {
+        final MetricsRegistry registry = MetricsRegistry.getInstance();
+        final ByteBuffer buffer = ByteBufferPool.getInstance().acquire();
+        final long acquired = ((Gauge) registry.getMetrics().get("bufferPool.acquired")).getValue();
+
+        ByteBufferPool.getInstance().release(buffer);
+
+        assertEquals(ByteBufferPool.getInstance().getAcquireCount(), acquired);
+        assertEquals(ByteBufferPool.getInstance().getAllocatedBytes(),
+                ((Gauge) registry.getMetrics().get("bufferPool.allocatedBytes")).getValue());
+    }
+
+    @Test
+    public void testAcquire_defaultSize() throws Exception {
+        final ByteBuffer buffer = this.subject.acquire();
+
+        assertTrue(buffer.isDirect());
+        assertEquals(ByteBufferPool.DEFAULT_BUFFER_SIZE, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void testAcquire_sizeClasses() throws Exception {
+        assertEquals(4096, this.subject.acquire(1).capacity());
+        assertEquals(4096, this.subject.acquire(4096).capacity());
+        assertEquals(8192, this.subject.acquire(4097).capacity());
+        assertEquals(32768, this.subject.acquire(20000).capacity());
+    }
+
+    @Test
+    public void testAcquire_oversized() throws Exception {
+        final ByteBuffer buffer = this.subject.acquire(65537);
+
+        assertFalse(buffer.isDirect());
+        assertEquals(65537, buffer.capacity());
+        assertEquals(1, this.subject.getHeapFallbackCount());
+    }
+
+    @Test
+    public void testAcquire_reusesReleasedBuffer() throws Exception {
+        final ByteBuffer buffer = this.subject.acquire(4096);
+        buffer.put((byte) 1);
+        this.subject.release(buffer);
+
+        final ByteBuffer reused = this.subject.acquire(4096);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1, this.subject.getAllocationCount());
+        assertEquals(2, this.subject.getAcquireCount());
+        assertEquals(1, this.subject.getReleaseCount());
+    }
+
+    @Test
+    public void testAcquire_fromOtherThread() throws Exception {
+        final AtomicReference<ByteBuffer> released = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                final ByteBuffer buffer = ByteBufferPoolTest.this.subject.acquire(4096);
+                released.set(buffer);
+                ByteBufferPoolTest.this.subject.release(buffer);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // the buffer is in the cache of the terminated thread and reclaimed once the memory limit is reached
+        final ByteBuffer[] buffers = new ByteBuffer[15];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = this.subject.acquire(4096);
+            assertTrue(buffers[i].isDirect());
+        }
+        final ByteBuffer reclaimed = this.subject.acquire(4096);
+        assertSame(released.get(), reclaimed);
+        assertEquals(0, this.subject.getHeapFallbackCount());
+    }
+
+    @Test
+    public void testAcquire_memoryLimitReached() throws Exception {
+        final ByteBuffer buffer1 = this.subject.acquire(32768);
+        final ByteBuffer buffer2 = this.subject.acquire(32768);
+        final ByteBuffer buffer3 = this.subject.acquire(32768);
+
+        assertTrue(buffer1.isDirect());
+        assertTrue(buffer2.isDirect());
+        assertFalse(buffer3.isDirect());
+        assertEquals(65536, this.subject.getAllocatedBytes());
+        assertEquals(1, this.subject.getHeapFallbackCount());
+
+        // heap buffers are not pooled
+        this.subject.release(buffer3);
+        assertEquals(0, this.subject.getReleaseCount());
+    }
+
+    @Test
+    public void testRelease_threadCacheFull() throws Exception {
+        final ByteBuffer buffer1 = this.subject.acquire(4096);
+        final ByteBuffer buffer2 = this.subject.acquire(4096);
+        final ByteBuffer buffer3 = this.subject.acquire(4096);
+        this.subject.release(buffer1);
+        this.subject.release(buffer2);
+        this.subject.release(buffer3);
+
+        // the thread cache holds 2 buffers, the 3rd is put to the global free list
+        assertNotSame(this.subject.acquire(4096), this.subject.acquire(4096));
+        assertSame(buffer3, this.subject.acquire(4096));
+        assertEquals(3, this.subject.getAllocationCount());
+    }
+
+    @Test
+    public void testRelease_foreignBuffer() throws Exception {
+        this.subject.release(null);
+        this.subject.release(ByteBuffer.allocateDirect(5000));
+        this.subject.release(ByteBuffer.allocate(4096));
+
+        assertEquals(0, this.subject.getReleaseCount());
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        this.subject.acquire(4096);
+        assertEquals(4096, this.subject.getAllocatedBytes());
+
+        // the leaked buffer should be collected eventually
+        for (int i = 0; i < 50 && this.subject.getLeakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, this.subject.getLeakCount());
+        assertEquals(0, this.subject.getAllocatedBytes());
+    }
+
+    @Test
+    public void testLeakDetection_releasedBuffer() throws Exception {
+        this.subject.release(this.subject.acquire(4096));
+
+        System.gc();
+        Thread.sleep(20);
+
+        assertEquals(0, this.subject.getLeakCount());
+        assertEquals(4096, this.subject.getAllocatedBytes());
+    }
+
+    @Test
+    public void testLeakDetection_disabled() throws Exception {
+        this.subject = new ByteBufferPool(64 * 1024, 2, false);
+        this.subject.acquire(4096);
+
+        System.gc();
+        Thread.sleep(20);
+
+        assertEquals(0, this.subject.getLeakCount());
+    }
+
+    @Test
+    public void testIsVirtual_platformThread() throws Exception {
+        assertFalse(ByteBufferPool.isVirtual(Thread.currentThread()));
+    }
+
+    @Test
+    public void testToString() throws Exception {
+        this.subject.acquire(4096);
+
+        assertTrue(this.subject.toString().contains("allocatedBytes=4096"));
+    }
+}
@@ -1,9 +1,16 @@
 package li.moskito.awtt.util;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -11,6 +18,8 @@ import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class ChannelsTest {
 
@@ -28,7 +37,7 @@ public class ChannelsTest {
         final FileChannel src = FileChannel.open(srcFile, StandardOpenOption.READ);
         final FileChannel dst = FileChannel.open(dstFile, StandardOpenOption.WRITE);
 
-        Channels.stream(src, dst);
+        assertEquals(8 * 1024, Channels.stream(src, dst));
         src.close();
         dst.close();
 
@@ -47,7 +56,7 @@ public class ChannelsTest {
         final FileChannel src = FileChannel.open(srcFile, StandardOpenOption.READ);
         final FileChannel dst = FileChannel.open(dstFile, StandardOpenOption.WRITE);
 
-        Channels.stream(src, dst);
+        assertEquals(24 * 1024, Channels.stream(src, dst));
         src.close();
         dst.close();
 
@@ -56,6 +65,36 @@ public class ChannelsTest {
         assertArrayEquals(srcData, dstData);
     }
 
+    @Test
+    public void testStream_transferableRegion() throws Exception {
+        final TransferableChannel src = mock(TransferableChannel.class);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final WritableByteChannel dst = java.nio.channels.Channels.newChannel(out);
+
+        when(src.hasTransferableRegion()).thenReturn(false, true, true, false);
+        when(src.read(any(ByteBuffer.class))).thenAnswer(new Answer<Integer>() {
+
+            @Override
+            public Integer answer(final InvocationOnMock invocation) throws Throwable {
+                ((ByteBuffer) invocation.getArguments()[0]).put("header".getBytes());
+                return 6;
+            }
+        });
+        when(src.transferTo(dst)).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(final InvocationOnMock invocation) throws Throwable {
+                ((WritableByteChannel) invocation.getArguments()[0]).write(ByteBuffer.wrap("region".getBytes()));
+                return 6L;
+            }
+        });
+
+        assertEquals(12, Channels.stream(src, dst));
+
+        // the buffered header is written before the region
+        assertEquals("headerregion", out.toString());
+    }
+
     private void generateRandomDataChunks(final Path file, final int numChunks) throws IOException {
         final Random rand = new Random();
         final byte[] chunk = new byte[1024];
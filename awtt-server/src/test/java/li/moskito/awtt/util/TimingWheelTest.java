@@ -0,0 +1,152 @@
+package li.moskito.awtt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    private TimingWheel subject;
+
+    @Before
+    public void setUp() throws Exception {
+        // 8 buckets of 10ms, a round takes 80ms
+        this.subject = new TimingWheel(10, TimeUnit.MILLISECONDS, 5);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.subject.stop();
+    }
+
+    @Test
+    public void testGetInstance() throws Exception {
+        assertSame(TimingWheel.getInstance(), TimingWheel.getInstance());
+    }
+
+    @Test
+    public void testSchedule_expired() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        final TimingWheel.Timeout timeout = this.subject.schedule(this.countDown(latch), 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void testSchedule_multipleRounds() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        this.subject.schedule(this.countDown(latch), 250, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+    }
+
+    @Test
+    public void testSchedule_noDelay() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        this.subject.schedule(this.countDown(latch), -1, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSchedule_manyTimeouts() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            this.subject.schedule(this.countDown(latch), i % 200, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        };
+
+        final TimingWheel.Timeout timeout1 = this.subject.schedule(task, 30, TimeUnit.MILLISECONDS);
+        final TimingWheel.Timeout timeout2 = this.subject.schedule(task, 30, TimeUnit.MILLISECONDS);
+        Thread.sleep(15);
+        // cancel one before and one after it has been put into the wheel
+        assertTrue(timeout1.cancel());
+        assertFalse(timeout1.cancel());
+        Thread.sleep(100);
+        assertFalse(timeout2.cancel());
+
+        assertTrue(timeout1.isCancelled());
+        assertFalse(timeout1.isExpired());
+        assertTrue(timeout2.isExpired());
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testSchedule_failingTask() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        this.subject.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        this.subject.schedule(this.countDown(latch), 20, TimeUnit.MILLISECONDS);
+
+        // the ticker survives the failing task
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testGetElapsedMillis() throws Exception {
+        final long start = this.subject.getElapsedMillis();
+        Thread.sleep(100);
+        final long elapsed = this.subject.getElapsedMillis() - start;
+        assertTrue("Elapsed " + elapsed, elapsed >= 50 && elapsed <= 500);
+        assertEquals(this.subject.getElapsedMillis() / 1000, this.subject.getElapsedSeconds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNew_invalidTickDuration() throws Exception {
+        new TimingWheel(0, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNew_invalidWheelSize() throws Exception {
+        new TimingWheel(10, TimeUnit.MILLISECONDS, 0);
+    }
+
+    private Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+}